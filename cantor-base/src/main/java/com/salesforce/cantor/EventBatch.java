@@ -0,0 +1,484 @@
+/*
+ * Copyright (c) 2020, Salesforce.com, Inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.cantor;
+
+import com.salesforce.cantor.Events.Event;
+
+import java.util.*;
+
+/**
+ * A batch of events stored column by column. Metadata and dimension keys are kept once per batch, timestamps and
+ * dimension values are kept in primitive arrays, and metadata values are dictionary encoded per key. Keys that are
+ * not present in an event are reported as absent for that row.
+ */
+public final class EventBatch {
+    private static final EventBatch empty = new Builder().build();
+
+    private final int size;
+    private final long[] timestamps;
+    private final String[] metadataKeys;
+    private final String[][] metadataDictionaries;
+    private final int[][] metadataCodes;
+    private final String[] dimensionKeys;
+    private final double[][] dimensionValues;
+    private final BitSet[] dimensionsPresent;
+    private final byte[][] payloads;
+
+    private EventBatch(final int size,
+                       final long[] timestamps,
+                       final String[] metadataKeys,
+                       final String[][] metadataDictionaries,
+                       final int[][] metadataCodes,
+                       final String[] dimensionKeys,
+                       final double[][] dimensionValues,
+                       final BitSet[] dimensionsPresent,
+                       final byte[][] payloads) {
+        this.size = size;
+        this.timestamps = timestamps;
+        this.metadataKeys = metadataKeys;
+        this.metadataDictionaries = metadataDictionaries;
+        this.metadataCodes = metadataCodes;
+        this.dimensionKeys = dimensionKeys;
+        this.dimensionValues = dimensionValues;
+        this.dimensionsPresent = dimensionsPresent;
+        this.payloads = payloads;
+    }
+
+    /**
+     * Get an empty batch.
+     * @return batch with no events
+     */
+    public static EventBatch empty() {
+        return empty;
+    }
+
+    /**
+     * Get a batch holding the given events, in the same order.
+     * @param events the events
+     * @return batch of the events
+     */
+    public static EventBatch of(final Collection<Event> events) {
+        final Builder builder = new Builder();
+        for (final Event event : events) {
+            builder.add(event);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get a new builder for an event batch.
+     * @return the builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the number of events in this batch.
+     * @return number of events
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Get the metadata keys of this batch; the position of a key is its metadata column.
+     * @return list of metadata keys
+     */
+    public List<String> getMetadataKeys() {
+        return Collections.unmodifiableList(Arrays.asList(this.metadataKeys));
+    }
+
+    /**
+     * Get the dimension keys of this batch; the position of a key is its dimension column.
+     * @return list of dimension keys
+     */
+    public List<String> getDimensionKeys() {
+        return Collections.unmodifiableList(Arrays.asList(this.dimensionKeys));
+    }
+
+    /**
+     * Get the timestamp of an event.
+     * @param row index of the event in the batch
+     * @return timestamp of the event in milli-seconds
+     */
+    public long getTimestampMillis(final int row) {
+        checkRow(row);
+        return this.timestamps[row];
+    }
+
+    /**
+     * Get the distinct values of a metadata column; metadata codes are indexes in this list.
+     * @param column the metadata column
+     * @return list of distinct metadata values
+     */
+    public List<String> getMetadataDictionary(final int column) {
+        return Collections.unmodifiableList(Arrays.asList(this.metadataDictionaries[column]));
+    }
+
+    /**
+     * Get the dictionary code of the metadata value of an event.
+     * @param column the metadata column
+     * @param row index of the event in the batch
+     * @return index of the value in the dictionary of the column, or -1 if the event does not have this metadata
+     */
+    public int getMetadataCode(final int column, final int row) {
+        checkRow(row);
+        return this.metadataCodes[column][row];
+    }
+
+    /**
+     * Get the metadata value of an event.
+     * @param column the metadata column
+     * @param row index of the event in the batch
+     * @return the metadata value, or null if the event does not have this metadata
+     */
+    public String getMetadata(final int column, final int row) {
+        final int code = getMetadataCode(column, row);
+        return code >= 0 ? this.metadataDictionaries[column][code] : null;
+    }
+
+    /**
+     * Check whether an event has a dimension.
+     * @param column the dimension column
+     * @param row index of the event in the batch
+     * @return true if the event has a value for this dimension
+     */
+    public boolean hasDimension(final int column, final int row) {
+        checkRow(row);
+        return this.dimensionsPresent[column].get(row);
+    }
+
+    /**
+     * Get the dimension value of an event.
+     * @param column the dimension column
+     * @param row index of the event in the batch
+     * @return the dimension value, or NaN if the event does not have this dimension
+     */
+    public double getDimension(final int column, final int row) {
+        return hasDimension(column, row) ? this.dimensionValues[column][row] : Double.NaN;
+    }
+
+    /**
+     * Get the payload of an event.
+     * @param row index of the event in the batch
+     * @return the payload, or null if the event has no payload
+     */
+    public byte[] getPayload(final int row) {
+        checkRow(row);
+        return this.payloads != null ? this.payloads[row] : null;
+    }
+
+    /**
+     * Get an event of the batch as an event object.
+     * @param row index of the event in the batch
+     * @return the event
+     */
+    public Event get(final int row) {
+        checkRow(row);
+        final Map<String, String> metadata = new HashMap<>();
+        for (int column = 0; column < this.metadataKeys.length; ++column) {
+            final int code = this.metadataCodes[column][row];
+            if (code >= 0) {
+                metadata.put(this.metadataKeys[column], this.metadataDictionaries[column][code]);
+            }
+        }
+        final Map<String, Double> dimensions = new HashMap<>();
+        for (int column = 0; column < this.dimensionKeys.length; ++column) {
+            if (this.dimensionsPresent[column].get(row)) {
+                dimensions.put(this.dimensionKeys[column], this.dimensionValues[column][row]);
+            }
+        }
+        return new Event(this.timestamps[row], metadata, dimensions, getPayload(row));
+    }
+
+    /**
+     * Get a read-only list view of the events in this batch; event objects are created as they are accessed.
+     * @return list of events
+     */
+    public List<Event> asList() {
+        return new EventBatchList(this);
+    }
+
+    private void checkRow(final int row) {
+        if (row < 0 || row >= this.size) {
+            throw new IndexOutOfBoundsException("row " + row + " out of batch of size " + this.size);
+        }
+    }
+
+    private static class EventBatchList extends AbstractList<Event> implements RandomAccess {
+        private final EventBatch batch;
+
+        EventBatchList(final EventBatch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public Event get(final int index) {
+            return this.batch.get(index);
+        }
+
+        @Override
+        public int size() {
+            return this.batch.size();
+        }
+    }
+
+    /**
+     * Builder of event batches; columns are added as new keys are seen, and events are appended row by row.
+     */
+    public static final class Builder {
+        private int size = 0;
+        private long[] timestamps = new long[16];
+        private byte[][] payloads = null;
+        private final Map<String, Integer> metadataColumns = new HashMap<>();
+        private final List<MetadataColumn> metadata = new ArrayList<>();
+        private final Map<String, Integer> dimensionColumns = new HashMap<>();
+        private final List<DimensionColumn> dimensions = new ArrayList<>();
+        private final Map<EventBatch, int[][]> sourceColumns = new IdentityHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Get the metadata column of a key, adding the column if it does not exist.
+         * @param key the metadata key
+         * @return the metadata column
+         */
+        public int getMetadataColumn(final String key) {
+            final Integer column = this.metadataColumns.get(key);
+            if (column != null) {
+                return column;
+            }
+            this.metadata.add(new MetadataColumn(key, this.timestamps.length));
+            this.metadataColumns.put(key, this.metadata.size() - 1);
+            return this.metadata.size() - 1;
+        }
+
+        /**
+         * Get the dimension column of a key, adding the column if it does not exist.
+         * @param key the dimension key
+         * @return the dimension column
+         */
+        public int getDimensionColumn(final String key) {
+            final Integer column = this.dimensionColumns.get(key);
+            if (column != null) {
+                return column;
+            }
+            this.dimensions.add(new DimensionColumn(key, this.timestamps.length));
+            this.dimensionColumns.put(key, this.dimensions.size() - 1);
+            return this.dimensions.size() - 1;
+        }
+
+        /**
+         * Append an event with no metadata and dimensions; these can be set afterwards.
+         * @param timestampMillis timestamp of the event in milli-seconds
+         * @param payload payload of the event, can be null
+         * @return index of the event in the batch
+         */
+        public int addRow(final long timestampMillis, final byte[] payload) {
+            if (this.size == this.timestamps.length) {
+                final int capacity = this.timestamps.length * 2;
+                this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+                if (this.payloads != null) {
+                    this.payloads = Arrays.copyOf(this.payloads, capacity);
+                }
+                for (final MetadataColumn column : this.metadata) {
+                    column.grow(capacity);
+                }
+                for (final DimensionColumn column : this.dimensions) {
+                    column.grow(capacity);
+                }
+            }
+            this.timestamps[this.size] = timestampMillis;
+            if (payload != null) {
+                if (this.payloads == null) {
+                    this.payloads = new byte[this.timestamps.length][];
+                }
+                this.payloads[this.size] = payload;
+            }
+            return this.size++;
+        }
+
+        /**
+         * Set the metadata value of an event.
+         * @param column the metadata column
+         * @param row index of the event in the batch
+         * @param value the metadata value; null leaves the metadata absent
+         */
+        public void setMetadata(final int column, final int row, final String value) {
+            if (value != null) {
+                this.metadata.get(column).set(row, value);
+            }
+        }
+
+        /**
+         * Set the dimension value of an event.
+         * @param column the dimension column
+         * @param row index of the event in the batch
+         * @param value the dimension value
+         */
+        public void setDimension(final int column, final int row, final double value) {
+            this.dimensions.get(column).set(row, value);
+        }
+
+        /**
+         * Append an event.
+         * @param event the event
+         * @return this builder
+         */
+        public Builder add(final Event event) {
+            return add(event.getTimestampMillis(), event.getMetadata(), event.getDimensions(), event.getPayload());
+        }
+
+        /**
+         * Append an event.
+         * @param timestampMillis timestamp of the event in milli-seconds
+         * @param metadata metadata of the event
+         * @param dimensions dimensions of the event
+         * @param payload payload of the event, can be null
+         * @return this builder
+         */
+        public Builder add(final long timestampMillis,
+                           final Map<String, String> metadata,
+                           final Map<String, Double> dimensions,
+                           final byte[] payload) {
+            final int row = addRow(timestampMillis, payload);
+            if (metadata != null) {
+                for (final Map.Entry<String, String> entry : metadata.entrySet()) {
+                    setMetadata(getMetadataColumn(entry.getKey()), row, entry.getValue());
+                }
+            }
+            if (dimensions != null) {
+                for (final Map.Entry<String, Double> entry : dimensions.entrySet()) {
+                    if (entry.getValue() != null) {
+                        setDimension(getDimensionColumn(entry.getKey()), row, entry.getValue());
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Append an event of another batch.
+         * @param batch the batch to copy the event from
+         * @param sourceRow index of the event in the other batch
+         * @return this builder
+         */
+        public Builder add(final EventBatch batch, final int sourceRow) {
+            final int[][] columns = this.sourceColumns.computeIfAbsent(batch, this::getColumns);
+            final int row = addRow(batch.getTimestampMillis(sourceRow), batch.getPayload(sourceRow));
+            for (int column = 0; column < columns[0].length; ++column) {
+                setMetadata(columns[0][column], row, batch.getMetadata(column, sourceRow));
+            }
+            for (int column = 0; column < columns[1].length; ++column) {
+                if (batch.hasDimension(column, sourceRow)) {
+                    setDimension(columns[1][column], row, batch.dimensionValues[column][sourceRow]);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Get the batch of all events appended so far.
+         * @return the event batch
+         */
+        public EventBatch build() {
+            final String[] metadataKeys = new String[this.metadata.size()];
+            final String[][] metadataDictionaries = new String[this.metadata.size()][];
+            final int[][] metadataCodes = new int[this.metadata.size()][];
+            for (int column = 0; column < this.metadata.size(); ++column) {
+                final MetadataColumn metadataColumn = this.metadata.get(column);
+                metadataKeys[column] = metadataColumn.key;
+                metadataDictionaries[column] = metadataColumn.dictionary.toArray(new String[0]);
+                metadataCodes[column] = Arrays.copyOf(metadataColumn.codes, this.size);
+            }
+            final String[] dimensionKeys = new String[this.dimensions.size()];
+            final double[][] dimensionValues = new double[this.dimensions.size()][];
+            final BitSet[] dimensionsPresent = new BitSet[this.dimensions.size()];
+            for (int column = 0; column < this.dimensions.size(); ++column) {
+                final DimensionColumn dimensionColumn = this.dimensions.get(column);
+                dimensionKeys[column] = dimensionColumn.key;
+                dimensionValues[column] = Arrays.copyOf(dimensionColumn.values, this.size);
+                dimensionsPresent[column] = (BitSet) dimensionColumn.present.clone();
+            }
+            return new EventBatch(this.size,
+                    Arrays.copyOf(this.timestamps, this.size),
+                    metadataKeys,
+                    metadataDictionaries,
+                    metadataCodes,
+                    dimensionKeys,
+                    dimensionValues,
+                    dimensionsPresent,
+                    this.payloads != null ? Arrays.copyOf(this.payloads, this.size) : null
+            );
+        }
+
+        // maps metadata and dimension columns of the other batch to columns of this builder
+        private int[][] getColumns(final EventBatch batch) {
+            final int[] metadata = new int[batch.metadataKeys.length];
+            for (int column = 0; column < metadata.length; ++column) {
+                metadata[column] = getMetadataColumn(batch.metadataKeys[column]);
+            }
+            final int[] dimensions = new int[batch.dimensionKeys.length];
+            for (int column = 0; column < dimensions.length; ++column) {
+                dimensions[column] = getDimensionColumn(batch.dimensionKeys[column]);
+            }
+            return new int[][] {metadata, dimensions};
+        }
+    }
+
+    private static final class MetadataColumn {
+        private final String key;
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private int[] codes;
+
+        MetadataColumn(final String key, final int capacity) {
+            this.key = key;
+            this.codes = new int[capacity];
+            Arrays.fill(this.codes, -1);
+        }
+
+        void grow(final int capacity) {
+            final int length = this.codes.length;
+            this.codes = Arrays.copyOf(this.codes, capacity);
+            Arrays.fill(this.codes, length, capacity, -1);
+        }
+
+        void set(final int row, final String value) {
+            Integer code = this.index.get(value);
+            if (code == null) {
+                code = this.dictionary.size();
+                this.dictionary.add(value);
+                this.index.put(value, code);
+            }
+            this.codes[row] = code;
+        }
+    }
+
+    private static final class DimensionColumn {
+        private final String key;
+        private final BitSet present = new BitSet();
+        private double[] values;
+
+        DimensionColumn(final String key, final int capacity) {
+            this.key = key;
+            this.values = new double[capacity];
+        }
+
+        void grow(final int capacity) {
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+
+        void set(final int row, final double value) {
+            this.values[row] = value;
+            this.present.set(row);
+        }
+    }
+}
@@ -7,8 +7,11 @@
 
 package com.salesforce.cantor;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Events are multi-dimensional time series data.
@@ -106,6 +109,41 @@ public interface Events extends Namespaceable {
         }
     }
 
+    /**
+     * A cursor over events returned by a scan; events are pulled lazily from the underlying storage as the cursor is
+     * advanced. Cursors must be closed to release the underlying resources. Failures while advancing the cursor are
+     * thrown as {@link UncheckedIOException}.
+     */
+    interface EventCursor extends Iterator<Event>, Closeable {
+    }
+
+    /**
+     * Functions used to aggregate dimension values of events.
+     */
+    enum AggregationFunction {
+        SUM, AVG, MIN, MAX, COUNT;
+
+        /**
+         * Get the value of this function given the partial aggregates of a set of values.
+         *
+         * @param count number of values
+         * @param sum sum of the values
+         * @param min minimum of the values
+         * @param max maximum of the values
+         * @return the aggregated value
+         */
+        public double apply(final long count, final double sum, final double min, final double max) {
+            switch (this) {
+                case SUM: return sum;
+                case AVG: return count > 0 ? sum / count : 0;
+                case MIN: return min;
+                case MAX: return max;
+                case COUNT: return count;
+                default: throw new IllegalStateException("unknown aggregation function " + this);
+            }
+        }
+    }
+
     /**
      * Store an event in the given namespace, with timestamp and optionally metadata and dimensions.
      *
@@ -271,6 +309,9 @@ public interface Events extends Namespaceable {
      * values for a set of dimensions. For example: "cpu" => ">=0.3" matches all events where the dimension with key
      * "cpu" has a value higher than or equal to 0.3.
      *
+     * The metadata and dimension maps of the returned events may be read-only (the jdbc implementations return maps
+     * backed by the decoded rows); callers that modify them must copy them first.
+     *
      * @param namespace the namespace identifier
      * @param startTimestampMillis start UTC timestamp in milli-seconds
      * @param endTimestampMillis end UTC timestamp in milli-seconds
@@ -280,7 +321,7 @@ public interface Events extends Namespaceable {
      * @param ascending order results ascending if true; descending if false
      * @param limit maximum number of events to return
      * @return list of all events in the namespace with timestamp between start/end
-     * and metadata/dimensions matching the query
+     * and metadata/dimensions matching the query; metadata and dimension maps may be read-only
      * @throws IOException exception thrown from the underlying storage implementation
      */
     List<Event> get(String namespace,
@@ -292,6 +333,226 @@ public interface Events extends Namespaceable {
                     boolean ascending,
                     int limit) throws IOException;
 
+    /**
+     * Get all events in the given namespace, with timestamp between the start and end, and metadata and dimensions
+     * matching the given queries; only the given metadata and dimension keys are returned for each event.
+     * <p>
+     * The default implementation fetches all keys via
+     * {@link #get(String, long, long, Map, Map, boolean, boolean, int)} and removes the others.
+     *
+     * @param namespace the namespace identifier
+     * @param startTimestampMillis start UTC timestamp in milli-seconds
+     * @param endTimestampMillis end UTC timestamp in milli-seconds
+     * @param metadataQuery map of string to string representing a query to run against events metadata
+     * @param dimensionsQuery map of string to string representing a query to run against events dimensions
+     * @param includePayloads flag to include payloads in the response or not; if false, event.getPayload() returns null
+     * @param ascending order results ascending if true; descending if false
+     * @param limit maximum number of events to return
+     * @param metadataKeys metadata keys to return for each event; null to return all metadata
+     * @param dimensionKeys dimension keys to return for each event; null to return all dimensions
+     * @return list of all events in the namespace with timestamp between start/end
+     * and metadata/dimensions matching the query, with only the requested metadata and dimensions
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    default List<Event> get(String namespace,
+                            long startTimestampMillis,
+                            long endTimestampMillis,
+                            Map<String, String> metadataQuery,
+                            Map<String, String> dimensionsQuery,
+                            boolean includePayloads,
+                            boolean ascending,
+                            int limit,
+                            Set<String> metadataKeys,
+                            Set<String> dimensionKeys) throws IOException {
+        final List<Event> events = get(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery,
+                includePayloads,
+                ascending,
+                limit
+        );
+        if (metadataKeys == null && dimensionKeys == null) {
+            return events;
+        }
+        final List<Event> results = new ArrayList<>(events.size());
+        for (final Event event : events) {
+            final Map<String, String> metadata = new HashMap<>(event.getMetadata());
+            final Map<String, Double> dimensions = new HashMap<>(event.getDimensions());
+            if (metadataKeys != null) {
+                metadata.keySet().retainAll(metadataKeys);
+            }
+            if (dimensionKeys != null) {
+                dimensions.keySet().retainAll(dimensionKeys);
+            }
+            results.add(new Event(event.getTimestampMillis(), metadata, dimensions, event.getPayload()));
+        }
+        return results;
+    }
+
+    /**
+     * Get events in the given namespace, with timestamp between the start and end, and metadata and dimensions
+     * matching the given queries, as a columnar batch.
+     * <p>
+     * The default implementation converts the results of {@link #get(String, long, long, Map, Map, boolean, boolean, int)}.
+     *
+     * @param namespace the namespace identifier
+     * @param startTimestampMillis start UTC timestamp in milli-seconds
+     * @param endTimestampMillis end UTC timestamp in milli-seconds
+     * @param metadataQuery map of string to string representing a query to run against events metadata
+     * @param dimensionsQuery map of string to string representing a query to run against events dimensions
+     * @param includePayloads flag to include payloads in the response or not; if false, payloads are null
+     * @param ascending order results ascending if true; descending if false
+     * @param limit maximum number of events to return
+     * @return batch of all events in the namespace with timestamp between start/end
+     * and metadata/dimensions matching the query
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    default EventBatch getBatch(String namespace,
+                                long startTimestampMillis,
+                                long endTimestampMillis,
+                                Map<String, String> metadataQuery,
+                                Map<String, String> dimensionsQuery,
+                                boolean includePayloads,
+                                boolean ascending,
+                                int limit) throws IOException {
+        return EventBatch.of(get(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery,
+                includePayloads,
+                ascending,
+                limit
+        ));
+    }
+
+    /**
+     * Scan all events in the given namespace, with timestamp between the start and end.
+     *
+     * @param namespace the namespace identifier
+     * @param startTimestampMillis start UTC timestamp in milli-seconds
+     * @param endTimestampMillis end UTC timestamp in milli-seconds
+     * @return cursor over all events in the namespace with timestamp between start/end, ordered ascending
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    default EventCursor scan(String namespace,
+                             long startTimestampMillis,
+                             long endTimestampMillis) throws IOException {
+        return scan(namespace, startTimestampMillis, endTimestampMillis, null, null, false, true);
+    }
+
+    /**
+     * Scan events in the given namespace, with timestamp between the start and end, and metadata and dimensions
+     * matching the given queries; see {@link #get(String, long, long, Map, Map, boolean, boolean, int)} for the
+     * query syntax. Unlike get, events are not materialized in memory but streamed through the returned cursor, and
+     * the time range is not limited.
+     * <p>
+     * The default implementation pages through the events by timestamp using get with a limit, so sparse time ranges
+     * are scanned in as few calls as dense ones; pages are fetched from windows of up to 7 days, the widest time range
+     * get accepts.
+     *
+     * @param namespace the namespace identifier
+     * @param startTimestampMillis start UTC timestamp in milli-seconds
+     * @param endTimestampMillis end UTC timestamp in milli-seconds
+     * @param metadataQuery map of string to string representing a query to run against events metadata
+     * @param dimensionsQuery map of string to string representing a query to run against events dimensions
+     * @param includePayloads flag to include payloads in the response or not; if false, event.getPayload() returns null
+     * @param ascending order results ascending if true; descending if false
+     * @return cursor over all events in the namespace with timestamp between start/end
+     * and metadata/dimensions matching the query
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    default EventCursor scan(String namespace,
+                             long startTimestampMillis,
+                             long endTimestampMillis,
+                             Map<String, String> metadataQuery,
+                             Map<String, String> dimensionsQuery,
+                             boolean includePayloads,
+                             boolean ascending) throws IOException {
+        final int pageSize = 1000;
+        final long maxWindowMillis = TimeUnit.DAYS.toMillis(7);
+        return new EventCursor() {
+            // bounds of the time range not yet fetched
+            private long remainingStart = startTimestampMillis;
+            private long remainingEnd = endTimestampMillis;
+            private boolean done = startTimestampMillis > endTimestampMillis;
+            private Iterator<Event> page = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!this.page.hasNext() && !this.done) {
+                    try {
+                        this.page = nextPage().iterator();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return this.page.hasNext();
+            }
+
+            // fetches up to a page of events from the window at the edge of the remaining range and moves the edge past
+            // them, or past the whole window if it has no more events; events sharing the timestamp of the last event in
+            // a full page may be cut off, so they are fetched again on the next page, or all at once if a single
+            // timestamp fills the whole page
+            private List<Event> nextPage() throws IOException {
+                final long windowStart = ascending || this.remainingEnd - this.remainingStart <= maxWindowMillis
+                        ? this.remainingStart
+                        : this.remainingEnd - maxWindowMillis;
+                final long windowEnd = !ascending || this.remainingEnd - this.remainingStart <= maxWindowMillis
+                        ? this.remainingEnd
+                        : this.remainingStart + maxWindowMillis;
+                final List<Event> events = get(namespace, windowStart, windowEnd,
+                        metadataQuery, dimensionsQuery, includePayloads, ascending, pageSize);
+                if (events.size() < pageSize) {
+                    if (ascending) {
+                        this.done = windowEnd == this.remainingEnd;
+                        this.remainingStart = windowEnd + 1;
+                    } else {
+                        this.done = windowStart == this.remainingStart;
+                        this.remainingEnd = windowStart - 1;
+                    }
+                    return events;
+                }
+                final long last = events.get(events.size() - 1).getTimestampMillis();
+                int end = events.size();
+                while (end > 0 && events.get(end - 1).getTimestampMillis() == last) {
+                    --end;
+                }
+                final List<Event> results;
+                if (end > 0) {
+                    results = events.subList(0, end);
+                } else {
+                    results = get(namespace, last, last, metadataQuery, dimensionsQuery, includePayloads, ascending, 0);
+                }
+                final long next = end > 0 ? last : (ascending ? last + 1 : last - 1);
+                if (ascending) {
+                    this.done = next > this.remainingEnd || (end == 0 && last == Long.MAX_VALUE);
+                    this.remainingStart = next;
+                } else {
+                    this.done = next < this.remainingStart || (end == 0 && last == Long.MIN_VALUE);
+                    this.remainingEnd = next;
+                }
+                return results;
+            }
+
+            @Override
+            public Event next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.page.next();
+            }
+
+            @Override
+            public void close() {
+                this.done = true;
+                this.page = Collections.emptyIterator();
+            }
+        };
+    }
+
     /**
      * Get distinct metadata values for the given metadata key for events in the given namespace, with timestamp between
      * the start and end, metadata and dimensions matching the given queries.
@@ -313,6 +574,44 @@ public interface Events extends Namespaceable {
                          Map<String, String> metadataQuery,
                          Map<String, String> dimensionsQuery) throws IOException;
 
+    /**
+     * Count events in the given namespace grouped by the values of the given metadata key, for events with timestamp
+     * between the start and end, metadata and dimensions matching the given queries. Events without the metadata key
+     * are not counted.
+     * <p>
+     * The default implementation counts the events returned by
+     * {@link #scan(String, long, long, Map, Map, boolean, boolean)}.
+     *
+     * @param namespace the namespace identifier
+     * @param metadataKey the metadata key to group events by
+     * @param startTimestampMillis start timestamp in milli-seconds
+     * @param endTimestampMillis end timestamp in milli-seconds
+     * @param metadataQuery map of string to string representing a query to run against events metadata
+     * @param dimensionsQuery map of string to string representing a query to run against events dimensions
+     * @return map of metadata value to the number of events with that value
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    default Map<String, Long> count(String namespace,
+                                    String metadataKey,
+                                    long startTimestampMillis,
+                                    long endTimestampMillis,
+                                    Map<String, String> metadataQuery,
+                                    Map<String, String> dimensionsQuery) throws IOException {
+        final Map<String, Long> results = new HashMap<>();
+        try (final EventCursor cursor = scan(namespace, startTimestampMillis, endTimestampMillis,
+                metadataQuery, dimensionsQuery, false, true)) {
+            while (cursor.hasNext()) {
+                final String value = cursor.next().getMetadata().get(metadataKey);
+                if (value != null) {
+                    results.merge(value, 1L, Long::sum);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return results;
+    }
+
     /**
      * Get a list of events values where each event only contains the specified dimension, for events in the given
      * namespace, with timestamp between the start and end, metadata and dimensions matching the given queries.
@@ -334,6 +633,71 @@ public interface Events extends Namespaceable {
                           Map<String, String> metadataQuery,
                           Map<String, String> dimensionsQuery) throws IOException;
 
+    /**
+     * Aggregate values of the given dimension into buckets of time, for events in the given namespace, with timestamp
+     * between the start and end, metadata and dimensions matching the given queries. Each bucket covers the time range
+     * of [bucket, bucket + bucketMillis) where bucket is a multiple of bucketMillis; buckets with no events are not
+     * included in the result.
+     * <p>
+     * The default implementation reduces the results of
+     * {@link #dimension(String, String, long, long, Map, Map)}.
+     *
+     * @param namespace the namespace identifier
+     * @param dimensionKey the given dimension key
+     * @param startTimestampMillis start timestamp in milli-seconds
+     * @param endTimestampMillis end timestamp in milli-seconds
+     * @param bucketMillis size of each time bucket in milli-seconds
+     * @param function the aggregation function to apply to values in each bucket
+     * @param metadataQuery map of string to string representing a query to run against events metadata
+     * @param dimensionsQuery map of string to string representing a query to run against events dimensions
+     * @return map of bucket start timestamp to the aggregated value, ordered by timestamp
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    default Map<Long, Double> aggregate(String namespace,
+                                        String dimensionKey,
+                                        long startTimestampMillis,
+                                        long endTimestampMillis,
+                                        long bucketMillis,
+                                        AggregationFunction function,
+                                        Map<String, String> metadataQuery,
+                                        Map<String, String> dimensionsQuery) throws IOException {
+        final Map<Long, DoubleSummaryStatistics> buckets = new TreeMap<>();
+        for (final Event event : dimension(namespace, dimensionKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery)) {
+            final Double value = event.getDimensions().get(dimensionKey);
+            if (value == null) {
+                continue;
+            }
+            final long bucket = event.getTimestampMillis() - event.getTimestampMillis() % bucketMillis;
+            buckets.computeIfAbsent(bucket, k -> new DoubleSummaryStatistics()).accept(value);
+        }
+        final Map<Long, Double> results = new TreeMap<>();
+        for (final Map.Entry<Long, DoubleSummaryStatistics> entry : buckets.entrySet()) {
+            final DoubleSummaryStatistics statistics = entry.getValue();
+            results.put(entry.getKey(), function.apply(
+                    statistics.getCount(), statistics.getSum(), statistics.getMin(), statistics.getMax())
+            );
+        }
+        return results;
+    }
+
+    /**
+     * Delete events in the given namespace, with timestamp between the start and end, metadata and dimensions
+     * matching the given queries.
+     *
+     * @param namespace the namespace identifier
+     * @param startTimestampMillis start timestamp in milli-seconds
+     * @param endTimestampMillis end timestamp in milli-seconds
+     * @param metadataQuery map of string to string representing a query to run against events metadata
+     * @param dimensionsQuery map of string to string representing a query to run against events dimensions
+     * @return number of events deleted
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    int delete(String namespace,
+               long startTimestampMillis,
+               long endTimestampMillis,
+               Map<String, String> metadataQuery,
+               Map<String, String> dimensionsQuery) throws IOException;
+
     /**
      * Expire all events with timestamp before the given end timestamp.
      *
@@ -9,6 +9,8 @@ package com.salesforce.cantor;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -18,6 +20,89 @@ import java.util.Map;
  */
 public interface Sets extends Namespaceable {
 
+    /**
+     * Functions used to combine weights of an entry found in more than one set.
+     */
+    enum WeightAggregation {
+        SUM, MIN, MAX;
+
+        /**
+         * Get the combination of two weights of an entry; sums saturate at the minimum and maximum weights.
+         *
+         * @param weight1 first weight
+         * @param weight2 second weight
+         * @return the combined weight
+         */
+        public long apply(final long weight1, final long weight2) {
+            switch (this) {
+                case SUM: {
+                    final long sum = weight1 + weight2;
+                    // overflow if both weights have the same sign and the sum has the other
+                    if (((weight1 ^ sum) & (weight2 ^ sum)) < 0) {
+                        return weight1 < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+                    }
+                    return sum;
+                }
+                case MIN: return Math.min(weight1, weight2);
+                case MAX: return Math.max(weight1, weight2);
+                default: throw new IllegalStateException("unknown weight aggregation " + this);
+            }
+        }
+    }
+
+    /**
+     * A page of entries of a set, and an opaque token to resume reading the set after the last entry of the page.
+     */
+    class Page {
+        private final Map<String, Long> entries;
+        private final String continuationToken;
+
+        public Page(final Map<String, Long> entries, final String continuationToken) {
+            this.entries = entries != null ? entries : Collections.emptyMap();
+            this.continuationToken = continuationToken;
+        }
+
+        /**
+         * Get the entries in this page.
+         * @return ordered map of entries to weights
+         */
+        public Map<String, Long> getEntries() {
+            return this.entries;
+        }
+
+        /**
+         * Get the token to pass to the next call to read the entries after this page.
+         * @return the continuation token; null if this is the last page
+         */
+        public String getContinuationToken() {
+            return this.continuationToken;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Page)) {
+                return false;
+            }
+            final Page other = (Page) obj;
+            return this.getEntries().equals(other.getEntries())
+                    && java.util.Objects.equals(this.getContinuationToken(), other.getContinuationToken());
+        }
+
+        @Override
+        public int hashCode() {
+            return java.util.Objects.hash(this.getEntries(), this.getContinuationToken());
+        }
+
+        @Override
+        public String toString() {
+            return "entries=" + getEntries() +
+                    ",continuationToken=" + getContinuationToken();
+        }
+    }
+
     /**
      * Add an entry with a weight to the set in the given namespace.
      *
@@ -125,6 +210,38 @@ public interface Sets extends Namespaceable {
     Map<String, Long> get(String namespace, String set, long min, long max, int start, int count, boolean ascending)
             throws IOException;
 
+    /**
+     * Return a page of entries and weights stored in the set with weight more than min, less than max, ordered by
+     * weight and then by entry, starting after the entry the continuation token was returned for. Unlike get with
+     * a start offset, reading a page costs the same regardless of how deep into the set it is.
+     *
+     * @param namespace the namespace
+     * @param set name of the sorted set
+     * @param min the minimum weight
+     * @param max the maximum weight
+     * @param count maximum number of entries to return; must be positive
+     * @param ascending ordered ascending or descending by weight
+     * @param continuationToken token returned with the previous page; null for the first page
+     * @return page of entries to weights matching the given criteria, with the token to read the next page
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    Page page(String namespace, String set, long min, long max, int count, boolean ascending, String continuationToken)
+            throws IOException;
+
+    /**
+     * Return a page of entries and weights stored in the set, ordered by weight ascending
+     *
+     * @param namespace the namespace
+     * @param set name of the sorted set
+     * @param count maximum number of entries to return; must be positive
+     * @param continuationToken token returned with the previous page; null for the first page
+     * @return page of entries to weights, with the token to read the next page
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    default Page page(String namespace, String set, int count, String continuationToken) throws IOException {
+        return page(namespace, set, Long.MIN_VALUE, Long.MAX_VALUE, count, true, continuationToken);
+    }
+
     /**
      * Return all entries stored in the set, ordered by weight ascending
      *
@@ -208,8 +325,34 @@ public interface Sets extends Namespaceable {
      * @return map of entries to weights, matching the given criteria
      * @throws IOException exception thrown from the underlying storage implementation
      */
-    Map<String, Long> union(String namespace, Collection<String> sets, long min, long max, int start, int count, boolean ascending)
-            throws IOException;
+    default Map<String, Long> union(String namespace, Collection<String> sets, long min, long max, int start, int count, boolean ascending)
+            throws IOException {
+        return union(namespace, sets, min, max, start, count, ascending, WeightAggregation.MAX);
+    }
+
+    /**
+     * Return union of entries stored in any of the given sets with weight more than min, less than max,
+     * with start and count; the weight of an entry found in more than one set is the aggregation of its weights.
+     *
+     * @param namespace the namespace
+     * @param sets name of the sorted sets to do union over
+     * @param min the minimum weight
+     * @param max the maximum weight
+     * @param start start offset
+     * @param count maximum number of entries to return; -1 for infinite
+     * @param ascending ordered ascending or descending by aggregated weight
+     * @param aggregation function to combine weights of an entry across sets
+     * @return map of entries to aggregated weights, matching the given criteria
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    Map<String, Long> union(String namespace,
+                            Collection<String> sets,
+                            long min,
+                            long max,
+                            int start,
+                            int count,
+                            boolean ascending,
+                            WeightAggregation aggregation) throws IOException;
 
     /**
      * Return union of all entries stored in the given sets, ordered by weight ascending
@@ -253,8 +396,34 @@ public interface Sets extends Namespaceable {
      * @return map of entries to weights, matching the given criteria
      * @throws IOException exception thrown from the underlying storage implementation
      */
-    Map<String, Long> intersect(String namespace, Collection<String> sets, long min, long max, int start, int count, boolean ascending)
-            throws IOException;
+    default Map<String, Long> intersect(String namespace, Collection<String> sets, long min, long max, int start, int count, boolean ascending)
+            throws IOException {
+        return intersect(namespace, sets, min, max, start, count, ascending, WeightAggregation.MAX);
+    }
+
+    /**
+     * Return intersection of entries stored in all of the given sets with weight more than min, less than max,
+     * with start and count; the weight of an entry is the aggregation of its weights in all sets.
+     *
+     * @param namespace the namespace
+     * @param sets name of the sorted sets to do intersection over
+     * @param min the minimum weight
+     * @param max the maximum weight
+     * @param start start offset
+     * @param count maximum number of entries to return; -1 for infinite
+     * @param ascending ordered ascending or descending by aggregated weight
+     * @param aggregation function to combine weights of an entry across sets
+     * @return map of entries to aggregated weights, matching the given criteria
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    Map<String, Long> intersect(String namespace,
+                                Collection<String> sets,
+                                long min,
+                                long max,
+                                int start,
+                                int count,
+                                boolean ascending,
+                                WeightAggregation aggregation) throws IOException;
 
     /**
      * Return intersect of all entries stored in the given sets, ordered by weight ascending
@@ -284,6 +453,43 @@ public interface Sets extends Namespaceable {
         return intersect(namespace, sets, Long.MIN_VALUE, Long.MAX_VALUE, start, count, true);
     }
 
+    /**
+     * Return entries stored in the set and in none of the other given sets, with start and count and weight
+     * more than min, less than max; entries of the other sets are only considered if their weight is in range too.
+     *
+     * @param namespace the namespace
+     * @param set name of the sorted set to return entries from
+     * @param sets name of the sorted sets whose entries are excluded
+     * @param min the minimum weight
+     * @param max the maximum weight
+     * @param start start offset
+     * @param count maximum number of entries to return; -1 for infinite
+     * @param ascending ordered ascending or descending by weight
+     * @return map of entries to their weights in the set, matching the given criteria
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    Map<String, Long> difference(String namespace,
+                                 String set,
+                                 Collection<String> sets,
+                                 long min,
+                                 long max,
+                                 int start,
+                                 int count,
+                                 boolean ascending) throws IOException;
+
+    /**
+     * Return all entries stored in the set and in none of the other given sets, ordered by weight ascending
+     *
+     * @param namespace the namespace
+     * @param set name of the sorted set to return entries from
+     * @param sets name of the sorted sets whose entries are excluded
+     * @return map of entries to their weights in the set
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    default Map<String, Long> difference(String namespace, String set, Collection<String> sets) throws IOException {
+        return difference(namespace, set, sets, Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, true);
+    }
+
     /**
      * Return and atomically remove entries and weights stored in the set
      * with start and count and weight more than min, less than max.
@@ -390,6 +596,26 @@ public interface Sets extends Namespaceable {
      */
     Long weight(String namespace, String set, String entry) throws IOException;
 
+    /**
+     * Returns weights of a batch of entries in the set; entries that are not in the set are not included.
+     *
+     * @param namespace the namespace
+     * @param set name of the sorted set
+     * @param entries the entries to get weights of
+     * @return map of entries in the set to their weights
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    default Map<String, Long> weights(String namespace, String set, Collection<String> entries) throws IOException {
+        final Map<String, Long> results = new HashMap<>();
+        for (final String entry : entries) {
+            final Long weight = weight(namespace, set, entry);
+            if (weight != null) {
+                results.put(entry, weight);
+            }
+        }
+        return results;
+    }
+
     /**
      * Atomic operation to increment an entry's weight in the set by the given count
      * and then return the final value.
@@ -401,5 +627,16 @@ public interface Sets extends Namespaceable {
      * @return final weight of the entry after incrementing
      */
     long inc(String namespace, String set, String entry, long count) throws IOException;
-}
 
+    /**
+     * Atomic operation to increment weights of a batch of entries in the set by the given counts
+     * and then return the final values; entries that do not exist are added with the given count.
+     *
+     * @param namespace the namespace
+     * @param set name of the sorted set
+     * @param entries map of entries to counts to increment their weights by
+     * @throws IOException exception thrown from the underlying storage implementation
+     * @return map of entries to their final weights after incrementing
+     */
+    Map<String, Long> inc(String namespace, String set, Map<String, Long> entries) throws IOException;
+}
@@ -36,6 +36,19 @@ public class EventsPreconditions extends CommonPreconditions {
         checkDimensionsQuery(dimensionsQuery);
     }
 
+    public static void checkScan(final String namespace,
+                                 final long startTimestampMillis,
+                                 final long endTimestampMillis,
+                                 final Map<String, String> metadataQuery,
+                                 final Map<String, String> dimensionsQuery) {
+        checkNamespace(namespace);
+        // scans are streamed so the time range is not limited
+        checkArgument(startTimestampMillis >= 0, "invalid start timestamp");
+        checkArgument(endTimestampMillis >= startTimestampMillis, "end timestamp cannot be before start timestamp");
+        checkMetadataQuery(metadataQuery);
+        checkDimensionsQuery(dimensionsQuery);
+    }
+
     public static void checkMetadata(final String namespace,
                                      final String metadataKey,
                                      final long startTimestampMillis,
@@ -49,6 +62,15 @@ public class EventsPreconditions extends CommonPreconditions {
         checkDimensionsQuery(dimensionsQuery);
     }
 
+    public static void checkCount(final String namespace,
+                                  final String metadataKey,
+                                  final long startTimestampMillis,
+                                  final long endTimestampMillis,
+                                  final Map<String, String> metadataQuery,
+                                  final Map<String, String> dimensionsQuery) {
+        checkMetadata(namespace, metadataKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+    }
+
     public static void checkDimension(final String namespace,
                                       final String dimensionKey,
                                       final long startTimestampMillis,
@@ -62,6 +84,27 @@ public class EventsPreconditions extends CommonPreconditions {
         checkDimensionsQuery(dimensionsQuery);
     }
 
+    public static void checkAggregate(final String namespace,
+                                      final String dimensionKey,
+                                      final long startTimestampMillis,
+                                      final long endTimestampMillis,
+                                      final long bucketMillis,
+                                      final Events.AggregationFunction function,
+                                      final Map<String, String> metadataQuery,
+                                      final Map<String, String> dimensionsQuery) {
+        checkDimension(namespace, dimensionKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        checkArgument(bucketMillis > 0, "bucket size must be positive");
+        checkArgument(function != null, "null aggregation function");
+    }
+
+    public static void checkDelete(final String namespace,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery) {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+    }
+
     public static void checkExpire(final String namespace, final long endTimestampMillis) {
         checkNamespace(namespace);
         checkArgument(endTimestampMillis >= 0, "invalid end timestamp");
@@ -123,11 +166,21 @@ public class EventsPreconditions extends CommonPreconditions {
         final Set<String> uniqueKeys = new HashSet<>();
         for (final Map.Entry<String, String> entry : dimensionsQuery.entrySet()) {
             checkArgument(entry.getValue() != null, "dimension '" + entry.getKey() + "' has null value");
+            checkArgument(!isNonFiniteQuery(entry.getValue()), "dimension query '" + entry.getKey() + "' is not a valid number");
             uniqueKeys.add(entry.getKey().toUpperCase());
         }
         checkArgument(uniqueKeys.size() == dimensionsQuery.size(), "dimension keys must be unique ignoring case");
     }
 
+    // queries that are not numbers at all are left to the storage implementation
+    private static boolean isNonFiniteQuery(final String query) {
+        try {
+            return !EventsUtils.DimensionPredicate.parse(query).isFinite();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     private static void checkStore(final long timestampMillis,
                                    final Map<String, String> metadata,
                                    final Map<String, Double> dimensions) {
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2020, Salesforce.com, Inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.cantor.common;
+
+import com.salesforce.cantor.EventBatch;
+import com.salesforce.cantor.Events;
+import com.salesforce.cantor.Events.Event;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+public class EventsUtils {
+
+    public static Comparator<Event> getTimestampComparator(final boolean ascending) {
+        final Comparator<Event> comparator = Comparator.comparingLong(Event::getTimestampMillis);
+        return ascending ? comparator : comparator.reversed();
+    }
+
+    public static void sortEventsByTimestamp(final List<Event> events, final boolean ascending) {
+        events.sort(getTimestampComparator(ascending));
+    }
+
+    // merges lists of events that are each already sorted by timestamp into a single sorted list;
+    // uses a heap over the head of each list and stops as soon as limit events are produced
+    public static List<Event> mergeSortedEvents(final Collection<? extends List<Event>> sortedEvents,
+                                                final boolean ascending,
+                                                final int limit) {
+        final Comparator<Event> comparator = getTimestampComparator(ascending);
+        final PriorityQueue<EventsCursor> heap = new PriorityQueue<>(
+                Math.max(1, sortedEvents.size()), (cursor1, cursor2) -> comparator.compare(cursor1.head, cursor2.head)
+        );
+        int total = 0;
+        for (final List<Event> events : sortedEvents) {
+            if (events == null || events.isEmpty()) {
+                continue;
+            }
+            total += events.size();
+            heap.add(new EventsCursor(events.iterator()));
+        }
+
+        final int size = limit > 0 ? Math.min(limit, total) : total;
+        final List<Event> results = new ArrayList<>(size);
+        while (results.size() < size) {
+            final EventsCursor cursor = heap.poll();
+            results.add(cursor.head);
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        return results;
+    }
+
+    // merges batches of events that are each already sorted by timestamp into a single sorted batch;
+    // same as mergeSortedEvents, but rows are copied column by column without creating event objects
+    public static EventBatch mergeSortedBatches(final Collection<EventBatch> sortedBatches,
+                                                final boolean ascending,
+                                                final int limit) {
+        final List<EventBatch> batches = new ArrayList<>();
+        int total = 0;
+        for (final EventBatch batch : sortedBatches) {
+            if (batch != null && batch.size() > 0) {
+                batches.add(batch);
+                total += batch.size();
+            }
+        }
+        if (batches.size() == 1 && (limit <= 0 || limit >= total)) {
+            return batches.get(0);
+        }
+
+        final PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, batches.size()), (cursor1, cursor2) -> {
+            final int compare = Long.compare(
+                    batches.get(cursor1[0]).getTimestampMillis(cursor1[1]),
+                    batches.get(cursor2[0]).getTimestampMillis(cursor2[1])
+            );
+            return ascending ? compare : -compare;
+        });
+        for (int i = 0; i < batches.size(); ++i) {
+            heap.add(new int[] {i, 0});
+        }
+
+        final int size = limit > 0 ? Math.min(limit, total) : total;
+        final EventBatch.Builder builder = EventBatch.newBuilder();
+        for (int added = 0; added < size; ++added) {
+            // each cursor is the index of a batch and of its next row
+            final int[] cursor = heap.poll();
+            final EventBatch batch = batches.get(cursor[0]);
+            builder.add(batch, cursor[1]);
+            if (++cursor[1] < batch.size()) {
+                heap.add(cursor);
+            }
+        }
+        return builder.build();
+    }
+
+    // partial aggregates of dimension values in a time bucket; partials computed on different chunks can be merged
+    public static class AggregateBucket {
+        private long count = 0;
+        private double sum = 0;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        public void add(final double value) {
+            merge(1, value, value, value);
+        }
+
+        public void merge(final long count, final double sum, final double min, final double max) {
+            if (count == 0) {
+                return;
+            }
+            this.count += count;
+            this.sum += sum;
+            this.min = Math.min(this.min, min);
+            this.max = Math.max(this.max, max);
+        }
+
+        public double get(final Events.AggregationFunction function) {
+            return function.apply(this.count, this.sum, this.min, this.max);
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public double getSum() {
+            return this.sum;
+        }
+
+        public double getMin() {
+            return this.min;
+        }
+
+        public double getMax() {
+            return this.max;
+        }
+    }
+
+    // merges per chunk buckets into the given map of bucket timestamp to partial aggregates
+    public static void mergeAggregateBuckets(final Map<Long, AggregateBucket> into, final Map<Long, AggregateBucket> buckets) {
+        for (final Map.Entry<Long, AggregateBucket> entry : buckets.entrySet()) {
+            final AggregateBucket bucket = entry.getValue();
+            into.computeIfAbsent(entry.getKey(), k -> new AggregateBucket())
+                    .merge(bucket.count, bucket.sum, bucket.min, bucket.max);
+        }
+    }
+
+    // applies the aggregation function to each bucket, returns results ordered by bucket timestamp
+    public static Map<Long, Double> toAggregateResults(final Map<Long, AggregateBucket> buckets,
+                                                       final Events.AggregationFunction function) {
+        final Map<Long, Double> results = new TreeMap<>();
+        for (final Map.Entry<Long, AggregateBucket> entry : buckets.entrySet()) {
+            results.put(entry.getKey(), entry.getValue().get(function));
+        }
+        return results;
+    }
+
+    // a compiled dimension query; the query can be one of these patterns:
+    // '' (just a number): equals - 'cpu' => '90'
+    // '=': equals - 'cpu' => '=90'
+    // '!=': not equals - 'cpu' => '!=90'
+    // '..': between, inclusive - 'cpu' => '90..100'
+    // '>': greater than - 'cpu' => '>90'
+    // '>=': greater than or equals - 'cpu' => '>=90'
+    // '<': less than - 'cpu' => '<90'
+    // '<=': less than or equals - 'cpu' => '<=90'
+    public static class DimensionPredicate {
+        private final String operator;
+        private final double value;
+        // upper bound of between predicates
+        private final double toValue;
+
+        private DimensionPredicate(final String operator, final double value, final double toValue) {
+            this.operator = operator;
+            this.value = value;
+            this.toValue = toValue;
+        }
+
+        public static DimensionPredicate parse(final String query) {
+            if (query.contains("..")) {
+                return new DimensionPredicate("BETWEEN",
+                        Double.parseDouble(query.substring(0, query.indexOf(".."))),
+                        Double.parseDouble(query.substring(query.indexOf("..") + 2))
+                );
+            }
+            for (final String operator : new String[] {">=", "<=", "!=", ">", "<", "="}) {
+                if (query.startsWith(operator)) {
+                    final double value = Double.parseDouble(query.substring(operator.length()));
+                    return new DimensionPredicate(operator, value, value);
+                }
+            }
+            final double value = Double.parseDouble(query);
+            return new DimensionPredicate("=", value, value);
+        }
+
+        // returns the sql condition on the given column; values are added to parameters to bind, or are
+        // inlined in the sql if parameters is null
+        public String toSql(final String column, final List<Object> parameters) {
+            if ("BETWEEN".equals(this.operator)) {
+                return String.format(" %s BETWEEN %s AND %s ", column, bind(this.value, parameters), bind(this.toValue, parameters));
+            }
+            return String.format(" %s %s %s ", column, this.operator, bind(this.value, parameters));
+        }
+
+        // NaN and infinity cannot be written as sql literals or bound to every engine
+        boolean isFinite() {
+            return Double.isFinite(this.value) && Double.isFinite(this.toValue);
+        }
+
+        // returns false if no value between min and max, inclusive, can match the predicate
+        public boolean mayMatch(final double min, final double max) {
+            if (Double.isNaN(min) || Double.isNaN(max)) {
+                return true;
+            }
+            switch (this.operator) {
+                case "BETWEEN": return max >= this.value && min <= this.toValue;
+                case ">=": return max >= this.value;
+                case "<=": return min <= this.value;
+                case "!=": return min != this.value || max != this.value;
+                case ">": return max > this.value;
+                case "<": return min < this.value;
+                default: return min <= this.value && max >= this.value;
+            }
+        }
+
+        private static String bind(final double value, final List<Object> parameters) {
+            if (parameters == null) {
+                return BigDecimal.valueOf(value).toPlainString();
+            }
+            parameters.add(value);
+            return "?";
+        }
+    }
+
+    private static class EventsCursor {
+        private final Iterator<Event> iterator;
+        private Event head;
+
+        EventsCursor(final Iterator<Event> iterator) {
+            this.iterator = iterator;
+            this.head = iterator.next();
+        }
+
+        boolean advance() {
+            if (!this.iterator.hasNext()) {
+                return false;
+            }
+            this.head = this.iterator.next();
+            return true;
+        }
+    }
+}
@@ -7,6 +7,8 @@
 
 package com.salesforce.cantor.common;
 
+import com.salesforce.cantor.Sets;
+
 import java.util.Collection;
 import java.util.Map;
 
@@ -26,6 +28,23 @@ public class SetsPreconditions extends CommonPreconditions {
         checkArgument(count >= 0 || (count == -1 && start == 0), "invalid count");
     }
 
+    public static void checkPage(final String namespace,
+                                 final String set,
+                                 final long min,
+                                 final long max,
+                                 final int count,
+                                 final boolean ascendingIgnored,
+                                 final String continuationToken) {
+        checkNamespace(namespace);
+        checkString(set);
+        checkArgument(min <= max, "invalid min/max");
+        checkArgument(count > 0, "invalid count");
+        if (continuationToken != null) {
+            // throws if the token is malformed
+            SetsUtils.decodeContinuationToken(continuationToken);
+        }
+    }
+
     public static void checkUnion(final String namespace,
                                   final Collection<String> sets,
                                   final long min,
@@ -54,6 +73,46 @@ public class SetsPreconditions extends CommonPreconditions {
         checkArgument(count >= 0 || (count == -1 && start == 0), "invalid count");
     }
 
+    public static void checkUnion(final String namespace,
+                                  final Collection<String> sets,
+                                  final long min,
+                                  final long max,
+                                  final int start,
+                                  final int count,
+                                  final boolean ascending,
+                                  final Sets.WeightAggregation aggregation) {
+        checkUnion(namespace, sets, min, max, start, count, ascending);
+        checkArgument(aggregation != null, "null aggregation");
+    }
+
+    public static void checkIntersect(final String namespace,
+                                      final Collection<String> sets,
+                                      final long min,
+                                      final long max,
+                                      final int start,
+                                      final int count,
+                                      final boolean ascending,
+                                      final Sets.WeightAggregation aggregation) {
+        checkIntersect(namespace, sets, min, max, start, count, ascending);
+        checkArgument(aggregation != null, "null aggregation");
+    }
+
+    public static void checkDifference(final String namespace,
+                                       final String set,
+                                       final Collection<String> sets,
+                                       final long min,
+                                       final long max,
+                                       final int start,
+                                       final int count,
+                                       final boolean ascendingIgnored) {
+        checkNamespace(namespace);
+        checkString(set);
+        checkArgument(sets != null, "null sets");
+        checkArgument(min <= max, "invalid min/max");
+        checkArgument(start >= 0, "invalid start");
+        checkArgument(count >= 0 || (count == -1 && start == 0), "invalid count");
+    }
+
     public static void checkPop(final String namespace,
                                 final String set,
                                 final long min,
@@ -141,9 +200,21 @@ public class SetsPreconditions extends CommonPreconditions {
         checkString(entry);
     }
 
+    public static void checkWeights(final String namespace, final String set, final Collection<String> entries) {
+        checkNamespace(namespace);
+        checkString(set);
+        checkArgument(entries != null, "null entries");
+    }
+
     public static void checkInc(final String namespace, final String set, final String entry, final long countIgnored) {
         checkNamespace(namespace);
         checkString(set);
         checkString(entry);
     }
+
+    public static void checkInc(final String namespace, final String set, final Map<String, Long> entries) {
+        checkNamespace(namespace);
+        checkString(set);
+        checkArgument(entries != null, "null entries");
+    }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2020, Salesforce.com, Inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.cantor.common;
+
+import com.salesforce.cantor.Sets.WeightAggregation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class SetsUtils {
+
+    // a stream of the entries of a set and their weights, in entry order
+    public interface EntryCursor {
+        // moves to the next entry; returns false if there are no more entries
+        boolean next() throws IOException;
+
+        String getEntry();
+
+        long getWeight();
+    }
+
+    // returns a cursor over the given entries and weights, sorted by entry
+    public static EntryCursor cursorOf(final Map<String, Long> entries) {
+        final List<Map.Entry<String, Long>> sorted = new ArrayList<>(entries.entrySet());
+        sorted.sort(Map.Entry.comparingByKey());
+        final Iterator<Map.Entry<String, Long>> iterator = sorted.iterator();
+        return new EntryCursor() {
+            private Map.Entry<String, Long> current;
+
+            @Override
+            public boolean next() {
+                this.current = iterator.hasNext() ? iterator.next() : null;
+                return this.current != null;
+            }
+
+            @Override
+            public String getEntry() {
+                return this.current.getKey();
+            }
+
+            @Override
+            public long getWeight() {
+                return this.current.getValue();
+            }
+        };
+    }
+
+    // returns an opaque token for the position of an entry with the given weight, to resume paging after it
+    public static String encodeContinuationToken(final long weight, final String entry) {
+        final byte[] entryBytes = entry.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + entryBytes.length);
+        buffer.putLong(weight).put(entryBytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    // returns the entry and weight the token was encoded for; throws illegal argument exception if token is invalid
+    public static Map.Entry<String, Long> decodeContinuationToken(final String token) {
+        final byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid continuation token", e);
+        }
+        if (bytes.length <= Long.BYTES) {
+            throw new IllegalArgumentException("invalid continuation token");
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final long weight = buffer.getLong();
+        final String entry = new String(bytes, Long.BYTES, bytes.length - Long.BYTES, StandardCharsets.UTF_8);
+        return new AbstractMap.SimpleImmutableEntry<>(entry, weight);
+    }
+
+    // merges cursors in entry order and returns entries found in any of them, with their weights aggregated
+    public static Map<String, Long> union(final List<EntryCursor> cursors,
+                                          final WeightAggregation aggregation,
+                                          final int start,
+                                          final int count,
+                                          final boolean ascending) throws IOException {
+        return merge(cursors, 1, false, aggregation, start, count, ascending);
+    }
+
+    // merges cursors in entry order and returns entries found in all of them, with their weights aggregated
+    public static Map<String, Long> intersect(final List<EntryCursor> cursors,
+                                              final WeightAggregation aggregation,
+                                              final int start,
+                                              final int count,
+                                              final boolean ascending) throws IOException {
+        return merge(cursors, cursors.size(), false, aggregation, start, count, ascending);
+    }
+
+    // merges cursors in entry order and returns entries of the first cursor found in none of the others, with
+    // their weights in the first cursor
+    public static Map<String, Long> difference(final EntryCursor cursor,
+                                               final List<EntryCursor> excluded,
+                                               final int start,
+                                               final int count,
+                                               final boolean ascending) throws IOException {
+        final List<EntryCursor> cursors = new ArrayList<>(excluded.size() + 1);
+        cursors.add(cursor);
+        cursors.addAll(excluded);
+        return merge(cursors, 1, true, WeightAggregation.MAX, start, count, ascending);
+    }
+
+    // k-way merge of the cursors in entry order; an entry is kept if it is found in at least minMatches cursors, or
+    // for difference, if it is found in the first cursor and in none of the others; results are ordered by weight,
+    // then entry, and paged
+    private static Map<String, Long> merge(final List<EntryCursor> cursors,
+                                           final int minMatches,
+                                           final boolean difference,
+                                           final WeightAggregation aggregation,
+                                           final int start,
+                                           final int count,
+                                           final boolean ascending) throws IOException {
+        // each heap element is the index of a cursor, ordered by the cursor's current entry
+        final PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, cursors.size()),
+                (index1, index2) -> {
+                    final int compare = cursors.get(index1).getEntry().compareTo(cursors.get(index2).getEntry());
+                    return compare != 0 ? compare : Integer.compare(index1, index2);
+                }
+        );
+        for (int i = 0; i < cursors.size(); ++i) {
+            if (cursors.get(i).next()) {
+                heap.add(i);
+            }
+        }
+
+        final TopEntries top = new TopEntries(getWeightComparator(ascending), count >= 0 ? (long) start + count : -1);
+        final List<Integer> matching = new ArrayList<>(cursors.size());
+        while (!heap.isEmpty()) {
+            // take all cursors positioned on the smallest entry
+            final String entry = cursors.get(heap.peek()).getEntry();
+            matching.clear();
+            while (!heap.isEmpty() && cursors.get(heap.peek()).getEntry().equals(entry)) {
+                matching.add(heap.poll());
+            }
+
+            // cursors are taken in index order, so for difference the first cursor is first if it has the entry
+            final boolean keep = difference
+                    ? matching.size() == 1 && matching.get(0) == 0
+                    : matching.size() >= minMatches;
+            if (keep) {
+                long weight = cursors.get(matching.get(0)).getWeight();
+                for (int i = 1; i < matching.size(); ++i) {
+                    weight = aggregation.apply(weight, cursors.get(matching.get(i)).getWeight());
+                }
+                top.add(new AbstractMap.SimpleImmutableEntry<>(entry, weight));
+            }
+
+            for (final int index : matching) {
+                if (cursors.get(index).next()) {
+                    heap.add(index);
+                }
+            }
+        }
+
+        final List<Map.Entry<String, Long>> sorted = top.sorted();
+        final Map<String, Long> results = new LinkedHashMap<>();
+        final int end = count >= 0 ? (int) Math.min(sorted.size(), (long) start + count) : sorted.size();
+        for (int i = start; i < end; ++i) {
+            results.put(sorted.get(i).getKey(), sorted.get(i).getValue());
+        }
+        return results;
+    }
+
+    private static Comparator<Map.Entry<String, Long>> getWeightComparator(final boolean ascending) {
+        final Comparator<Map.Entry<String, Long>> comparator = Comparator.<Map.Entry<String, Long>>comparingLong(Map.Entry::getValue)
+                .thenComparing(Map.Entry::getKey);
+        return ascending ? comparator : comparator.reversed();
+    }
+
+    // keeps the first limit entries in the given order, or all entries if limit is negative; uses a bounded heap
+    // with the last kept entry on top, so memory is bounded by the page and not by the size of the sets
+    private static class TopEntries {
+        private final Comparator<Map.Entry<String, Long>> comparator;
+        private final long limit;
+        private final PriorityQueue<Map.Entry<String, Long>> heap;
+
+        TopEntries(final Comparator<Map.Entry<String, Long>> comparator, final long limit) {
+            this.comparator = comparator;
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(comparator.reversed());
+        }
+
+        void add(final Map.Entry<String, Long> entry) {
+            if (this.limit == 0) {
+                return;
+            }
+            if (this.limit < 0 || this.heap.size() < this.limit) {
+                this.heap.add(entry);
+            } else if (this.comparator.compare(entry, this.heap.peek()) < 0) {
+                this.heap.poll();
+                this.heap.add(entry);
+            }
+        }
+
+        List<Map.Entry<String, Long>> sorted() {
+            final List<Map.Entry<String, Long>> sorted = new ArrayList<>(this.heap);
+            sorted.sort(this.comparator);
+            return sorted;
+        }
+    }
+}
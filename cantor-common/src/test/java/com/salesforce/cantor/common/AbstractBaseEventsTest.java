@@ -7,6 +7,7 @@
 
 package com.salesforce.cantor.common;
 
+import com.salesforce.cantor.EventBatch;
 import com.salesforce.cantor.Events;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -15,6 +16,7 @@ import org.testng.annotations.Test;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import static org.testng.Assert.*;
 
@@ -224,6 +226,14 @@ public abstract class AbstractBaseEventsTest extends AbstractBaseCantorTest {
             assertTrue(e.getDimensions().get(dimension) > start);
             assertTrue(e.getDimensions().get(dimension) < end);
         }
+        int expectedBetween = 0;
+        for (final Events.Event e : storedEvents) {
+            final Double value = e.getDimensions().get(dimension);
+            if (e.getTimestampMillis() >= startTimestamp && value != null && value >= start && value <= end) {
+                ++expectedBetween;
+            }
+        }
+        assertEquals(resultsBetween.size(), expectedBetween);
 
         // check dimension query greater than a value
         final Map<String, String> dimensionGreaterQuery = new HashMap<>();
@@ -403,6 +413,315 @@ public abstract class AbstractBaseEventsTest extends AbstractBaseCantorTest {
         }
     }
 
+    @Test
+    public void testScan() throws Exception {
+        final Events events = getEvents();
+        final long startTimestampMillis = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(3);
+        final List<Events.Event> storedEvents = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            // spread events over three days and two different sets of metadata keys
+            final long timestamp = startTimestampMillis + i * TimeUnit.MINUTES.toMillis(7);
+            final Map<String, String> metadata = new HashMap<>();
+            metadata.put("parity", i % 2 == 0 ? "even" : "odd");
+            if (i % 2 == 0) {
+                metadata.put("even-only", String.valueOf(i));
+            }
+            storedEvents.add(new Events.Event(timestamp, metadata, getRandomDimensions(2), getRandomPayload(16)));
+        }
+        events.store(this.namespace, storedEvents);
+        final long endTimestampMillis = startTimestampMillis + 500 * TimeUnit.MINUTES.toMillis(7);
+
+        try (final Events.EventCursor cursor = events.scan(this.namespace, startTimestampMillis, endTimestampMillis,
+                null, null, true, true)) {
+            int index = 0;
+            while (cursor.hasNext()) {
+                final Events.Event event = cursor.next();
+                assertEquals(event.getTimestampMillis(), storedEvents.get(index).getTimestampMillis());
+                assertEquals(event.getMetadata(), storedEvents.get(index).getMetadata());
+                assertEquals(event.getPayload(), storedEvents.get(index).getPayload());
+                ++index;
+            }
+            assertEquals(index, storedEvents.size());
+        }
+
+        try (final Events.EventCursor cursor = events.scan(this.namespace, startTimestampMillis, endTimestampMillis,
+                Collections.singletonMap("parity", "odd"), null, false, false)) {
+            long previous = Long.MAX_VALUE;
+            int count = 0;
+            while (cursor.hasNext()) {
+                final Events.Event event = cursor.next();
+                assertTrue(event.getTimestampMillis() <= previous);
+                assertEquals(event.getMetadata().get("parity"), "odd");
+                assertTrue(event.getPayload() == null || event.getPayload().length == 0);
+                previous = event.getTimestampMillis();
+                ++count;
+            }
+            assertEquals(count, storedEvents.size() / 2);
+        }
+
+        // closing a cursor early releases it without consuming the rest of the events
+        final Events.EventCursor cursor = events.scan(this.namespace, startTimestampMillis, endTimestampMillis);
+        assertTrue(cursor.hasNext());
+        assertEquals(cursor.next().getTimestampMillis(), startTimestampMillis);
+        cursor.close();
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void testScanWiderThanSevenDays() throws Exception {
+        final Events events = getEvents();
+        final long startTimestampMillis = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30);
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Events.Event> storedEvents = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            // half of the events in the first two days, the rest more than a week later, three weeks in
+            final long timestamp = startTimestampMillis + (i < 20 ? 0 : TimeUnit.DAYS.toMillis(21))
+                    + (i % 20) * TimeUnit.HOURS.toMillis(2);
+            timestamps.add(timestamp);
+            storedEvents.add(new Events.Event(timestamp, null, null));
+        }
+        events.store(this.namespace, storedEvents);
+        final long endTimestampMillis = startTimestampMillis + TimeUnit.DAYS.toMillis(30);
+
+        for (final boolean ascending : Arrays.asList(true, false)) {
+            final List<Long> scanned = new ArrayList<>();
+            try (final Events.EventCursor cursor = events.scan(this.namespace, startTimestampMillis, endTimestampMillis,
+                    null, null, false, ascending)) {
+                while (cursor.hasNext()) {
+                    scanned.add(cursor.next().getTimestampMillis());
+                }
+            }
+            final List<Long> expected = new ArrayList<>(timestamps);
+            if (!ascending) {
+                Collections.reverse(expected);
+            }
+            assertEquals(scanned, expected);
+        }
+    }
+
+    @Test
+    public void testGetProjection() throws Exception {
+        final Events events = getEvents();
+        final long startTimestampMillis = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+        final List<Events.Event> storedEvents = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            final Map<String, String> metadata = new HashMap<>();
+            metadata.put("host", "host-" + (i % 5));
+            metadata.put("region", "region-" + (i % 2));
+            final Map<String, Double> dimensions = new HashMap<>();
+            dimensions.put("index", (double) i);
+            dimensions.put("latency", i * 1.5);
+            storedEvents.add(new Events.Event(startTimestampMillis + i, metadata, dimensions, ("payload-" + i).getBytes()));
+        }
+        events.store(this.namespace, storedEvents);
+        final long endTimestampMillis = startTimestampMillis + 50;
+
+        final List<Events.Event> projected = events.get(this.namespace, startTimestampMillis, endTimestampMillis,
+                Collections.singletonMap("region", "region-1"), null, true, true, 0,
+                Collections.singleton("host"), Collections.singleton("latency"));
+        assertEquals(projected.size(), 25);
+        for (final Events.Event event : projected) {
+            final int i = (int) (event.getTimestampMillis() - startTimestampMillis);
+            assertEquals(event.getMetadata(), Collections.singletonMap("host", "host-" + (i % 5)));
+            assertEquals(event.getDimensions(), Collections.singletonMap("latency", i * 1.5));
+            assertEquals(event.getPayload(), ("payload-" + i).getBytes());
+        }
+
+        // null keeps all keys of that kind, an empty set drops them all
+        final List<Events.Event> metadataOnly = events.get(this.namespace, startTimestampMillis, endTimestampMillis,
+                null, null, false, true, 10, null, Collections.emptySet());
+        assertEquals(metadataOnly.size(), 10);
+        for (final Events.Event event : metadataOnly) {
+            assertEquals(event.getMetadata().keySet(), new HashSet<>(Arrays.asList("host", "region")));
+            assertTrue(event.getDimensions().isEmpty());
+        }
+
+        // unknown keys are ignored
+        final List<Events.Event> unknown = events.get(this.namespace, startTimestampMillis, endTimestampMillis,
+                null, null, false, true, 0, Collections.singleton("unknown"), Collections.singleton("unknown"));
+        assertEquals(unknown.size(), 50);
+        for (final Events.Event event : unknown) {
+            assertTrue(event.getMetadata().isEmpty());
+            assertTrue(event.getDimensions().isEmpty());
+        }
+    }
+
+    @Test
+    public void testGetBatch() throws Exception {
+        final Events events = getEvents();
+        final long startTimestampMillis = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+        final List<Events.Event> storedEvents = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            // events spread over two days, with two different sets of keys
+            final Map<String, String> metadata = new HashMap<>();
+            metadata.put("host", "host-" + (i % 4));
+            final Map<String, Double> dimensions = new HashMap<>();
+            dimensions.put("index", (double) i);
+            if (i % 2 == 0) {
+                metadata.put("even", "true");
+                dimensions.put("half", i / 2.0);
+            }
+            storedEvents.add(new Events.Event(startTimestampMillis + i * TimeUnit.MINUTES.toMillis(13), metadata, dimensions, ("payload-" + i).getBytes()));
+        }
+        events.store(this.namespace, storedEvents);
+        final long endTimestampMillis = startTimestampMillis + 200 * TimeUnit.MINUTES.toMillis(13);
+
+        for (final boolean ascending : new boolean[] {true, false}) {
+            final List<Events.Event> expected = events.get(this.namespace, startTimestampMillis, endTimestampMillis,
+                    null, null, true, ascending, 0);
+            final EventBatch batch = events.getBatch(this.namespace, startTimestampMillis, endTimestampMillis,
+                    null, null, true, ascending, 0);
+            assertEquals(batch.size(), 200);
+            assertEquals(batch.asList(), expected);
+            assertEquals(new HashSet<>(batch.getMetadataKeys()), new HashSet<>(Arrays.asList("host", "even")));
+            // metadata values are kept once per batch
+            assertEquals(batch.getMetadataDictionary(batch.getMetadataKeys().indexOf("host")).size(), 4);
+            final int half = batch.getDimensionKeys().indexOf("half");
+            for (int row = 0; row < batch.size(); ++row) {
+                assertEquals(batch.hasDimension(half, row), expected.get(row).getDimensions().containsKey("half"));
+            }
+        }
+
+        final EventBatch limited = events.getBatch(this.namespace, startTimestampMillis, endTimestampMillis,
+                Collections.singletonMap("even", "true"), Collections.singletonMap("index", ">=100"), false, true, 10);
+        assertEquals(limited.size(), 10);
+        for (int row = 0; row < limited.size(); ++row) {
+            assertEquals(limited.getTimestampMillis(row), startTimestampMillis + (100 + row * 2) * TimeUnit.MINUTES.toMillis(13));
+            assertNull(limited.getPayload(row));
+        }
+        assertEquals(events.getBatch(this.namespace, endTimestampMillis + 1, endTimestampMillis + 2,
+                null, null, false, true, 0).size(), 0);
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        final Events events = getEvents();
+        final long startTimestampMillis = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+        final List<Events.Event> storedEvents = new ArrayList<>();
+        final Map<String, Long> expected = new HashMap<>();
+        final Map<String, Long> expectedLarge = new HashMap<>();
+        for (int i = 0; i < 300; ++i) {
+            // spread events over two days, every tenth event has no host
+            final Map<String, String> metadata = new HashMap<>();
+            if (i % 10 != 0) {
+                final String host = "host-" + (i % 7);
+                metadata.put("host", host);
+                expected.merge(host, 1L, Long::sum);
+                if (i >= 150) {
+                    expectedLarge.merge(host, 1L, Long::sum);
+                }
+            }
+            final Map<String, Double> dimensions = Collections.singletonMap("index", (double) i);
+            storedEvents.add(new Events.Event(startTimestampMillis + i * TimeUnit.MINUTES.toMillis(9), metadata, dimensions));
+        }
+        events.store(this.namespace, storedEvents);
+        final long endTimestampMillis = startTimestampMillis + 300 * TimeUnit.MINUTES.toMillis(9);
+
+        assertEquals(events.count(this.namespace, "host", startTimestampMillis, endTimestampMillis, null, null), expected);
+        assertEquals(events.count(this.namespace, "host", startTimestampMillis, endTimestampMillis,
+                null, Collections.singletonMap("index", ">=150")), expectedLarge);
+        assertEquals(events.count(this.namespace, "host", startTimestampMillis, endTimestampMillis,
+                Collections.singletonMap("host", "host-3"), null),
+                Collections.singletonMap("host-3", expected.get("host-3")));
+        assertTrue(events.count(this.namespace, "unknown", startTimestampMillis, endTimestampMillis, null, null).isEmpty());
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        final Events events = getEvents();
+        final long bucketMillis = TimeUnit.MINUTES.toMillis(10);
+        final long startTimestampMillis = (System.currentTimeMillis() / bucketMillis - 30) * bucketMillis;
+        final List<Events.Event> storedEvents = new ArrayList<>();
+        for (int i = 0; i < 120; ++i) {
+            // one event per minute, twelve buckets of ten events each
+            final Map<String, String> metadata = Collections.singletonMap("parity", i % 2 == 0 ? "even" : "odd");
+            final Map<String, Double> dimensions = Collections.singletonMap("value", (double) i);
+            storedEvents.add(new Events.Event(startTimestampMillis + i * TimeUnit.MINUTES.toMillis(1), metadata, dimensions));
+        }
+        events.store(this.namespace, storedEvents);
+        final long endTimestampMillis = startTimestampMillis + 120 * TimeUnit.MINUTES.toMillis(1);
+
+        final Map<Events.AggregationFunction, Map<Long, Double>> results = new HashMap<>();
+        for (final Events.AggregationFunction function : Events.AggregationFunction.values()) {
+            results.put(function, events.aggregate(this.namespace, "value", startTimestampMillis, endTimestampMillis,
+                    bucketMillis, function, null, null));
+        }
+        for (int bucket = 0; bucket < 12; ++bucket) {
+            final long bucketStart = startTimestampMillis + bucket * bucketMillis;
+            final double first = bucket * 10;
+            final double last = first + 9;
+            assertEquals(results.get(Events.AggregationFunction.COUNT).get(bucketStart), 10.0);
+            assertEquals(results.get(Events.AggregationFunction.SUM).get(bucketStart), (first + last) * 5, 0.0001);
+            assertEquals(results.get(Events.AggregationFunction.AVG).get(bucketStart), (first + last) / 2, 0.0001);
+            assertEquals(results.get(Events.AggregationFunction.MIN).get(bucketStart), first);
+            assertEquals(results.get(Events.AggregationFunction.MAX).get(bucketStart), last);
+        }
+        for (final Map<Long, Double> result : results.values()) {
+            assertEquals(result.size(), 12);
+            // buckets are ordered by timestamp
+            assertEquals(result.keySet().iterator().next().longValue(), startTimestampMillis);
+        }
+
+        // metadata and dimension queries are applied before aggregating
+        final Map<Long, Double> oddCounts = events.aggregate(this.namespace, "value", startTimestampMillis, endTimestampMillis,
+                bucketMillis, Events.AggregationFunction.COUNT, Collections.singletonMap("parity", "odd"),
+                Collections.singletonMap("value", "<60"));
+        assertEquals(oddCounts.size(), 6);
+        for (final double count : oddCounts.values()) {
+            assertEquals(count, 5.0);
+        }
+
+        // no events for an unknown dimension
+        assertTrue(events.aggregate(this.namespace, "unknown", startTimestampMillis, endTimestampMillis,
+                bucketMillis, Events.AggregationFunction.SUM, null, null).isEmpty());
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        final Events events = getEvents();
+        final long dayMillis = TimeUnit.DAYS.toMillis(1);
+        final long startTimestampMillis = (System.currentTimeMillis() - 10 * dayMillis) / dayMillis * dayMillis;
+        final long endTimestampMillis = startTimestampMillis + 3 * dayMillis - 1;
+        final List<Events.Event> storedEvents = new ArrayList<>();
+        for (int i = 0; i < 3 * 96; ++i) {
+            // an event every 15 minutes over three days
+            final Map<String, String> metadata = Collections.singletonMap("host", "host-" + (i % 4));
+            final Map<String, Double> dimensions = Collections.singletonMap("index", (double) i);
+            storedEvents.add(new Events.Event(startTimestampMillis + i * TimeUnit.MINUTES.toMillis(15), metadata, dimensions));
+        }
+        events.store(this.namespace, storedEvents);
+
+        // delete one host over the whole range
+        assertEquals(events.delete(this.namespace, startTimestampMillis, endTimestampMillis,
+                Collections.singletonMap("host", "host-1"), null), 72);
+        List<Events.Event> remaining = events.get(this.namespace, startTimestampMillis, endTimestampMillis, null, null);
+        assertEquals(remaining.size(), 216);
+        for (final Events.Event event : remaining) {
+            assertNotEquals(event.getMetadata().get("host"), "host-1");
+        }
+
+        // delete everything in the second day
+        assertEquals(events.delete(this.namespace, startTimestampMillis + dayMillis,
+                startTimestampMillis + 2 * dayMillis - 1, null, null), 72);
+        remaining = events.get(this.namespace, startTimestampMillis, endTimestampMillis, null, null);
+        assertEquals(remaining.size(), 144);
+        for (final Events.Event event : remaining) {
+            assertTrue(event.getTimestampMillis() < startTimestampMillis + dayMillis
+                    || event.getTimestampMillis() >= startTimestampMillis + 2 * dayMillis);
+        }
+
+        // delete by dimension; indexes 1, 5 and 9 are already deleted
+        assertEquals(events.delete(this.namespace, startTimestampMillis, endTimestampMillis,
+                null, Collections.singletonMap("index", "<10")), 7);
+        assertEquals(events.get(this.namespace, startTimestampMillis, endTimestampMillis, null, null).size(), 137);
+
+        // nothing left to match
+        assertEquals(events.delete(this.namespace, startTimestampMillis, endTimestampMillis,
+                Collections.singletonMap("host", "host-1"), null), 0);
+        assertEquals(events.delete(this.namespace, startTimestampMillis + dayMillis,
+                startTimestampMillis + 2 * dayMillis - 1, null, null), 0);
+    }
+
     protected Map<String, Double> getRandomDimensions(final int count) {
         final Map<String, Double> dimensions = new HashMap<>();
         for (int i = 0; i < count; ++i) {
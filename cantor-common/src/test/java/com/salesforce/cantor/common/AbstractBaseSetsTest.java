@@ -14,6 +14,9 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -154,6 +157,56 @@ public abstract class AbstractBaseSetsTest extends AbstractBaseCantorTest {
         assertTrue(twenties.values().stream().allMatch(w -> w >= 20 && w <= 29), "all weights should be in the twenties");
     }
 
+    @Test
+    public void testPage() throws IOException {
+        final Sets sets = getSets();
+
+        final String setKey = UUID.randomUUID().toString();
+        final Map<String, Long> entries = new HashMap<>();
+        for (int i = 0; i < 500; ++i) {
+            // few distinct weights, so pages break in the middle of entries with the same weight
+            entries.put(UUID.randomUUID().toString(), (long) (i % 7) - 3);
+        }
+        sets.add(namespace, setKey, entries);
+
+        final Comparator<Map.Entry<String, Long>> comparator = Map.Entry.<String, Long>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey());
+        for (final boolean ascending : new boolean[] {true, false}) {
+            final List<Map.Entry<String, Long>> expected = entries.entrySet().stream()
+                    .filter(entry -> entry.getValue() >= -2 && entry.getValue() <= 2)
+                    .sorted(ascending ? comparator : comparator.reversed())
+                    .collect(Collectors.toList());
+            final List<Map.Entry<String, Long>> paged = new ArrayList<>();
+            String token = null;
+            int pages = 0;
+            do {
+                final Sets.Page page = sets.page(namespace, setKey, -2, 2, 9, ascending, token);
+                assertTrue(page.getEntries().size() <= 9);
+                paged.addAll(page.getEntries().entrySet());
+                token = page.getContinuationToken();
+                pages++;
+            } while (token != null);
+            assertEquals(paged.stream().map(Map.Entry::getKey).collect(Collectors.toList()),
+                    expected.stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+            assertEquals(pages, (expected.size() + 8) / 9);
+        }
+
+        // the token only marks a position, so entries added before it are not returned again
+        final Sets.Page first = sets.page(namespace, setKey, 10, null);
+        sets.add(namespace, setKey, "added-before", -100);
+        final Sets.Page second = sets.page(namespace, setKey, 10, first.getContinuationToken());
+        assertFalse(second.getEntries().containsKey("added-before"));
+        assertTrue(second.getEntries().keySet().stream().noneMatch(first.getEntries()::containsKey));
+
+        final Sets.Page empty = sets.page(namespace, UUID.randomUUID().toString(), 10, null);
+        assertTrue(empty.getEntries().isEmpty());
+        assertNull(empty.getContinuationToken());
+
+        assertThrows(IllegalArgumentException.class, () -> sets.page(namespace, setKey, 0, null));
+        assertThrows(IllegalArgumentException.class, () -> sets.page(namespace, setKey, 10, "not a token"));
+        assertThrows(IllegalArgumentException.class, () -> sets.page(namespace, setKey, 1, 0, 10, true, null));
+    }
+
     @Test
     public void testUnion() throws IOException {
         final Sets sets = getSets();
@@ -175,7 +228,7 @@ public abstract class AbstractBaseSetsTest extends AbstractBaseCantorTest {
         assertEquals(returnedEntries.size(), allEntries.size());
     }
 
-//    @Test
+    @Test
     public void testIntersect() throws IOException {
         final Sets sets = getSets();
 
@@ -184,11 +237,14 @@ public abstract class AbstractBaseSetsTest extends AbstractBaseCantorTest {
         int weight = 0;
         final String commonEntry = UUID.randomUUID().toString();
         allEntries.add(commonEntry);
-        for (int i = 0; i < ThreadLocalRandom.current().nextInt(1, 100); ++i) {
+        // at least two sets, since the intersection of a single set is the whole set
+        final int setCount = ThreadLocalRandom.current().nextInt(2, 100);
+        for (int i = 0; i < setCount; ++i) {
             final String setName = UUID.randomUUID().toString();
             setNames.add(setName);
             sets.add(namespace, setName, commonEntry);
-            for (int j = 0; j < ThreadLocalRandom.current().nextInt(2, 1000); ++j) {
+            final int entryCount = ThreadLocalRandom.current().nextInt(2, 1000);
+            for (int j = 0; j < entryCount; ++j) {
                 final String entry = UUID.randomUUID().toString();
                 allEntries.add(entry);
                 sets.add(namespace, setName, entry, weight);
@@ -202,6 +258,128 @@ public abstract class AbstractBaseSetsTest extends AbstractBaseCantorTest {
         assertEquals(returnedEntries.keySet().size(), 1);
     }
 
+    @Test
+    public void testSetAlgebraMixedCase() throws IOException {
+        final Sets sets = getSets();
+
+        // code point order puts upper case before lower case, unlike case insensitive collations
+        final String first = UUID.randomUUID().toString();
+        final String second = UUID.randomUUID().toString();
+        for (final String entry : Arrays.asList("a", "B", "c", "D")) {
+            sets.add(namespace, first, entry);
+        }
+        for (final String entry : Arrays.asList("B", "a", "e")) {
+            sets.add(namespace, second, entry);
+        }
+        final List<String> setNames = Arrays.asList(first, second);
+
+        assertEquals(sets.union(namespace, setNames).keySet(), new HashSet<>(Arrays.asList("a", "B", "c", "D", "e")));
+        assertEquals(sets.intersect(namespace, setNames).keySet(), new HashSet<>(Arrays.asList("a", "B")));
+        assertEquals(sets.difference(namespace, first, Collections.singletonList(second)).keySet(),
+                new HashSet<>(Arrays.asList("c", "D")));
+    }
+
+    @Test
+    public void testDifference() throws IOException {
+        final Sets sets = getSets();
+
+        final String setName = UUID.randomUUID().toString();
+        final List<String> excludedNames = new ArrayList<>();
+        final Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100; ++i) {
+            final String entry = UUID.randomUUID().toString();
+            sets.add(namespace, setName, entry, i);
+            if (i % 3 == 0) {
+                final String excludedName = UUID.randomUUID().toString();
+                excludedNames.add(excludedName);
+                sets.add(namespace, excludedName, entry, 1000 + i);
+            } else {
+                expected.put(entry, (long) i);
+            }
+        }
+        excludedNames.add(UUID.randomUUID().toString());
+
+        assertEquals(sets.difference(namespace, setName, excludedNames), expected);
+        assertEquals(sets.difference(namespace, setName, Collections.emptyList()).size(), 100);
+        assertTrue(sets.difference(namespace, setName, Collections.singletonList(setName)).isEmpty());
+
+        // entries of excluded sets outside the range are not excluded
+        assertEquals(sets.difference(namespace, setName, excludedNames, 0, 2000, 0, -1, true).size(), expected.size());
+        final Map<String, Long> outOfRange = sets.difference(namespace, setName, excludedNames, 0, 999, 0, -1, true);
+        assertEquals(outOfRange.size(), 100);
+
+        // results are ordered by weight and paged
+        final Map<String, Long> page = sets.difference(namespace, setName, excludedNames, 0, 999, 10, 5, false);
+        assertEquals(new ArrayList<>(page.values()), Arrays.asList(89L, 88L, 87L, 86L, 85L));
+
+        assertThrows(IllegalArgumentException.class, () -> sets.difference(namespace, setName, null));
+        assertThrows(IllegalArgumentException.class, () -> sets.difference(namespace, null, excludedNames));
+    }
+
+    @Test
+    public void testSetAlgebraLargeSets() throws IOException {
+        final Sets sets = getSets();
+
+        // sets larger than the batches entries are read from storage in
+        final String all = UUID.randomUUID().toString();
+        final String even = UUID.randomUUID().toString();
+        final Map<String, Long> allEntries = new HashMap<>();
+        final Map<String, Long> evenEntries = new HashMap<>();
+        for (int i = 0; i < 25_000; ++i) {
+            final String entry = String.format("entry-%05d", i);
+            allEntries.put(entry, (long) i);
+            if (i % 2 == 0) {
+                evenEntries.put(entry, (long) i);
+            }
+        }
+        sets.add(namespace, all, allEntries);
+        sets.add(namespace, even, evenEntries);
+
+        assertEquals(sets.union(namespace, Arrays.asList(all, even)).size(), 25_000);
+        assertEquals(sets.intersect(namespace, Arrays.asList(all, even)), evenEntries);
+        final Map<String, Long> odd = sets.difference(namespace, all, Collections.singletonList(even));
+        assertEquals(odd.size(), 12_500);
+        assertEquals(new ArrayList<>(sets.difference(namespace, all, Collections.singletonList(even), 0, 100, 0, 3, true).values()),
+                Arrays.asList(1L, 3L, 5L));
+    }
+
+    @Test
+    public void testWeightAggregation() throws IOException {
+        final Sets sets = getSets();
+
+        final String first = UUID.randomUUID().toString();
+        final String second = UUID.randomUUID().toString();
+        final List<String> setNames = Arrays.asList(first, second);
+        sets.add(namespace, first, "common", 3);
+        sets.add(namespace, second, "common", 5);
+        sets.add(namespace, first, "only-first", 1);
+        sets.add(namespace, second, "only-second", 10);
+
+        assertEquals(sets.union(namespace, setNames, Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, true, Sets.WeightAggregation.SUM).get("common"), Long.valueOf(8));
+        assertEquals(sets.union(namespace, setNames, Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, true, Sets.WeightAggregation.MIN).get("common"), Long.valueOf(3));
+        assertEquals(sets.union(namespace, setNames, Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, true, Sets.WeightAggregation.MAX).get("common"), Long.valueOf(5));
+        assertEquals(sets.union(namespace, setNames).get("common"), Long.valueOf(5));
+        assertEquals(sets.intersect(namespace, setNames, Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, true, Sets.WeightAggregation.SUM),
+                Collections.singletonMap("common", 8L));
+        assertEquals(sets.intersect(namespace, setNames, Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, true, Sets.WeightAggregation.MIN),
+                Collections.singletonMap("common", 3L));
+
+        // results are ordered by aggregated weight and paged
+        final Map<String, Long> union = sets.union(namespace, setNames, Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, false, Sets.WeightAggregation.SUM);
+        assertEquals(new ArrayList<>(union.keySet()), Arrays.asList("only-second", "common", "only-first"));
+        assertEquals(sets.union(namespace, setNames, Long.MIN_VALUE, Long.MAX_VALUE, 1, 1, false, Sets.WeightAggregation.SUM).keySet(),
+                Collections.singleton("common"));
+
+        // ranges filter the weights of each set before they are combined
+        final Map<String, Long> inRange = sets.union(namespace, setNames, 0, 4, 0, -1, true, Sets.WeightAggregation.SUM);
+        assertEquals(new ArrayList<>(inRange.keySet()), Arrays.asList("only-first", "common"));
+        assertEquals(inRange.get("common"), Long.valueOf(3));
+        assertTrue(sets.intersect(namespace, setNames, 0, 4, 0, -1, true, Sets.WeightAggregation.SUM).isEmpty());
+
+        assertThrows(IllegalArgumentException.class, () -> sets.union(namespace, setNames, 0, 1, 0, -1, true, null));
+        assertThrows(IllegalArgumentException.class, () -> sets.intersect(namespace, setNames, 0, 1, 0, -1, true, null));
+    }
+
     @Test
     public void testPop() throws IOException {
         final Sets sets = getSets();
@@ -496,6 +674,81 @@ public abstract class AbstractBaseSetsTest extends AbstractBaseCantorTest {
         assertEquals(unchangedWeight.longValue(), 0L, "control weight should still be 0");
     }
 
+    @Test
+    public void testIncBatch() throws Exception {
+        final Sets sets = getSets();
+
+        final String setKey = UUID.randomUUID().toString();
+        final String existingEntry = UUID.randomUUID().toString();
+        final String newEntry = UUID.randomUUID().toString();
+        final String controlEntry = UUID.randomUUID().toString();
+        sets.add(namespace, setKey, existingEntry, 10L);
+        sets.add(namespace, setKey, controlEntry, 0L);
+
+        assertTrue(sets.inc(namespace, setKey, Collections.emptyMap()).isEmpty());
+
+        final Map<String, Long> counts = new HashMap<>();
+        counts.put(existingEntry, -25L);
+        counts.put(newEntry, 7L);
+        final Map<String, Long> results = sets.inc(namespace, setKey, counts);
+        assertEquals(results.size(), 2);
+        assertEquals(results.get(existingEntry), Long.valueOf(-15L), "existing entry should be incremented");
+        assertEquals(results.get(newEntry), Long.valueOf(7L), "new entry should be added with the count");
+        assertEquals(sets.weight(namespace, setKey, existingEntry), Long.valueOf(-15L));
+        assertEquals(sets.weight(namespace, setKey, newEntry), Long.valueOf(7L));
+        assertEquals(sets.weight(namespace, setKey, controlEntry), Long.valueOf(0L), "control weight should still be 0");
+
+        // weights of a batch of entries leave out entries not in the set
+        final Map<String, Long> weights = sets.weights(namespace, setKey,
+                Arrays.asList(existingEntry, newEntry, UUID.randomUUID().toString()));
+        assertEquals(weights.size(), 2);
+        assertEquals(weights.get(existingEntry), Long.valueOf(-15L));
+        assertEquals(weights.get(newEntry), Long.valueOf(7L));
+
+        // concurrent increments on the same entries must not be lost
+        final int threads = 4;
+        final int incrementsPerThread = 25;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < incrementsPerThread; ++j) {
+                        if (j % 2 == 0) {
+                            sets.inc(namespace, setKey, existingEntry, 1L);
+                        } else {
+                            final Map<String, Long> batch = new HashMap<>();
+                            batch.put(existingEntry, 1L);
+                            batch.put(newEntry, 2L);
+                            sets.inc(namespace, setKey, batch);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(sets.weight(namespace, setKey, existingEntry), Long.valueOf(-15L + threads * incrementsPerThread));
+        assertEquals(sets.weight(namespace, setKey, newEntry), Long.valueOf(7L + threads * (incrementsPerThread / 2) * 2));
+
+        // weights are returned for the entries passed in, even where the storage does not tell them apart by case
+        final String mixedCaseSetKey = UUID.randomUUID().toString();
+        sets.add(namespace, mixedCaseSetKey, "mixed", 1L);
+        assertEquals(sets.inc(namespace, mixedCaseSetKey, "MIXED", 2L), (long) sets.weight(namespace, mixedCaseSetKey, "MIXED"));
+        final Map<String, Long> mixedCaseCounts = new HashMap<>();
+        mixedCaseCounts.put("mixed", 3L);
+        mixedCaseCounts.put("Mixed", 4L);
+        final Map<String, Long> mixedCaseResults = sets.inc(namespace, mixedCaseSetKey, mixedCaseCounts);
+        assertEquals(mixedCaseResults.keySet(), mixedCaseCounts.keySet());
+        for (final String entry : mixedCaseCounts.keySet()) {
+            assertEquals(mixedCaseResults.get(entry), sets.weight(namespace, mixedCaseSetKey, entry));
+        }
+    }
+
     private int getCount(final int min, final int max) {
         return (int) Math.floor(ThreadLocalRandom.current().nextInt(min, max) * getAddMagnitude());
     }
@@ -9,6 +9,7 @@ package com.salesforce.cantor.common;
 
 import org.testng.annotations.Test;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -50,6 +51,11 @@ public class EventsPreconditionsTest {
         duplicateKeys.put("FOO", UUID.randomUUID().toString());
         assertThrows(IllegalArgumentException.class, () -> checkMetadata(duplicateKeys));
         assertThrows(IllegalArgumentException.class, () -> checkDimensionsQuery(duplicateKeys));
+
+        for (final String query : new String[] {"NaN", "<Infinity", ">=-Infinity", "0..Infinity", "NaN..1"}) {
+            assertThrows(IllegalArgumentException.class, () -> checkDimensionsQuery(Collections.singletonMap("foo", query)));
+        }
+        checkDimensionsQuery(Collections.singletonMap("foo", "-1e3..1e3"));
     }
 
     @Test
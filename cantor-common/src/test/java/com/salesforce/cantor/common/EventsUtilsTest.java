@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020, Salesforce.com, Inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.cantor.common;
+
+import com.salesforce.cantor.EventBatch;
+import com.salesforce.cantor.Events.Event;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.salesforce.cantor.common.EventsUtils.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class EventsUtilsTest {
+
+    @Test
+    public void testMergeSortedEvents() {
+        final List<List<Event>> chunks = new ArrayList<>();
+        final List<Event> all = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            final List<Event> chunk = new ArrayList<>();
+            final int size = ThreadLocalRandom.current().nextInt(0, 100);
+            for (int j = 0; j < size; ++j) {
+                chunk.add(new Event(ThreadLocalRandom.current().nextLong(0, 1_000_000), null, null));
+            }
+            all.addAll(chunk);
+            chunks.add(chunk);
+        }
+
+        for (final boolean ascending : new boolean[] {true, false}) {
+            for (final List<Event> chunk : chunks) {
+                sortEventsByTimestamp(chunk, ascending);
+            }
+            sortEventsByTimestamp(all, ascending);
+
+            final List<Event> merged = mergeSortedEvents(chunks, ascending, 0);
+            assertEquals(merged.size(), all.size());
+            for (int i = 0; i < all.size(); ++i) {
+                assertEquals(merged.get(i).getTimestampMillis(), all.get(i).getTimestampMillis());
+            }
+
+            final List<Event> limited = mergeSortedEvents(chunks, ascending, 17);
+            assertEquals(limited.size(), Math.min(17, all.size()));
+            for (int i = 0; i < limited.size(); ++i) {
+                assertEquals(limited.get(i).getTimestampMillis(), all.get(i).getTimestampMillis());
+            }
+        }
+    }
+
+    @Test
+    public void testMergeSortedBatches() {
+        final List<EventBatch> batches = new ArrayList<>();
+        final List<Event> all = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            final List<Event> chunk = new ArrayList<>();
+            final int size = ThreadLocalRandom.current().nextInt(0, 100);
+            for (int j = 0; j < size; ++j) {
+                // each chunk has its own keys, and every other event misses some of them
+                final Map<String, String> metadata = new HashMap<>();
+                final Map<String, Double> dimensions = new HashMap<>();
+                metadata.put("chunk", String.valueOf(i));
+                dimensions.put("index", (double) j);
+                if (j % 2 == 0) {
+                    metadata.put("key-" + i, "value-" + j % 5);
+                    dimensions.put("dimension-" + i, (double) i);
+                }
+                chunk.add(new Event(ThreadLocalRandom.current().nextLong(0, 1_000_000), metadata, dimensions));
+            }
+            sortEventsByTimestamp(chunk, true);
+            all.addAll(chunk);
+            batches.add(EventBatch.of(chunk));
+        }
+        sortEventsByTimestamp(all, true);
+
+        final EventBatch merged = mergeSortedBatches(batches, true, 0);
+        assertEquals(merged.size(), all.size());
+        for (int i = 0; i < all.size(); ++i) {
+            assertEquals(merged.getTimestampMillis(i), all.get(i).getTimestampMillis());
+            assertTrue(all.contains(merged.get(i)));
+        }
+
+        final EventBatch limited = mergeSortedBatches(batches, true, 17);
+        assertEquals(limited.size(), Math.min(17, all.size()));
+        assertEquals(mergeSortedBatches(Collections.emptyList(), false, 10).size(), 0);
+    }
+
+    @Test
+    public void testDimensionPredicates() {
+        final List<Object> parameters = new ArrayList<>();
+        assertEquals(DimensionPredicate.parse("1.5..10").toSql("c", parameters).trim(), "c BETWEEN ? AND ?");
+        assertEquals(parameters, Arrays.asList(1.5, 10.0));
+        assertEquals(DimensionPredicate.parse("-2..1e3").toSql("c", null).trim(), "c BETWEEN -2.0 AND 1000.0");
+        assertEquals(DimensionPredicate.parse(">=3").toSql("c", null).trim(), "c >= 3.0");
+        assertEquals(DimensionPredicate.parse("!=3").toSql("c", null).trim(), "c != 3.0");
+        assertEquals(DimensionPredicate.parse("3").toSql("c", null).trim(), "c = 3.0");
+
+        assertTrue(DimensionPredicate.parse("1..2").mayMatch(0, 1));
+        assertTrue(!DimensionPredicate.parse("1..2").mayMatch(2.5, 3));
+        assertTrue(!DimensionPredicate.parse(">5").mayMatch(0, 5));
+        assertTrue(DimensionPredicate.parse("!=5").mayMatch(5, 6));
+        assertTrue(!DimensionPredicate.parse("!=5").mayMatch(5, 5));
+        assertTrue(DimensionPredicate.parse("<5").mayMatch(Double.NaN, Double.NaN));
+    }
+
+    @Test
+    public void testMergeSortedEventsEmpty() {
+        assertTrue(mergeSortedEvents(Collections.emptyList(), true, 10).isEmpty());
+        assertTrue(mergeSortedEvents(Arrays.asList(Collections.emptyList(), Collections.emptyList()), false, 0).isEmpty());
+    }
+}
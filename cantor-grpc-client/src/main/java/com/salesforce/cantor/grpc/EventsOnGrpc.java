@@ -8,6 +8,7 @@
 package com.salesforce.cantor.grpc;
 
 import com.google.protobuf.ByteString;
+import com.salesforce.cantor.EventBatch;
 import com.salesforce.cantor.Events;
 import com.salesforce.cantor.grpc.events.*;
 import com.salesforce.cantor.grpc.events.EventsServiceGrpc.EventsServiceBlockingStub;
@@ -109,6 +110,60 @@ public class EventsOnGrpc extends AbstractBaseGrpcClient<EventsServiceBlockingSt
                            final boolean includePayloads,
                            final boolean ascending,
                            final int limit) throws IOException {
+        return get(namespace,
+                   startTimestampMillis,
+                   endTimestampMillis,
+                   metadataQuery,
+                   dimensionsQuery,
+                   includePayloads,
+                   ascending,
+                   limit,
+                   null,
+                   null);
+    }
+
+    @Override
+    public List<Event> get(final String namespace,
+                           final long startTimestampMillis,
+                           final long endTimestampMillis,
+                           final Map<String, String> metadataQuery,
+                           final Map<String, String> dimensionsQuery,
+                           final boolean includePayloads,
+                           final boolean ascending,
+                           final int limit,
+                           final Set<String> metadataKeys,
+                           final Set<String> dimensionKeys) throws IOException {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return call(() -> {
+            final GetRequest.Builder requestBuilder = GetRequest.newBuilder()
+                    .setNamespace(namespace)
+                    .setStartTimestampMillis(startTimestampMillis)
+                    .setEndTimestampMillis(endTimestampMillis)
+                    .putAllMetadataQuery(nullToEmpty(metadataQuery))
+                    .putAllDimensionsQuery(nullToEmpty(dimensionsQuery))
+                    .setIncludePayloads(includePayloads)
+                    .setAscending(ascending)
+                    .setLimit(limit);
+            if (metadataKeys != null) {
+                requestBuilder.setMetadataKeys(KeysProto.newBuilder().addAllKeys(metadataKeys));
+            }
+            if (dimensionKeys != null) {
+                requestBuilder.setDimensionKeys(KeysProto.newBuilder().addAllKeys(dimensionKeys));
+            }
+            final GetResponse response = getStub().get(requestBuilder.build());
+            return getEventsFromProtos(response.getResultsList());
+        });
+    }
+
+    @Override
+    public EventBatch getBatch(final String namespace,
+                               final long startTimestampMillis,
+                               final long endTimestampMillis,
+                               final Map<String, String> metadataQuery,
+                               final Map<String, String> dimensionsQuery,
+                               final boolean includePayloads,
+                               final boolean ascending,
+                               final int limit) throws IOException {
         checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
         return call(() -> {
             final GetRequest request = GetRequest.newBuilder()
@@ -121,8 +176,8 @@ public class EventsOnGrpc extends AbstractBaseGrpcClient<EventsServiceBlockingSt
                     .setAscending(ascending)
                     .setLimit(limit)
                     .build();
-            final GetResponse response = getStub().get(request);
-            return getEventsFromProtos(response.getResultsList());
+            final GetBatchResponse response = getStub().getBatch(request);
+            return getBatchFromProto(response.getBatch());
         });
     }
 
@@ -154,6 +209,34 @@ public class EventsOnGrpc extends AbstractBaseGrpcClient<EventsServiceBlockingSt
         });
     }
 
+    @Override
+    public Map<String, Long> count(final String namespace,
+                                   final String metadataKey,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery) throws IOException {
+        checkCount(namespace,
+            metadataKey,
+            startTimestampMillis,
+            endTimestampMillis,
+            metadataQuery,
+            dimensionsQuery
+        );
+        return call(() -> {
+            final CountRequest request = CountRequest.newBuilder()
+                    .setNamespace(namespace)
+                    .setMetadataKey(metadataKey)
+                    .setStartTimestampMillis(startTimestampMillis)
+                    .setEndTimestampMillis(endTimestampMillis)
+                    .putAllMetadataQuery(nullToEmpty(metadataQuery))
+                    .putAllDimensionsQuery(nullToEmpty(dimensionsQuery))
+                    .build();
+            final CountResponse countResponse = getStub().count(request);
+            return new HashMap<>(countResponse.getResultsMap());
+        });
+    }
+
     @Override
     public List<Event> dimension(final String namespace,
                                  final String dimensionKey,
@@ -182,6 +265,66 @@ public class EventsOnGrpc extends AbstractBaseGrpcClient<EventsServiceBlockingSt
         });
     }
 
+    @Override
+    public Map<Long, Double> aggregate(final String namespace,
+                                       final String dimensionKey,
+                                       final long startTimestampMillis,
+                                       final long endTimestampMillis,
+                                       final long bucketMillis,
+                                       final AggregationFunction function,
+                                       final Map<String, String> metadataQuery,
+                                       final Map<String, String> dimensionsQuery) throws IOException {
+        checkAggregate(namespace,
+            dimensionKey,
+            startTimestampMillis,
+            endTimestampMillis,
+            bucketMillis,
+            function,
+            metadataQuery,
+            dimensionsQuery
+        );
+        return call(() -> {
+            final AggregateRequest request = AggregateRequest.newBuilder()
+                    .setNamespace(namespace)
+                    .setDimensionKey(dimensionKey)
+                    .setStartTimestampMillis(startTimestampMillis)
+                    .setEndTimestampMillis(endTimestampMillis)
+                    .setBucketMillis(bucketMillis)
+                    .setFunction(function.name())
+                    .putAllMetadataQuery(nullToEmpty(metadataQuery))
+                    .putAllDimensionsQuery(nullToEmpty(dimensionsQuery))
+                    .build();
+            final AggregateResponse aggregateResponse = getStub().aggregate(request);
+            // protobuf maps are not ordered
+            return new TreeMap<>(aggregateResponse.getResultsMap());
+        });
+    }
+
+    @Override
+    public int delete(final String namespace,
+                      final long startTimestampMillis,
+                      final long endTimestampMillis,
+                      final Map<String, String> metadataQuery,
+                      final Map<String, String> dimensionsQuery) throws IOException {
+        checkDelete(namespace,
+            startTimestampMillis,
+            endTimestampMillis,
+            metadataQuery,
+            dimensionsQuery
+        );
+        return call(() -> {
+            final DeleteRequest request = DeleteRequest.newBuilder()
+                    .setNamespace(namespace)
+                    .setStartTimestampMillis(startTimestampMillis)
+                    .setEndTimestampMillis(endTimestampMillis)
+                    .putAllMetadataQuery(nullToEmpty(metadataQuery))
+                    .putAllDimensionsQuery(nullToEmpty(dimensionsQuery))
+                    .build();
+            final DeleteResponse deleteResponse = getStub().delete(request);
+            return deleteResponse.getResults();
+        });
+    }
+
     @Override
     public void expire(final String namespace, final long endTimestampMillis) throws IOException {
         checkExpire(namespace, endTimestampMillis);
@@ -210,5 +353,39 @@ public class EventsOnGrpc extends AbstractBaseGrpcClient<EventsServiceBlockingSt
         }
         return events;
     }
-}
 
+    private EventBatch getBatchFromProto(final EventBatchProto proto) {
+        final EventBatch.Builder builder = EventBatch.newBuilder();
+        final int[] metadataColumns = new int[proto.getMetadataCount()];
+        for (int column = 0; column < metadataColumns.length; ++column) {
+            metadataColumns[column] = builder.getMetadataColumn(proto.getMetadata(column).getKey());
+        }
+        final int[] dimensionColumns = new int[proto.getDimensionsCount()];
+        for (int column = 0; column < dimensionColumns.length; ++column) {
+            dimensionColumns[column] = builder.getDimensionColumn(proto.getDimensions(column).getKey());
+        }
+        final boolean hasPayloads = proto.getPayloadsCount() > 0;
+        for (int row = 0; row < proto.getTimestampsMillisCount(); ++row) {
+            builder.addRow(proto.getTimestampsMillis(row), hasPayloads ? proto.getPayloads(row).toByteArray() : null);
+        }
+        for (int column = 0; column < metadataColumns.length; ++column) {
+            final MetadataColumnProto columnProto = proto.getMetadata(column);
+            for (int row = 0; row < columnProto.getCodesCount(); ++row) {
+                final int code = columnProto.getCodes(row);
+                if (code >= 0) {
+                    builder.setMetadata(metadataColumns[column], row, columnProto.getDictionary(code));
+                }
+            }
+        }
+        for (int column = 0; column < dimensionColumns.length; ++column) {
+            final DimensionColumnProto columnProto = proto.getDimensions(column);
+            final Set<Integer> absentRows = new HashSet<>(columnProto.getAbsentRowsList());
+            for (int row = 0; row < columnProto.getValuesCount(); ++row) {
+                if (!absentRows.contains(row)) {
+                    builder.setDimension(dimensionColumns[column], row, columnProto.getValues(row));
+                }
+            }
+        }
+        return builder.build();
+    }
+}
@@ -70,6 +70,34 @@ public class SetsOnGrpc extends AbstractBaseGrpcClient<SetsServiceBlockingStub>
         });
     }
 
+    @Override
+    public Page page(final String namespace,
+                     final String set,
+                     final long min,
+                     final long max,
+                     final int count,
+                     final boolean ascending,
+                     final String continuationToken) throws IOException {
+        checkPage(namespace, set, min, max, count, ascending, continuationToken);
+        return call(() -> {
+            final PageRequest.Builder requestBuilder = PageRequest.newBuilder()
+                    .setNamespace(namespace)
+                    .setSet(set)
+                    .setMin(min)
+                    .setMax(max)
+                    .setCount(count)
+                    .setAscending(ascending);
+            if (continuationToken != null) {
+                requestBuilder.setContinuationToken(continuationToken);
+            }
+            final PageResponse response = getStub().page(requestBuilder.build());
+            // an empty token marks the last page
+            return new Page(response.getEntriesMap(),
+                    response.getContinuationToken().isEmpty() ? null : response.getContinuationToken()
+            );
+        });
+    }
+
     @Override
     public Map<String, Long> union(final String namespace,
                                    final Collection<String> sets,
@@ -77,8 +105,9 @@ public class SetsOnGrpc extends AbstractBaseGrpcClient<SetsServiceBlockingStub>
                                    final long max,
                                    final int start,
                                    final int count,
-                                   final boolean ascending) throws IOException {
-        checkUnion(namespace, sets, min, max, start, count, ascending);
+                                   final boolean ascending,
+                                   final WeightAggregation aggregation) throws IOException {
+        checkUnion(namespace, sets, min, max, start, count, ascending, aggregation);
         return call(() -> {
             final UnionRequest request = UnionRequest.newBuilder()
                     .setNamespace(namespace)
@@ -88,6 +117,7 @@ public class SetsOnGrpc extends AbstractBaseGrpcClient<SetsServiceBlockingStub>
                     .setStart(start)
                     .setCount(count)
                     .setAscending(ascending)
+                    .setAggregation(toProto(aggregation))
                     .build();
             return getStub().union(request).getEntriesMap();
         });
@@ -100,8 +130,9 @@ public class SetsOnGrpc extends AbstractBaseGrpcClient<SetsServiceBlockingStub>
                                        final long max,
                                        final int start,
                                        final int count,
-                                       final boolean ascending) throws IOException {
-        checkIntersect(namespace, sets, min, max, start, count, ascending);
+                                       final boolean ascending,
+                                       final WeightAggregation aggregation) throws IOException {
+        checkIntersect(namespace, sets, min, max, start, count, ascending, aggregation);
         return call(() -> {
             final IntersectRequest request = IntersectRequest.newBuilder()
                     .setNamespace(namespace)
@@ -111,11 +142,37 @@ public class SetsOnGrpc extends AbstractBaseGrpcClient<SetsServiceBlockingStub>
                     .setStart(start)
                     .setCount(count)
                     .setAscending(ascending)
+                    .setAggregation(toProto(aggregation))
                     .build();
             return getStub().intersect(request).getEntriesMap();
         });
     }
 
+    @Override
+    public Map<String, Long> difference(final String namespace,
+                                        final String set,
+                                        final Collection<String> sets,
+                                        final long min,
+                                        final long max,
+                                        final int start,
+                                        final int count,
+                                        final boolean ascending) throws IOException {
+        checkDifference(namespace, set, sets, min, max, start, count, ascending);
+        return call(() -> {
+            final DifferenceRequest request = DifferenceRequest.newBuilder()
+                    .setNamespace(namespace)
+                    .setSet(set)
+                    .addAllSets(sets)
+                    .setMin(min)
+                    .setMax(max)
+                    .setStart(start)
+                    .setCount(count)
+                    .setAscending(ascending)
+                    .build();
+            return getStub().difference(request).getEntriesMap();
+        });
+    }
+
     @Override
     public Map<String, Long> pop(final String namespace,
                                  final String set,
@@ -278,5 +335,22 @@ public class SetsOnGrpc extends AbstractBaseGrpcClient<SetsServiceBlockingStub>
             return response.getResult();
         });
     }
-}
 
+    @Override
+    public Map<String, Long> inc(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        checkInc(namespace, set, entries);
+        return call(() -> {
+            final IncBatchRequest request = IncBatchRequest.newBuilder()
+                    .setNamespace(namespace)
+                    .setSet(set)
+                    .putAllEntries(entries)
+                    .build();
+            final IncBatchResponse response = getStub().incBatch(request);
+            return response.getResultsMap();
+        });
+    }
+
+    private static com.salesforce.cantor.grpc.sets.WeightAggregation toProto(final WeightAggregation aggregation) {
+        return com.salesforce.cantor.grpc.sets.WeightAggregation.valueOf(aggregation.name());
+    }
+}
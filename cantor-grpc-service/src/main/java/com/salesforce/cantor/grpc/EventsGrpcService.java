@@ -9,6 +9,7 @@ package com.salesforce.cantor.grpc;
 
 import com.google.protobuf.ByteString;
 import com.salesforce.cantor.Cantor;
+import com.salesforce.cantor.EventBatch;
 import com.salesforce.cantor.Events;
 import com.salesforce.cantor.grpc.events.*;
 import io.grpc.Context;
@@ -73,7 +74,9 @@ public class EventsGrpcService extends EventsServiceGrpc.EventsServiceImplBase {
                     request.getDimensionsQueryMap(),
                     request.getIncludePayloads(),
                     request.getAscending(),
-                    request.getLimit());
+                    request.getLimit(),
+                    request.hasMetadataKeys() ? new HashSet<>(request.getMetadataKeys().getKeysList()) : null,
+                    request.hasDimensionKeys() ? new HashSet<>(request.getDimensionKeys().getKeysList()) : null);
             if (!results.isEmpty()) {
                 responseBuilder.addAllResults(getProtosFromEvents(results));
             }
@@ -83,6 +86,28 @@ public class EventsGrpcService extends EventsServiceGrpc.EventsServiceImplBase {
         }
     }
 
+    @Override
+    public void getBatch(final GetRequest request, final StreamObserver<GetBatchResponse> responseObserver) {
+        if (Context.current().isCancelled()) {
+            sendCancelledError(responseObserver, Context.current().cancellationCause());
+            return;
+        }
+        try {
+            final EventBatch batch = getEvents().getBatch(
+                    request.getNamespace(),
+                    request.getStartTimestampMillis(),
+                    request.getEndTimestampMillis(),
+                    request.getMetadataQueryMap(),
+                    request.getDimensionsQueryMap(),
+                    request.getIncludePayloads(),
+                    request.getAscending(),
+                    request.getLimit());
+            sendResponse(responseObserver, GetBatchResponse.newBuilder().setBatch(getProtoFromBatch(batch)).build());
+        } catch (IOException e) {
+            sendError(responseObserver, e);
+        }
+    }
+
     @Override
     public void store(final StoreRequest request, final StreamObserver<VoidResponse> responseObserver) {
         if (Context.current().isCancelled()) {
@@ -135,6 +160,28 @@ public class EventsGrpcService extends EventsServiceGrpc.EventsServiceImplBase {
         }
     }
 
+    @Override
+    public void count(final CountRequest request, final StreamObserver<CountResponse> responseObserver) {
+        if (Context.current().isCancelled()) {
+            sendCancelledError(responseObserver, Context.current().cancellationCause());
+            return;
+        }
+        try {
+            final Map<String, Long> results = getEvents().count(
+                    request.getNamespace(),
+                    request.getMetadataKey(),
+                    request.getStartTimestampMillis(),
+                    request.getEndTimestampMillis(),
+                    request.getMetadataQueryMap(),
+                    request.getDimensionsQueryMap()
+            );
+            final CountResponse response = CountResponse.newBuilder().putAllResults(results).build();
+            sendResponse(responseObserver, response);
+        } catch (IOException e) {
+            sendError(responseObserver, e);
+        }
+    }
+
     @Override
     public void dimension(final DimensionRequest request, final StreamObserver<DimensionResponse> responseObserver) {
         if (Context.current().isCancelled()) {
@@ -157,6 +204,51 @@ public class EventsGrpcService extends EventsServiceGrpc.EventsServiceImplBase {
         }
     }
 
+    @Override
+    public void aggregate(final AggregateRequest request, final StreamObserver<AggregateResponse> responseObserver) {
+        if (Context.current().isCancelled()) {
+            sendCancelledError(responseObserver, Context.current().cancellationCause());
+            return;
+        }
+        try {
+            final Map<Long, Double> results = getEvents().aggregate(
+                    request.getNamespace(),
+                    request.getDimensionKey(),
+                    request.getStartTimestampMillis(),
+                    request.getEndTimestampMillis(),
+                    request.getBucketMillis(),
+                    Events.AggregationFunction.valueOf(request.getFunction()),
+                    request.getMetadataQueryMap(),
+                    request.getDimensionsQueryMap()
+            );
+            final AggregateResponse response = AggregateResponse.newBuilder().putAllResults(results).build();
+            sendResponse(responseObserver, response);
+        } catch (IOException e) {
+            sendError(responseObserver, e);
+        }
+    }
+
+    @Override
+    public void delete(final DeleteRequest request, final StreamObserver<DeleteResponse> responseObserver) {
+        if (Context.current().isCancelled()) {
+            sendCancelledError(responseObserver, Context.current().cancellationCause());
+            return;
+        }
+        try {
+            final int results = getEvents().delete(
+                    request.getNamespace(),
+                    request.getStartTimestampMillis(),
+                    request.getEndTimestampMillis(),
+                    request.getMetadataQueryMap(),
+                    request.getDimensionsQueryMap()
+            );
+            final DeleteResponse response = DeleteResponse.newBuilder().setResults(results).build();
+            sendResponse(responseObserver, response);
+        } catch (IOException e) {
+            sendError(responseObserver, e);
+        }
+    }
+
     @Override
     public void expire(final ExpireRequest request, final StreamObserver<VoidResponse> responseObserver) {
         if (Context.current().isCancelled()) {
@@ -203,6 +295,41 @@ public class EventsGrpcService extends EventsServiceGrpc.EventsServiceImplBase {
         }
         return eventProtos;
     }
-}
-
 
+    private EventBatchProto getProtoFromBatch(final EventBatch batch) {
+        final EventBatchProto.Builder builder = EventBatchProto.newBuilder();
+        boolean hasPayloads = false;
+        for (int row = 0; row < batch.size(); ++row) {
+            builder.addTimestampsMillis(batch.getTimestampMillis(row));
+            hasPayloads |= batch.getPayload(row) != null;
+        }
+        for (int column = 0; column < batch.getMetadataKeys().size(); ++column) {
+            final MetadataColumnProto.Builder columnBuilder = MetadataColumnProto.newBuilder()
+                    .setKey(batch.getMetadataKeys().get(column))
+                    .addAllDictionary(batch.getMetadataDictionary(column));
+            for (int row = 0; row < batch.size(); ++row) {
+                columnBuilder.addCodes(batch.getMetadataCode(column, row));
+            }
+            builder.addMetadata(columnBuilder);
+        }
+        for (int column = 0; column < batch.getDimensionKeys().size(); ++column) {
+            final DimensionColumnProto.Builder columnBuilder = DimensionColumnProto.newBuilder()
+                    .setKey(batch.getDimensionKeys().get(column));
+            for (int row = 0; row < batch.size(); ++row) {
+                if (batch.hasDimension(column, row)) {
+                    columnBuilder.addValues(batch.getDimension(column, row));
+                } else {
+                    columnBuilder.addValues(0).addAbsentRows(row);
+                }
+            }
+            builder.addDimensions(columnBuilder);
+        }
+        if (hasPayloads) {
+            for (int row = 0; row < batch.size(); ++row) {
+                final byte[] payload = batch.getPayload(row);
+                builder.addPayloads(payload != null ? ByteString.copyFrom(payload) : ByteString.EMPTY);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -83,6 +83,33 @@ public class SetsGrpcService extends SetsServiceGrpc.SetsServiceImplBase {
         }
     }
 
+    @Override
+    public void page(final PageRequest request, final StreamObserver<PageResponse> responseObserver) {
+        if (Context.current().isCancelled()) {
+            sendCancelledError(responseObserver, Context.current().cancellationCause());
+            return;
+        }
+        try {
+            final Sets.Page page = getSets().page(
+                    request.getNamespace(),
+                    request.getSet(),
+                    request.getMin(),
+                    request.getMax(),
+                    request.getCount(),
+                    request.getAscending(),
+                    request.getContinuationToken().isEmpty() ? null : request.getContinuationToken()
+            );
+            final PageResponse.Builder responseBuilder = PageResponse.newBuilder()
+                    .putAllEntries(page.getEntries());
+            if (page.getContinuationToken() != null) {
+                responseBuilder.setContinuationToken(page.getContinuationToken());
+            }
+            sendResponse(responseObserver, responseBuilder.build());
+        } catch (IOException e) {
+            sendError(responseObserver, e);
+        }
+    }
+
     @Override
     public void union(final UnionRequest request, final StreamObserver<UnionResponse> responseObserver) {
         if (Context.current().isCancelled()) {
@@ -98,7 +125,8 @@ public class SetsGrpcService extends SetsServiceGrpc.SetsServiceImplBase {
                     request.getMax(),
                     request.getStart(),
                     request.getCount(),
-                    request.getAscending()
+                    request.getAscending(),
+                    Sets.WeightAggregation.valueOf(request.getAggregation().name())
             );
             if (!results.isEmpty()) {
                 responseBuilder.putAllEntries(results);
@@ -124,6 +152,34 @@ public class SetsGrpcService extends SetsServiceGrpc.SetsServiceImplBase {
                     request.getMax(),
                     request.getStart(),
                     request.getCount(),
+                    request.getAscending(),
+                    Sets.WeightAggregation.valueOf(request.getAggregation().name())
+            );
+            if (!results.isEmpty()) {
+                responseBuilder.putAllEntries(results);
+            }
+            sendResponse(responseObserver, responseBuilder.build());
+        } catch (IOException e) {
+            sendError(responseObserver, e);
+        }
+    }
+
+    @Override
+    public void difference(final DifferenceRequest request, final StreamObserver<DifferenceResponse> responseObserver) {
+        if (Context.current().isCancelled()) {
+            sendCancelledError(responseObserver, Context.current().cancellationCause());
+            return;
+        }
+        try {
+            final DifferenceResponse.Builder responseBuilder = DifferenceResponse.newBuilder();
+            final Map<String, Long> results = getSets().difference(
+                    request.getNamespace(),
+                    request.getSet(),
+                    request.getSetsList(),
+                    request.getMin(),
+                    request.getMax(),
+                    request.getStart(),
+                    request.getCount(),
                     request.getAscending()
             );
             if (!results.isEmpty()) {
@@ -327,6 +383,20 @@ public class SetsGrpcService extends SetsServiceGrpc.SetsServiceImplBase {
         }
     }
 
+    @Override
+    public void incBatch(final IncBatchRequest request, final StreamObserver<IncBatchResponse> responseObserver) {
+        if (Context.current().isCancelled()) {
+            sendCancelledError(responseObserver, Context.current().cancellationCause());
+            return;
+        }
+        try {
+            final Map<String, Long> results = getSets().inc(request.getNamespace(), request.getSet(), request.getEntriesMap());
+            sendResponse(responseObserver, IncBatchResponse.newBuilder().putAllResults(results).build());
+        } catch (IOException e) {
+            sendError(responseObserver, e);
+        }
+    }
+
     private Sets getSets() {
         return this.cantor.sets();
     }
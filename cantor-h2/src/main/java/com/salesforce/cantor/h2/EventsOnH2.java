@@ -12,11 +12,15 @@ import com.salesforce.cantor.jdbc.AbstractBaseEventsOnJdbc;
 
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.BinaryOperator;
 
 import static com.salesforce.cantor.jdbc.JdbcUtils.quote;
 
 public class EventsOnH2 extends AbstractBaseEventsOnJdbc implements Events {
+    private static final String regexMetaCharacters = ".^$?+()[]{}|\\";
 
     public EventsOnH2(final String path) throws IOException {
         this(H2DataSourceProvider.getDatasource(new H2DataSourceProperties().setPath(path)));
@@ -26,6 +30,12 @@ public class EventsOnH2 extends AbstractBaseEventsOnJdbc implements Events {
         super(dataSource);
     }
 
+    public EventsOnH2(final DataSource dataSource,
+                      final int maxChunkQueryThreads,
+                      final int maxChunkQueriesPerNamespace) throws IOException {
+        super(dataSource, maxChunkQueryThreads, maxChunkQueriesPerNamespace);
+    }
+
     @Override
     protected String getCreateInternalDatabaseSql() {
         return H2Utils.getH2CreateDatabaseSql(getCantorInternalDatabaseName());
@@ -51,6 +61,7 @@ public class EventsOnH2 extends AbstractBaseEventsOnJdbc implements Events {
                         " %s VARCHAR(256)," +  // column name
                         " %s BIGINT," +  // chunk start timestamp
                         " PRIMARY KEY (ID), " +  // primary key is id
+                        " UNIQUE (%s, %s)," +  // one row per table name + column name
                         " INDEX (%s)," +  // index table name
                         " INDEX (%s)," +  // index key name
                         " INDEX (%s)," +  // index column name
@@ -60,6 +71,7 @@ public class EventsOnH2 extends AbstractBaseEventsOnJdbc implements Events {
                 quote(getKeyColumnName()),
                 quote(getColumnColumnName()),
                 quote(getStartTimestampMillisColumnName()),
+                quote(getTableNameColumnName()), quote(getColumnColumnName()),
                 quote(getTableNameColumnName()),
                 quote(getKeyColumnName()),
                 quote(getColumnColumnName()),
@@ -67,6 +79,27 @@ public class EventsOnH2 extends AbstractBaseEventsOnJdbc implements Events {
         );
     }
 
+    @Override
+    protected String getCreateRollupTableSql(final String rollupTableName,
+                                             final String namespace,
+                                             final Collection<String> metadataKeys) {
+        final StringBuilder sqlBuilder = new StringBuilder();
+        sqlBuilder.append("CREATE TABLE IF NOT EXISTS ")
+                .append(getTableFullName(namespace, rollupTableName)).append(" (")
+                .append(quote(getRollupBucketColumnName())).append(" BIGINT, ")
+                .append(quote(getRollupDimensionKeyColumnName())).append(" VARCHAR, ");
+        for (final String metadataKey : new TreeSet<>(metadataKeys)) {
+            sqlBuilder.append(quote(getMetadataKeyColumnName(metadataKey))).append(" VARCHAR, ");
+        }
+        sqlBuilder.append(quote(getRollupCountColumnName())).append(" BIGINT, ")
+                .append(quote(getRollupSumColumnName())).append(" DOUBLE, ")
+                .append(quote(getRollupMinColumnName())).append(" DOUBLE, ")
+                .append(quote(getRollupMaxColumnName())).append(" DOUBLE, ");
+        sqlBuilder.append("INDEX (").append(quote(getRollupBucketColumnName())).append("), ")
+                .append("INDEX (").append(quote(getRollupDimensionKeyColumnName())).append("))");
+        return sqlBuilder.toString();
+    }
+
     @Override
     protected String getCreateChunkTableSql(final String chunkTableName,
                                             final String namespace,
@@ -112,6 +145,17 @@ public class EventsOnH2 extends AbstractBaseEventsOnJdbc implements Events {
         return finalPattern;
     }
 
+    // characters other than '*' are passed on to the regex as they are, so regex meta characters are not literal
+    @Override
+    protected boolean isLiteralPattern(final String pattern) {
+        for (int i = 0; i < pattern.length(); ++i) {
+            if (regexMetaCharacters.indexOf(pattern.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     protected String getRegexQuery(final String column) {
         return String.format(" REGEXP_LIKE (%s, ?) ", column);
@@ -121,5 +165,28 @@ public class EventsOnH2 extends AbstractBaseEventsOnJdbc implements Events {
     protected String getNotRegexQuery(final String column) {
         return String.format(" NOT REGEXP_LIKE (%s, ?) ", column);
     }
-}
 
+    @Override
+    protected String getBitwiseOrSql(final String left, final String right) {
+        return String.format("BITOR(%s, CAST(%s AS BIGINT))", left, right);
+    }
+
+    @Override
+    protected String getUpsertZoneMapStatSql(final String namespace, final BinaryOperator<String> merge) {
+        final String valueColumn = quote(getStartTimestampMillisColumnName());
+        return String.format("MERGE INTO %s AS t " +
+                        "USING (VALUES (CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS BIGINT))) AS v(n, c, s) " +
+                        "ON t.%s = v.n AND t.%s = v.c " +
+                        "WHEN MATCHED THEN UPDATE SET %s = %s " +
+                        "WHEN NOT MATCHED THEN INSERT (%s, %s, %s) VALUES (v.n, v.c, v.s)",
+                getTableFullName(namespace, getChunksLookupTableName()),
+                quote(getTableNameColumnName()),
+                quote(getColumnColumnName()),
+                valueColumn,
+                merge.apply("t." + valueColumn, "v.s"),
+                quote(getTableNameColumnName()),
+                quote(getColumnColumnName()),
+                valueColumn
+        );
+    }
+}
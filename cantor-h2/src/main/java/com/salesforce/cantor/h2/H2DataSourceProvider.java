@@ -43,7 +43,9 @@ public class H2DataSourceProvider {
                         "AUTOCOMMIT=TRUE;" +
                         "AUTO_SERVER=" + String.valueOf(datasourceProperties.isAutoServer()).toUpperCase() + ";" +
                         "LOCK_MODE=1;" +
-                        "MAX_COMPACT_TIME=3000;",
+                        "MAX_COMPACT_TIME=3000;" +
+                        // parsed statements are cached per connection, for the sql reused across calls
+                        "QUERY_CACHE_SIZE=64;",
                 (datasourceProperties.isInMemory() ? "mem" : "split"),
                 dbPath.toAbsolutePath().toString());
         logger.info("jdbc url for datasource is: {}", jdbcUrl);
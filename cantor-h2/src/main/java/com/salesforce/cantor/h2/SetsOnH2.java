@@ -12,6 +12,7 @@ import com.salesforce.cantor.jdbc.AbstractBaseSetsOnJdbc;
 
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.sql.Connection;
 
 import static com.salesforce.cantor.jdbc.JdbcUtils.quote;
 
@@ -48,8 +49,40 @@ public class SetsOnH2 extends AbstractBaseSetsOnJdbc implements Sets {
                 " " + quote(getWeightColumnName()) + " BIGINT, " +
                 "  PRIMARY KEY (" + quote(getSetKeyColumnName()) + ", " + quote(getEntryColumnName()) + "), " +
                 "  INDEX (" + quote(getSetKeyColumnName()) + "), " +
-                "  INDEX (" + quote(getWeightColumnName()) + ") ) "
+                "  INDEX (" + quote(getWeightColumnName()) + "), " +
+                "  INDEX " + quote(getPageIndexName()) + getPageIndexColumns() + " ) "
                 ;
     }
-}
 
+    @Override
+    protected void createPageIndexIfNotExists(final Connection connection, final String namespace) throws IOException {
+        executeUpdate(connection, "CREATE INDEX IF NOT EXISTS " + getTableFullName(namespace, getPageIndexName()) +
+                " ON " + getTableFullName(namespace, getSetsTableName()) + getPageIndexColumns()
+        );
+    }
+
+    private String getPageIndexColumns() {
+        return " (" + quote(getSetKeyColumnName()) + ", " + quote(getWeightColumnName()) + ", " + quote(getEntryColumnName()) + ")";
+    }
+
+    @Override
+    protected String getIncReturningWeightSql(final String namespace) {
+        // merge the increment and read the weight back from the updated row, all in one statement
+        return getSql(namespace, "incReturning", () -> String.format(
+                "SELECT %s FROM FINAL TABLE (MERGE INTO %s AS t " +
+                "USING (VALUES (CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS BIGINT))) AS v(k, e, w) " +
+                "ON t.%s = v.k AND t.%s = v.e " +
+                "WHEN MATCHED THEN UPDATE SET %s = t.%s + v.w " +
+                "WHEN NOT MATCHED THEN INSERT (%s, %s, %s) VALUES (v.k, v.e, v.w))",
+                quote(getWeightColumnName()),
+                getTableFullName(namespace, getSetsTableName()),
+                quote(getSetKeyColumnName()),
+                quote(getEntryColumnName()),
+                quote(getWeightColumnName()),
+                quote(getWeightColumnName()),
+                quote(getSetKeyColumnName()),
+                quote(getEntryColumnName()),
+                quote(getWeightColumnName())
+        ));
+    }
+}
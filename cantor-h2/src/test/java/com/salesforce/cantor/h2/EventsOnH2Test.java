@@ -8,14 +8,644 @@
 package com.salesforce.cantor.h2;
 
 import com.salesforce.cantor.Cantor;
+import com.salesforce.cantor.Events;
 import com.salesforce.cantor.common.AbstractBaseEventsTest;
+import org.testng.annotations.Test;
 
+import javax.sql.DataSource;
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
 
 public class EventsOnH2Test extends AbstractBaseEventsTest {
     @Override
     public Cantor getCantor() throws IOException {
         return H2Tests.getCantor();
     }
-}
 
+    @Test
+    public void testHourlyChunkWindow() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        events.create(namespace, TimeUnit.HOURS.toMillis(1));
+        try {
+            // creating again with a different window size keeps the original one
+            events.create(namespace, TimeUnit.DAYS.toMillis(7));
+            ((EventsOnH2) getCantor().events()).create(namespace, TimeUnit.DAYS.toMillis(7));
+
+            final long hour = TimeUnit.HOURS.toMillis(1);
+            final long start = (System.currentTimeMillis() / hour - 10) * hour;
+            for (int i = 0; i < 10; ++i) {
+                events.store(namespace, start + i * hour, Collections.singletonMap("host", "h" + i), null);
+            }
+            assertEquals(events.get(namespace, start, start + 10 * hour).size(), 10);
+            assertEquals(events.get(namespace, start + 3 * hour, start + 4 * hour - 1).size(), 1);
+
+            // expire drops whole hourly chunks
+            events.expire(namespace, start + 5 * hour);
+            assertTrue(events.get(namespace, start, start + hour - 1).isEmpty());
+            assertEquals(events.get(namespace, start + 9 * hour, start + 10 * hour).size(), 1);
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testMultiRowInsert() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        events.create(namespace);
+        try {
+            final long start = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+            final List<Events.Event> batch = new ArrayList<>();
+            for (int i = 0; i < 2500; ++i) {
+                batch.add(new Events.Event(start + i, Collections.singletonMap("host", "h" + i % 3), Collections.singletonMap("index", (double) i)));
+            }
+            final long statementsBefore = events.getInsertStatementCount();
+            final long rowsBefore = events.getInsertedRowCount();
+            events.store(namespace, batch);
+            // rows of the same chunk table are inserted a thousand at a time
+            assertTrue(events.getInsertStatementCount() - statementsBefore >= 3);
+            assertTrue(events.getInsertedRowCount() - rowsBefore >= 2500);
+
+            final List<Events.Event> results = events.get(namespace, start, start + 2500);
+            assertEquals(results.size(), 2500);
+            for (int i = 0; i < results.size(); ++i) {
+                assertEquals(results.get(i).getTimestampMillis(), start + i);
+                assertEquals(results.get(i).getDimensions().get("index"), (double) i);
+                assertEquals(results.get(i).getMetadata().get("host"), "h" + i % 3);
+            }
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testChunkTableCreation() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        final long hour = TimeUnit.HOURS.toMillis(1);
+        events.create(namespace, hour);
+        try {
+            final long now = System.currentTimeMillis();
+            final Map<String, String> metadata = Collections.singletonMap("host", "h");
+            final Map<String, Double> dimensions = Collections.singletonMap("value", 1.0);
+
+            // concurrent writers to a new chunk table create it only once
+            final long createdBefore = events.getChunkTablesCreatedCount();
+            final ExecutorService executor = Executors.newFixedThreadPool(8);
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                final long timestamp = now - i;
+                futures.add(executor.submit(() -> {
+                    events.store(namespace, timestamp, metadata, dimensions);
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            assertEquals(events.getChunkTablesCreatedCount() - createdBefore, 1);
+            assertEquals(events.get(namespace, now - hour, now).size(), 8);
+
+            // chunk tables of the next window are created ahead of time, so storing into it creates nothing
+            events.preCreateNextChunkTables(namespace);
+            final long createdAfterPreCreation = events.getChunkTablesCreatedCount();
+            events.store(namespace, now + hour, metadata, dimensions);
+            assertEquals(events.getChunkTablesCreatedCount(), createdAfterPreCreation);
+            assertEquals(events.get(namespace, now + hour, now + hour).size(), 1);
+
+            // chunk tables expired by another instance are created again by a store with a stale catalog
+            final EventsOnH2 other = (EventsOnH2) getCantor().events();
+            other.expire(namespace, now + 3 * hour);
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            while (other.getPendingChunkTableDropsCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            events.store(namespace, now, metadata, dimensions);
+            assertEquals(events.get(namespace, now - hour, now + 2 * hour).size(), 1);
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testDecodedEvents() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        events.create(namespace);
+        try {
+            final long start = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+            final List<Events.Event> batch = new ArrayList<>();
+            for (int i = 0; i < 100; ++i) {
+                final Map<String, String> metadata = new HashMap<>();
+                metadata.put("host", "h" + i % 3);
+                metadata.put("zone", "z" + i % 2);
+                final Map<String, Double> dimensions = new HashMap<>();
+                dimensions.put("index", (double) i);
+                dimensions.put("latency", i / 2.0);
+                batch.add(new Events.Event(start + i, metadata, dimensions, ("p" + i).getBytes()));
+            }
+            events.store(namespace, batch);
+
+            // decoded events are equal to the stored ones, from both get and scan
+            final List<Events.Event> results = events.get(namespace, start, start + 100, true);
+            assertEquals(results, batch);
+            final List<Events.Event> scanned = new ArrayList<>();
+            try (final Events.EventCursor cursor = events.scan(namespace, start, start + 100, null, null, true, true)) {
+                cursor.forEachRemaining(scanned::add);
+            }
+            assertEquals(scanned, batch);
+            for (int i = 0; i < results.size(); ++i) {
+                final Events.Event event = results.get(i);
+                assertEquals(event.getMetadata().hashCode(), batch.get(i).getMetadata().hashCode());
+                assertEquals(event.getDimensions().get("latency"), i / 2.0);
+                assertTrue(event.getMetadata().containsKey("zone"));
+                assertNull(event.getMetadata().get("unknown"));
+            }
+            // decoded maps are read only
+            assertThrows(UnsupportedOperationException.class, () -> results.get(0).getMetadata().put("host", "other"));
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testScanPages() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        events.create(namespace);
+        try {
+            // two chunk tables in the same window, with more events at a single timestamp than fit in a page and
+            // runs of equal timestamps across page boundaries
+            final long start = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+            final List<Events.Event> batch = new ArrayList<>();
+            for (int i = 0; i < 1500; ++i) {
+                batch.add(new Events.Event(start, Collections.singletonMap("host", "h" + i), null));
+            }
+            for (int i = 0; i < 2500; ++i) {
+                final Map<String, String> metadata = i % 2 == 0
+                        ? Collections.singletonMap("host", "h" + i)
+                        : Collections.singletonMap("zone", "z" + i);
+                batch.add(new Events.Event(start + 1 + i / 7, metadata, null));
+            }
+            events.store(namespace, batch);
+
+            for (final boolean ascending : Arrays.asList(true, false)) {
+                final List<Long> timestamps = new ArrayList<>();
+                try (final Events.EventCursor cursor = events.scan(namespace, start, start + 1000, null, null, false, ascending)) {
+                    cursor.forEachRemaining(event -> timestamps.add(event.getTimestampMillis()));
+                }
+                final List<Long> expected = new ArrayList<>();
+                batch.forEach(event -> expected.add(event.getTimestampMillis()));
+                expected.sort(ascending ? Long::compare : Collections.reverseOrder());
+                assertEquals(timestamps, expected);
+            }
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testRollups() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        final long hour = TimeUnit.HOURS.toMillis(1);
+        final long minute = TimeUnit.MINUTES.toMillis(1);
+        events.create(namespace, hour);
+        try {
+            // recent enough for all buckets to be within the compaction lookback
+            final long start = (System.currentTimeMillis() / hour - 1) * hour;
+            final long end = start + 3 * hour - 1;
+            final List<Events.Event> all = new ArrayList<>();
+            final List<Events.Event> batch = new ArrayList<>();
+            for (int i = 0; i < 1000; ++i) {
+                batch.add(new Events.Event(start + i * 7000L, Collections.singletonMap("host", "h" + i % 2), Collections.singletonMap("value", (double) i)));
+            }
+            events.store(namespace, batch);
+            all.addAll(batch);
+
+            // another instance with a chunk catalog loaded before the rollup exists
+            final EventsOnH2 other = (EventsOnH2) getCantor().events();
+            assertEquals(other.get(namespace, start, end).size(), batch.size());
+
+            // rolls up the events already stored
+            events.createRollup(namespace, minute, Collections.singletonList("host"), TimeUnit.DAYS.toMillis(1));
+            final long rollupQueriesBefore = events.getRollupQueryCount();
+            assertRollupAggregates(events, namespace, start, end, all);
+            assertTrue(events.getRollupQueryCount() > rollupQueriesBefore);
+
+            // queries that do not fit the rollup are answered from events
+            final long rollupQueries = events.getRollupQueryCount();
+            events.aggregate(namespace, "value", start + 1, end, 10 * minute, Events.AggregationFunction.SUM, Collections.emptyMap(), Collections.emptyMap());
+            events.aggregate(namespace, "value", start, end, 10 * minute, Events.AggregationFunction.SUM, Collections.singletonMap("host", "~h*"), Collections.emptyMap());
+            assertEquals(events.getRollupQueryCount(), rollupQueries);
+
+            // events stored after the rollup was created are rolled up on store, into the same buckets, also by
+            // instances that have not reloaded their catalog since
+            batch.clear();
+            for (int i = 0; i < 1000; ++i) {
+                batch.add(new Events.Event(start + i * 7000L + 3000, Collections.singletonMap("host", "h" + i % 3), Collections.singletonMap("value", (double) -i)));
+            }
+            other.store(namespace, batch);
+            all.addAll(batch);
+            assertRollupAggregates(events, namespace, start, end, all);
+
+            // compaction merges partial rows without changing results
+            final long compactedBefore = events.getRollupRowsCompactedCount();
+            events.compactRollups(namespace);
+            assertTrue(events.getRollupRowsCompactedCount() > compactedBefore);
+            assertRollupAggregates(events, namespace, start, end, all);
+
+            // rollups outlive the events they were computed from
+            events.expire(namespace, System.currentTimeMillis() + 2 * hour);
+            assertTrue(events.get(namespace, start, end).isEmpty());
+            assertRollupAggregates(events, namespace, start, end, all);
+
+            events.dropRollup(namespace, minute, Collections.singletonList("host"));
+            assertTrue(events.aggregate(namespace, "value", start, end, 10 * minute, Events.AggregationFunction.SUM, Collections.emptyMap(), Collections.emptyMap()).isEmpty());
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testMetadataPrefixQueries() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        events.create(namespace);
+        try {
+            final long start = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+            final List<String> hosts = Arrays.asList("host-1", "host-12", "host-123", "host-13", "host-2", "host-1x2", "other-1");
+            final List<Events.Event> batch = new ArrayList<>();
+            for (int i = 0; i < 70; ++i) {
+                batch.add(new Events.Event(start + i, Collections.singletonMap("host", hosts.get(i % hosts.size())), null));
+            }
+            events.store(namespace, batch);
+
+            // prefix and literal patterns are evaluated as ranges, others as regexes; results are the same
+            final Map<String, List<String>> expected = new HashMap<>();
+            expected.put("~host-12*", Arrays.asList("host-12", "host-123"));
+            expected.put("~host-1*", Arrays.asList("host-1", "host-12", "host-123", "host-13", "host-1x2"));
+            expected.put("~host-12", Collections.singletonList("host-12"));
+            expected.put("~host-1*2", Arrays.asList("host-12", "host-1x2"));
+            expected.put("~host-1.2", Collections.singletonList("host-1x2"));
+            expected.put("~*-1", Arrays.asList("host-1", "other-1"));
+            expected.put("!~host-1*", Arrays.asList("host-2", "other-1"));
+            for (final Map.Entry<String, List<String>> entry : expected.entrySet()) {
+                final List<Events.Event> results = events.get(namespace, start, start + 70, Collections.singletonMap("host", entry.getKey()), null);
+                assertEquals(results.size(), entry.getValue().size() * 10, entry.getKey());
+                for (final Events.Event event : results) {
+                    assertTrue(entry.getValue().contains(event.getMetadata().get("host")), entry.getKey());
+                }
+            }
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testZoneMapPruning() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        final long hour = TimeUnit.HOURS.toMillis(1);
+        events.create(namespace, hour);
+        try {
+            // each hourly chunk has its own host and band of latencies
+            final long start = (System.currentTimeMillis() / hour - 5) * hour;
+            final long end = start + 5 * hour - 1;
+            final List<Events.Event> batch = new ArrayList<>();
+            for (int h = 0; h < 5; ++h) {
+                for (int i = 0; i < 100; ++i) {
+                    batch.add(new Events.Event(start + h * hour + i * 1000, Collections.singletonMap("host", "host-" + h), Collections.singletonMap("latency", h * 1000.0 + i)));
+                }
+            }
+            events.store(namespace, batch);
+
+            // a fresh instance loads the zone maps from the lookup table
+            final EventsOnH2 reloaded = (EventsOnH2) getCantor().events();
+            for (final EventsOnH2 instance : Arrays.asList(events, reloaded)) {
+                final long prunedBefore = instance.getChunkTablesPrunedCount();
+                final List<Events.Event> slow = instance.get(namespace, start, end, Collections.emptyMap(), Collections.singletonMap("latency", ">3050"));
+                assertEquals(slow.size(), 149);
+                assertTrue(instance.getChunkTablesPrunedCount() - prunedBefore >= 3);
+
+                assertEquals(instance.get(namespace, start, end, Collections.emptyMap(), Collections.singletonMap("latency", "1010..2010")).size(), 101);
+                assertEquals(instance.get(namespace, start, end, Collections.singletonMap("host", "host-2"), null).size(), 100);
+                assertTrue(instance.get(namespace, start, end, Collections.singletonMap("host", "host-9"), null).isEmpty());
+                assertTrue(instance.get(namespace, start, end, Collections.emptyMap(), Collections.singletonMap("latency", ">5000")).isEmpty());
+            }
+
+            // stores through one instance widen the zone maps seen by the other right away, even with a cached catalog
+            events.store(namespace, start + 10, Collections.singletonMap("host", "host-0"), Collections.singletonMap("latency", 9000.0));
+            assertEquals(events.get(namespace, start, end, Collections.emptyMap(), Collections.singletonMap("latency", ">5000")).size(), 1);
+            assertEquals(reloaded.get(namespace, start, end, Collections.emptyMap(), Collections.singletonMap("latency", ">5000")).size(), 1);
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testBulkExpiration() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        final long hour = TimeUnit.HOURS.toMillis(1);
+        events.create(namespace, hour);
+        try {
+            // three key combinations per hour, so three chunk tables per window
+            final long start = (System.currentTimeMillis() / hour - 30) * hour;
+            final List<Events.Event> batch = new ArrayList<>();
+            for (int h = 0; h < 30; ++h) {
+                for (int k = 0; k < 3; ++k) {
+                    batch.add(new Events.Event(start + h * hour, Collections.singletonMap("key-" + k, "value"), null));
+                }
+            }
+            events.store(namespace, batch);
+
+            final long expiredBefore = events.getChunkTablesExpiredCount();
+            events.expire(namespace, start + 20 * hour);
+            // expired events are gone as soon as expire returns, tables are dropped in the background
+            assertTrue(events.get(namespace, start, start + 20 * hour - 1).isEmpty());
+            assertEquals(events.get(namespace, start, start + 30 * hour).size(), 30);
+            // a chunk table created again under an expired name by another instance, before the expired tables are
+            // dropped, is not dropped with them
+            final EventsOnH2 other = (EventsOnH2) getCantor().events();
+            other.store(namespace, start + hour, Collections.singletonMap("key-1", "early"), null);
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            while (events.getPendingChunkTableDropsCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals(events.getPendingChunkTableDropsCount(), 0);
+            assertEquals(events.getChunkTablesExpiredCount() - expiredBefore, 60);
+            assertEquals(other.get(namespace, start + hour, start + 2 * hour - 1).size(), 1);
+
+            // storing into an expired window creates an empty chunk table again
+            events.store(namespace, start, Collections.singletonMap("key-0", "again"), null);
+            final List<Events.Event> results = events.get(namespace, start, start + hour - 1);
+            assertEquals(results.size(), 1);
+            assertEquals(results.get(0).getMetadata().get("key-0"), "again");
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testRecentChunkTables() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        final long hour = TimeUnit.HOURS.toMillis(1);
+        events.create(namespace, hour);
+        try {
+            final long now = System.currentTimeMillis();
+            events.store(namespace, now - 5 * hour, Collections.singletonMap("host", "old"), null);
+            assertEquals(events.get(namespace, now - 6 * hour, now + hour).size(), 1);
+
+            // chunk tables created by another instance for recent windows are found before the catalog expires
+            final EventsOnH2 other = (EventsOnH2) getCantor().events();
+            other.store(namespace, now, Collections.singletonMap("host", "new"), null);
+            other.store(namespace, now - 2 * hour, Collections.singletonMap("host", "newer"), null);
+            assertEquals(events.get(namespace, now - 6 * hour, now + hour).size(), 3);
+            final Map<String, String> metadataQuery = Collections.singletonMap("host", "new");
+            assertEquals(events.get(namespace, now - hour, now + hour, metadataQuery, null).size(), 1);
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testConcurrentStoresOnNewNamespace() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        final long hour = TimeUnit.HOURS.toMillis(1);
+        events.create(namespace, hour);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            // all writers race to create the same chunk tables and their zone map statistics; half of them go
+            // through their own instance, as another process would
+            final long start = (System.currentTimeMillis() / hour - 2) * hour;
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; ++t) {
+                final int writer = t;
+                final EventsOnH2 writerEvents = writer % 2 == 0 ? events : (EventsOnH2) getCantor().events();
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 20; ++i) {
+                        final List<Events.Event> batch = new ArrayList<>();
+                        for (int j = 0; j < 10; ++j) {
+                            final Map<String, Double> dimensions = Collections.singletonMap("value", (double) (writer * 1000 + i * 10 + j));
+                            batch.add(new Events.Event(start + (i * 10 + j) * TimeUnit.MINUTES.toMillis(1),
+                                    Collections.singletonMap("writer", "w" + writer), dimensions));
+                        }
+                        writerEvents.store(namespace, batch);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            final long end = start + 4 * hour;
+            assertEquals(events.get(namespace, start, end).size(), 8 * 200);
+            // the zone map statistics of every writer are merged, so no chunk table is pruned wrongly
+            for (int t = 0; t < 8; ++t) {
+                assertEquals(events.get(namespace, start, end, Collections.singletonMap("writer", "w" + t), null).size(), 200);
+                assertEquals(events.get(namespace, start, end, null, Collections.singletonMap("value", ">=" + (t * 1000 + 199))).size(),
+                        1 + 200 * (7 - t));
+            }
+        } finally {
+            executor.shutdownNow();
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testZoneMapsOfRecreatedChunk() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        final long hour = TimeUnit.HOURS.toMillis(1);
+        events.create(namespace, hour);
+        try {
+            final long start = (System.currentTimeMillis() / hour - 3) * hour;
+            events.store(namespace, start, Collections.singletonMap("host", "a"), null);
+            // another process expires the chunk table and creates it again with other events
+            final EventsOnH2 other = (EventsOnH2) getCantor().events();
+            other.expire(namespace, start + hour);
+            other.store(namespace, start, Collections.singletonMap("host", "b"), null);
+            // statistics of events stored again by the first instance are written, although it wrote them before
+            events.store(namespace, start, Collections.singletonMap("host", "a"), null);
+            assertEquals(other.get(namespace, start, start + hour - 1, Collections.singletonMap("host", "a"), null).size(), 1);
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testChunkQueryPermits() throws Exception {
+        final String namespace = UUID.randomUUID().toString();
+        final long hour = TimeUnit.HOURS.toMillis(1);
+        final long start = (System.currentTimeMillis() / hour - 12) * hour;
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (final EventsOnH2 events = new EventsOnH2(H2DataSourceProvider.getDatasource(
+                new H2DataSourceProperties().setPath("/tmp/cantor-test-db/" + UUID.randomUUID())), 2, 3)) {
+            events.create(namespace, hour);
+            for (int i = 0; i < 12; ++i) {
+                events.store(namespace, start + i * hour, Collections.singletonMap("host", "h" + i), null);
+            }
+            // more concurrent queries than permits; every query gets all chunks and every permit is given back
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; ++i) {
+                futures.add(executor.submit(() -> events.get(namespace, start, start + 12 * hour).size()));
+            }
+            for (final Future<Integer> future : futures) {
+                assertEquals(future.get().intValue(), 12);
+            }
+            assertEquals(events.getChunkQueriesInFlight(namespace), 0);
+            assertEquals(events.getChunkQueriesWaiting(namespace), 0);
+
+            // queries fail once the instance is closed
+            events.close();
+            assertThrows(IOException.class, () -> events.get(namespace, start, start + 12 * hour));
+            events.drop(namespace);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTombstoneTablesGracePeriod() throws Exception {
+        final DataSource dataSource = H2DataSourceProvider.getDatasource(
+                new H2DataSourceProperties().setPath("/tmp/cantor-test-db/" + UUID.randomUUID()));
+        final String namespace = UUID.randomUUID().toString();
+        final long now = System.currentTimeMillis();
+        final String prefix = "CANTOR-EVENTS-CHUNK-TOMBSTONE-";
+        final String recent = prefix + Long.toString(now, 36) + "-0123456789abcdef";
+        final String abandoned = prefix + Long.toString(now - TimeUnit.HOURS.toMillis(2), 36) + "-0123456789abcdef";
+        final String unnamed = prefix + "0123456789abcdef0123456789abcdef";
+        try (final EventsOnH2 events = new EventsOnH2(dataSource)) {
+            events.create(namespace);
+            events.store(namespace, now, null, null);
+            // tables left by an expire or delete in flight in another process, or by one that stopped long ago
+            try (final Connection connection = dataSource.getConnection();
+                 final Statement statement = connection.createStatement()) {
+                final String schema = getLookupTableSchema(connection);
+                for (final String table : Arrays.asList(recent, abandoned, unnamed)) {
+                    statement.execute("CREATE TABLE `" + schema + "`.`" + table + "` (ID INT)");
+                }
+            }
+        }
+        // a new instance validates the namespace before first use
+        try (final EventsOnH2 events = new EventsOnH2(dataSource)) {
+            events.create(namespace);
+            try (final Connection connection = dataSource.getConnection();
+                 final Statement statement = connection.createStatement();
+                 final ResultSet resultSet = statement.executeQuery(
+                         "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME LIKE '" + prefix + "%'")) {
+                final List<String> tables = new ArrayList<>();
+                while (resultSet.next()) {
+                    tables.add(resultSet.getString(1));
+                }
+                // h2 stores quoted names in upper case
+                assertEquals(tables, Collections.singletonList(recent.toUpperCase()));
+            }
+            assertEquals(events.get(namespace, now, now).size(), 1);
+            events.drop(namespace);
+        }
+    }
+
+    private String getLookupTableSchema(final Connection connection) throws SQLException {
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery(
+                     "SELECT TABLE_SCHEMA FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'CANTOR-EVENTS-CHUNKS-LOOKUP'")) {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1);
+        }
+    }
+
+    @Test
+    public void testDeleteChunks() throws Exception {
+        final EventsOnH2 events = (EventsOnH2) getCantor().events();
+        final String namespace = UUID.randomUUID().toString();
+        final long hour = TimeUnit.HOURS.toMillis(1);
+        final long minute = TimeUnit.MINUTES.toMillis(1);
+        events.create(namespace, hour);
+        try {
+            final long start = (System.currentTimeMillis() / hour - 3) * hour;
+            final long end = start + 3 * hour - 1;
+            final List<Events.Event> all = new ArrayList<>();
+            for (int i = 0; i < 180; ++i) {
+                all.add(new Events.Event(start + i * minute, Collections.singletonMap("host", "h" + i % 2), Collections.singletonMap("value", (double) i)));
+            }
+            events.store(namespace, all);
+            events.createRollup(namespace, minute, Collections.singletonList("host"), TimeUnit.DAYS.toMillis(1));
+
+            // the second hour is a whole chunk table, which is emptied without deleting events one by one
+            final long truncatedBefore = events.getChunkTablesTruncatedCount();
+            assertEquals(events.delete(namespace, start + hour, start + 2 * hour - 1, null, null), 60);
+            assertEquals(events.getChunkTablesTruncatedCount() - truncatedBefore, 1);
+            all.removeIf(event -> event.getTimestampMillis() >= start + hour && event.getTimestampMillis() < start + 2 * hour);
+
+            // part of the first hour with a query is deleted row by row
+            assertEquals(events.delete(namespace, start + 10 * minute, start + 40 * minute - 1, Collections.singletonMap("host", "h1"), null), 15);
+            assertEquals(events.getChunkTablesTruncatedCount() - truncatedBefore, 1);
+            all.removeIf(event -> event.getTimestampMillis() >= start + 10 * minute
+                    && event.getTimestampMillis() < start + 40 * minute
+                    && "h1".equals(event.getMetadata().get("host"))
+            );
+
+            assertEquals(events.get(namespace, start, end).size(), all.size());
+            // rollups are rebuilt for the deleted time ranges
+            assertRollupAggregates(events, namespace, start, end, all);
+        } finally {
+            events.drop(namespace);
+        }
+    }
+
+    private void assertRollupAggregates(final EventsOnH2 events,
+                                        final String namespace,
+                                        final long start,
+                                        final long end,
+                                        final List<Events.Event> all) throws IOException {
+        final long bucketMillis = TimeUnit.MINUTES.toMillis(10);
+        for (final Map<String, String> metadataQuery : Arrays.asList(Collections.<String, String>emptyMap(), Collections.singletonMap("host", "h1"))) {
+            final Map<Long, DoubleSummaryStatistics> expected = new TreeMap<>();
+            for (final Events.Event event : all) {
+                if (metadataQuery.containsKey("host") && !metadataQuery.get("host").equals(event.getMetadata().get("host"))) {
+                    continue;
+                }
+                final long bucket = event.getTimestampMillis() - event.getTimestampMillis() % bucketMillis;
+                expected.computeIfAbsent(bucket, k -> new DoubleSummaryStatistics()).accept(event.getDimensions().get("value"));
+            }
+            final Map<Long, Double> sums = events.aggregate(namespace, "value", start, end, bucketMillis, Events.AggregationFunction.SUM, metadataQuery, Collections.emptyMap());
+            final Map<Long, Double> counts = events.aggregate(namespace, "value", start, end, bucketMillis, Events.AggregationFunction.COUNT, metadataQuery, Collections.emptyMap());
+            final Map<Long, Double> mins = events.aggregate(namespace, "value", start, end, bucketMillis, Events.AggregationFunction.MIN, metadataQuery, Collections.emptyMap());
+            final Map<Long, Double> maxes = events.aggregate(namespace, "value", start, end, bucketMillis, Events.AggregationFunction.MAX, metadataQuery, Collections.emptyMap());
+            assertEquals(sums.keySet(), expected.keySet());
+            for (final Map.Entry<Long, DoubleSummaryStatistics> entry : expected.entrySet()) {
+                assertEquals(sums.get(entry.getKey()), entry.getValue().getSum());
+                assertEquals(counts.get(entry.getKey()), (double) entry.getValue().getCount());
+                assertEquals(mins.get(entry.getKey()), entry.getValue().getMin());
+                assertEquals(maxes.get(entry.getKey()), entry.getValue().getMax());
+            }
+        }
+    }
+}
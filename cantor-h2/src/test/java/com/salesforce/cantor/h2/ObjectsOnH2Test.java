@@ -9,12 +9,44 @@ package com.salesforce.cantor.h2;
 
 import com.salesforce.cantor.Cantor;
 import com.salesforce.cantor.common.AbstractBaseObjectsTest;
+import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
 
 public class ObjectsOnH2Test extends AbstractBaseObjectsTest {
     @Override
     protected Cantor getCantor() throws IOException {
         return H2Tests.getCantor();
     }
+
+    @Test
+    public void testSqlTemplates() throws Exception {
+        final ObjectsOnH2 objects = (ObjectsOnH2) getCantor().objects();
+        final String namespace = UUID.randomUUID().toString();
+        objects.create(namespace);
+        try {
+            // sql is built on the first call and reused by the next ones
+            objects.store(namespace, "key", "value".getBytes());
+            final long misses = objects.getSqlTemplateCacheMissCount();
+            final long hits = objects.getSqlTemplateCacheHitCount();
+            for (int i = 0; i < 10; ++i) {
+                objects.store(namespace, "key-" + i, ("value-" + i).getBytes());
+                assertEquals(new String(objects.get(namespace, "key-" + i)), "value-" + i);
+            }
+            assertEquals(objects.getSqlTemplateCacheMissCount() - misses, 1);
+            assertEquals(objects.getSqlTemplateCacheHitCount() - hits, 19);
+
+            // templates are dropped with the namespace
+            objects.drop(namespace);
+            objects.create(namespace);
+            objects.store(namespace, "key", "again".getBytes());
+            assertEquals(objects.getSqlTemplateCacheMissCount() - misses, 2);
+            assertEquals(new String(objects.get(namespace, "key")), "again");
+        } finally {
+            objects.drop(namespace);
+        }
+    }
 }
@@ -8,13 +8,69 @@
 package com.salesforce.cantor.h2;
 
 import com.salesforce.cantor.Cantor;
+import com.salesforce.cantor.Sets;
 import com.salesforce.cantor.common.AbstractBaseSetsTest;
+import org.testng.annotations.Test;
 
+import javax.sql.DataSource;
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.testng.Assert.assertEquals;
 
 public class SetsOnH2Test extends AbstractBaseSetsTest {
     @Override
     public Cantor getCantor() throws IOException {
         return H2Tests.getCantor();
     }
+
+    @Test
+    public void testCreateMissingPageIndexes() throws Exception {
+        final DataSource dataSource = H2DataSourceProvider.getDatasource(
+                new H2DataSourceProperties().setPath("/tmp/cantor-test-db/" + UUID.randomUUID().toString())
+        );
+        final SetsOnH2 sets = new SetsOnH2(dataSource);
+        final String namespace = UUID.randomUUID().toString();
+        sets.create(namespace);
+        for (int i = 0; i < 10; ++i) {
+            sets.add(namespace, "set", "entry-" + i, i % 3);
+        }
+        final List<String> schemas = getPageIndexSchemas(dataSource);
+        assertEquals(schemas.size(), 1);
+
+        // drop the index, as if the sets table was created before pages were introduced
+        try (final Connection connection = dataSource.getConnection();
+             final Statement statement = connection.createStatement()) {
+            statement.execute("DROP INDEX \"" + schemas.get(0) + "\".\"CANTOR-SETS-PAGE\"");
+        }
+        assertEquals(getPageIndexSchemas(dataSource).size(), 0);
+
+        sets.createMissingPageIndexes();
+        assertEquals(getPageIndexSchemas(dataSource), schemas);
+        // adding indexes again is a no-op
+        sets.createMissingPageIndexes();
+        assertEquals(getPageIndexSchemas(dataSource), schemas);
+
+        final Sets.Page first = sets.page(namespace, "set", 0, 2, 6, true, null);
+        final Sets.Page second = sets.page(namespace, "set", 0, 2, 6, true, first.getContinuationToken());
+        assertEquals(first.getEntries().size() + second.getEntries().size(), 10);
+        sets.drop(namespace);
+    }
+
+    private List<String> getPageIndexSchemas(final DataSource dataSource) throws SQLException {
+        final List<String> schemas = new ArrayList<>();
+        try (final Connection connection = dataSource.getConnection();
+             final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery(
+                     "SELECT INDEX_SCHEMA FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = 'CANTOR-SETS-PAGE'")) {
+            while (resultSet.next()) {
+                schemas.add(resultSet.getString(1));
+            }
+        }
+        return schemas;
+    }
 }
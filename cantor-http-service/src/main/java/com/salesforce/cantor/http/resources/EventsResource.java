@@ -9,6 +9,7 @@ package com.salesforce.cantor.http.resources;
 
 import com.google.gson.*;
 import com.salesforce.cantor.Cantor;
+import com.salesforce.cantor.Events;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -41,6 +42,7 @@ import java.lang.reflect.Type;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -94,7 +96,9 @@ public class EventsResource {
                 bean.getDimensionsquery(),
                 bean.isIncludePayloads(),
                 bean.isAscending(),
-                bean.getLimit()
+                bean.getLimit(),
+                bean.getProjectedMetadataKeys(),
+                bean.getProjectedDimensionKeys()
         );
         return Response.ok(parser.toJson(results)).build();
     }
@@ -126,6 +130,33 @@ public class EventsResource {
         return Response.ok(parser.toJson(metadataValueSet)).build();
     }
 
+    @GET
+    @Path("/{namespace}/count/{metadata}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Count events grouped by the values of a metadata")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200",
+                     description = "Provides a map of metadata value to the number of events with that value, matching query parameters",
+                     content = @Content(schema = @Schema(implementation = Map.class))),
+        @ApiResponse(responseCode = "400", description = "One of the query parameters has a bad value"),
+        @ApiResponse(responseCode = "500", description = serverErrorMessage)
+    })
+    public Response getCount(@Parameter(description = "Namespace identifier") @PathParam("namespace") final String namespace,
+                             @Parameter(description = "Specific metadata to group events by") @PathParam("metadata") final String metadata,
+                             @BeanParam final EventsDataSourceBean bean) throws IOException {
+        logger.info("received request for count by metadata {} in namespace {}", metadata, namespace);
+        logger.debug("request parameters: {}", bean);
+        final Map<String, Long> counts = this.cantor.events().count(
+                namespace,
+                metadata,
+                bean.getStart(),
+                bean.getEnd(),
+                bean.getMetadataQuery(),
+                bean.getDimensionsquery()
+        );
+        return Response.ok(parser.toJson(counts)).build();
+    }
+
     @GET
     @Path("/{namespace}/dimension/{dimension}")
     @Produces(MediaType.APPLICATION_JSON)
@@ -153,6 +184,35 @@ public class EventsResource {
         return Response.ok(parser.toJson(thinEvents)).build();
     }
 
+    @GET
+    @Path("/{namespace}/aggregate/{dimension}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Aggregate values of a dimension into time buckets")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200",
+                    description = "Provides a map of bucket start timestamp to the aggregated value of the dimension for events matching query parameters",
+                    content = @Content(schema = @Schema(implementation = Map.class))),
+            @ApiResponse(responseCode = "400", description = "One of the query parameters has a bad value"),
+            @ApiResponse(responseCode = "500", description = serverErrorMessage)
+    })
+    public Response getAggregate(@Parameter(description = "Namespace identifier") @PathParam("namespace") final String namespace,
+                                 @Parameter(description = "Dimension to aggregate") @PathParam("dimension") final String dimension,
+                                 @BeanParam final AggregateEventsDataSourceBean bean) throws IOException {
+        logger.info("received request for aggregate of dimension {} in namespace {}", dimension, namespace);
+        logger.debug("request parameters: {}", bean);
+        final Map<Long, Double> results = this.cantor.events().aggregate(
+                namespace,
+                dimension,
+                bean.getStart(),
+                bean.getEnd(),
+                bean.getBucketMillis(),
+                bean.getFunction(),
+                bean.getMetadataQuery(),
+                bean.getDimensionsquery()
+        );
+        return Response.ok(parser.toJson(results)).build();
+    }
+
     @PUT
     @Path("/{namespace}")
     @Operation(summary = "Create an event namespace")
@@ -196,6 +256,31 @@ public class EventsResource {
         return Response.ok().build();
     }
 
+    @DELETE
+    @Path("/delete/{namespace}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Delete events matching the query parameters")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200",
+                     description = "Provides the number of events deleted",
+                     content = @Content(schema = @Schema(implementation = Integer.class))),
+        @ApiResponse(responseCode = "400", description = "One of the query parameters has a bad value"),
+        @ApiResponse(responseCode = "500", description = serverErrorMessage)
+    })
+    public Response deleteEvents(@Parameter(description = "Namespace identifier") @PathParam("namespace") final String namespace,
+                                 @BeanParam final EventsDataSourceBean bean) throws IOException {
+        logger.info("received request to delete events in namespace {}", namespace);
+        logger.debug("request parameters: {}", bean);
+        final int results = this.cantor.events().delete(
+                namespace,
+                bean.getStart(),
+                bean.getEnd(),
+                bean.getMetadataQuery(),
+                bean.getDimensionsquery()
+        );
+        return Response.ok(parser.toJson(results)).build();
+    }
+
     @DELETE
     @Path("/expire/{namespace}/{endTimestampMillis}")
     @Operation(summary = "Expire old events")
@@ -322,6 +407,40 @@ public class EventsResource {
         @QueryParam("limit")
         private int limit;
 
+        @Parameter(description = "Metadata keys to include in each event; all metadata is included if the parameter is not given, "
+                + "and none if it is given with an empty value")
+        @QueryParam("metadata_keys")
+        private List<String> metadataKeys;
+
+        @Parameter(description = "Dimension keys to include in each event; all dimensions are included if the parameter is not given, "
+                + "and none if it is given with an empty value")
+        @QueryParam("dimension_keys")
+        private List<String> dimensionKeys;
+
+        /**
+         * Metadata keys to project, or null to get all metadata
+         */
+        Set<String> getProjectedMetadataKeys() {
+            return getProjectedKeys(this.metadataKeys);
+        }
+
+        /**
+         * Dimension keys to project, or null to get all dimensions
+         */
+        Set<String> getProjectedDimensionKeys() {
+            return getProjectedKeys(this.dimensionKeys);
+        }
+
+        // an absent parameter projects all keys; a parameter with an empty value (e.g. 'metadata_keys=') projects none
+        private static Set<String> getProjectedKeys(final List<String> keys) {
+            if (keys == null || keys.isEmpty()) {
+                return null;
+            }
+            final Set<String> projectedKeys = new HashSet<>(keys);
+            projectedKeys.remove("");
+            return projectedKeys;
+        }
+
         public boolean isIncludePayloads() {
             return this.includePayloads;
         }
@@ -345,6 +464,48 @@ public class EventsResource {
         public void setLimit(final int limit) {
             this.limit = limit;
         }
+
+        public List<String> getMetadataKeys() {
+            return this.metadataKeys;
+        }
+
+        public void setMetadataKeys(final List<String> metadataKeys) {
+            this.metadataKeys = metadataKeys;
+        }
+
+        public List<String> getDimensionKeys() {
+            return this.dimensionKeys;
+        }
+
+        public void setDimensionKeys(final List<String> dimensionKeys) {
+            this.dimensionKeys = dimensionKeys;
+        }
+    }
+
+    protected static class AggregateEventsDataSourceBean extends EventsDataSourceBean {
+        @Parameter(description = "Size of each time bucket in milliseconds", example = "60000")
+        @QueryParam("bucket_millis")
+        private long bucketMillis;
+
+        @Parameter(description = "Function to aggregate dimension values with (SUM, AVG, MIN, MAX, COUNT)", example = "AVG")
+        @QueryParam("function")
+        private Events.AggregationFunction function;
+
+        public long getBucketMillis() {
+            return this.bucketMillis;
+        }
+
+        public void setBucketMillis(final long bucketMillis) {
+            this.bucketMillis = bucketMillis;
+        }
+
+        public Events.AggregationFunction getFunction() {
+            return this.function;
+        }
+
+        public void setFunction(final Events.AggregationFunction function) {
+            this.function = function;
+        }
     }
 
     /**
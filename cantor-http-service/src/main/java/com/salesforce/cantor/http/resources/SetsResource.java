@@ -9,6 +9,7 @@ package com.salesforce.cantor.http.resources;
 
 import com.google.gson.Gson;
 import com.salesforce.cantor.Cantor;
+import com.salesforce.cantor.Sets;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -25,6 +26,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.ws.rs.BeanParam;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -156,6 +158,36 @@ public class SetsResource {
         return Response.ok(parser.toJson(entries)).build();
     }
 
+    @GET
+    @Path("/page/{namespace}/{set}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Get a page of entries from a set")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200",
+                     description = "Provides entry names and weights matching query parameters, and the continuation token to get the next page with, as properties in a json",
+                     content = @Content(schema = @Schema(implementation = Map.class))),
+        @ApiResponse(responseCode = "400", description = "One of the query parameters has a bad value"),
+        @ApiResponse(responseCode = "500", description = serverErrorMessage)
+    })
+    public Response page(@Parameter(description = "Namespace identifier") @PathParam("namespace") final String namespace,
+                         @Parameter(description = "Name of the set") @PathParam("set") final String set,
+                         @Parameter(description = "Minimum weight for an entry", example = "0") @QueryParam("min") final long min,
+                         @Parameter(description = "Maximum weight for an entry", example = "-1") @QueryParam("max") final long max,
+                         @Parameter(description = "Number of entries allowed in response", example = "10") @QueryParam("count") final int count,
+                         @Parameter(description = "Return in ascending or descending format", example = "false") @QueryParam("asc") final boolean ascending,
+                         @Parameter(description = "Continuation token returned with the previous page; omit for the first page") @QueryParam("token") final String continuationToken) throws IOException {
+        logger.info("received request for page of values in set/namespace {}/{}", set, namespace);
+        final Sets.Page page = this.cantor.sets().page(
+                namespace,
+                set,
+                min,
+                max == -1 ? Long.MAX_VALUE : max,
+                count,
+                ascending,
+                continuationToken);
+        return Response.ok(parser.toJson(page)).build();
+    }
+
     @DELETE
     @Path("/{namespace}/{set}")
     @Operation(summary = "Delete entries in a set between provided weights")
@@ -205,6 +237,7 @@ public class SetsResource {
     })
     public Response union(@Parameter(description = "Namespace identifier") @PathParam("namespace") final String namespace,
                           @Parameter(description = "Name of the set") @QueryParam("set") final List<String> sets,
+                          @Parameter(description = "Function to combine weights of an entry found in multiple sets with (SUM, MIN, MAX)", example = "MAX") @QueryParam("aggregation") final Sets.WeightAggregation aggregation,
                           @BeanParam final SetsDataSourceBean bean) throws IOException {
         logger.info("received request for union of sets {} in namespace {}", sets, namespace);
         logger.debug("request parameters: {}", bean);
@@ -215,7 +248,8 @@ public class SetsResource {
                 bean.getMax(),
                 bean.getStart(),
                 bean.getCount(),
-                bean.isAscending());
+                bean.isAscending(),
+                aggregation != null ? aggregation : Sets.WeightAggregation.MAX);
         return Response.ok(parser.toJson(union)).build();
     }
 
@@ -232,6 +266,7 @@ public class SetsResource {
     })
     public Response intersect(@Parameter(description = "Namespace identifier") @PathParam("namespace") final String namespace,
                               @Parameter(description = "List of sets") @QueryParam("set") final List<String> sets,
+                              @Parameter(description = "Function to combine weights of an entry found in multiple sets with (SUM, MIN, MAX)", example = "MAX") @QueryParam("aggregation") final Sets.WeightAggregation aggregation,
                               @BeanParam final SetsDataSourceBean bean) throws IOException {
         logger.info("received request for intersection of sets {} in namespace {}", sets, namespace);
         logger.debug("request parameters: {}", bean);
@@ -242,10 +277,40 @@ public class SetsResource {
                 bean.getMax(),
                 bean.getStart(),
                 bean.getCount(),
-                bean.isAscending());
+                bean.isAscending(),
+                aggregation != null ? aggregation : Sets.WeightAggregation.MAX);
         return Response.ok(parser.toJson(intersection)).build();
     }
 
+    @GET
+    @Path("/difference/{namespace}/{set}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Perform a difference of a set and all provided sets")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200",
+                     description = "Provides the entries of the set not found in any of the provided sets, filtered by query parameters as properties in a json",
+                     content = @Content(schema = @Schema(implementation = Map.class))),
+        @ApiResponse(responseCode = "400", description = "One of the query parameters has a bad value"),
+        @ApiResponse(responseCode = "500", description = serverErrorMessage)
+    })
+    public Response difference(@Parameter(description = "Namespace identifier") @PathParam("namespace") final String namespace,
+                               @Parameter(description = "Name of the set") @PathParam("set") final String set,
+                               @Parameter(description = "List of sets to exclude entries of") @QueryParam("exclude") final List<String> sets,
+                               @BeanParam final SetsDataSourceBean bean) throws IOException {
+        logger.info("received request for difference of set {} and sets {} in namespace {}", set, sets, namespace);
+        logger.debug("request parameters: {}", bean);
+        final Map<String, Long> difference = this.cantor.sets().difference(
+                namespace,
+                set,
+                sets,
+                bean.getMin(),
+                bean.getMax(),
+                bean.getStart(),
+                bean.getCount(),
+                bean.isAscending());
+        return Response.ok(parser.toJson(difference)).build();
+    }
+
     @DELETE
     @Path("/pop/{namespace}/{set}")
     @Produces(MediaType.APPLICATION_JSON)
@@ -342,6 +407,25 @@ public class SetsResource {
         return Response.ok(results).build();
     }
 
+    @POST
+    @Path("/{namespace}/{set}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Atomically increment the weights of a batch of entries and return the values after increment")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200",
+                     description = "Provides the entries with their weights after increment",
+                     content = @Content(schema = @Schema(implementation = Map.class))),
+        @ApiResponse(responseCode = "500", description = serverErrorMessage)
+    })
+    public Response inc(@Parameter(description = "Namespace identifier") @PathParam("namespace") final String namespace,
+                        @Parameter(description = "Name of the set") @PathParam("set") final String set,
+                        @Parameter(description = "Map of entries to amounts to increment") final Map<String, Long> entries) throws IOException {
+        logger.info("received request to increment entries in set/namespace {}/{}", set, namespace);
+        final Map<String, Long> results = this.cantor.sets().inc(namespace, set, entries);
+        return Response.ok(parser.toJson(results)).build();
+    }
+
     protected static class SetsDataSourceBean {
         @Parameter(description = "Minimum weight for an entry", example = "0")
         @QueryParam("min")
@@ -7,6 +7,8 @@
 
 package com.salesforce.cantor.jdbc;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,7 +18,13 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 import static com.salesforce.cantor.jdbc.JdbcUtils.addParameters;
 import static com.salesforce.cantor.jdbc.JdbcUtils.quote;
@@ -27,10 +35,20 @@ abstract class AbstractBaseCantorOnJdbc {
     private static final String cantorInternalDatabaseName = "cantor";
     // all queries have to finish within 30 seconds
     private static final int maxQueryTimeoutSeconds = 30;
+    // characters that are not allowed in database names
+    private static final Pattern invalidDatabaseNameCharacters = Pattern.compile("[^A-Za-z0-9_\\-/]");
+    // max number of sql templates kept per namespace
+    private static final int maxSqlTemplatesPerNamespace = 1024;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final AtomicBoolean isInitialized = new AtomicBoolean(false);
     private final DataSource dataSource;
+    // namespace to quoted database name; namespaces are mangled into database names once
+    private final Map<String, String> quotedDatabaseNames = new ConcurrentHashMap<>();
+    // namespace to sql strings built for the namespace, keyed by template name
+    private final Map<String, Cache<String, String>> sqlTemplates = new ConcurrentHashMap<>();
+    private final AtomicLong sqlTemplateHits = new AtomicLong();
+    private final AtomicLong sqlTemplateMisses = new AtomicLong();
 
     // used by underlying implementation to create whatever internal tables are needed as part of namespace creation
     protected abstract void createInternalTables(Connection connection, String namespace) throws IOException;
@@ -84,9 +102,15 @@ abstract class AbstractBaseCantorOnJdbc {
         if (!this.isInitialized.getAndSet(true)) {
             doCreateInternalDatabase();
             doValidations();
+            start();
         }
     }
 
+    // called once the instance is first used, after internal tables are created and validated; implementations
+    // start their background work here rather than in the constructor
+    protected void start() {
+    }
+
     private void doCreateInternalDatabase() throws IOException {
         Connection connection = null;
         try {
@@ -163,11 +187,13 @@ abstract class AbstractBaseCantorOnJdbc {
             executeUpdate(connection, sql, databaseName);
         } finally {
             closeConnection(connection);
+            this.sqlTemplates.remove(namespace);
+            this.quotedDatabaseNames.remove(namespace);
         }
     }
 
     protected String getDatabaseNameForNamespace(final String namespace) {
-        final String cleanName = namespace.replaceAll("[^A-Za-z0-9_\\-/]", "").toLowerCase();
+        final String cleanName = invalidDatabaseNameCharacters.matcher(namespace).replaceAll("").toLowerCase();
         return String.format("cantor-%s-%s",
                 cleanName.substring(0, Math.min(32, cleanName.length())), Math.abs(namespace.hashCode()));
     }
@@ -228,6 +254,22 @@ abstract class AbstractBaseCantorOnJdbc {
         }
     }
 
+    // roll back the transaction opened on the connection; closeConnection commits whatever is left, so callers
+    // that must not commit a partially applied transaction call this before closing; failures are only logged, so
+    // the exception that caused the rollback is the one surfaced
+    protected void rollbackTransaction(final Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            logger.warn("exception executing rollback", e);
+        }
+    }
+
     protected int executeUpdate(final String sql, final Object... parameters) throws IOException {
         final Connection connection = getConnection();
         try {
@@ -300,8 +342,57 @@ abstract class AbstractBaseCantorOnJdbc {
         return String.format("DROP TABLE %s", getTableFullName(namespace, tableName));
     }
 
+    protected String getRenameTableSql(final String namespace, final String tableName, final String newTableName) {
+        return String.format("ALTER TABLE %s RENAME TO %s",
+                getTableFullName(namespace, tableName), getTableFullName(namespace, newTableName));
+    }
+
     protected String getTableFullName(final String namespace, final String tableName) {
-        return String.format("%s.%s", quote(getDatabaseNameForNamespace(namespace)), quote(tableName));
+        return getQuotedDatabaseName(namespace) + "." + quote(tableName);
+    }
+
+    /**
+     * Returns the sql built by the given template for the namespace; sql strings only depend on the namespace and the
+     * template name, so they are built once and reused until the namespace is dropped.
+     *
+     * @param namespace the namespace identifier
+     * @param templateName name of the sql template, unique per namespace
+     * @param template builds the sql string
+     * @return the sql string
+     */
+    protected String getSql(final String namespace, final String templateName, final Supplier<String> template) {
+        final Cache<String, String> templates = this.sqlTemplates.computeIfAbsent(namespace,
+                k -> CacheBuilder.newBuilder().maximumSize(maxSqlTemplatesPerNamespace).build()
+        );
+        final String cached = templates.getIfPresent(templateName);
+        if (cached != null) {
+            this.sqlTemplateHits.incrementAndGet();
+            return cached;
+        }
+        this.sqlTemplateMisses.incrementAndGet();
+        try {
+            return templates.get(templateName, template::get);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public long getSqlTemplateCacheHitCount() {
+        return this.sqlTemplateHits.get();
+    }
+
+    public long getSqlTemplateCacheMissCount() {
+        return this.sqlTemplateMisses.get();
+    }
+
+    private String getQuotedDatabaseName(final String namespace) {
+        final String cached = this.quotedDatabaseNames.get(namespace);
+        if (cached != null) {
+            return cached;
+        }
+        final String quoted = quote(getDatabaseNameForNamespace(namespace));
+        this.quotedDatabaseNames.put(namespace, quoted);
+        return quoted;
     }
 }
 
@@ -7,41 +7,208 @@
 
 package com.salesforce.cantor.jdbc;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.salesforce.cantor.EventBatch;
 import com.salesforce.cantor.Events;
+import com.salesforce.cantor.common.EventsUtils.AggregateBucket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BinaryOperator;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static com.salesforce.cantor.common.CommonPreconditions.checkArgument;
+import static com.salesforce.cantor.common.CommonPreconditions.checkNamespace;
 import static com.salesforce.cantor.common.CommonUtils.nullToEmpty;
 import static com.salesforce.cantor.common.EventsPreconditions.*;
+import static com.salesforce.cantor.common.EventsUtils.*;
 import static com.salesforce.cantor.jdbc.JdbcUtils.*;
 
-public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc implements Events {
+public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc implements Events, Closeable {
+    private static final int defaultMaxChunkQueryThreads = 64;
+    private static final int defaultMaxChunkQueriesPerNamespace = 16;
+    private static final int chunkQueryQueueCapacity = 4096;
+    // mysql does not allow more than 65535 parameters in a prepared statement
+    private static final int maxParametersPerInsert = 65535;
+    // characters of metadata and dimension keys that are not allowed in column names
+    private static final Pattern invalidColumnNameCharacters = Pattern.compile("[^A-Za-z0-9_\\-]");
+    private static final int maxCachedColumnNames = 100_000;
+    private static final int maxUpsertAttempts = 5;
+    // transactions rolled back to resolve a deadlock are retried after a random wait, growing with each attempt
+    private static final int maxBatchTransactionAttempts = 10;
+    private static final long maxBatchTransactionBackoffMillis = 1000;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
+    // long-lived executor shared by all chunk queries issued through this instance
+    private final ThreadPoolExecutor chunkQueryExecutor;
+    // per namespace permits to limit number of in-flight chunk queries
+    private final Map<String, Semaphore> namespaceChunkQueryPermits = new ConcurrentHashMap<>();
+    private final int maxChunkQueriesPerNamespace;
+    // per namespace cache of the chunk lookup table; invalidated by bumping the namespace version
+    private final Map<String, ChunkCatalog> chunkCatalogs = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> chunkCatalogVersions = new ConcurrentHashMap<>();
+    private final AtomicLong chunkCatalogHits = new AtomicLong();
+    private final AtomicLong chunkCatalogMisses = new AtomicLong();
+    // single-flight guards so only one thread creates each chunk table
+    private final Map<String, Object> chunkCreationLocks = new ConcurrentHashMap<>();
+    private final AtomicLong chunkTablesCreated = new AtomicLong();
+    // drops expired chunk tables in the background, a few at a time, after they are renamed to tombstone tables;
+    // keys are namespace and tombstone table name
+    private final ThreadPoolExecutor chunkTableDropExecutor;
+    private final Map<String, Object> pendingChunkTableDrops = new ConcurrentHashMap<>();
+    private final AtomicLong chunkTablesExpired = new AtomicLong();
+    private final AtomicLong chunkTablesTruncated = new AtomicLong();
+    // creates chunk tables of the next window ahead of the window rollover, and compacts and ages out rollups
+    private final ScheduledExecutorService maintenanceExecutor;
+    private final AtomicBoolean maintenanceStarted = new AtomicBoolean();
+    // counters for multi-row insert statements executed on store
+    private final AtomicLong insertStatements = new AtomicLong();
+    private final AtomicLong insertedRows = new AtomicLong();
+    private final AtomicLong insertMillis = new AtomicLong();
+    // stores take the read lock to append to rollup tables; rollup creation and compaction take the write lock;
+    // stores of other processes are kept apart from compaction by the database, see compactRollups
+    private final Map<String, ReadWriteLock> rollupLocks = new ConcurrentHashMap<>();
+    private final AtomicLong rollupQueries = new AtomicLong();
+    private final AtomicLong rollupRowsCompacted = new AtomicLong();
+    // per namespace set of chunk tables known to have a zone map entry in the lookup table; statistics are written
+    // only for those, and both writes and queries read the statistics themselves from the lookup table
+    private final Map<String, Set<String>> zoneMapChunkTables = new ConcurrentHashMap<>();
+    // metadata or dimension key to its column name without the prefix; keys are mangled once
+    private final LoadingCache<String, String> columnNameSuffixes = CacheBuilder.newBuilder()
+            .maximumSize(maxCachedColumnNames)
+            .build(CacheLoader.from(AbstractBaseEventsOnJdbc::toColumnNameSuffix));
+    private final AtomicLong chunkTablesPruned = new AtomicLong();
 
     protected AbstractBaseEventsOnJdbc(final DataSource dataSource) {
+        this(dataSource, defaultMaxChunkQueryThreads, defaultMaxChunkQueriesPerNamespace);
+    }
+
+    protected AbstractBaseEventsOnJdbc(final DataSource dataSource,
+                                       final int maxChunkQueryThreads,
+                                       final int maxChunkQueriesPerNamespace) {
         super(dataSource);
+        checkArgument(maxChunkQueryThreads > 0, "max chunk query threads must be positive");
+        checkArgument(maxChunkQueriesPerNamespace > 0, "max chunk queries per namespace must be positive");
+        this.maxChunkQueriesPerNamespace = maxChunkQueriesPerNamespace;
+        this.chunkQueryExecutor = new ThreadPoolExecutor(
+                maxChunkQueryThreads,
+                maxChunkQueryThreads,
+                1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(chunkQueryQueueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("cantor-events-chunk-query-%d").setDaemon(true).build(),
+                // if the queue is full, run the chunk query on the caller thread
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+        // do not hold on to idle threads
+        this.chunkQueryExecutor.allowCoreThreadTimeOut(true);
+        this.chunkTableDropExecutor = new ThreadPoolExecutor(
+                getMaxConcurrentChunkTableDrops(),
+                getMaxConcurrentChunkTableDrops(),
+                1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("cantor-events-chunk-drop-%d").setDaemon(true).build()
+        );
+        this.chunkTableDropExecutor.allowCoreThreadTimeOut(true);
+        this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("cantor-events-maintenance-%d").setDaemon(true).build()
+        );
+    }
+
+    /**
+     * Start the background maintenance of this instance: creating chunk tables of the next window ahead of time, and
+     * compacting and aging out rollups. Called when namespaces are first created, listed or dropped through the instance;
+     * calling it again has no effect.
+     */
+    @Override
+    public void start() {
+        if (this.maintenanceExecutor.isShutdown() || this.maintenanceStarted.getAndSet(true)) {
+            return;
+        }
+        this.maintenanceExecutor.scheduleWithFixedDelay(this::preCreateChunkTables, 1, 1, TimeUnit.MINUTES);
+        this.maintenanceExecutor.scheduleWithFixedDelay(this::maintainRollups, 1, 1, TimeUnit.MINUTES);
     }
 
     @Override
     public void create(final String namespace) throws IOException {
         checkCreate(namespace);
         createNamespace(namespace);
+        invalidateChunkCatalog(namespace);
+    }
+
+    /**
+     * Create a new namespace with events stored in chunk tables each covering the given window of time;
+     * the window size is set once when the namespace is first created and cannot be changed afterwards.
+     * <p>
+     * This is specific to the jdbc implementations and is not part of {@link Events}; namespaces created through
+     * {@link #create(String)}, or through any other {@link Events} implementation, use the default window size.
+     *
+     * @param namespace the namespace identifier
+     * @param chunkWindowSizeMillis size of the time window covered by each chunk table, in multiples of one minute
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    public void create(final String namespace, final long chunkWindowSizeMillis) throws IOException {
+        checkCreate(namespace);
+        checkArgument(chunkWindowSizeMillis > 0 && chunkWindowSizeMillis % TimeUnit.MINUTES.toMillis(1) == 0,
+                "chunk window size must be a positive multiple of one minute");
+        createNamespace(namespace);
+        try {
+            doSetWindowSizeMillis(namespace, chunkWindowSizeMillis);
+        } finally {
+            invalidateChunkCatalog(namespace);
+        }
     }
 
     @Override
     public void drop(final String namespace) throws IOException {
         checkDrop(namespace);
+        // tables of the namespace are gone with its database; wait for drops already in flight, so they do not
+        // contend with dropping the database
+        for (final Map.Entry<String, Object> entry : this.pendingChunkTableDrops.entrySet()) {
+            if (entry.getKey().startsWith(namespace + "." + getTombstoneTableNamePrefix())
+                    && this.pendingChunkTableDrops.remove(entry.getKey(), entry.getValue())) {
+                synchronized (entry.getValue()) {
+                    logger.debug("cancelled pending drop of {}", entry.getKey());
+                }
+            }
+        }
         dropNamespace(namespace);
+        invalidateChunkCatalog(namespace);
+        this.zoneMapChunkTables.remove(namespace);
+        this.namespaceChunkQueryPermits.remove(namespace);
+    }
+
+    /**
+     * Stop the background maintenance and the chunk query and chunk table drop threads of this instance; queries
+     * issued after closing fail. Chunk table drops already queued are completed; later ones run on the caller thread.
+     */
+    @Override
+    public void close() {
+        this.maintenanceExecutor.shutdownNow();
+        this.chunkQueryExecutor.shutdown();
+        this.chunkTableDropExecutor.shutdown();
     }
 
     @Override
@@ -59,8 +226,55 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                            final boolean includePayloads,
                            final boolean ascending,
                            final int limit) throws IOException {
+        return get(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery,
+                includePayloads,
+                ascending,
+                limit,
+                null,
+                null
+        );
+    }
+
+    @Override
+    public List<Event> get(final String namespace,
+                           final long startTimestampMillis,
+                           final long endTimestampMillis,
+                           final Map<String, String> metadataQuery,
+                           final Map<String, String> dimensionsQuery,
+                           final boolean includePayloads,
+                           final boolean ascending,
+                           final int limit,
+                           final Set<String> metadataKeys,
+                           final Set<String> dimensionKeys) throws IOException {
         checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
         return doGet(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                nullToEmpty(metadataQuery),
+                nullToEmpty(dimensionsQuery),
+                includePayloads,
+                ascending,
+                limit,
+                metadataKeys,
+                dimensionKeys
+        );
+    }
+
+    @Override
+    public EventBatch getBatch(final String namespace,
+                               final long startTimestampMillis,
+                               final long endTimestampMillis,
+                               final Map<String, String> metadataQuery,
+                               final Map<String, String> dimensionsQuery,
+                               final boolean includePayloads,
+                               final boolean ascending,
+                               final int limit) throws IOException {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return doGetBatch(namespace,
                 startTimestampMillis,
                 endTimestampMillis,
                 nullToEmpty(metadataQuery),
@@ -71,6 +285,25 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
         );
     }
 
+    @Override
+    public EventCursor scan(final String namespace,
+                            final long startTimestampMillis,
+                            final long endTimestampMillis,
+                            final Map<String, String> metadataQuery,
+                            final Map<String, String> dimensionsQuery,
+                            final boolean includePayloads,
+                            final boolean ascending) throws IOException {
+        checkScan(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return doScan(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                nullToEmpty(metadataQuery),
+                nullToEmpty(dimensionsQuery),
+                includePayloads,
+                ascending
+        );
+    }
+
     @Override
     public Set<String> metadata(final String namespace,
                                 final String metadataKey,
@@ -94,6 +327,29 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
         );
     }
 
+    @Override
+    public Map<String, Long> count(final String namespace,
+                                   final String metadataKey,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery) throws IOException {
+        checkCount(namespace,
+                metadataKey,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery
+        );
+        return doCount(namespace,
+                metadataKey,
+                startTimestampMillis,
+                endTimestampMillis,
+                nullToEmpty(metadataQuery),
+                nullToEmpty(dimensionsQuery)
+        );
+    }
+
     @Override
     public List<Event> dimension(String namespace,
                                  String dimensionKey,
@@ -117,10 +373,61 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
         );
     }
 
+    @Override
+    public Map<Long, Double> aggregate(final String namespace,
+                                       final String dimensionKey,
+                                       final long startTimestampMillis,
+                                       final long endTimestampMillis,
+                                       final long bucketMillis,
+                                       final AggregationFunction function,
+                                       final Map<String, String> metadataQuery,
+                                       final Map<String, String> dimensionsQuery) throws IOException {
+        checkAggregate(namespace,
+                dimensionKey,
+                startTimestampMillis,
+                endTimestampMillis,
+                bucketMillis,
+                function,
+                metadataQuery,
+                dimensionsQuery
+        );
+        return doAggregate(namespace,
+                dimensionKey,
+                startTimestampMillis,
+                endTimestampMillis,
+                bucketMillis,
+                function,
+                nullToEmpty(metadataQuery),
+                nullToEmpty(dimensionsQuery)
+        );
+    }
+
+    @Override
+    public int delete(final String namespace,
+                      final long startTimestampMillis,
+                      final long endTimestampMillis,
+                      final Map<String, String> metadataQuery,
+                      final Map<String, String> dimensionsQuery) throws IOException {
+        checkDelete(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery
+        );
+        return doDelete(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                nullToEmpty(metadataQuery),
+                nullToEmpty(dimensionsQuery)
+        );
+    }
+
     @Override
     public void expire(final String namespace, final long endTimestampMillis) throws IOException {
         checkExpire(namespace, endTimestampMillis);
         doExpire(namespace, endTimestampMillis);
+        // rollups are aged out on their own retention, not with the events
+        expireRollups(namespace);
     }
 
     @Override
@@ -144,6 +451,8 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
             // for each namespace make sure tables in database and lookup table match
             for (final String namespace : getNamespaces()) {
                 logger.info("verifying namespace '{}'", namespace);
+                // always verify against the latest state of the lookup table
+                invalidateChunkCatalog(namespace);
                 // get the list of all tables in the database
                 final List<String> tablesInDatabase = getTablesInDatabase(connection, namespace);
                 // get the list of tables in the lookup table
@@ -171,13 +480,24 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                         // ignore chunk lookup and tables that do not start with the chunk table name prefix
                         continue;
                     }
-                    // could not find the table in the lookup table; remove it from the database
+                    if (databaseTable.startsWith(getTombstoneTableNamePrefix()) && !isAbandonedTombstoneTable(databaseTable)) {
+                        // tombstones, and empty tables swapped in for truncated chunk tables, may belong to an expire
+                        // or delete in flight in another process; they are only dropped once left behind for long
+                        logger.info("skipping recent tombstone table '{}' in namespace '{}'", databaseTable, namespace);
+                        continue;
+                    }
+                    // could not find the table in the lookup table, e.g., an expired chunk table the process did not get
+                    // to drop before it stopped; remove it from the database
                     logger.warn("table '{}' in namespace '{}' exists in database but not in lookup table", databaseTable, namespace);
                     dropTable(connection, namespace, databaseTable);
                 }
             }
         } finally {
             closeConnection(connection);
+            // lookup tables may have been modified
+            for (final String namespace : this.chunkCatalogVersions.keySet()) {
+                invalidateChunkCatalog(namespace);
+            }
         }
     }
 
@@ -189,11 +509,18 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                                                      Map<String, Double> dimensions
     );
 
+    protected abstract String getCreateRollupTableSql(String rollupTableName,
+                                                      String namespace,
+                                                      Collection<String> metadataKeys
+    );
+
     private void createChunkTable(final Connection connection,
                                   final String namespace,
+                                  final long windowSizeMillis,
                                   final Event sampleEvent) throws IOException {
 
         final String chunkTableName = getChunkTableName(
+                windowSizeMillis,
                 sampleEvent.getTimestampMillis(),
                 sampleEvent.getMetadata().keySet(),
                 sampleEvent.getDimensions().keySet()
@@ -207,7 +534,9 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
         executeUpdate(connection, sql);
 
         // add chunk table description to lookup table
-        addChunkToLookupTable(connection, namespace, chunkTableName, sampleEvent);
+        final long chunkStartTimestampMillis = getWindowForTimestamp(windowSizeMillis, sampleEvent.getTimestampMillis());
+        addChunkToLookupTable(connection, namespace, chunkStartTimestampMillis, chunkTableName, sampleEvent);
+        invalidateChunkCatalog(namespace);
     }
 
     private void removeChunkFromLookupTable(final Connection connection,
@@ -220,10 +549,12 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                 quote(getTableNameColumnName())
         );
         executeUpdate(connection, deleteChunkLookupSql, chunkTableName);
+        getZoneMapChunkTables(namespace).remove(chunkTableName);
     }
 
     private void addChunkToLookupTable(final Connection connection,
                                        final String namespace,
+                                       final long chunkStartTimestampMillis,
                                        final String chunkTableName,
                                        final Event event) throws IOException {
         logger.info("adding chunk '{}' to lookup table for namespace '{}'", chunkTableName, namespace);
@@ -237,9 +568,25 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                 ),
                 chunkTableName,
                 "",  // nothing for first column name
-                getWindowForTimestamp(event.getTimestampMillis()),
+                chunkStartTimestampMillis,
+                chunkTableName
+        );
+        // chunk tables created with a zone map entry have statistics of all events stored in them; concurrent
+        // creators of the same chunk table both write the entry
+        executeUpdate(connection,
+                String.format("INSERT INTO %s SET %s = ?, %s = ?, %s = ? ON DUPLICATE KEY UPDATE %s = ?",
+                        getTableFullName(namespace, getChunksLookupTableName()),
+                        quote(getTableNameColumnName()),
+                        quote(getColumnColumnName()),
+                        quote(getStartTimestampMillisColumnName()),
+                        quote(getTableNameColumnName())
+                ),
+                chunkTableName,
+                getZoneMapColumnName(),
+                chunkStartTimestampMillis,
                 chunkTableName
         );
+        getZoneMapChunkTables(namespace).add(chunkTableName);
         final String sql = String.format("INSERT INTO %s SET %s = ?, %s = ?, %s = ?, %s = ? " +
                         "ON DUPLICATE KEY UPDATE %s = ?",
                 getTableFullName(namespace, getChunksLookupTableName()),
@@ -255,7 +602,7 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                     chunkTableName,
                     metadataKey,
                     getMetadataKeyColumnName(metadataKey),
-                    getWindowForTimestamp(event.getTimestampMillis()),
+                    chunkStartTimestampMillis,
                     chunkTableName
             );
         }
@@ -265,19 +612,23 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                     chunkTableName,
                     dimensionKey,
                     getDimensionKeyColumnName(dimensionKey),
-                    getWindowForTimestamp(event.getTimestampMillis()),
+                    chunkStartTimestampMillis,
                     chunkTableName
             );
         }
     }
 
+    // the database of a namespace is a schema in the information schema of both mysql and h2; h2 does not list it
+    // as a catalog in the jdbc metadata, as mysql does, and stores its name in upper case
     private List<String> getTablesInDatabase(final Connection connection, final String namespace) throws IOException {
         final List<String> tables = new ArrayList<>();
-        try {
-            final DatabaseMetaData databaseMetaData = connection.getMetaData();
-            final ResultSet resultSet = databaseMetaData.getTables(getDatabaseNameForNamespace(namespace), null, "%", null);
-            while (resultSet.next()) {
-                tables.add(resultSet.getString(3)); // third column is the table name
+        final String sql = "SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE UPPER(TABLE_SCHEMA) = UPPER(?)";
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            addParameters(preparedStatement, getDatabaseNameForNamespace(namespace));
+            try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    tables.add(resultSet.getString(1));
+                }
             }
         } catch (SQLException e) {
             logger.warn("failed to fetch list of tables in database");
@@ -290,67 +641,155 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
     // e.g., "M_HOST" -> "Host"
     private Map<String, String> getColumnNameToKeyNameMap(final String namespace,
                                                           final String chunkTableName) throws IOException {
-        final String sql = String.format("SELECT %s, %s FROM %s WHERE %s IS NOT NULL AND %s = ? ",
-                quote(getColumnColumnName()),
-                quote(getKeyColumnName()),
-                getTableFullName(namespace, getChunksLookupTableName()),
-                quote(getKeyColumnName()),
-                quote(getTableNameColumnName())
-        );
-        final Map<String, String> results = new HashMap<>();
-        try (final Connection connection = getConnection()) {
-            try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
-                preparedStatement.setString(1, chunkTableName);
-                try (final ResultSet resultSet = preparedStatement.executeQuery()) {
-                    while (resultSet.next()) {
-                        results.put(resultSet.getString(1), resultSet.getString(2));
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
-            throw new IOException(e);
+        Map<String, String> columns = getChunkCatalog(namespace).columns.get(chunkTableName);
+        if (columns == null) {
+            // chunk table may have been created after the catalog was loaded
+            invalidateChunkCatalog(namespace);
+            columns = getChunkCatalog(namespace).columns.get(chunkTableName);
         }
-        return results;
+        return columns != null ? columns : Collections.emptyMap();
     }
 
     private void doExpire(final String namespace, final long endTimestampMillis) throws IOException {
+        final long windowSizeMillis = getWindowSizeMillis(namespace);
         // the timestamp of the last event to keep must be larger than the window size
-        if (endTimestampMillis < getWindowSizeMillis()) {
+        if (endTimestampMillis < windowSizeMillis) {
             logger.info("expiring end timestamp is smaller than the window size; ignoring.");
             return;
         }
 
         // find the last window before the end timestamp
-        final long windowFloorEndTimestamp = getWindowForTimestamp(endTimestampMillis - getWindowSizeMillis() + 1);
-        final List<String> chunkTables = getChunkTableNames(
-                namespace,
-                0,
-                windowFloorEndTimestamp,
-                Collections.emptyList(),
-                Collections.emptyList()
-        );
-        for (final String chunkTable : chunkTables) {
-            doExpireChunkTable(namespace, chunkTable);
+        final long windowFloorEndTimestamp = getWindowForTimestamp(windowSizeMillis, endTimestampMillis - windowSizeMillis + 1);
+        final ChunkCatalog catalog = getChunkCatalog(namespace);
+        final List<String> chunkTables = new ArrayList<>();
+        for (final String chunkTable : getChunkTableNames(namespace, 0, windowFloorEndTimestamp, Collections.emptyList(), Collections.emptyList())) {
+            // chunk tables of the window following the last expired window are included in the lookup; keep them
+            final Long chunkStartTimestamp = catalog.startTimestamps.get(chunkTable);
+            if (chunkStartTimestamp != null && chunkStartTimestamp <= windowFloorEndTimestamp) {
+                chunkTables.add(chunkTable);
+            }
+        }
+        if (chunkTables.isEmpty()) {
+            return;
+        }
+        logger.info("expiring {} chunk tables from namespace {}", chunkTables.size(), namespace);
+
+        // removing chunk tables from the lookup table is what makes their events invisible, so that is done before
+        // returning, in batches; the tables are then renamed to unique tombstone names right away, so a chunk table
+        // created again under the same name, by this or another process, is never the one dropped; tombstones are
+        // dropped in the background, and if the process dies before they are, they are not in the lookup table and
+        // are dropped on the next start by doValidations
+        final int batchSize = getMaxChunkTablesPerLookupDelete();
+        for (int from = 0; from < chunkTables.size(); from += batchSize) {
+            final List<String> batch = chunkTables.subList(from, Math.min(chunkTables.size(), from + batchSize));
+            Connection connection = null;
+            try {
+                connection = openTransaction(getConnection());
+                removeChunksFromLookupTable(connection, namespace, batch);
+            } finally {
+                closeConnection(connection);
+                invalidateChunkCatalog(namespace);
+            }
+            for (final String chunkTable : batch) {
+                tombstoneChunkTable(namespace, chunkTable);
+            }
         }
     }
 
-    private void doExpireChunkTable(final String namespace, final String chunkTable) throws IOException {
-        logger.info("expiring chunk table {} from namespace {}", chunkTable, namespace);
+    // max number of chunk tables removed from the lookup table in one statement when expiring
+    protected int getMaxChunkTablesPerLookupDelete() {
+        return 1000;
+    }
 
-        // drop the chunk table and delete lookup entries in a transaction
-        Connection connection = null;
+    // max number of chunk tables dropped concurrently by expiration
+    protected int getMaxConcurrentChunkTableDrops() {
+        return 4;
+    }
+
+    public long getChunkTablesExpiredCount() {
+        return this.chunkTablesExpired.get();
+    }
+
+    // number of expired chunk tables removed from the lookup table but not dropped yet
+    public int getPendingChunkTableDropsCount() {
+        return this.pendingChunkTableDrops.size();
+    }
+
+    private void removeChunksFromLookupTable(final Connection connection,
+                                             final String namespace,
+                                             final List<String> chunkTableNames) throws IOException {
+        final String sql = String.format("DELETE FROM %s WHERE %s IN (%s)",
+                getTableFullName(namespace, getChunksLookupTableName()),
+                quote(getTableNameColumnName()),
+                getPlaceholders(chunkTableNames.size())
+        );
+        executeUpdate(connection, sql, chunkTableNames.toArray());
+        getZoneMapChunkTables(namespace).removeAll(chunkTableNames);
+    }
+
+    // renames the expired chunk table to a tombstone table and schedules the tombstone to be dropped
+    private void tombstoneChunkTable(final String namespace, final String chunkTableName) {
+        final String tombstoneTableName = getNewTombstoneTableName();
         try {
-            // open a transaction
-            connection = openTransaction(getConnection());
+            executeUpdate(getRenameTableSql(namespace, chunkTableName, tombstoneTableName));
+        } catch (IOException e) {
+            // the table may be gone already; otherwise it is not in the lookup table anymore and is dropped here or by
+            // doValidations
+            logger.warn("failed to rename expired chunk table {}.{}; dropping it instead", namespace, chunkTableName, e);
+            try {
+                executeUpdate(String.format("DROP TABLE IF EXISTS %s", getTableFullName(namespace, chunkTableName)));
+                this.chunkTablesExpired.incrementAndGet();
+            } catch (IOException dropException) {
+                logger.warn("failed to drop expired chunk table {}.{}", namespace, chunkTableName, dropException);
+            }
+            return;
+        }
+        scheduleTombstoneTableDrop(namespace, tombstoneTableName, true);
+    }
 
-            // delete chunk table from lookup table
-            removeChunkFromLookupTable(connection, namespace, chunkTable);
+    // tombstones of expired chunk tables are counted as expired once dropped; the others hold rows of truncated ones
+    private void scheduleTombstoneTableDrop(final String namespace, final String tombstoneTableName, final boolean expired) {
+        final String key = namespace + "." + tombstoneTableName;
+        final Object pending = new Object();
+        this.pendingChunkTableDrops.put(key, pending);
+        final Runnable drop = () -> {
+            try {
+                dropPendingTombstoneTable(namespace, tombstoneTableName, expired, pending);
+            } catch (Exception e) {
+                // the tombstone is not in the lookup table; it will be dropped by doValidations
+                logger.warn("failed to drop tombstone table {}.{}", namespace, tombstoneTableName, e);
+            }
+        };
+        try {
+            this.chunkTableDropExecutor.execute(drop);
+        } catch (RejectedExecutionException e) {
+            // the instance is closed; drop on the caller thread
+            drop.run();
+        }
+    }
 
-            // remove chunk table name from lookup table
-            dropTable(connection, namespace, chunkTable);
-        } finally {
-            closeConnection(connection);
+    // drops the tombstone table unless the drop was cancelled by dropping the namespace
+    private void dropPendingTombstoneTable(final String namespace,
+                                           final String tombstoneTableName,
+                                           final boolean expired,
+                                           final Object pending) throws IOException {
+        final String key = namespace + "." + tombstoneTableName;
+        synchronized (pending) {
+            if (this.pendingChunkTableDrops.get(key) != pending) {
+                return;
+            }
+            try {
+                executeUpdate(String.format("DROP TABLE IF EXISTS %s", getTableFullName(namespace, tombstoneTableName)));
+            } finally {
+                this.pendingChunkTableDrops.remove(key, pending);
+            }
+            if (!expired) {
+                return;
+            }
+            final long expiredCount = this.chunkTablesExpired.incrementAndGet();
+            if (expiredCount % 100 == 0 || this.pendingChunkTableDrops.isEmpty()) {
+                logger.info("dropped {} expired chunk tables so far, {} pending", expiredCount, this.pendingChunkTableDrops.size());
+            }
         }
     }
 
@@ -359,45 +798,282 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
     }
 
     private void doStore(final String namespace, final Collection<Event> batch) throws IOException {
-        // convert to a map of chunk table name to batches of parameters to be passed to jdbc batch calls
-        final Map<String, Collection<Object[]>> chunkTableToParameters = toChunkTableBatchParameters(batch);
+        final long windowSizeMillis = getWindowSizeMillis(namespace);
+
+        // convert to a map of chunk table name to rows of parameters to be inserted
+        final Map<String, Collection<Object[]>> chunkTableToParameters = toChunkTableBatchParameters(windowSizeMillis, batch);
+
+        // convert to a map of chunk table name to the insert sql prefix, i.e., everything before the values
+        final Map<String, String> chunkTableToInsertSqls = toChunkTableInsertSqls(namespace, windowSizeMillis, batch);
 
-        // convert to a map of chunk table name to insert sqls
-        final Map<String, String> chunkTableToInsertSqls = toChunkTableInsertSqls(namespace, batch);
+        // convert to map of chunk table name to a sample event; used to create missing chunk tables
+        final Map<String, Event> chunkTableToCreateParameters = toChunkTableCreateParameters(windowSizeMillis, batch);
+
+        // make sure all chunk tables exist before inserting
+        for (final Map.Entry<String, Event> entry : chunkTableToCreateParameters.entrySet()) {
+            createChunkTableIfNotExists(namespace, windowSizeMillis, entry.getKey(), entry.getValue());
+        }
+
+        try {
+            insertBatch(namespace, windowSizeMillis, batch, chunkTableToParameters, chunkTableToInsertSqls);
+        } catch (IOException e) {
+            // the cached catalog may be stale, e.g., chunks expired by another process; if chunk tables of the batch
+            // are indeed gone, create them and try once more
+            invalidateChunkCatalog(namespace);
+            if (getChunkCatalog(namespace).startTimestamps.keySet().containsAll(chunkTableToCreateParameters.keySet())) {
+                throw e;
+            }
+            logger.info("chunk tables of batch missing in namespace '{}'; creating them and retrying", namespace);
+            for (final Map.Entry<String, Event> entry : chunkTableToCreateParameters.entrySet()) {
+                createChunkTableIfNotExists(namespace, windowSizeMillis, entry.getKey(), entry.getValue());
+            }
+            insertBatch(namespace, windowSizeMillis, batch, chunkTableToParameters, chunkTableToInsertSqls);
+        }
+    }
 
-        // convert to map of chunk table name to create table sqls; used if write fails
-        final Map<String, Event> chunkTableToCreateParameters = toChunkTableCreateParameters(batch);
+    // inserts the events and their rollup rows and zone map statistics in a single transaction
+    private void insertBatch(final String namespace,
+                             final long windowSizeMillis,
+                             final Collection<Event> batch,
+                             final Map<String, Collection<Object[]>> chunkTableToParameters,
+                             final Map<String, String> chunkTableToInsertSqls) throws IOException {
+        // statistics of every batch are written, since the lookup table may hold narrower statistics than any
+        // this instance wrote, e.g., when another process expired the chunk table and created it again
+        final Map<String, Map<String, Long>> chunkTableToStatsToPersist = toChunkTableZoneMapStats(windowSizeMillis, batch);
+        // chunk tables created before zone maps were introduced are never pruned
+        chunkTableToStatsToPersist.keySet().retainAll(getZoneMapChunkTables(namespace));
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                insertBatchOnce(namespace, batch, chunkTableToParameters, chunkTableToInsertSqls, chunkTableToStatsToPersist);
+                return;
+            } catch (IOException e) {
+                // concurrent writers of the same chunk tables may deadlock on the lookup table; the database rolls
+                // back one of the transactions, which is then retried as a whole
+                final boolean rolledBack = e.getCause() instanceof SQLException
+                        && String.valueOf(((SQLException) e.getCause()).getSQLState()).startsWith("40");
+                if (!rolledBack || attempt >= maxBatchTransactionAttempts) {
+                    throw e;
+                }
+                logger.debug("batch transaction rolled back, retrying: {}", e.getCause().getMessage());
+                // a random wait keeps the writers that deadlocked from colliding again right away
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(1, Math.min(maxBatchTransactionBackoffMillis, 10L << attempt)));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
 
+    private void insertBatchOnce(final String namespace,
+                                 final Collection<Event> batch,
+                                 final Map<String, Collection<Object[]>> chunkTableToParameters,
+                                 final Map<String, String> chunkTableToInsertSqls,
+                                 final Map<String, Map<String, Long>> chunkTableToStatsToPersist) throws IOException {
         // open a transaction and try to insert all or rollback; partial success is not allowed
+        final Lock rollupLock = getRollupLock(namespace).readLock();
+        rollupLock.lock();
         Connection connection = null;
         try {
             connection = openTransaction(getConnection());
+            // statistics go first, so that events are never committed without them
+            persistZoneMapStats(connection, namespace, chunkTableToStatsToPersist);
             for (final Map.Entry<String, Collection<Object[]>> entry : chunkTableToParameters.entrySet()) {
-                final String insertSql = chunkTableToInsertSqls.get(entry.getKey());
-                // execute batch insert for each chunk table; create chunk table if write fails and retry again.
-                try {
-                    executeBatchUpdate(connection, insertSql, entry.getValue());
-                } catch (IOException e) {
-                    // try to create a the chunk table and retry insert
-                    final Event sampleEvent = chunkTableToCreateParameters.get(entry.getKey());
-                    createChunkTable(connection, namespace, sampleEvent);
+                final String chunkTableName = entry.getKey();
+                final String insertSql = chunkTableToInsertSqls.get(chunkTableName);
+                final List<Object[]> rows = new ArrayList<>(entry.getValue());
+                final int columnCount = rows.get(0).length;
+                // all rows of a chunk table have the same columns; stay below the limit on parameters per statement
+                final int rowsPerInsert = Math.max(1, Math.min(getMaxRowsPerInsert(), maxParametersPerInsert / columnCount));
+                for (int from = 0; from < rows.size(); from += rowsPerInsert) {
+                    final List<Object[]> insertRows = rows.subList(from, Math.min(rows.size(), from + rowsPerInsert));
+                    executeMultiRowInsert(connection, chunkTableName, insertSql, insertRows);
+                }
+            }
+            // rollups are updated in the same transaction as the events; the rollups are read from the lookup table
+            // rather than the chunk catalog, so rollups created by other processes are never missed
+            for (final Rollup rollup : loadRollups(connection, namespace).values()) {
+                insertRollupRows(connection, namespace, rollup, toRollupRows(rollup, batch));
+            }
+        } catch (IOException e) {
+            // nothing of the batch is committed
+            rollbackTransaction(connection);
+            throw e;
+        } finally {
+            try {
+                closeConnection(connection);
+            } finally {
+                rollupLock.unlock();
+            }
+        }
+    }
 
-                    executeBatchUpdate(connection, insertSql, entry.getValue());
+    // creates the chunk table unless the chunk catalog already knows about it; concurrent callers for the same
+    // chunk table wait for the first one to finish instead of all issuing the create statements
+    private void createChunkTableIfNotExists(final String namespace,
+                                             final long windowSizeMillis,
+                                             final String chunkTableName,
+                                             final Event sampleEvent) throws IOException {
+        if (getChunkCatalog(namespace).startTimestamps.containsKey(chunkTableName)) {
+            return;
+        }
+        final String lockKey = namespace + "." + chunkTableName;
+        final Object lock = this.chunkCreationLocks.computeIfAbsent(lockKey, k -> new Object());
+        try {
+            synchronized (lock) {
+                // another thread may have created the chunk table while waiting
+                if (getChunkCatalog(namespace).startTimestamps.containsKey(chunkTableName)) {
+                    return;
+                }
+                Connection connection = null;
+                try {
+                    connection = openTransaction(getConnection());
+                    createChunkTable(connection, namespace, windowSizeMillis, sampleEvent);
+                } finally {
+                    closeConnection(connection);
+                    // readers may have loaded the lookup table before the transaction was committed
+                    invalidateChunkCatalog(namespace);
                 }
+                this.chunkTablesCreated.incrementAndGet();
             }
         } finally {
-            closeConnection(connection);
+            this.chunkCreationLocks.remove(lockKey, lock);
+        }
+    }
+
+    /**
+     * Create chunk tables for the window following the current one, for every combination of metadata and dimension
+     * keys that has events stored in the current window; chunk tables that were themselves pre-created and never
+     * written to are not carried forward. Called periodically ahead of the window rollover so that writers do not all
+     * have to create chunk tables at the start of a new window.
+     *
+     * @param namespace the namespace identifier
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    public void preCreateNextChunkTables(final String namespace) throws IOException {
+        checkNamespace(namespace);
+        final ChunkCatalog catalog = getChunkCatalog(namespace);
+        final long windowSizeMillis = catalog.windowSizeMillis;
+        final long currentWindowMillis = getWindowForTimestamp(windowSizeMillis, System.currentTimeMillis());
+        final long nextWindowMillis = currentWindowMillis + windowSizeMillis;
+        final List<String> currentChunkTables = new ArrayList<>();
+        for (final Map.Entry<String, Long> entry : catalog.startTimestamps.entrySet()) {
+            if (entry.getValue() == currentWindowMillis) {
+                currentChunkTables.add(entry.getKey());
+            }
+        }
+        if (currentChunkTables.isEmpty()) {
+            return;
+        }
+        final Map<String, Map<String, Long>> stats = loadZoneMapStats(namespace, currentChunkTables);
+        final String minTimestampStat = ZoneMap.minStat(getEventTimestampColumnName());
+        for (final String chunkTableName : currentChunkTables) {
+            // a zone map without timestamps means no events were stored; chunk tables without one are kept
+            final Map<String, Long> chunkStats = stats.get(chunkTableName);
+            if (chunkStats != null && !chunkStats.containsKey(minTimestampStat)) {
+                continue;
+            }
+            // rebuild the key sets of the chunk from the catalog columns
+            final Map<String, String> metadata = new HashMap<>();
+            final Map<String, Double> dimensions = new HashMap<>();
+            for (final Map.Entry<String, String> column : catalog.columns.get(chunkTableName).entrySet()) {
+                if (column.getKey().startsWith(getMetadataKeyColumnNamePrefix())) {
+                    metadata.put(column.getValue(), "");
+                } else if (column.getKey().startsWith(getDimensionKeyColumnNamePrefix())) {
+                    dimensions.put(column.getValue(), 0.0);
+                }
+            }
+            final String nextChunkTableName = getChunkTableName(windowSizeMillis, nextWindowMillis, metadata.keySet(), dimensions.keySet());
+            createChunkTableIfNotExists(namespace,
+                    windowSizeMillis,
+                    nextChunkTableName,
+                    new Event(nextWindowMillis, metadata, dimensions)
+            );
         }
     }
 
-    private Map<String, Event> toChunkTableCreateParameters(final Collection<Event> batch) {
+    // pre-creates next window chunk tables for namespaces close to their window rollover
+    private void preCreateChunkTables() {
+        final long leadMillis = getChunkPreCreationLeadMillis();
+        if (leadMillis <= 0) {
+            return;
+        }
+        try {
+            for (final String namespace : getNamespaces()) {
+                try {
+                    final long windowSizeMillis = getWindowSizeMillis(namespace);
+                    final long now = System.currentTimeMillis();
+                    if (now + leadMillis >= getWindowForTimestamp(windowSizeMillis, now) + windowSizeMillis) {
+                        preCreateNextChunkTables(namespace);
+                    }
+                } catch (Exception e) {
+                    logger.warn("failed to pre-create chunk tables for namespace '{}': {}", namespace, e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("failed to pre-create chunk tables", e);
+        }
+    }
+
+    // how long before the end of the current window to create chunk tables of the next window; zero disables it
+    protected long getChunkPreCreationLeadMillis() {
+        return TimeUnit.MINUTES.toMillis(10);
+    }
+
+    public long getChunkTablesCreatedCount() {
+        return this.chunkTablesCreated.get();
+    }
+
+    // inserts all rows with a single 'INSERT INTO ... VALUES (...), (...), ...' statement
+    private void executeMultiRowInsert(final Connection connection,
+                                       final String chunkTableName,
+                                       final String insertSql,
+                                       final List<Object[]> rows) throws IOException {
+        final String rowPlaceholders = "(" + getPlaceholders(rows.get(0).length) + ")";
+        final StringBuilder sqlBuilder = new StringBuilder(insertSql);
+        final List<Object> parameters = new ArrayList<>();
+        for (final Object[] row : rows) {
+            if (!parameters.isEmpty()) {
+                sqlBuilder.append(",");
+            }
+            sqlBuilder.append(rowPlaceholders);
+            parameters.addAll(Arrays.asList(row));
+        }
+        final long startNanos = System.nanoTime();
+        executeUpdate(connection, sqlBuilder.toString(), parameters.toArray());
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        this.insertStatements.incrementAndGet();
+        this.insertedRows.addAndGet(rows.size());
+        this.insertMillis.addAndGet(elapsedMillis);
+        logger.debug("inserted {} rows into chunk table '{}' in {}ms", rows.size(), chunkTableName, elapsedMillis);
+    }
+
+    // maximum number of rows inserted with a single statement
+    protected int getMaxRowsPerInsert() {
+        return 1000;
+    }
+
+    public long getInsertStatementCount() {
+        return this.insertStatements.get();
+    }
+
+    public long getInsertedRowCount() {
+        return this.insertedRows.get();
+    }
+
+    public long getInsertStatementTotalMillis() {
+        return this.insertMillis.get();
+    }
+
+    private Map<String, Event> toChunkTableCreateParameters(final long windowSizeMillis, final Collection<Event> batch) {
         final Map<String, Event> chunkTableCreateParameters = new HashMap<>();
         for (final Event event : batch) {
             final long timestampMillis = event.getTimestampMillis();
             final Map<String, String> metadata = event.getMetadata();
             final Map<String, Double> dimensions = event.getDimensions();
 
-            final String chunkTableName = getChunkTableName(timestampMillis, metadata.keySet(), dimensions.keySet());
+            final String chunkTableName = getChunkTableName(windowSizeMillis, timestampMillis, metadata.keySet(), dimensions.keySet());
             if (chunkTableCreateParameters.containsKey(chunkTableName)) {
                 continue;
             }
@@ -406,28 +1082,235 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
         return chunkTableCreateParameters;
     }
 
-    private Map<String, String> toChunkTableInsertSqls(final String namespace, final Collection<Event> batch) {
-        final Map<String, String> chunkTableInsertSqls = new HashMap<>();
+    // zone map statistics of the events of the batch, per chunk table
+    private Map<String, Map<String, Long>> toChunkTableZoneMapStats(final long windowSizeMillis, final Collection<Event> batch) {
+        final Map<String, Map<String, Long>> chunkTableStats = new HashMap<>();
         for (final Event event : batch) {
-            final long timestampMillis = event.getTimestampMillis();
             final Map<String, String> metadata = event.getMetadata();
             final Map<String, Double> dimensions = event.getDimensions();
-
-            final String chunkTableName = getChunkTableName(timestampMillis, metadata.keySet(), dimensions.keySet());
+            final String chunkTableName = getChunkTableName(windowSizeMillis, event.getTimestampMillis(), metadata.keySet(), dimensions.keySet());
+            final Map<String, Long> stats = chunkTableStats.computeIfAbsent(chunkTableName, k -> new HashMap<>());
+            final String timestampColumn = getEventTimestampColumnName();
+            mergeZoneMapStat(stats, ZoneMap.minStat(timestampColumn), event.getTimestampMillis());
+            mergeZoneMapStat(stats, ZoneMap.maxStat(timestampColumn), event.getTimestampMillis());
+            for (final Map.Entry<String, Double> dimension : dimensions.entrySet()) {
+                final String column = getDimensionKeyColumnName(dimension.getKey());
+                final long value = ZoneMap.toSortableLong(dimension.getValue());
+                mergeZoneMapStat(stats, ZoneMap.minStat(column), value);
+                mergeZoneMapStat(stats, ZoneMap.maxStat(column), value);
+            }
+            for (final Map.Entry<String, String> entry : metadata.entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                final String column = getMetadataKeyColumnName(entry.getKey());
+                final int[] bits = ZoneMap.getBloomBits(entry.getValue());
+                for (final int bit : bits) {
+                    mergeZoneMapStat(stats, ZoneMap.bloomStat(column, bit / ZoneMap.bitsPerBloomWord), 1L << (bit % ZoneMap.bitsPerBloomWord));
+                }
+            }
+        }
+        return chunkTableStats;
+    }
+
+    private static void mergeZoneMapStat(final Map<String, Long> stats, final String stat, final long value) {
+        stats.merge(stat, value, (current, added) -> ZoneMap.merge(stat, current, added));
+    }
+
+    // widens the statistics rows of the chunk tables in the lookup table; each statistic is inserted or merged into
+    // the existing row by the database in one statement, so concurrent writers never overwrite or collide with each
+    // other's statistics
+    private void persistZoneMapStats(final Connection connection,
+                                     final String namespace,
+                                     final Map<String, Map<String, Long>> chunkTableToStats) throws IOException {
+        final List<Object[]> minParameters = new ArrayList<>();
+        final List<Object[]> maxParameters = new ArrayList<>();
+        final List<Object[]> bloomParameters = new ArrayList<>();
+        // rows are written in the same order by every writer, so concurrent transactions do not deadlock
+        for (final Map.Entry<String, Map<String, Long>> chunkEntry : new TreeMap<>(chunkTableToStats).entrySet()) {
+            for (final Map.Entry<String, Long> entry : new TreeMap<>(chunkEntry.getValue()).entrySet()) {
+                final String stat = entry.getKey();
+                final Object[] parameters = {chunkEntry.getKey(), getZoneMapColumnName() + ":" + stat, entry.getValue()};
+                if (ZoneMap.isMinStat(stat)) {
+                    minParameters.add(parameters);
+                } else if (ZoneMap.isMaxStat(stat)) {
+                    maxParameters.add(parameters);
+                } else {
+                    bloomParameters.add(parameters);
+                }
+            }
+        }
+        if (!minParameters.isEmpty()) {
+            executeUpsertBatch(connection, getSql(namespace, "upsertZoneMapMin", () ->
+                    getUpsertZoneMapStatSql(namespace, (current, added) -> String.format("LEAST(%s, %s)", current, added))
+            ), minParameters);
+        }
+        if (!maxParameters.isEmpty()) {
+            executeUpsertBatch(connection, getSql(namespace, "upsertZoneMapMax", () ->
+                    getUpsertZoneMapStatSql(namespace, (current, added) -> String.format("GREATEST(%s, %s)", current, added))
+            ), maxParameters);
+        }
+        if (!bloomParameters.isEmpty()) {
+            executeUpsertBatch(connection, getSql(namespace, "upsertZoneMapBloom", () ->
+                    getUpsertZoneMapStatSql(namespace, this::getBitwiseOrSql)
+            ), bloomParameters);
+        }
+    }
+
+    // an upsert can collide with a row inserted by a concurrent writer where the engine does not make it atomic, as
+    // h2 merge does not; statistics are merged idempotently, so the batch is simply written again
+    private void executeUpsertBatch(final Connection connection,
+                                    final String sql,
+                                    final Collection<Object[]> batchParameters) throws IOException {
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                executeBatchUpdate(connection, sql, batchParameters);
+                return;
+            } catch (IOException e) {
+                final boolean duplicateKey = e.getCause() instanceof SQLException
+                        && String.valueOf(((SQLException) e.getCause()).getSQLState()).startsWith("23");
+                if (!duplicateKey || attempt >= maxUpsertAttempts) {
+                    throw e;
+                }
+                logger.debug("upsert collided with a concurrent writer, retrying: {}", e.getCause().getMessage());
+            }
+        }
+    }
+
+    private Set<String> getZoneMapChunkTables(final String namespace) {
+        return this.zoneMapChunkTables.computeIfAbsent(namespace, k -> ConcurrentHashMap.newKeySet());
+    }
+
+    // returns false if the zone map statistics of the chunk table show none of its events can match the queries;
+    // a missing statistic never rules a chunk table out
+    private boolean mayMatch(final Map<String, Long> stats,
+                             final long startTimestampMillis,
+                             final long endTimestampMillis,
+                             final Map<String, String> metadataQuery,
+                             final Map<String, String> dimensionsQuery) {
+        final String timestampColumn = getEventTimestampColumnName();
+        final Long minTimestamp = stats.get(ZoneMap.minStat(timestampColumn));
+        final Long maxTimestamp = stats.get(ZoneMap.maxStat(timestampColumn));
+        if (minTimestamp != null && maxTimestamp != null
+                && (maxTimestamp < startTimestampMillis || minTimestamp > endTimestampMillis)) {
+            return false;
+        }
+        for (final Map.Entry<String, String> entry : dimensionsQuery.entrySet()) {
+            final String column = getDimensionKeyColumnName(entry.getKey());
+            final Long min = stats.get(ZoneMap.minStat(column));
+            final Long max = stats.get(ZoneMap.maxStat(column));
+            if (min != null && max != null
+                    && !DimensionPredicate.parse(entry.getValue()).mayMatch(ZoneMap.fromSortableLong(min), ZoneMap.fromSortableLong(max))) {
+                return false;
+            }
+        }
+        for (final Map.Entry<String, String> entry : metadataQuery.entrySet()) {
+            // only exact matches can be checked against the bloom filter; see getMetadataQuerySql
+            final String query = entry.getValue();
+            if (query.startsWith("~") || query.startsWith("!~") || query.startsWith("!=")) {
+                continue;
+            }
+            final String value = query.startsWith("=") ? query.substring(1) : query;
+            final String column = getMetadataKeyColumnName(entry.getKey());
+            for (final int bit : ZoneMap.getBloomBits(value)) {
+                final Long word = stats.get(ZoneMap.bloomStat(column, bit / ZoneMap.bitsPerBloomWord));
+                if (word != null && (word & (1L << (bit % ZoneMap.bitsPerBloomWord))) == 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // reads the zone map statistics of the given chunk tables from the lookup table; chunk tables without a zone map
+    // entry are left out
+    private Map<String, Map<String, Long>> loadZoneMapStats(final String namespace,
+                                                            final List<String> chunkTables) throws IOException {
+        final Map<String, Map<String, Long>> stats = new HashMap<>();
+        final int batchSize = getMaxChunkTablesPerLookupDelete();
+        for (int from = 0; from < chunkTables.size(); from += batchSize) {
+            final List<String> batch = chunkTables.subList(from, Math.min(chunkTables.size(), from + batchSize));
+            final String sql = String.format("SELECT %s, %s, %s FROM %s WHERE %s IN (%s) AND %s LIKE ?",
+                    quote(getTableNameColumnName()),
+                    quote(getColumnColumnName()),
+                    quote(getStartTimestampMillisColumnName()),
+                    getTableFullName(namespace, getChunksLookupTableName()),
+                    quote(getTableNameColumnName()),
+                    getPlaceholders(batch.size()),
+                    quote(getColumnColumnName())
+            );
+            final List<Object> parameters = new ArrayList<>(batch);
+            parameters.add(getZoneMapColumnName() + "%");
+            try (final Connection connection = getConnection()) {
+                try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                    addParameters(preparedStatement, parameters.toArray());
+                    try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            final String columnName = resultSet.getString(2);
+                            if (!columnName.startsWith(getZoneMapColumnName())) {
+                                continue;
+                            }
+                            addZoneMapRow(stats, resultSet.getString(1), columnName, resultSet.getLong(3));
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+                throw new IOException(e);
+            }
+        }
+        return stats;
+    }
+
+    // adds a zone map row of the lookup table to the statistics of its chunk table; the entry row marks the chunk
+    // table as having a zone map and carries no statistic
+    private void addZoneMapRow(final Map<String, Map<String, Long>> stats,
+                               final String chunkTableName,
+                               final String columnName,
+                               final long value) {
+        final Map<String, Long> chunkStats = stats.computeIfAbsent(chunkTableName, k -> new HashMap<>());
+        if (columnName.length() > getZoneMapColumnName().length()) {
+            mergeZoneMapStat(chunkStats, columnName.substring(getZoneMapColumnName().length() + 1), value);
+        }
+    }
+
+    public long getChunkTablesPrunedCount() {
+        return this.chunkTablesPruned.get();
+    }
+
+    private Map<String, String> toChunkTableInsertSqls(final String namespace,
+                                                       final long windowSizeMillis,
+                                                       final Collection<Event> batch) {
+        final Map<String, String> chunkTableInsertSqls = new HashMap<>();
+        for (final Event event : batch) {
+            final long timestampMillis = event.getTimestampMillis();
+            final Map<String, String> metadata = event.getMetadata();
+            final Map<String, Double> dimensions = event.getDimensions();
+
+            final String chunkTableName = getChunkTableName(windowSizeMillis, timestampMillis, metadata.keySet(), dimensions.keySet());
             if (chunkTableInsertSqls.containsKey(chunkTableName)) {
                 continue;
             }
-            chunkTableInsertSqls.put(chunkTableName, getChunkTableInsertSql(namespace, timestampMillis, metadata, dimensions));
+            chunkTableInsertSqls.put(chunkTableName, getChunkTableInsertSql(namespace, chunkTableName, metadata, dimensions));
         }
         return chunkTableInsertSqls;
     }
 
+    // the columns of the insert only depend on the keys, which are part of the chunk table name
     private String getChunkTableInsertSql(final String namespace,
-                                          final long timestampMillis,
+                                          final String chunkTableName,
                                           final Map<String, String> metadata,
                                           final Map<String, Double> dimensions) {
-        final String chunkTableName = getChunkTableName(timestampMillis, metadata.keySet(), dimensions.keySet());
-        final String insertSql = String.format("INSERT INTO %s SET %s = ? ",
+        return getSql(namespace, "insert:" + chunkTableName,
+                () -> doGetChunkTableInsertSql(namespace, chunkTableName, metadata, dimensions)
+        );
+    }
+
+    private String doGetChunkTableInsertSql(final String namespace,
+                                            final String chunkTableName,
+                                            final Map<String, String> metadata,
+                                            final Map<String, Double> dimensions) {
+        final String insertSql = String.format("INSERT INTO %s (%s",
                 getTableFullName(namespace, chunkTableName),
                 quote(getEventTimestampColumnName())
         );
@@ -436,16 +1319,17 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
 
         final StringBuilder builder = new StringBuilder(insertSql);
         for (final String metadataKey : sortedMetadataKeys) {
-            builder.append(",").append(quote(getMetadataKeyColumnName(metadataKey))).append(" = ?");
+            builder.append(", ").append(quote(getMetadataKeyColumnName(metadataKey)));
         }
         for (final String dimensionKey : sortedDimensionKeys) {
-            builder.append(",").append(quote(getDimensionKeyColumnName(dimensionKey))).append(" = ?");
+            builder.append(", ").append(quote(getDimensionKeyColumnName(dimensionKey)));
         }
-        builder.append(", ").append(quote(getPayloadColumnName())).append(" = ?");
+        builder.append(", ").append(quote(getPayloadColumnName())).append(") VALUES ");
         return builder.toString();
     }
 
-    private Map<String, Collection<Object[]>> toChunkTableBatchParameters(final Collection<Event> batch) {
+    private Map<String, Collection<Object[]>> toChunkTableBatchParameters(final long windowSizeMillis,
+                                                                          final Collection<Event> batch) {
         final Map<String, Collection<Object[]>> sqlPerBatch = new HashMap<>();
         for (final Event event : batch) {
             final long timestampMillis = event.getTimestampMillis();
@@ -453,7 +1337,7 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
             final Map<String, Double> dimensions = event.getDimensions();
             final byte[] payload = event.getPayload();
 
-            final String chunkTableName = getChunkTableName(timestampMillis, metadata.keySet(), dimensions.keySet());
+            final String chunkTableName = getChunkTableName(windowSizeMillis, timestampMillis, metadata.keySet(), dimensions.keySet());
             final List<String> sortedMetadataKeys = getKeysOrdered(metadata);
             final List<String> sortedDimensionKeys = getKeysOrdered(dimensions);
 
@@ -482,20 +1366,59 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                               final Map<String, String> dimensionsQuery,
                               final boolean includePayloads,
                               final boolean ascending,
-                              final int limit) throws IOException {
+                              final int limit,
+                              final Set<String> metadataKeys,
+                              final Set<String> dimensionKeys) throws IOException {
+
+        final List<String> chunkTables = getChunkTableNames(
+                namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery.keySet(),
+                dimensionsQuery.keySet(),
+                metadataQuery,
+                dimensionsQuery
+        );
+        final List<List<Event>> chunkResults = executeOnChunks(namespace, chunkTables, TimeUnit.MINUTES.toMillis(1),
+                chunkTableName -> doGetOnChunkTable(namespace,
+                        chunkTableName,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery,
+                        includePayloads,
+                        ascending,
+                        limit,
+                        metadataKeys,
+                        dimensionKeys
+                )
+        );
+        // events from each chunk are already ordered by timestamp and limited; merge them up to the limit
+        return mergeSortedEvents(chunkResults, ascending, limit);
+    }
+
+    private EventBatch doGetBatch(final String namespace,
+                                  final long startTimestampMillis,
+                                  final long endTimestampMillis,
+                                  final Map<String, String> metadataQuery,
+                                  final Map<String, String> dimensionsQuery,
+                                  final boolean includePayloads,
+                                  final boolean ascending,
+                                  final int limit) throws IOException {
 
         final List<String> chunkTables = getChunkTableNames(
                 namespace,
                 startTimestampMillis,
                 endTimestampMillis,
                 metadataQuery.keySet(),
-                dimensionsQuery.keySet()
+                dimensionsQuery.keySet(),
+                metadataQuery,
+                dimensionsQuery
         );
-        final ExecutorService executorService = Executors.newCachedThreadPool();
-        final List<Event> results = new CopyOnWriteArrayList<>();
-        for (final String chunkTableName : chunkTables) {
-            executorService.submit(() ->
-                    results.addAll(doGetOnChunkTable(namespace,
+        final List<EventBatch> chunkResults = executeOnChunks(namespace, chunkTables, TimeUnit.MINUTES.toMillis(1),
+                chunkTableName -> {
+                    final EventBatch.Builder builder = EventBatch.newBuilder();
+                    doGetOnChunkTable(namespace,
                             chunkTableName,
                             startTimestampMillis,
                             endTimestampMillis,
@@ -503,23 +1426,16 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                             dimensionsQuery,
                             includePayloads,
                             ascending,
-                            limit)
-                    )
-            );
-        }
-        executorService.shutdown();
-        try {
-            executorService.awaitTermination(1, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new IOException("events get operation timed out", e);
-        }
-
-        // events are fetched from multiple tables, sort before returning
-        sortEventsByTimestamp(results, ascending);
-        if (limit > 0) {
-            return results.subList(0, Math.min(limit, results.size()));
-        }
-        return results;
+                            limit,
+                            null,
+                            null,
+                            (decoder, resultSet) -> decoder.decode(resultSet, builder)
+                    );
+                    return builder.build();
+                }
+        );
+        // batches from each chunk are already ordered by timestamp and limited; merge them up to the limit
+        return mergeSortedBatches(chunkResults, ascending, limit);
     }
 
     private List<Event> doGetOnChunkTable(final String namespace,
@@ -530,10 +1446,106 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                                           final Map<String, String> dimensionsQuery,
                                           final boolean includePayloads,
                                           final boolean ascending,
-                                          final int limit) throws IOException {
-        Thread.currentThread().setName(String.format("get-chunk-%s.%s", namespace, chunkTableName));
+                                          final int limit,
+                                          final Set<String> metadataKeys,
+                                          final Set<String> dimensionKeys) throws IOException {
+        final List<Event> results = new ArrayList<>();
+        doGetOnChunkTable(namespace,
+                chunkTableName,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery,
+                includePayloads,
+                ascending,
+                limit,
+                metadataKeys,
+                dimensionKeys,
+                (decoder, resultSet) -> results.add(decoder.decode(resultSet))
+        );
+        return results;
+    }
+
+    // runs the get sql on the chunk table and passes each row of the results to the given handler
+    private void doGetOnChunkTable(final String namespace,
+                                   final String chunkTableName,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery,
+                                   final boolean includePayloads,
+                                   final boolean ascending,
+                                   final int limit,
+                                   final Set<String> metadataKeys,
+                                   final Set<String> dimensionKeys,
+                                   final RowHandler handler) throws IOException {
+        final Map<String, String> keyHashToName = getProjectedColumnNameToKeyNameMap(
+                getColumnNameToKeyNameMap(namespace, chunkTableName), metadataKeys, dimensionKeys
+        );
+        final List<Object> parameters = new ArrayList<>();
+        final String sql = getGetOnChunkTableSql(namespace,
+                chunkTableName,
+                keyHashToName,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery,
+                includePayloads,
+                ascending,
+                limit,
+                parameters
+        );
+        final RowDecoder decoder = new RowDecoder(keyHashToName, includePayloads);
+        try (final Connection connection = getConnection()) {
+            try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                addParameters(preparedStatement, parameters.toArray());
+                try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        handler.handle(decoder, resultSet);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("caught exception executing query sql '{}': {}; ignoring.", sql, e.getMessage());
+            throw new IOException(e);
+        }
+    }
+
+    private interface RowHandler {
+        void handle(RowDecoder decoder, ResultSet resultSet) throws SQLException, IOException;
+    }
+
+    // only keep columns of the requested metadata and dimension keys; null means all keys of that kind
+    private Map<String, String> getProjectedColumnNameToKeyNameMap(final Map<String, String> keyHashToName,
+                                                                   final Set<String> metadataKeys,
+                                                                   final Set<String> dimensionKeys) {
+        if (metadataKeys == null && dimensionKeys == null) {
+            return keyHashToName;
+        }
+        final Map<String, String> projected = new HashMap<>();
+        for (final Map.Entry<String, String> entry : keyHashToName.entrySet()) {
+            final String columnName = entry.getKey();
+            final Set<String> keys = columnName.startsWith(getMetadataKeyColumnNamePrefix()) ? metadataKeys : dimensionKeys;
+            if (keys == null || keys.contains(entry.getValue())) {
+                projected.put(columnName, entry.getValue());
+            }
+        }
+        return projected;
+    }
+
+    // returns the sql to select events from the chunk table, and adds the query parameters to the given list
+    private String getGetOnChunkTableSql(final String namespace,
+                                         final String chunkTableName,
+                                         final Map<String, String> keyHashToName,
+                                         final long startTimestampMillis,
+                                         final long endTimestampMillis,
+                                         final Map<String, String> metadataQuery,
+                                         final Map<String, String> dimensionsQuery,
+                                         final boolean includePayloads,
+                                         final boolean ascending,
+                                         final int limit,
+                                         final List<Object> parameters) {
         final String sqlFormat = "SELECT %s %s %s %s %s FROM %s WHERE %s BETWEEN ? AND ? ";
-        final Map<String, String> keyHashToName = getColumnNameToKeyNameMap(namespace, chunkTableName);
         final StringBuilder sqlBuilder = new StringBuilder(String.format(sqlFormat,
                 quote(getEventTimestampColumnName()),
                 includePayloads ? "," : "",
@@ -544,7 +1556,6 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                 quote(getEventTimestampColumnName())
         ));
 
-        final List<Object> parameters = new ArrayList<>();
         parameters.add(startTimestampMillis);
         parameters.add(endTimestampMillis);
 
@@ -557,220 +1568,1514 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
             sqlBuilder.append(" LIMIT ? ");
             parameters.add(limit);
         }
+        return sqlBuilder.toString();
+    }
 
-        final String sql = sqlBuilder.toString();
-        final List<Event> results = new ArrayList<>();
-        try (final Connection connection = getConnection()) {
-            try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
-                addParameters(preparedStatement, parameters.toArray());
-                try (final ResultSet resultSet = preparedStatement.executeQuery()) {
-                    while (resultSet.next()) {
-                        final Map<String, String> metadata = new HashMap<>();
-                        final Map<String, Double> dimensions = new HashMap<>();
-                        final long timestampMillis = resultSet.getLong(1);
-                        final byte[] payload = includePayloads ? toBytes(resultSet.getBlob(2).getBinaryStream()) : null;
-                        final ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
-                        // for each column, get the name of the column,
-                        // if starts with m_ it's a metadata column, if starts with d_ it's a dimension column
-                        for (int c = 2 + (includePayloads ? 1 : 0); c <= resultSet.getMetaData().getColumnCount(); ++c) {
-                            final String columnName = resultSetMetaData.getColumnName(c);
-                            if (columnName.equalsIgnoreCase(getPayloadColumnName())) {
-                                continue;
-                            }
-                            if (columnName.startsWith(getMetadataKeyColumnNamePrefix())) {
-                                // it's a metadata column
-                                metadata.put(keyHashToName.get(columnName), resultSet.getString(c));
-                            } else if (columnName.startsWith(getDimensionKeyColumnNamePrefix())) {
-                                // it's a dimension column
-                                dimensions.put(keyHashToName.get(columnName), resultSet.getDouble(c));
-                            } else {
-                                // this should never happen
-                                throw new IllegalStateException("could not detect column '" + columnName + "'");
+    // converts rows of a result set selected by the get sql to events; column positions and key names are
+    // resolved once per query, and all events decoded share the same key arrays
+    private class RowDecoder {
+        private final boolean includePayloads;
+        private final int[] metadataColumns;
+        private final String[] metadataKeys;
+        private final int[] dimensionColumns;
+        private final String[] dimensionKeys;
+        private int[] batchMetadataColumns;
+        private int[] batchDimensionColumns;
+
+        RowDecoder(final Map<String, String> keyHashToName, final boolean includePayloads) {
+            this.includePayloads = includePayloads;
+            final List<Integer> metadataColumns = new ArrayList<>();
+            final List<String> metadataKeys = new ArrayList<>();
+            final List<Integer> dimensionColumns = new ArrayList<>();
+            final List<String> dimensionKeys = new ArrayList<>();
+            // key columns are selected in the iteration order of the map, after the timestamp and the payload
+            int c = 2 + (includePayloads ? 1 : 0);
+            for (final Map.Entry<String, String> entry : keyHashToName.entrySet()) {
+                final String columnName = entry.getKey();
+                if (columnName.startsWith(getMetadataKeyColumnNamePrefix())) {
+                    metadataColumns.add(c);
+                    metadataKeys.add(entry.getValue());
+                } else if (columnName.startsWith(getDimensionKeyColumnNamePrefix())) {
+                    dimensionColumns.add(c);
+                    dimensionKeys.add(entry.getValue());
+                } else {
+                    // this should never happen
+                    throw new IllegalStateException("could not detect column '" + columnName + "'");
+                }
+                ++c;
+            }
+            this.metadataColumns = metadataColumns.stream().mapToInt(Integer::intValue).toArray();
+            this.metadataKeys = metadataKeys.toArray(new String[0]);
+            this.dimensionColumns = dimensionColumns.stream().mapToInt(Integer::intValue).toArray();
+            this.dimensionKeys = dimensionKeys.toArray(new String[0]);
+        }
+
+        // append the current row of the result set to the batch; the decoder must only append to one builder
+        void decode(final ResultSet resultSet, final EventBatch.Builder builder) throws SQLException, IOException {
+            if (this.batchMetadataColumns == null) {
+                this.batchMetadataColumns = new int[this.metadataKeys.length];
+                for (int i = 0; i < this.metadataKeys.length; ++i) {
+                    this.batchMetadataColumns[i] = builder.getMetadataColumn(this.metadataKeys[i]);
+                }
+                this.batchDimensionColumns = new int[this.dimensionKeys.length];
+                for (int i = 0; i < this.dimensionKeys.length; ++i) {
+                    this.batchDimensionColumns[i] = builder.getDimensionColumn(this.dimensionKeys[i]);
+                }
+            }
+            final long timestampMillis = resultSet.getLong(1);
+            final byte[] payload = this.includePayloads ? toBytes(resultSet.getBlob(2).getBinaryStream()) : null;
+            final int row = builder.addRow(timestampMillis, payload);
+            for (int i = 0; i < this.metadataColumns.length; ++i) {
+                builder.setMetadata(this.batchMetadataColumns[i], row, resultSet.getString(this.metadataColumns[i]));
+            }
+            for (int i = 0; i < this.dimensionColumns.length; ++i) {
+                builder.setDimension(this.batchDimensionColumns[i], row, resultSet.getDouble(this.dimensionColumns[i]));
+            }
+        }
+
+        // convert the current row of the result set to an event
+        Event decode(final ResultSet resultSet) throws SQLException, IOException {
+            final long timestampMillis = resultSet.getLong(1);
+            final byte[] payload = this.includePayloads ? toBytes(resultSet.getBlob(2).getBinaryStream()) : null;
+            final String[] metadataValues = new String[this.metadataColumns.length];
+            for (int i = 0; i < metadataValues.length; ++i) {
+                metadataValues[i] = resultSet.getString(this.metadataColumns[i]);
+            }
+            final Double[] dimensionValues = new Double[this.dimensionColumns.length];
+            for (int i = 0; i < dimensionValues.length; ++i) {
+                dimensionValues[i] = resultSet.getDouble(this.dimensionColumns[i]);
+            }
+            return new Event(timestampMillis,
+                    new ArrayBackedMap<>(this.metadataKeys, metadataValues),
+                    new ArrayBackedMap<>(this.dimensionKeys, dimensionValues),
+                    payload
+            );
+        }
+    }
+
+    // read-only map over an array of keys shared by all events of a chunk table and an array of values per event
+    private static class ArrayBackedMap<V> extends AbstractMap<String, V> {
+        private final String[] keys;
+        private final V[] values;
+
+        ArrayBackedMap(final String[] keys, final V[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public int size() {
+            return this.keys.length;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public V get(final Object key) {
+            final int index = indexOf(key);
+            return index >= 0 ? this.values[index] : null;
+        }
+
+        @Override
+        public Set<Entry<String, V>> entrySet() {
+            return new AbstractSet<Entry<String, V>>() {
+                @Override
+                public Iterator<Entry<String, V>> iterator() {
+                    return new Iterator<Entry<String, V>>() {
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return this.index < keys.length;
+                        }
+
+                        @Override
+                        public Entry<String, V> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
                             }
+                            final Entry<String, V> entry = new SimpleImmutableEntry<>(keys[this.index], values[this.index]);
+                            ++this.index;
+                            return entry;
                         }
-                        results.add(new Event(timestampMillis, metadata, dimensions, payload));
-                    }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+
+        private int indexOf(final Object key) {
+            for (int i = 0; i < this.keys.length; ++i) {
+                if (this.keys[i].equals(key)) {
+                    return i;
                 }
             }
-            return results;
-        } catch (SQLException e) {
-            logger.warn("caught exception executing query sql '{}': {}; ignoring.", sql, e.getMessage());
-            throw new IOException(e);
+            return -1;
         }
     }
 
-    private int doDelete(final String namespace,
-                         final long startTimestampMillis,
-                         final long endTimestampMillis,
-                         final Map<String, String> metadataQuery,
-                         final Map<String, String> dimensionsQuery) throws IOException {
-
+    private EventCursor doScan(final String namespace,
+                               final long startTimestampMillis,
+                               final long endTimestampMillis,
+                               final Map<String, String> metadataQuery,
+                               final Map<String, String> dimensionsQuery,
+                               final boolean includePayloads,
+                               final boolean ascending) throws IOException {
         final List<String> chunkTables = getChunkTableNames(
                 namespace,
                 startTimestampMillis,
                 endTimestampMillis,
                 metadataQuery.keySet(),
-                dimensionsQuery.keySet()
+                dimensionsQuery.keySet(),
+                metadataQuery,
+                dimensionsQuery
         );
-
-        int results = 0;
+        // chunk tables of different windows do not overlap in time, so windows are scanned one after another
+        // and only the chunk tables of the same window are merged
+        final ChunkCatalog catalog = getChunkCatalog(namespace);
+        final TreeMap<Long, List<String>> chunkTablesByWindow = new TreeMap<>();
         for (final String chunkTableName : chunkTables) {
-            results += doDeleteOnChunkTable(namespace,
-                    chunkTableName,
-                    startTimestampMillis,
-                    endTimestampMillis,
-                    metadataQuery,
-                    dimensionsQuery
-            );
+            final Long windowStart = catalog.startTimestamps.get(chunkTableName);
+            if (windowStart != null) {
+                chunkTablesByWindow.computeIfAbsent(windowStart, k -> new ArrayList<>()).add(chunkTableName);
+            }
         }
-        return results;
+        final Iterator<List<String>> windows = ascending
+                ? chunkTablesByWindow.values().iterator()
+                : chunkTablesByWindow.descendingMap().values().iterator();
+        return new ChunkTablesCursor(windows, chunkTableName -> new ChunkTableCursor(
+                startTimestampMillis,
+                endTimestampMillis,
+                ascending,
+                (pageStartTimestampMillis, pageEndTimestampMillis, limit) -> doGetOnChunkTable(namespace,
+                        chunkTableName,
+                        pageStartTimestampMillis,
+                        pageEndTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery,
+                        includePayloads,
+                        ascending,
+                        limit,
+                        null,
+                        null
+                )
+        ), getTimestampComparator(ascending));
     }
 
-    private int doDeleteOnChunkTable(final String namespace,
-                                          final String chunkTableName,
-                                          final long startTimestampMillis,
-                                          final long endTimestampMillis,
-                                          final Map<String, String> metadataQuery,
-                                          final Map<String, String> dimensionsQuery) throws IOException {
-        final String sqlFormat = "DELETE FROM %s WHERE %s BETWEEN ? AND ?";
-        final StringBuilder sqlBuilder = new StringBuilder(String.format(sqlFormat,
-                getTableFullName(namespace, chunkTableName),
-                quote(getEventTimestampColumnName())
-        ));
-        final List<Object> parameters = new ArrayList<>();
-        parameters.add(startTimestampMillis);
-        parameters.add(endTimestampMillis);
+    // merges events from the chunk tables of one window at a time, pulling rows lazily from each chunk table a page at
+    // a time
+    private class ChunkTablesCursor implements EventCursor {
+        private final Iterator<List<String>> windows;
+        private final ChunkQuery<ChunkTableCursor> opener;
+        private final PriorityQueue<ChunkTableCursor> heap;
+
+        ChunkTablesCursor(final Iterator<List<String>> windows,
+                          final ChunkQuery<ChunkTableCursor> opener,
+                          final Comparator<Event> comparator) {
+            this.windows = windows;
+            this.opener = opener;
+            this.heap = new PriorityQueue<>((cursor1, cursor2) -> comparator.compare(cursor1.head, cursor2.head));
+        }
 
-        // construct the sql query and parameters for metadata and dimensions
-        sqlBuilder.append(getMetadataQuerySql(metadataQuery, parameters));
-        sqlBuilder.append(getDimensionsQuerySql(dimensionsQuery, parameters));
+        @Override
+        public boolean hasNext() {
+            try {
+                while (this.heap.isEmpty() && this.windows.hasNext()) {
+                    for (final String chunkTableName : this.windows.next()) {
+                        final ChunkTableCursor cursor = this.opener.execute(chunkTableName);
+                        if (cursor.advance()) {
+                            this.heap.add(cursor);
+                        } else {
+                            cursor.close();
+                        }
+                    }
+                }
+                return !this.heap.isEmpty();
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+        }
 
-        final String sql = sqlBuilder.toString();
-        return executeUpdate(sql, parameters.toArray());
+        @Override
+        public Event next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final ChunkTableCursor cursor = this.heap.poll();
+            final Event event = cursor.head;
+            try {
+                if (cursor.advance()) {
+                    this.heap.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            } catch (IOException e) {
+                cursor.close();
+                close();
+                throw new UncheckedIOException(e);
+            }
+            return event;
+        }
+
+        @Override
+        public void close() {
+            while (!this.heap.isEmpty()) {
+                this.heap.poll().close();
+            }
+            // drain remaining windows so no more chunk tables are opened
+            while (this.windows.hasNext()) {
+                this.windows.next();
+            }
+        }
     }
 
-    private Set<String> doMetadata(final String namespace,
-                                   final String metadataKey,
-                                   final long startTimestampMillis,
-                                   final long endTimestampMillis,
-                                   final Map<String, String> metadataQuery,
-                                   final Map<String, String> dimensionsQuery) throws IOException {
+    // pages through the matching rows of a single chunk table by timestamp; a connection is only held while a page is
+    // read, so merging the chunk tables of a window does not hold a connection open per chunk table
+    private class ChunkTableCursor {
+        private final boolean ascending;
+        private final ChunkTablePageQuery query;
+        // bounds of the time range not yet fetched
+        private long remainingStart;
+        private long remainingEnd;
+        private boolean done;
+        private Iterator<Event> page = Collections.emptyIterator();
+        private Event head;
+
+        ChunkTableCursor(final long startTimestampMillis,
+                         final long endTimestampMillis,
+                         final boolean ascending,
+                         final ChunkTablePageQuery query) {
+            this.remainingStart = startTimestampMillis;
+            this.remainingEnd = endTimestampMillis;
+            this.ascending = ascending;
+            this.query = query;
+        }
 
-        final String sqlFormat = "SELECT DISTINCT %s AS METADATA_VALUE FROM %s WHERE %s BETWEEN ? AND ?";
-        final Set<String> metadataKeys = new HashSet<>(metadataQuery.keySet());
-        // make sure the metadata exists
-        metadataKeys.add(metadataKey);
-        final List<String> chunkTables = getChunkTableNames(
-                namespace,
-                startTimestampMillis,
-                endTimestampMillis,
-                metadataKeys,
-                dimensionsQuery.keySet()
-        );
+        boolean advance() throws IOException {
+            while (!this.page.hasNext() && !this.done) {
+                this.page = nextPage().iterator();
+            }
+            if (!this.page.hasNext()) {
+                return false;
+            }
+            this.head = this.page.next();
+            return true;
+        }
+
+        // fetches up to a page of rows from the edge of the remaining range and moves the edge past them; rows sharing
+        // the timestamp of the last row of a full page may be cut off by the limit, so they are fetched again with the
+        // next page, or all at once if a single timestamp fills the whole page
+        private List<Event> nextPage() throws IOException {
+            final int pageSize = getScanPageSize();
+            final List<Event> events = this.query.execute(this.remainingStart, this.remainingEnd, pageSize);
+            if (events.size() < pageSize) {
+                this.done = true;
+                return events;
+            }
+            final long last = events.get(events.size() - 1).getTimestampMillis();
+            int end = events.size();
+            while (end > 0 && events.get(end - 1).getTimestampMillis() == last) {
+                --end;
+            }
+            if (end > 0) {
+                if (this.ascending) {
+                    this.remainingStart = last;
+                } else {
+                    this.remainingEnd = last;
+                }
+                return events.subList(0, end);
+            }
+            if (this.ascending) {
+                this.done = last == this.remainingEnd;
+                this.remainingStart = last + 1;
+            } else {
+                this.done = last == this.remainingStart;
+                this.remainingEnd = last - 1;
+            }
+            return this.query.execute(last, last, 0);
+        }
+
+        void close() {
+            this.done = true;
+            this.page = Collections.emptyIterator();
+        }
+    }
+
+    private interface ChunkTablePageQuery {
+        List<Event> execute(long startTimestampMillis, long endTimestampMillis, int limit) throws IOException;
+    }
+
+    // number of rows fetched from each chunk table at a time when scanning
+    protected int getScanPageSize() {
+        return 1000;
+    }
+
+    private int doDelete(final String namespace,
+                         final long startTimestampMillis,
+                         final long endTimestampMillis,
+                         final Map<String, String> metadataQuery,
+                         final Map<String, String> dimensionsQuery) throws IOException {
+
+        final ChunkCatalog catalog = getChunkCatalog(namespace);
+        final List<String> chunkTables = getChunkTableNames(
+                namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery.keySet(),
+                dimensionsQuery.keySet(),
+                metadataQuery,
+                dimensionsQuery
+        );
+        if (chunkTables.isEmpty()) {
+            return 0;
+        }
+
+        // stores are held off while rollups are rebuilt, so rows rolled up in between are not lost or counted twice
+        final Lock lock = catalog.rollups.isEmpty() ? null : getRollupLock(namespace).writeLock();
+        if (lock != null) {
+            lock.lock();
+        }
+        Exception failure = null;
+        try {
+            final boolean hasQuery = !metadataQuery.isEmpty() || !dimensionsQuery.isEmpty();
+            final List<Integer> chunkResults = executeOnChunks(namespace, chunkTables, TimeUnit.MINUTES.toMillis(30),
+                    chunkTableName -> {
+                        final Long chunkStartTimestampMillis = catalog.startTimestamps.get(chunkTableName);
+                        final boolean coversChunk = !hasQuery
+                                && chunkStartTimestampMillis != null
+                                && chunkStartTimestampMillis >= startTimestampMillis
+                                && chunkStartTimestampMillis + catalog.windowSizeMillis - 1 <= endTimestampMillis;
+                        return coversChunk
+                                ? doTruncateChunkTable(namespace, chunkTableName)
+                                : doDeleteOnChunkTable(namespace,
+                                        chunkTableName,
+                                        startTimestampMillis,
+                                        endTimestampMillis,
+                                        metadataQuery,
+                                        dimensionsQuery
+                                );
+                    }
+            );
+            if (chunkResults.size() < chunkTables.size()) {
+                throw new IOException(String.format("failed to delete events from %d of %d chunks in namespace %s",
+                        chunkTables.size() - chunkResults.size(), chunkTables.size(), namespace)
+                );
+            }
+            int results = 0;
+            for (final int chunkResult : chunkResults) {
+                results += chunkResult;
+            }
+            return results;
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (lock != null) {
+                try {
+                    // rebuild rollups even if some chunks failed, others may have been deleted from; a failure to
+                    // rebuild does not hide the failure to delete
+                    rebuildRollups(namespace, catalog.rollups.values(), startTimestampMillis, endTimestampMillis);
+                } catch (IOException | RuntimeException e) {
+                    if (failure == null) {
+                        throw e;
+                    }
+                    failure.addSuppressed(e);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private int doDeleteOnChunkTable(final String namespace,
+                                     final String chunkTableName,
+                                     final long startTimestampMillis,
+                                     final long endTimestampMillis,
+                                     final Map<String, String> metadataQuery,
+                                     final Map<String, String> dimensionsQuery) throws IOException {
+        final String sqlFormat = "DELETE FROM %s WHERE %s BETWEEN ? AND ?";
+        final StringBuilder sqlBuilder = new StringBuilder(String.format(sqlFormat,
+                getTableFullName(namespace, chunkTableName),
+                quote(getEventTimestampColumnName())
+        ));
+        final List<Object> parameters = new ArrayList<>();
+        parameters.add(startTimestampMillis);
+        parameters.add(endTimestampMillis);
+
+        // construct the sql query and parameters for metadata and dimensions
+        sqlBuilder.append(getMetadataQuerySql(metadataQuery, parameters));
+        sqlBuilder.append(getDimensionsQuerySql(dimensionsQuery, parameters));
+
+        final String sql = sqlBuilder.toString();
+        return executeUpdate(sql, parameters.toArray());
+    }
+
+    // deletes all events of a chunk table whose window is entirely in the range of a delete call without queries;
+    // the table is swapped with an empty copy rather than dropped, so stores racing with the delete still find the
+    // table in the lookup table and do not lose their events; the swapped out rows are counted and then dropped with
+    // the tombstone table, and no store can add to them in between. databases that cannot swap tables atomically
+    // delete all rows with a single statement instead
+    private int doTruncateChunkTable(final String namespace, final String chunkTableName) throws IOException {
+        final String emptyTableName = getNewTombstoneTableName();
+        final String tombstoneTableName = getNewTombstoneTableName();
+        final List<String> swapSqls = getSwapWithEmptyTableSqls(namespace, chunkTableName, emptyTableName, tombstoneTableName);
+        if (swapSqls == null) {
+            final int count = executeUpdate(String.format("DELETE FROM %s", getTableFullName(namespace, chunkTableName)));
+            this.chunkTablesTruncated.incrementAndGet();
+            return count;
+        }
+        try (final Connection connection = getConnection()) {
+            for (final String sql : swapSqls) {
+                executeUpdate(connection, sql);
+            }
+            final int count;
+            final String countSql = String.format("SELECT COUNT(*) FROM %s", getTableFullName(namespace, tombstoneTableName));
+            try (final PreparedStatement preparedStatement = connection.prepareStatement(countSql);
+                 final ResultSet resultSet = preparedStatement.executeQuery()) {
+                count = resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+            scheduleTombstoneTableDrop(namespace, tombstoneTableName, false);
+            this.chunkTablesTruncated.incrementAndGet();
+            return count;
+        } catch (SQLException e) {
+            logger.warn("caught exception truncating chunk table {}.{}: {}", namespace, chunkTableName, e.getMessage());
+            throw new IOException(e);
+        }
+    }
+
+    // returns the sql statements that atomically swap the table with an empty copy of it, named the empty table name,
+    // leaving the table with all its rows renamed to the tombstone table name; null if the database cannot do so
+    protected List<String> getSwapWithEmptyTableSqls(final String namespace,
+                                                     final String tableName,
+                                                     final String emptyTableName,
+                                                     final String tombstoneTableName) {
+        return null;
+    }
+
+    // number of chunk tables emptied as a whole by delete calls
+    public long getChunkTablesTruncatedCount() {
+        return this.chunkTablesTruncated.get();
+    }
+
+    private Set<String> doMetadata(final String namespace,
+                                   final String metadataKey,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery) throws IOException {
+
+        final String sqlFormat = "SELECT DISTINCT %s AS METADATA_VALUE FROM %s WHERE %s BETWEEN ? AND ?";
+        final Set<String> metadataKeys = new HashSet<>(metadataQuery.keySet());
+        // make sure the metadata exists
+        metadataKeys.add(metadataKey);
+        final List<String> chunkTables = getChunkTableNames(
+                namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataKeys,
+                dimensionsQuery.keySet(),
+                metadataQuery,
+                dimensionsQuery
+        );
+
+        final List<Set<String>> chunkResults = executeOnChunks(namespace, chunkTables, TimeUnit.MINUTES.toMillis(30),
+                chunkTableName -> {
+                    final StringBuilder sqlBuilder = new StringBuilder(String.format(sqlFormat,
+                            quote(getMetadataKeyColumnName(metadataKey)),
+                            getTableFullName(namespace, chunkTableName),
+                            quote(getEventTimestampColumnName())
+                    ));
+                    final List<Object> parameters = new ArrayList<>();
+                    parameters.add(startTimestampMillis);
+                    parameters.add(endTimestampMillis);
+
+                    // construct the sql query and parameters for metadata and dimensions
+                    sqlBuilder.append(getMetadataQuerySql(metadataQuery, parameters));
+                    sqlBuilder.append(getDimensionsQuerySql(dimensionsQuery, parameters));
+
+                    final String sql = sqlBuilder.toString();
+                    final Set<String> values = new HashSet<>();
+                    try (final Connection connection = getConnection()) {
+                        try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                            addParameters(preparedStatement, parameters.toArray());
+                            try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                                while (resultSet.next()) {
+                                    values.add(resultSet.getString(1));
+                                }
+                            }
+                        }
+                    } catch (SQLException e) {
+                        logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+                        throw new IOException(e);
+                    }
+                    return values;
+                }
+        );
+        final Set<String> results = new HashSet<>();
+        for (final Set<String> chunkResult : chunkResults) {
+            results.addAll(chunkResult);
+        }
+        return results;
+    }
+
+    private Map<String, Long> doCount(final String namespace,
+                                      final String metadataKey,
+                                      final long startTimestampMillis,
+                                      final long endTimestampMillis,
+                                      final Map<String, String> metadataQuery,
+                                      final Map<String, String> dimensionsQuery) throws IOException {
+
+        final String sqlFormat = "SELECT %s AS METADATA_VALUE, COUNT(*) FROM %s WHERE %s BETWEEN ? AND ? AND %s IS NOT NULL";
+        final Set<String> metadataKeys = new HashSet<>(metadataQuery.keySet());
+        // make sure the metadata exists
+        metadataKeys.add(metadataKey);
+        final List<String> chunkTables = getChunkTableNames(
+                namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataKeys,
+                dimensionsQuery.keySet(),
+                metadataQuery,
+                dimensionsQuery
+        );
+
+        // each chunk returns partial counts per metadata value, which are then summed across chunks
+        final List<Map<String, Long>> chunkResults = executeOnChunks(namespace, chunkTables, TimeUnit.MINUTES.toMillis(30),
+                chunkTableName -> {
+                    final String metadataColumn = quote(getMetadataKeyColumnName(metadataKey));
+                    final StringBuilder sqlBuilder = new StringBuilder(String.format(sqlFormat,
+                            metadataColumn,
+                            getTableFullName(namespace, chunkTableName),
+                            quote(getEventTimestampColumnName()),
+                            metadataColumn
+                    ));
+                    final List<Object> parameters = new ArrayList<>();
+                    parameters.add(startTimestampMillis);
+                    parameters.add(endTimestampMillis);
+
+                    // construct the sql query and parameters for metadata and dimensions
+                    sqlBuilder.append(getMetadataQuerySql(metadataQuery, parameters));
+                    sqlBuilder.append(getDimensionsQuerySql(dimensionsQuery, parameters));
+                    sqlBuilder.append(" GROUP BY ").append(metadataColumn);
+
+                    final String sql = sqlBuilder.toString();
+                    final Map<String, Long> counts = new HashMap<>();
+                    try (final Connection connection = getConnection()) {
+                        try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                            addParameters(preparedStatement, parameters.toArray());
+                            try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                                while (resultSet.next()) {
+                                    counts.put(resultSet.getString(1), resultSet.getLong(2));
+                                }
+                            }
+                        }
+                    } catch (SQLException e) {
+                        logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+                        throw new IOException(e);
+                    }
+                    return counts;
+                }
+        );
+        final Map<String, Long> results = new HashMap<>();
+        for (final Map<String, Long> chunkResult : chunkResults) {
+            for (final Map.Entry<String, Long> entry : chunkResult.entrySet()) {
+                results.merge(entry.getKey(), entry.getValue(), Long::sum);
+            }
+        }
+        return results;
+    }
+
+    private List<Event> doDimension(final String namespace,
+                                    final String dimensionKey,
+                                    final long startTimestampMillis,
+                                    final long endTimestampMillis,
+                                    final Map<String, String> metadataQuery,
+                                    final Map<String, String> dimensionsQuery) throws IOException {
+        final Set<String> dimensionKeys = new HashSet<>(dimensionsQuery.keySet());
+        // make sure the dimension exists
+        dimensionKeys.add(dimensionKey);
+        final List<String> chunkTables = getChunkTableNames(
+                namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery.keySet(),
+                dimensionKeys,
+                metadataQuery,
+                dimensionsQuery
+        );
+
+        final List<List<Event>> chunkResults = executeOnChunks(namespace, chunkTables, TimeUnit.MINUTES.toMillis(30),
+                chunkTableName -> {
+                    final String sqlFormat = "SELECT %s, %s as DIMENSION_VALUE FROM %s WHERE %s BETWEEN ? AND ? ";
+                    final StringBuilder sqlBuilder = new StringBuilder(String.format(sqlFormat,
+                            quote(getEventTimestampColumnName()),
+                            quote(getDimensionKeyColumnName(dimensionKey)),
+                            getTableFullName(namespace, chunkTableName),
+                            quote(getEventTimestampColumnName())
+                    ));
+
+                    final List<Object> parameters = new ArrayList<>();
+                    parameters.add(startTimestampMillis);
+                    parameters.add(endTimestampMillis);
+
+                    // construct the sql query and parameters for metadata and dimensions
+                    sqlBuilder.append(getMetadataQuerySql(metadataQuery, parameters));
+                    sqlBuilder.append(getDimensionsQuerySql(dimensionsQuery, parameters));
+                    final String sql = sqlBuilder.toString();
+
+                    final List<Event> events = new ArrayList<>();
+                    try (final Connection connection = getConnection()) {
+                        try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                            addParameters(preparedStatement, parameters.toArray());
+                            try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                                while (resultSet.next()) {
+                                    final Map<String, Double> dimension = Collections.singletonMap(dimensionKey, resultSet.getDouble("DIMENSION_VALUE"));
+                                    final long timestampMillis = resultSet.getLong(1);
+                                    events.add(new Event(timestampMillis, Collections.emptyMap(), dimension, null));
+                                }
+                            }
+                        }
+                    } catch (SQLException e) {
+                        logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+                        throw new IOException(e);
+                    }
+                    return events;
+                }
+        );
+        final List<Event> results = new ArrayList<>();
+        for (final List<Event> chunkResult : chunkResults) {
+            results.addAll(chunkResult);
+        }
+        return results;
+    }
+
+    private Map<Long, Double> doAggregate(final String namespace,
+                                          final String dimensionKey,
+                                          final long startTimestampMillis,
+                                          final long endTimestampMillis,
+                                          final long bucketMillis,
+                                          final AggregationFunction function,
+                                          final Map<String, String> metadataQuery,
+                                          final Map<String, String> dimensionsQuery) throws IOException {
+        final Rollup rollup = getRollupForAggregate(namespace, startTimestampMillis, endTimestampMillis, bucketMillis, metadataQuery, dimensionsQuery);
+        if (rollup != null) {
+            return doAggregateOnRollup(namespace,
+                    rollup,
+                    dimensionKey,
+                    startTimestampMillis,
+                    endTimestampMillis,
+                    bucketMillis,
+                    function,
+                    metadataQuery
+            );
+        }
+
+        final Set<String> dimensionKeys = new HashSet<>(dimensionsQuery.keySet());
+        // make sure the dimension exists
+        dimensionKeys.add(dimensionKey);
+        final List<String> chunkTables = getChunkTableNames(
+                namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery.keySet(),
+                dimensionKeys,
+                metadataQuery,
+                dimensionsQuery
+        );
+
+        // each chunk returns partial aggregates per bucket, which are then merged across chunks
+        final List<Map<Long, AggregateBucket>> chunkResults = executeOnChunks(namespace, chunkTables, TimeUnit.MINUTES.toMillis(30),
+                chunkTableName -> {
+                    final String timestampColumn = quote(getEventTimestampColumnName());
+                    final String dimensionColumn = quote(getDimensionKeyColumnName(dimensionKey));
+                    final String sqlFormat = "SELECT %s - MOD(%s, ?) AS BUCKET, COUNT(%s), SUM(%s), MIN(%s), MAX(%s) " +
+                            "FROM %s WHERE %s BETWEEN ? AND ? ";
+                    final StringBuilder sqlBuilder = new StringBuilder(String.format(sqlFormat,
+                            timestampColumn,
+                            timestampColumn,
+                            dimensionColumn,
+                            dimensionColumn,
+                            dimensionColumn,
+                            dimensionColumn,
+                            getTableFullName(namespace, chunkTableName),
+                            timestampColumn
+                    ));
+
+                    final List<Object> parameters = new ArrayList<>();
+                    parameters.add(bucketMillis);
+                    parameters.add(startTimestampMillis);
+                    parameters.add(endTimestampMillis);
+
+                    // construct the sql query and parameters for metadata and dimensions
+                    sqlBuilder.append(getMetadataQuerySql(metadataQuery, parameters));
+                    sqlBuilder.append(getDimensionsQuerySql(dimensionsQuery, parameters));
+                    sqlBuilder.append(" GROUP BY BUCKET");
+                    final String sql = sqlBuilder.toString();
+
+                    final Map<Long, AggregateBucket> buckets = new HashMap<>();
+                    try (final Connection connection = getConnection()) {
+                        try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                            addParameters(preparedStatement, parameters.toArray());
+                            try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                                while (resultSet.next()) {
+                                    final AggregateBucket bucket = new AggregateBucket();
+                                    bucket.merge(resultSet.getLong(2),
+                                            resultSet.getDouble(3),
+                                            resultSet.getDouble(4),
+                                            resultSet.getDouble(5)
+                                    );
+                                    buckets.put(resultSet.getLong(1), bucket);
+                                }
+                            }
+                        }
+                    } catch (SQLException e) {
+                        logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+                        throw new IOException(e);
+                    }
+                    return buckets;
+                }
+        );
+        final Map<Long, AggregateBucket> results = new HashMap<>();
+        for (final Map<Long, AggregateBucket> chunkResult : chunkResults) {
+            mergeAggregateBuckets(results, chunkResult);
+        }
+        return toAggregateResults(results, function);
+    }
+
+    /**
+     * Create a rollup of the namespace, holding the count, sum, minimum and maximum of every dimension per time
+     * bucket of the given resolution and per combination of values of the given metadata keys. Rollups are updated
+     * on store, compacted in the background, and used to answer aggregate calls whose buckets, time range and queries
+     * fit them. Events stored before the rollup is created are rolled up right away. Rolled up buckets are removed
+     * once older than the retention of the rollup, independent of when the events themselves expire.
+     *
+     * @param namespace the namespace identifier
+     * @param resolutionMillis size of the time buckets of the rollup, in multiples of one second
+     * @param metadataKeys metadata keys to group aggregates by; events without one of these keys are grouped under
+     *                     an empty value for it
+     * @param retentionMillis how long rolled up buckets are kept
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    public void createRollup(final String namespace,
+                             final long resolutionMillis,
+                             final Collection<String> metadataKeys,
+                             final long retentionMillis) throws IOException {
+        checkNamespace(namespace);
+        checkArgument(resolutionMillis > 0 && resolutionMillis % TimeUnit.SECONDS.toMillis(1) == 0,
+                "rollup resolution must be a positive multiple of one second");
+        checkArgument(metadataKeys != null, "null metadata keys");
+        checkArgument(retentionMillis > 0, "rollup retention must be positive");
+        final String rollupTableName = getRollupTableName(resolutionMillis, metadataKeys);
+        final Lock lock = getRollupLock(namespace).writeLock();
+        lock.lock();
+        try {
+            if (getChunkCatalog(namespace).rollups.containsKey(rollupTableName)) {
+                logger.info("rollup {} already exists in namespace {}; ignoring", rollupTableName, namespace);
+                return;
+            }
+            logger.info("creating rollup table {}.{}", namespace, rollupTableName);
+            final Rollup rollup = new Rollup(rollupTableName);
+            rollup.resolutionMillis = resolutionMillis;
+            rollup.retentionMillis = retentionMillis;
+            for (final String metadataKey : metadataKeys) {
+                rollup.columns.put(getMetadataKeyColumnName(metadataKey), metadataKey);
+            }
+            Connection connection = null;
+            try {
+                connection = openTransaction(getConnection());
+                executeUpdate(connection, getCreateRollupTableSql(rollupTableName, namespace, metadataKeys));
+                addRollupToLookupTable(connection, namespace, rollup);
+                backfillRollup(connection, namespace, rollup,
+                        Math.max(0, System.currentTimeMillis() - rollup.retentionMillis), Long.MAX_VALUE
+                );
+            } finally {
+                closeConnection(connection);
+                invalidateChunkCatalog(namespace);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop a rollup previously created with {@link #createRollup(String, long, Collection, long)}.
+     *
+     * @param namespace the namespace identifier
+     * @param resolutionMillis size of the time buckets of the rollup
+     * @param metadataKeys metadata keys the rollup groups by
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    public void dropRollup(final String namespace,
+                           final long resolutionMillis,
+                           final Collection<String> metadataKeys) throws IOException {
+        checkNamespace(namespace);
+        checkArgument(metadataKeys != null, "null metadata keys");
+        final String rollupTableName = getRollupTableName(resolutionMillis, metadataKeys);
+        if (!getChunkCatalog(namespace).rollups.containsKey(rollupTableName)) {
+            return;
+        }
+        logger.info("dropping rollup table {}.{}", namespace, rollupTableName);
+        final Lock lock = getRollupLock(namespace).writeLock();
+        lock.lock();
+        Connection connection = null;
+        try {
+            connection = openTransaction(getConnection());
+            removeChunkFromLookupTable(connection, namespace, rollupTableName);
+            dropTable(connection, namespace, rollupTableName);
+        } finally {
+            try {
+                closeConnection(connection);
+                invalidateChunkCatalog(namespace);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Merge the partial aggregates appended to the rollups of the namespace by each store into a single row per
+     * bucket, dimension and metadata values; only recent buckets are compacted. Called periodically in the background.
+     * The compacted buckets are read with a locking read first, so stores of other processes appending to them wait
+     * for the compaction to commit instead of having their rows deleted with the merged ones.
+     *
+     * @param namespace the namespace identifier
+     * @throws IOException exception thrown from the underlying storage implementation
+     */
+    public void compactRollups(final String namespace) throws IOException {
+        checkNamespace(namespace);
+        for (final Rollup rollup : getChunkCatalog(namespace).rollups.values()) {
+            final long fromBucketMillis = Math.max(0, System.currentTimeMillis() - getRollupCompactionLookbackMillis());
+            final Lock lock = getRollupLock(namespace).writeLock();
+            lock.lock();
+            Connection connection = null;
+            try {
+                connection = openTransaction(getConnection());
+                final String bucketColumn = quote(getRollupBucketColumnName());
+                lockRollupBuckets(connection, namespace, rollup, fromBucketMillis);
+                final String groupColumns = getRollupGroupColumnsSql(rollup);
+                final String selectSql = String.format("SELECT %s, SUM(%s), SUM(%s), MIN(%s), MAX(%s), COUNT(*) FROM %s " +
+                                "WHERE %s >= ? GROUP BY %s",
+                        groupColumns,
+                        quote(getRollupCountColumnName()),
+                        quote(getRollupSumColumnName()),
+                        quote(getRollupMinColumnName()),
+                        quote(getRollupMaxColumnName()),
+                        getTableFullName(namespace, rollup.tableName),
+                        bucketColumn,
+                        groupColumns
+                );
+                final List<Object[]> rows = new ArrayList<>();
+                long partialRows = 0;
+                try (final PreparedStatement preparedStatement = connection.prepareStatement(selectSql)) {
+                    addParameters(preparedStatement, fromBucketMillis);
+                    try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            final Object[] row = new Object[2 + rollup.columns.size() + 4];
+                            int index = 0;
+                            row[index++] = resultSet.getLong(1);
+                            for (; index < 2 + rollup.columns.size(); ++index) {
+                                row[index] = resultSet.getString(index + 1);
+                            }
+                            row[index] = resultSet.getLong(++index);
+                            row[index] = resultSet.getDouble(++index);
+                            row[index] = resultSet.getDouble(++index);
+                            row[index] = resultSet.getDouble(++index);
+                            rows.add(row);
+                            partialRows += resultSet.getLong(index + 1);
+                        }
+                    }
+                } catch (SQLException e) {
+                    logger.warn("caught exception executing query sql '{}': {}", selectSql, e.getMessage());
+                    throw new IOException(e);
+                }
+                if (partialRows == rows.size()) {
+                    // nothing to merge
+                    continue;
+                }
+                executeUpdate(connection,
+                        String.format("DELETE FROM %s WHERE %s >= ?", getTableFullName(namespace, rollup.tableName), bucketColumn),
+                        fromBucketMillis
+                );
+                insertRollupRows(connection, namespace, rollup, rows);
+                this.rollupRowsCompacted.addAndGet(partialRows - rows.size());
+                logger.debug("compacted {} rows of rollup {}.{} into {}", partialRows, namespace, rollup.tableName, rows.size());
+            } catch (IOException e) {
+                // never commit the delete without the merged rows
+                rollbackTransaction(connection);
+                throw e;
+            } finally {
+                try {
+                    closeConnection(connection);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    // locks the rows of the rollup buckets from the given bucket on, and on databases that lock index ranges read
+    // with a locking read, the range itself, until the transaction ends
+    private void lockRollupBuckets(final Connection connection,
+                                   final String namespace,
+                                   final Rollup rollup,
+                                   final long fromBucketMillis) throws IOException {
+        final String sql = String.format("SELECT %s FROM %s WHERE %s >= ? FOR UPDATE",
+                quote(getRollupBucketColumnName()),
+                getTableFullName(namespace, rollup.tableName),
+                quote(getRollupBucketColumnName())
+        );
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            addParameters(preparedStatement, fromBucketMillis);
+            try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    // rows are locked as they are read
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+            throw new IOException(e);
+        }
+    }
+
+    // how far back from now rollup buckets are compacted; rows appended to older buckets are left as they are
+    protected long getRollupCompactionLookbackMillis() {
+        return TimeUnit.HOURS.toMillis(2);
+    }
+
+    public long getRollupQueryCount() {
+        return this.rollupQueries.get();
+    }
+
+    public long getRollupRowsCompactedCount() {
+        return this.rollupRowsCompacted.get();
+    }
+
+    // compacts and ages out rollups of all namespaces
+    private void maintainRollups() {
+        try {
+            for (final String namespace : getNamespaces()) {
+                try {
+                    if (getChunkCatalog(namespace).rollups.isEmpty()) {
+                        continue;
+                    }
+                    compactRollups(namespace);
+                    expireRollups(namespace);
+                } catch (Exception e) {
+                    logger.warn("failed to maintain rollups for namespace '{}': {}", namespace, e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("failed to maintain rollups", e);
+        }
+    }
+
+    private void expireRollups(final String namespace) throws IOException {
+        final long now = System.currentTimeMillis();
+        for (final Rollup rollup : getChunkCatalog(namespace).rollups.values()) {
+            final long cutoffMillis = now - rollup.retentionMillis;
+            if (cutoffMillis <= 0) {
+                // nothing is old enough yet
+                continue;
+            }
+            final int deleted = executeUpdate(String.format("DELETE FROM %s WHERE %s < ?",
+                            getTableFullName(namespace, rollup.tableName),
+                            quote(getRollupBucketColumnName())
+                    ),
+                    cutoffMillis
+            );
+            logger.debug("expired {} rows of rollup {}.{}", deleted, namespace, rollup.tableName);
+        }
+    }
+
+    private ReadWriteLock getRollupLock(final String namespace) {
+        return this.rollupLocks.computeIfAbsent(namespace, k -> new ReentrantReadWriteLock());
+    }
+
+    private void addRollupToLookupTable(final Connection connection,
+                                        final String namespace,
+                                        final Rollup rollup) throws IOException {
+        final String settingSql = String.format("INSERT INTO %s SET %s = ?, %s = ?, %s = ?",
+                getTableFullName(namespace, getChunksLookupTableName()),
+                quote(getTableNameColumnName()),
+                quote(getColumnColumnName()),
+                quote(getStartTimestampMillisColumnName())
+        );
+        executeUpdate(connection, settingSql, rollup.tableName, getRollupResolutionMillisColumnName(), rollup.resolutionMillis);
+        executeUpdate(connection, settingSql, rollup.tableName, getRollupRetentionMillisColumnName(), rollup.retentionMillis);
+        final String columnSql = String.format("INSERT INTO %s SET %s = ?, %s = ?, %s = ?, %s = ?",
+                getTableFullName(namespace, getChunksLookupTableName()),
+                quote(getTableNameColumnName()),
+                quote(getKeyColumnName()),
+                quote(getColumnColumnName()),
+                quote(getStartTimestampMillisColumnName())
+        );
+        for (final Map.Entry<String, String> column : rollup.columns.entrySet()) {
+            executeUpdate(connection, columnSql, rollup.tableName, column.getValue(), column.getKey(), rollup.resolutionMillis);
+        }
+    }
+
+    // replaces the rollup rows of buckets overlapping the time range with the events left in the chunk tables
+    private void rebuildRollups(final String namespace,
+                                final Collection<Rollup> rollups,
+                                final long startTimestampMillis,
+                                final long endTimestampMillis) throws IOException {
+        Connection connection = null;
+        try {
+            connection = openTransaction(getConnection());
+            for (final Rollup rollup : rollups) {
+                final long fromBucketMillis = getWindowForTimestamp(rollup.resolutionMillis, startTimestampMillis);
+                final long toBucketMillis = getWindowForTimestamp(rollup.resolutionMillis, endTimestampMillis);
+                executeUpdate(connection, String.format("DELETE FROM %s WHERE %s BETWEEN ? AND ?",
+                                getTableFullName(namespace, rollup.tableName),
+                                quote(getRollupBucketColumnName())
+                        ),
+                        fromBucketMillis,
+                        toBucketMillis
+                );
+                // make sure there is no overflow if max long is passed
+                final long toTimestampMillis = Long.MAX_VALUE - toBucketMillis >= rollup.resolutionMillis
+                        ? toBucketMillis + rollup.resolutionMillis - 1
+                        : Long.MAX_VALUE;
+                backfillRollup(connection, namespace, rollup, fromBucketMillis, toTimestampMillis);
+            }
+        } finally {
+            closeConnection(connection);
+        }
+    }
+
+    // rolls up events with timestamp between from and to already stored in the chunk tables of the namespace
+    private void backfillRollup(final Connection connection,
+                                final String namespace,
+                                final Rollup rollup,
+                                final long fromTimestampMillis,
+                                final long toTimestampMillis) throws IOException {
+        final ChunkCatalog catalog = getChunkCatalog(namespace);
+        final String timestampColumn = quote(getEventTimestampColumnName());
+        final List<String> chunkTables = getChunkTableNames(
+                namespace, fromTimestampMillis, toTimestampMillis, Collections.emptyList(), Collections.emptyList()
+        );
+        for (final String chunkTableName : chunkTables) {
+            final Map<String, String> chunkColumns = catalog.columns.getOrDefault(chunkTableName, Collections.emptyMap());
+            // group by the metadata columns of the rollup that the chunk table has; others are empty
+            final List<String> groupColumns = new ArrayList<>();
+            for (final String column : rollup.columns.keySet()) {
+                if (chunkColumns.containsKey(column)) {
+                    groupColumns.add(quote(column));
+                }
+            }
+            final List<Object[]> rows = new ArrayList<>();
+            for (final Map.Entry<String, String> dimensionColumn : chunkColumns.entrySet()) {
+                if (!dimensionColumn.getKey().startsWith(getDimensionKeyColumnNamePrefix())) {
+                    continue;
+                }
+                final String column = quote(dimensionColumn.getKey());
+                final String sql = String.format("SELECT %s - MOD(%s, ?) AS BUCKET, %s COUNT(%s), SUM(%s), MIN(%s), MAX(%s) " +
+                                "FROM %s WHERE %s BETWEEN ? AND ? GROUP BY BUCKET %s",
+                        timestampColumn,
+                        timestampColumn,
+                        groupColumns.isEmpty() ? "" : String.join(", ", groupColumns) + ",",
+                        column, column, column, column,
+                        getTableFullName(namespace, chunkTableName),
+                        timestampColumn,
+                        groupColumns.isEmpty() ? "" : ", " + String.join(", ", groupColumns)
+                );
+                try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                    addParameters(preparedStatement, rollup.resolutionMillis, fromTimestampMillis, toTimestampMillis);
+                    try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            final Object[] row = new Object[2 + rollup.columns.size() + 4];
+                            int index = 0;
+                            row[index++] = resultSet.getLong(1);
+                            row[index++] = dimensionColumn.getValue();
+                            int resultColumn = 2;
+                            for (final String rollupColumn : rollup.columns.keySet()) {
+                                row[index++] = chunkColumns.containsKey(rollupColumn)
+                                        ? nullToEmptyString(resultSet.getString(resultColumn++))
+                                        : "";
+                            }
+                            row[index++] = resultSet.getLong(resultColumn++);
+                            row[index++] = resultSet.getDouble(resultColumn++);
+                            row[index++] = resultSet.getDouble(resultColumn++);
+                            row[index] = resultSet.getDouble(resultColumn);
+                            rows.add(row);
+                        }
+                    }
+                } catch (SQLException e) {
+                    logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+                    throw new IOException(e);
+                }
+            }
+            insertRollupRows(connection, namespace, rollup, rows);
+        }
+    }
+
+    // partial aggregates of the batch for the rollup, as rows of the rollup table
+    private List<Object[]> toRollupRows(final Rollup rollup, final Collection<Event> batch) {
+        final Map<List<Object>, AggregateBucket> buckets = new HashMap<>();
+        for (final Event event : batch) {
+            final long bucketMillis = event.getTimestampMillis() - (event.getTimestampMillis() % rollup.resolutionMillis);
+            for (final Map.Entry<String, Double> dimension : event.getDimensions().entrySet()) {
+                final List<Object> key = new ArrayList<>(2 + rollup.columns.size());
+                key.add(bucketMillis);
+                key.add(dimension.getKey());
+                for (final String metadataKey : rollup.columns.values()) {
+                    key.add(nullToEmptyString(event.getMetadata().get(metadataKey)));
+                }
+                buckets.computeIfAbsent(key, k -> new AggregateBucket()).add(dimension.getValue());
+            }
+        }
+        final List<Object[]> rows = new ArrayList<>(buckets.size());
+        for (final Map.Entry<List<Object>, AggregateBucket> entry : buckets.entrySet()) {
+            final List<Object> row = new ArrayList<>(entry.getKey());
+            final AggregateBucket bucket = entry.getValue();
+            row.add(bucket.getCount());
+            row.add(bucket.getSum());
+            row.add(bucket.getMin());
+            row.add(bucket.getMax());
+            rows.add(row.toArray());
+        }
+        return rows;
+    }
+
+    private void insertRollupRows(final Connection connection,
+                                  final String namespace,
+                                  final Rollup rollup,
+                                  final List<Object[]> rows) throws IOException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        final String insertSql = String.format("INSERT INTO %s (%s, %s, %s, %s, %s) VALUES ",
+                getTableFullName(namespace, rollup.tableName),
+                getRollupGroupColumnsSql(rollup),
+                quote(getRollupCountColumnName()),
+                quote(getRollupSumColumnName()),
+                quote(getRollupMinColumnName()),
+                quote(getRollupMaxColumnName())
+        );
+        final String rowPlaceholders = "(" + getPlaceholders(rows.get(0).length) + ")";
+        final int rowsPerInsert = Math.max(1, Math.min(getMaxRowsPerInsert(), maxParametersPerInsert / rows.get(0).length));
+        for (int from = 0; from < rows.size(); from += rowsPerInsert) {
+            final List<Object[]> insertRows = rows.subList(from, Math.min(rows.size(), from + rowsPerInsert));
+            final StringBuilder sqlBuilder = new StringBuilder(insertSql);
+            final List<Object> parameters = new ArrayList<>();
+            for (final Object[] row : insertRows) {
+                if (!parameters.isEmpty()) {
+                    sqlBuilder.append(",");
+                }
+                sqlBuilder.append(rowPlaceholders);
+                parameters.addAll(Arrays.asList(row));
+            }
+            executeUpdate(connection, sqlBuilder.toString(), parameters.toArray());
+        }
+    }
+
+    // bucket, dimension key and metadata columns of the rollup table, in the order rows are built
+    private String getRollupGroupColumnsSql(final Rollup rollup) {
+        final List<String> columns = new ArrayList<>();
+        columns.add(quote(getRollupBucketColumnName()));
+        columns.add(quote(getRollupDimensionKeyColumnName()));
+        for (final String column : rollup.columns.keySet()) {
+            columns.add(quote(column));
+        }
+        return String.join(", ", columns);
+    }
+
+    // returns the coarsest rollup that can answer the aggregate call, or null to aggregate raw events; the rollup must
+    // have buckets that evenly divide the requested buckets and the time range, must still hold the start of the
+    // range, and must group by all keys of the metadata query, which can only have exact matches
+    private Rollup getRollupForAggregate(final String namespace,
+                                         final long startTimestampMillis,
+                                         final long endTimestampMillis,
+                                         final long bucketMillis,
+                                         final Map<String, String> metadataQuery,
+                                         final Map<String, String> dimensionsQuery) throws IOException {
+        if (!dimensionsQuery.isEmpty()) {
+            return null;
+        }
+        for (final String value : metadataQuery.values()) {
+            if (value.startsWith("~") || value.startsWith("!") || value.isEmpty() || value.equals("=")) {
+                return null;
+            }
+        }
+        Rollup best = null;
+        for (final Rollup rollup : getChunkCatalog(namespace).rollups.values()) {
+            final long resolutionMillis = rollup.resolutionMillis;
+            if (bucketMillis % resolutionMillis != 0
+                    || startTimestampMillis % resolutionMillis != 0
+                    || (endTimestampMillis != Long.MAX_VALUE && (endTimestampMillis + 1) % resolutionMillis != 0)
+                    || startTimestampMillis < System.currentTimeMillis() - rollup.retentionMillis
+                    || !rollup.columns.values().containsAll(metadataQuery.keySet())) {
+                continue;
+            }
+            if (best == null || resolutionMillis > best.resolutionMillis) {
+                best = rollup;
+            }
+        }
+        return best;
+    }
+
+    private Map<Long, Double> doAggregateOnRollup(final String namespace,
+                                                  final Rollup rollup,
+                                                  final String dimensionKey,
+                                                  final long startTimestampMillis,
+                                                  final long endTimestampMillis,
+                                                  final long bucketMillis,
+                                                  final AggregationFunction function,
+                                                  final Map<String, String> metadataQuery) throws IOException {
+        this.rollupQueries.incrementAndGet();
+        final String bucketColumn = quote(getRollupBucketColumnName());
+        final StringBuilder sqlBuilder = new StringBuilder(String.format(
+                "SELECT %s - MOD(%s, ?) AS BUCKET, SUM(%s), SUM(%s), MIN(%s), MAX(%s) FROM %s WHERE %s = ? AND %s BETWEEN ? AND ? ",
+                bucketColumn,
+                bucketColumn,
+                quote(getRollupCountColumnName()),
+                quote(getRollupSumColumnName()),
+                quote(getRollupMinColumnName()),
+                quote(getRollupMaxColumnName()),
+                getTableFullName(namespace, rollup.tableName),
+                quote(getRollupDimensionKeyColumnName()),
+                bucketColumn
+        ));
+        final List<Object> parameters = new ArrayList<>();
+        parameters.add(bucketMillis);
+        parameters.add(dimensionKey);
+        parameters.add(startTimestampMillis);
+        parameters.add(endTimestampMillis);
+        // only exact matches on metadata the rollup groups by get here
+        sqlBuilder.append(getMetadataQuerySql(metadataQuery, parameters));
+        sqlBuilder.append(" GROUP BY BUCKET");
+        final String sql = sqlBuilder.toString();
+
+        final Map<Long, AggregateBucket> buckets = new HashMap<>();
+        try (final Connection connection = getConnection()) {
+            try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                addParameters(preparedStatement, parameters.toArray());
+                try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        final AggregateBucket bucket = new AggregateBucket();
+                        bucket.merge(resultSet.getLong(2),
+                                resultSet.getDouble(3),
+                                resultSet.getDouble(4),
+                                resultSet.getDouble(5)
+                        );
+                        buckets.put(resultSet.getLong(1), bucket);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+            throw new IOException(e);
+        }
+        return toAggregateResults(buckets, function);
+    }
+
+    private String getRollupTableName(final long resolutionMillis, final Collection<String> metadataKeys) {
+        return String.format("%s%d_%d",
+                getRollupTableNamePrefix(),
+                resolutionMillis,
+                Math.abs(String.join(",", getOrdered(metadataKeys)).hashCode())
+        );
+    }
+
+    private static String nullToEmptyString(final String value) {
+        return value != null ? value : "";
+    }
+
+    // statistics of the events of a chunk table: minimum and maximum timestamp, minimum and maximum of each
+    // dimension, and a bloom filter of the values of each metadata; statistics are only ever widened, so a zone map
+    // may keep a chunk table that has no matching events but never skips one that has
+    private static class ZoneMap {
+        // bloom filter bits are stored in big integers, leaving the sign bit out
+        private static final int bitsPerBloomWord = 63;
+        private static final int bloomWords = 4;
+        private static final int bloomHashes = 3;
+
+        static long merge(final String stat, final long current, final long value) {
+            if (isMinStat(stat)) {
+                return Math.min(current, value);
+            }
+            if (isMaxStat(stat)) {
+                return Math.max(current, value);
+            }
+            return current | value;
+        }
+
+        static String minStat(final String column) {
+            return "MIN:" + column;
+        }
+
+        static String maxStat(final String column) {
+            return "MAX:" + column;
+        }
+
+        static String bloomStat(final String column, final int word) {
+            return "BLOOM" + word + ":" + column;
+        }
+
+        static boolean isMinStat(final String stat) {
+            return stat.startsWith("MIN:");
+        }
+
+        static boolean isMaxStat(final String stat) {
+            return stat.startsWith("MAX:");
+        }
+
+        static int[] getBloomBits(final String value) {
+            final HashCode hash = Hashing.murmur3_128().hashString(value, StandardCharsets.UTF_8);
+            final long hash1 = hash.asLong();
+            final long hash2 = Longs.fromByteArray(Arrays.copyOfRange(hash.asBytes(), 8, 16));
+            final int[] bits = new int[bloomHashes];
+            for (int i = 0; i < bloomHashes; ++i) {
+                bits[i] = (int) Math.floorMod(hash1 + i * hash2, (long) bitsPerBloomWord * bloomWords);
+            }
+            return bits;
+        }
 
-        final ExecutorService executorService = Executors.newCachedThreadPool();
-        final Set<String> results = new ConcurrentSkipListSet<>();
-        for (final String chunkTableName : chunkTables) {
-            final StringBuilder sqlBuilder = new StringBuilder(String.format(sqlFormat,
-                    quote(getMetadataKeyColumnName(metadataKey)),
-                    getTableFullName(namespace, chunkTableName),
-                    quote(getEventTimestampColumnName())
-            ));
-            final List<Object> parameters = new ArrayList<>();
-            parameters.add(startTimestampMillis);
-            parameters.add(endTimestampMillis);
-
-            // construct the sql query and parameters for metadata and dimensions
-            sqlBuilder.append(getMetadataQuerySql(metadataQuery, parameters));
-            sqlBuilder.append(getDimensionsQuerySql(dimensionsQuery, parameters));
-
-            final String sql = sqlBuilder.toString();
-
-            executorService.submit(() -> {
-                try (final Connection connection = getConnection()) {
-                    try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
-                        addParameters(preparedStatement, parameters.toArray());
-                        try (final ResultSet resultSet = preparedStatement.executeQuery()) {
-                            while (resultSet.next()) {
-                                results.add(resultSet.getString(1));
-                            }
-                        }
-                    }
-                } catch (SQLException | IOException e) {
-                    logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
-                }
-            });
+        // maps doubles to big integers with the same order, so the database can merge minimums and maximums
+        static long toSortableLong(final double value) {
+            final long bits = Double.doubleToLongBits(value);
+            return bits ^ ((bits >> 63) & Long.MAX_VALUE);
         }
-        executorService.shutdown();
-        try {
-            executorService.awaitTermination(30, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new IOException("events get operation timed out", e);
+
+        static double fromSortableLong(final long value) {
+            return Double.longBitsToDouble(value ^ ((value >> 63) & Long.MAX_VALUE));
         }
-        return results;
     }
 
-    private List<Event> doDimension(final String namespace,
-                                    final String dimensionKey,
-                                    final long startTimestampMillis,
-                                    final long endTimestampMillis,
-                                    final Map<String, String> metadataQuery,
-                                    final Map<String, String> dimensionsQuery) throws IOException {
-        final Set<String> dimensionKeys = new HashSet<>(dimensionsQuery.keySet());
-        // make sure the dimension exists
-        dimensionKeys.add(dimensionKey);
-        final List<String> chunkTables = getChunkTableNames(
-                namespace,
-                startTimestampMillis,
-                endTimestampMillis,
-                metadataQuery.keySet(),
-                dimensionKeys
-        );
+    // partial aggregates of all dimensions per time bucket and metadata values, kept in a rollup table
+    private static class Rollup {
+        private final String tableName;
+        private long resolutionMillis;
+        private long retentionMillis = Long.MAX_VALUE;
+        // metadata column names to key names of the metadata the rollup groups by, ordered by column name
+        private final Map<String, String> columns = new TreeMap<>();
 
-        final ExecutorService executorService = Executors.newCachedThreadPool();
-        final List<Event> results = new CopyOnWriteArrayList<>();
-        for (String chunkTableName: chunkTables) {
-            final String sqlFormat = "SELECT %s, %s as DIMENSION_VALUE FROM %s WHERE %s BETWEEN ? AND ? ";
-            final StringBuilder sqlBuilder = new StringBuilder(String.format(sqlFormat,
-                    quote(getEventTimestampColumnName()),
-                    quote(getDimensionKeyColumnName(dimensionKey)),
-                    getTableFullName(namespace, chunkTableName),
-                    quote(getEventTimestampColumnName())
-            ));
+        Rollup(final String tableName) {
+            this.tableName = tableName;
+        }
+    }
 
-            final List<Object> parameters = new ArrayList<>();
-            parameters.add(startTimestampMillis);
-            parameters.add(endTimestampMillis);
-
-            // construct the sql query and parameters for metadata and dimensions
-            sqlBuilder.append(getMetadataQuerySql(metadataQuery, parameters));
-            sqlBuilder.append(getDimensionsQuerySql(dimensionsQuery, parameters));
-            final String sql = sqlBuilder.toString();
-
-            executorService.submit(() -> {
-                try (final Connection connection = getConnection()) {
-                    try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
-                        addParameters(preparedStatement, parameters.toArray());
-                        try (final ResultSet resultSet = preparedStatement.executeQuery()) {
-                            while (resultSet.next()) {
-                                final Map<String, Double> dimension = Collections.singletonMap(dimensionKey, resultSet.getDouble("DIMENSION_VALUE"));
-                                final long timestampMillis = resultSet.getLong(1);
-                                results.add(new Event(timestampMillis, Collections.emptyMap(), dimension, null));
-                            }
+    // query executed against a single chunk table
+    @FunctionalInterface
+    private interface ChunkQuery<R> {
+        R execute(String chunkTableName) throws IOException;
+    }
+
+    // executes the query against all given chunk tables on the shared chunk query executor and returns results
+    // of the chunks that succeeded within the timeout; each namespace is allowed a limited number of in-flight
+    // chunk queries so a query touching many chunks cannot starve queries on other namespaces
+    private <R> List<R> executeOnChunks(final String namespace,
+                                        final List<String> chunkTables,
+                                        final long timeoutMillis,
+                                        final ChunkQuery<R> query) throws IOException {
+        if (this.chunkQueryExecutor.isShutdown()) {
+            throw new IOException("events instance is closed");
+        }
+        // the timeout covers waiting for permits as well as executing the queries
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final Semaphore permits = getChunkQueryPermits(namespace);
+        final List<FutureTask<R>> tasks = new ArrayList<>(chunkTables.size());
+        try {
+            for (final String chunkTableName : chunkTables) {
+                if (!permits.tryAcquire(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    logger.warn("timed out waiting to query namespace '{}'; {} of {} chunks submitted",
+                            namespace, tasks.size(), chunkTables.size());
+                    break;
+                }
+                // the permit is released by whichever of the query or a cancellation before it starts claims it
+                // first; a query cancelled while running holds the permit until it returns
+                final AtomicBoolean claimed = new AtomicBoolean();
+                final FutureTask<R> task = new FutureTask<R>(() -> {
+                    if (!claimed.compareAndSet(false, true)) {
+                        return null;
+                    }
+                    final Thread thread = Thread.currentThread();
+                    final String threadName = thread.getName();
+                    thread.setName(String.format("get-chunk-%s.%s", namespace, chunkTableName));
+                    try {
+                        return query.execute(chunkTableName);
+                    } finally {
+                        thread.setName(threadName);
+                        permits.release();
+                    }
+                }) {
+                    @Override
+                    protected void done() {
+                        if (claimed.compareAndSet(false, true)) {
+                            permits.release();
                         }
                     }
-                } catch (SQLException | IOException e) {
-                    logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+                };
+                tasks.add(task);
+                try {
+                    this.chunkQueryExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.cancel(false);
+                    throw e;
                 }
-            });
-        }
-        executorService.shutdown();
-        try {
-            executorService.awaitTermination(30, TimeUnit.MINUTES);
+            }
+
+            final List<R> results = new ArrayList<>(tasks.size());
+            for (int i = 0; i < tasks.size(); ++i) {
+                try {
+                    results.add(tasks.get(i).get(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS));
+                } catch (ExecutionException e) {
+                    logger.warn("caught exception executing query on chunk '{}' in namespace '{}': {}",
+                            chunkTables.get(i), namespace, e.getCause().getMessage());
+                } catch (TimeoutException e) {
+                    logger.warn("timed out executing queries on namespace '{}'; {} of {} chunks completed",
+                            namespace, results.size(), chunkTables.size());
+                    break;
+                }
+            }
+            return results;
         } catch (InterruptedException e) {
-            throw new IOException("events get operation timed out", e);
+            Thread.currentThread().interrupt();
+            throw new IOException("events operation interrupted", e);
+        } catch (RejectedExecutionException e) {
+            throw new IOException("failed to submit chunk query", e);
+        } finally {
+            // cancel anything that is still pending or running
+            for (final FutureTask<R> task : tasks) {
+                task.cancel(true);
+            }
         }
-        return results;
+    }
+
+    private Semaphore getChunkQueryPermits(final String namespace) {
+        return this.namespaceChunkQueryPermits.computeIfAbsent(namespace,
+                k -> new Semaphore(this.maxChunkQueriesPerNamespace, true)
+        );
+    }
+
+    // number of chunk queries waiting in the shared executor queue
+    public int getChunkQueryQueueDepth() {
+        return this.chunkQueryExecutor.getQueue().size();
+    }
+
+    // number of chunk queries currently being executed across all namespaces
+    public int getChunkQueryActiveCount() {
+        return this.chunkQueryExecutor.getActiveCount();
+    }
+
+    // number of submitted chunk queries not yet completed for the namespace
+    public int getChunkQueriesInFlight(final String namespace) {
+        final Semaphore permits = this.namespaceChunkQueryPermits.get(namespace);
+        return permits != null ? this.maxChunkQueriesPerNamespace - permits.availablePermits() : 0;
+    }
+
+    // number of callers waiting for a chunk query slot for the namespace
+    public int getChunkQueriesWaiting(final String namespace) {
+        final Semaphore permits = this.namespaceChunkQueryPermits.get(namespace);
+        return permits != null ? permits.getQueueLength() : 0;
     }
 
     // the metadata query object can contain these patterns:
@@ -788,11 +3093,21 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
             final String column = quote(getMetadataKeyColumnName(entry.getKey()));
             final String parameter = entry.getValue();
             if (parameter.startsWith("~")) {
-                sql.append(" AND ").append(getRegexQuery(column));
-                parameters.add(getRegexPattern(parameter.substring(1)));
+                final String rangeSql = getPatternRangeSql(column, parameter.substring(1), parameters);
+                if (rangeSql != null) {
+                    sql.append(" AND ").append(rangeSql);
+                } else {
+                    sql.append(" AND ").append(getRegexQuery(column));
+                    parameters.add(getRegexPattern(parameter.substring(1)));
+                }
             } else if (parameter.startsWith("!~")) {
-                sql.append(" AND ").append(getNotRegexQuery(column));
-                parameters.add(getRegexPattern(parameter.substring(2)));
+                final String rangeSql = getPatternRangeSql(column, parameter.substring(2), parameters);
+                if (rangeSql != null) {
+                    sql.append(" AND NOT (").append(rangeSql).append(") ");
+                } else {
+                    sql.append(" AND ").append(getNotRegexQuery(column));
+                    parameters.add(getRegexPattern(parameter.substring(2)));
+                }
             } else if (parameter.startsWith("=")) {
                 sql.append(" AND ").append(column).append(" = ? ");
                 parameters.add(parameter.substring(1));
@@ -807,21 +3122,49 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
         return sql.toString();
     }
 
+    // rewrites wild-card patterns that are a literal value or a literal prefix followed by '*' into an equality or
+    // a range predicate, which unlike regex and like operators can use the index of the metadata column; returns null
+    // if the pattern needs to be evaluated as a regex
+    private String getPatternRangeSql(final String column, final String pattern, final List<Object> parameters) {
+        final boolean isPrefix = pattern.endsWith("*");
+        final String literal = isPrefix ? pattern.substring(0, pattern.length() - 1) : pattern;
+        if (literal.isEmpty() || literal.indexOf('*') >= 0 || !isLiteralPattern(literal)) {
+            return null;
+        }
+        if (!isPrefix) {
+            parameters.add(literal);
+            return column + " = ? ";
+        }
+        // the smallest value larger than all values starting with the prefix
+        final char last = literal.charAt(literal.length() - 1);
+        if (Character.isSurrogate(last) || last == Character.MAX_VALUE) {
+            return null;
+        }
+        parameters.add(literal);
+        parameters.add(literal.substring(0, literal.length() - 1) + (char) (last + 1));
+        return column + " >= ? AND " + column + " < ? ";
+    }
+
+    // returns true if the engine matches all characters of the given wild-card pattern, which has no '*', literally
+    protected boolean isLiteralPattern(final String pattern) {
+        return true;
+    }
+
     abstract protected String getRegexPattern(String originalPattern);
 
+    // returns the sql for the bitwise or of two non-negative big integers
+    abstract protected String getBitwiseOrSql(String left, String right);
+
+    // sql inserting a row of the chunk lookup table with the table name, column name and start timestamp column
+    // bound as parameters, in this order; if the row exists, its start timestamp column is set to the sql built by
+    // the given function of the current and the new value
+    abstract protected String getUpsertZoneMapStatSql(String namespace, BinaryOperator<String> merge);
+
     abstract protected String getRegexQuery(String column);
 
     abstract protected String getNotRegexQuery(String column);
 
-    // the dimension query object can contain these patterns:
-    // '' (just a number): equals - 'cpu' => '90'
-    // '=': equals - 'cpu' => '=90'
-    // '!=': not equals - 'cpu' => '!=90'
-    // '..': between - 'cpu' => '90..100'
-    // '>': greater than - 'cpu' => '>90'
-    // '>=': greater than or equals - 'cpu' => '>=90'
-    // '<': less than - 'cpu' => '<90'
-    // '<=': less than or equals - 'cpu' => '<=90'
+    // see DimensionPredicate for the patterns a dimension query can contain
     private String getDimensionsQuerySql(final Map<String, String> dimensionsQuery, final List<Object> parameters) {
         if (dimensionsQuery.isEmpty()) {
             return " AND 1 ";
@@ -829,48 +3172,11 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
         final StringBuilder sql = new StringBuilder();
         for (final Map.Entry<String, String> entry : dimensionsQuery.entrySet()) {
             final String column = quote(getDimensionKeyColumnName(entry.getKey()));
-            final String query = entry.getValue();
-            if (query.contains("..")) {
-                sql.append(" AND ? BETWEEN ? AND ? ");
-                parameters.add(Double.valueOf(query.substring(0, query.indexOf(".."))));
-                parameters.add(Double.valueOf(query.substring(query.indexOf("..") + 2)));
-            } else if (query.startsWith(">=")) {
-                sql.append(" AND ").append(column).append(" >= ? ");
-                parameters.add(Double.valueOf(query.substring(2)));
-            } else if (query.startsWith("<=")) {
-                sql.append(" AND ").append(column).append(" <= ? ");
-                parameters.add(Double.valueOf(query.substring(2)));
-            } else if (query.startsWith(">")) {
-                sql.append(" AND ").append(column).append(" > ? ");
-                parameters.add(Double.valueOf(query.substring(1)));
-            } else if (query.startsWith("<")) {
-                sql.append(" AND ").append(column).append(" < ? ");
-                parameters.add(Double.valueOf(query.substring(1)));
-            } else if (query.startsWith("!=")) {
-                sql.append(" AND ").append(column).append(" != ? ");
-                parameters.add(Double.valueOf(query.substring(2)));
-            } else if (query.startsWith("=")) {
-                sql.append(" AND ").append(column).append(" = ? ");
-                parameters.add(Double.valueOf(query.substring(1)));
-            } else {
-                sql.append(" AND ").append(column).append(" = ? ");
-                parameters.add(Double.valueOf(query));
-            }
+            sql.append(" AND ").append(DimensionPredicate.parse(entry.getValue()).toSql(column, parameters));
         }
         return sql.toString();
     }
 
-    private void sortEventsByTimestamp(final List<Event> events, final boolean ascending) {
-        events.sort((event1, event2) -> {
-            if (event1.getTimestampMillis() < event2.getTimestampMillis()) {
-                return ascending ? -1 : 1;
-            } else if (event1.getTimestampMillis() > event2.getTimestampMillis()) {
-                return ascending ? 1 : -1;
-            }
-            return 0;
-        });
-    }
-
     // find the list of all chunk tables containing events for
     // the given namespace, start and end, metadata and dimension keys
     private List<String> getChunkTableNames(final String namespace,
@@ -878,66 +3184,142 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
                                             final long endTimestampMillis,
                                             final Collection<String> metadataKeys,
                                             final Collection<String> dimensionKeys) throws IOException {
-        final StringBuilder sqlFormatBuilder = new StringBuilder();
-        final Object[] parameters = new Object[2 + metadataKeys.size() + dimensionKeys.size()];
-        sqlFormatBuilder.append("SELECT DISTINCT ").append(quote(getTableNameColumnName()))
-                .append(" FROM ").append(getTableFullName(namespace, getChunksLookupTableName()))
-                .append(" WHERE (")
-                .append(quote(getStartTimestampMillisColumnName()))
-                .append(" BETWEEN ? AND ?)")
-        ;
-        int index = 0;
-        final long startWindow = getWindowForTimestamp(startTimestampMillis) - getWindowSizeMillis();
-        parameters[index++] = startWindow >= 0 ? startWindow : 0;
+        return getChunkTableNames(namespace, startTimestampMillis, endTimestampMillis, metadataKeys, dimensionKeys, null);
+    }
+
+    // same as above; if zone map stats is not null, it is filled with the zone map statistics of the chunk tables
+    // returned that have a zone map; statistics of recent chunk tables are read with the chunk tables themselves
+    private List<String> getChunkTableNames(final String namespace,
+                                            final long startTimestampMillis,
+                                            final long endTimestampMillis,
+                                            final Collection<String> metadataKeys,
+                                            final Collection<String> dimensionKeys,
+                                            final Map<String, Map<String, Long>> zoneMapStats) throws IOException {
+        final ChunkCatalog catalog = getChunkCatalog(namespace);
+        final long windowSizeMillis = catalog.windowSizeMillis;
+        final long startWindow = Math.max(0, getWindowForTimestamp(windowSizeMillis, startTimestampMillis) - windowSizeMillis);
         // make sure if max long is passed there's no overflow
-        final long endTimestampWindow = Long.MAX_VALUE - getWindowForTimestamp(endTimestampMillis) > getWindowSizeMillis()
-                ? getWindowForTimestamp(endTimestampMillis) + getWindowSizeMillis()
+        final long endTimestampWindow = Long.MAX_VALUE - getWindowForTimestamp(windowSizeMillis, endTimestampMillis) > windowSizeMillis
+                ? getWindowForTimestamp(windowSizeMillis, endTimestampMillis) + windowSizeMillis
                 : Long.MAX_VALUE;
-        parameters[index++] = endTimestampWindow;
 
-        // need to find the table names that have ALL of the metadata/dimension key columns using nested selects
-        final String tableNameInSeparator = " AND " + quote(getTableNameColumnName()) + " IN (";
-        final StringJoiner tableNameSelectJoiner = new StringJoiner(tableNameInSeparator);
-        final StringBuilder innerSelectBuilder = new StringBuilder();
+        final Set<String> columnNames = new HashSet<>();
         for (final String metadataKey : metadataKeys) {
-            innerSelectBuilder.setLength(0);
-            innerSelectBuilder.append("SELECT ").append(quote(getTableNameColumnName()))
-                    .append(" FROM ").append(getTableFullName(namespace, getChunksLookupTableName()))
-                    .append(" WHERE ").append(quote(getColumnColumnName())).append(" = ?");
-            tableNameSelectJoiner.add(innerSelectBuilder.toString());
-            parameters[index++] = getMetadataKeyColumnName(metadataKey);
+            columnNames.add(getMetadataKeyColumnName(metadataKey));
         }
         for (final String dimensionKey : dimensionKeys) {
-            innerSelectBuilder.setLength(0);
-            innerSelectBuilder.append("SELECT ").append(quote(getTableNameColumnName()))
-                    .append(" FROM ").append(getTableFullName(namespace, getChunksLookupTableName()))
-                    .append(" WHERE ").append(quote(getColumnColumnName())).append(" = ?");
-            tableNameSelectJoiner.add(innerSelectBuilder.toString());
-            parameters[index++] = getDimensionKeyColumnName(dimensionKey);
+            columnNames.add(getDimensionKeyColumnName(dimensionKey));
         }
 
-        if (!metadataKeys.isEmpty() || !dimensionKeys.isEmpty()) {
-            sqlFormatBuilder.append(" AND (")
-                    .append(quote(getTableNameColumnName()))
-                    .append(" IN (")
-                    .append(tableNameSelectJoiner.toString());
-            // close all open parentheses from metadata/dimension inner selects
-            for (int i = 0; i < metadataKeys.size() + dimensionKeys.size(); i++) {
-                sqlFormatBuilder.append(")");
+        // chunk tables of windows near now, or past the newest window in the catalog, may have been created since the
+        // catalog was loaded, by this or other processes; those windows are read from the lookup table instead
+        long newestWindow = -1;
+        for (final long chunkStartTimestamp : catalog.startTimestamps.values()) {
+            newestWindow = Math.max(newestWindow, chunkStartTimestamp);
+        }
+        final long recentWindow = Math.max(0, getWindowForTimestamp(windowSizeMillis, System.currentTimeMillis()) - windowSizeMillis);
+        final long freshStartWindow = Math.max(startWindow, Math.min(newestWindow + 1, recentWindow));
+        final Map<String, Long> startTimestamps = new HashMap<>();
+        final Map<String, Map<String, String>> chunkColumns = new HashMap<>();
+        for (final Map.Entry<String, Long> entry : catalog.startTimestamps.entrySet()) {
+            final long chunkStartTimestamp = entry.getValue();
+            if (chunkStartTimestamp >= startWindow && chunkStartTimestamp <= endTimestampWindow
+                    && (freshStartWindow > endTimestampWindow || chunkStartTimestamp < freshStartWindow)) {
+                startTimestamps.put(entry.getKey(), chunkStartTimestamp);
+                chunkColumns.put(entry.getKey(), catalog.columns.get(entry.getKey()));
+            }
+        }
+        final boolean readRecentChunks = freshStartWindow <= endTimestampWindow;
+        final Map<String, Map<String, Long>> recentZoneMapStats = new HashMap<>();
+        if (readRecentChunks) {
+            final int cachedCount = startTimestamps.size();
+            loadChunks(namespace, freshStartWindow, endTimestampWindow, startTimestamps, chunkColumns, recentZoneMapStats);
+            for (final String chunkTableName : startTimestamps.keySet()) {
+                if (!catalog.startTimestamps.containsKey(chunkTableName)) {
+                    // the next call loads the catalog with the new chunk tables
+                    invalidateChunkCatalog(namespace);
+                    break;
+                }
             }
-            // close single open paren from IN (
-            sqlFormatBuilder.append(")");
+            logger.debug("read {} recent chunk tables of namespace {} from the lookup table", startTimestamps.size() - cachedCount, namespace);
         }
 
+        // find the chunk tables in the time range that have ALL of the metadata/dimension key columns
         final List<String> tables = new ArrayList<>();
-        final String sql = sqlFormatBuilder.toString();
+        for (final Map.Entry<String, Long> entry : new TreeMap<>(startTimestamps).entrySet()) {
+            final Map<String, String> columns = chunkColumns.get(entry.getKey());
+            if (columns == null || !columns.keySet().containsAll(columnNames)) {
+                continue;
+            }
+            tables.add(entry.getKey());
+        }
+
+        if (zoneMapStats != null) {
+            // statistics of recent chunk tables were read along with them; read those of the others
+            final List<String> cachedTables = new ArrayList<>();
+            for (final String chunkTableName : tables) {
+                if (readRecentChunks && startTimestamps.get(chunkTableName) >= freshStartWindow) {
+                    if (recentZoneMapStats.containsKey(chunkTableName)) {
+                        zoneMapStats.put(chunkTableName, recentZoneMapStats.get(chunkTableName));
+                    }
+                } else {
+                    cachedTables.add(chunkTableName);
+                }
+            }
+            if (!cachedTables.isEmpty()) {
+                zoneMapStats.putAll(loadZoneMapStats(namespace, cachedTables));
+            }
+        }
+        return tables;
+    }
+
+    // reads all rows of the chunk tables of windows between the given start and end from the lookup table, in a
+    // single query; chunk tables, their columns and their zone map statistics are added to the given maps
+    private void loadChunks(final String namespace,
+                            final long startWindow,
+                            final long endWindow,
+                            final Map<String, Long> startTimestamps,
+                            final Map<String, Map<String, String>> chunkColumns,
+                            final Map<String, Map<String, Long>> zoneMapStats) throws IOException {
+        // chunk tables are found by the start timestamp of their entry row, which has an empty column name; the
+        // start timestamp column of other rows may hold zone map statistics rather than the start of the window
+        final String sql = getSql(namespace, "loadChunks", () -> String.format(
+                "SELECT %s, %s, %s, %s FROM %s WHERE %s IN (SELECT %s FROM %s WHERE %s BETWEEN ? AND ? AND %s = ? AND %s LIKE ?)",
+                quote(getTableNameColumnName()),
+                quote(getColumnColumnName()),
+                quote(getKeyColumnName()),
+                quote(getStartTimestampMillisColumnName()),
+                getTableFullName(namespace, getChunksLookupTableName()),
+                quote(getTableNameColumnName()),
+                quote(getTableNameColumnName()),
+                getTableFullName(namespace, getChunksLookupTableName()),
+                quote(getStartTimestampMillisColumnName()),
+                quote(getColumnColumnName()),
+                quote(getTableNameColumnName())
+        ));
         try (final Connection connection = getConnection()) {
             try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
-                addParameters(preparedStatement, parameters);
-                logger.debug("executing chunk table sql query [[{}]] with parameters (({}))", sql, parameters);
+                addParameters(preparedStatement, startWindow, endWindow, "", getChunkTableNamePrefix() + "%");
                 try (final ResultSet resultSet = preparedStatement.executeQuery()) {
                     while (resultSet.next()) {
-                        tables.add(resultSet.getString(1));
+                        final String chunkTableName = resultSet.getString(1);
+                        final String columnName = resultSet.getString(2);
+                        final String keyName = resultSet.getString(3);
+                        if (!chunkTableName.startsWith(getChunkTableNamePrefix())
+                                || chunkTableName.startsWith(getTombstoneTableNamePrefix())) {
+                            continue;
+                        }
+                        // zone map statistics are stored in the start timestamp column
+                        if (columnName != null && columnName.startsWith(getZoneMapColumnName())) {
+                            addZoneMapRow(zoneMapStats, chunkTableName, columnName, resultSet.getLong(4));
+                            continue;
+                        }
+                        startTimestamps.put(chunkTableName, resultSet.getLong(4));
+                        final Map<String, String> columns = chunkColumns.computeIfAbsent(chunkTableName, k -> new HashMap<>());
+                        // the row with no key is the chunk table entry itself
+                        if (keyName != null) {
+                            columns.put(columnName, keyName);
+                        }
                     }
                 }
             }
@@ -945,17 +3327,253 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
             logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
             throw new IOException(e);
         }
+    }
+
+    // same as the chunk table names of a time range and keys, also skipping chunk tables whose zone maps show that
+    // none of their events match the queries; statistics are read from the lookup table on every call rather than
+    // from the chunk catalog, so events committed by other processes are never skipped
+    private List<String> getChunkTableNames(final String namespace,
+                                            final long startTimestampMillis,
+                                            final long endTimestampMillis,
+                                            final Collection<String> metadataKeys,
+                                            final Collection<String> dimensionKeys,
+                                            final Map<String, String> metadataQuery,
+                                            final Map<String, String> dimensionsQuery) throws IOException {
+        final Map<String, Map<String, Long>> stats = new HashMap<>();
+        final List<String> chunkTables = getChunkTableNames(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataKeys,
+                dimensionKeys,
+                stats
+        );
+        final List<String> tables = new ArrayList<>(chunkTables.size());
+        for (final String chunkTableName : chunkTables) {
+            final Map<String, Long> chunkStats = stats.get(chunkTableName);
+            if (chunkStats != null && !mayMatch(chunkStats, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery)) {
+                this.chunkTablesPruned.incrementAndGet();
+                continue;
+            }
+            tables.add(chunkTableName);
+        }
         return tables;
     }
 
-    private long getWindowForTimestamp(final long timestampMillis) {
-        return (timestampMillis / getWindowSizeMillis()) * getWindowSizeMillis();
+    // cached view of the chunk lookup table of a namespace
+    private static class ChunkCatalog {
+        private final long version;
+        private final long loadedAtMillis;
+        private long windowSizeMillis;
+        // chunk table name to start timestamp of the window
+        private final Map<String, Long> startTimestamps = new TreeMap<>();
+        // chunk table name to map of column names to key names
+        private final Map<String, Map<String, String>> columns = new HashMap<>();
+        // rollup table name to rollup
+        private final Map<String, Rollup> rollups = new HashMap<>();
+
+        ChunkCatalog(final long version, final long loadedAtMillis) {
+            this.version = version;
+            this.loadedAtMillis = loadedAtMillis;
+        }
+    }
+
+    private ChunkCatalog getChunkCatalog(final String namespace) throws IOException {
+        final long version = getChunkCatalogVersion(namespace).get();
+        final ChunkCatalog cached = this.chunkCatalogs.get(namespace);
+        if (cached != null
+                && cached.version == version
+                && System.currentTimeMillis() - cached.loadedAtMillis < getChunkCatalogTtlMillis()) {
+            this.chunkCatalogHits.incrementAndGet();
+            return cached;
+        }
+        this.chunkCatalogMisses.incrementAndGet();
+        // if invalidated while loading, the version will not match and the next call reloads
+        final ChunkCatalog loaded = loadChunkCatalog(namespace, version);
+        this.chunkCatalogs.put(namespace, loaded);
+        return loaded;
+    }
+
+    private ChunkCatalog loadChunkCatalog(final String namespace, final long version) throws IOException {
+
+        final String sql = String.format("SELECT %s, %s, %s, %s FROM %s",
+                quote(getTableNameColumnName()),
+                quote(getColumnColumnName()),
+                quote(getKeyColumnName()),
+                quote(getStartTimestampMillisColumnName()),
+                getTableFullName(namespace, getChunksLookupTableName())
+        );
+        final ChunkCatalog catalog = new ChunkCatalog(version, System.currentTimeMillis());
+        catalog.windowSizeMillis = getDefaultWindowSizeMillis();
+        try (final Connection connection = getConnection()) {
+            try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        final String chunkTableName = resultSet.getString(1);
+                        final String columnName = resultSet.getString(2);
+                        final String keyName = resultSet.getString(3);
+                        // namespace settings are stored as rows describing the lookup table itself
+                        if (getChunksLookupTableName().equals(chunkTableName)) {
+                            if (getWindowSizeMillisColumnName().equals(columnName)) {
+                                catalog.windowSizeMillis = resultSet.getLong(4);
+                            }
+                            continue;
+                        }
+                        // rollups are described by a row per setting and a row per metadata key they group by
+                        if (chunkTableName.startsWith(getRollupTableNamePrefix())) {
+                            addRollupRow(catalog.rollups, chunkTableName, columnName, keyName, resultSet.getLong(4));
+                            continue;
+                        }
+                        // zone maps are described by an entry row and a row per statistic
+                        if (columnName != null && columnName.startsWith(getZoneMapColumnName())) {
+                            getZoneMapChunkTables(namespace).add(chunkTableName);
+                            continue;
+                        }
+                        catalog.startTimestamps.put(chunkTableName, resultSet.getLong(4));
+                        final Map<String, String> columns = catalog.columns.computeIfAbsent(chunkTableName, k -> new HashMap<>());
+                        // the row with no key is the chunk table entry itself
+                        if (keyName != null) {
+                            columns.put(columnName, keyName);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+            throw new IOException(e);
+        }
+        return catalog;
+    }
+
+    // rollups are described by a row per setting and a row per metadata key they group by
+    private void addRollupRow(final Map<String, Rollup> rollups,
+                              final String rollupTableName,
+                              final String columnName,
+                              final String keyName,
+                              final long value) {
+        final Rollup rollup = rollups.computeIfAbsent(rollupTableName, Rollup::new);
+        if (keyName != null) {
+            rollup.columns.put(columnName, keyName);
+        } else if (getRollupResolutionMillisColumnName().equals(columnName)) {
+            rollup.resolutionMillis = value;
+        } else if (getRollupRetentionMillisColumnName().equals(columnName)) {
+            rollup.retentionMillis = value;
+        }
+    }
+
+    // reads the rollups of the namespace from the lookup table on the given connection
+    private Map<String, Rollup> loadRollups(final Connection connection, final String namespace) throws IOException {
+        final String sql = getSql(namespace, "loadRollups", () -> String.format("SELECT %s, %s, %s, %s FROM %s WHERE %s LIKE ?",
+                quote(getTableNameColumnName()),
+                quote(getColumnColumnName()),
+                quote(getKeyColumnName()),
+                quote(getStartTimestampMillisColumnName()),
+                getTableFullName(namespace, getChunksLookupTableName()),
+                quote(getTableNameColumnName())
+        ));
+        final Map<String, Rollup> rollups = new HashMap<>();
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            addParameters(preparedStatement, getRollupTableNamePrefix() + "%");
+            try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    final String rollupTableName = resultSet.getString(1);
+                    if (!rollupTableName.startsWith(getRollupTableNamePrefix())) {
+                        continue;
+                    }
+                    addRollupRow(rollups, rollupTableName, resultSet.getString(2), resultSet.getString(3), resultSet.getLong(4));
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+            throw new IOException(e);
+        }
+        return rollups;
+    }
+
+    private AtomicLong getChunkCatalogVersion(final String namespace) {
+        return this.chunkCatalogVersions.computeIfAbsent(namespace, k -> new AtomicLong());
+    }
+
+    private void invalidateChunkCatalog(final String namespace) {
+        getChunkCatalogVersion(namespace).incrementAndGet();
+        this.chunkCatalogs.remove(namespace);
+    }
+
+    // maximum time a cached chunk catalog is used; bounds staleness when other processes write to the same database
+    protected long getChunkCatalogTtlMillis() {
+        return TimeUnit.SECONDS.toMillis(30);
+    }
+
+    public long getChunkCatalogCacheHitCount() {
+        return this.chunkCatalogHits.get();
+    }
+
+    public long getChunkCatalogCacheMissCount() {
+        return this.chunkCatalogMisses.get();
+    }
+
+    private long getWindowForTimestamp(final long windowSizeMillis, final long timestampMillis) {
+        return (timestampMillis / windowSizeMillis) * windowSizeMillis;
+    }
+
+    private long getWindowSizeMillis(final String namespace) throws IOException {
+        return getChunkCatalog(namespace).windowSizeMillis;
     }
 
-    private long getWindowSizeMillis() {
+    // window size used for namespaces created without an explicit chunk window size
+    protected long getDefaultWindowSizeMillis() {
         return TimeUnit.DAYS.toMillis(1);  // one per day
     }
 
+    private void doSetWindowSizeMillis(final String namespace, final long windowSizeMillis) throws IOException {
+        // chunk tables already created with the default window size cannot be moved to another window size
+        if (getChunkCatalog(namespace).startTimestamps.isEmpty()) {
+            logger.info("setting chunk window size for namespace '{}' to {}ms", namespace, windowSizeMillis);
+            try {
+                // fails if the setting is already stored, by an earlier create or a concurrent one
+                executeUpdate(String.format("INSERT INTO %s SET %s = ?, %s = ?, %s = ?",
+                                getTableFullName(namespace, getChunksLookupTableName()),
+                                quote(getTableNameColumnName()),
+                                quote(getColumnColumnName()),
+                                quote(getStartTimestampMillisColumnName())
+                        ),
+                        getChunksLookupTableName(),
+                        getWindowSizeMillisColumnName(),
+                        windowSizeMillis
+                );
+            } catch (IOException e) {
+                if (!(e.getCause() instanceof SQLIntegrityConstraintViolationException)) {
+                    throw e;
+                }
+            }
+        }
+        final long currentWindowSizeMillis = getStoredWindowSizeMillis(namespace);
+        if (currentWindowSizeMillis != windowSizeMillis) {
+            logger.warn("namespace '{}' already has chunk window size of {}ms; ignoring requested {}ms",
+                    namespace, currentWindowSizeMillis, windowSizeMillis);
+        }
+    }
+
+    // window size stored in the lookup table, or the default if the namespace was created without one
+    private long getStoredWindowSizeMillis(final String namespace) throws IOException {
+        final String sql = String.format("SELECT %s FROM %s WHERE %s = ? AND %s = ?",
+                quote(getStartTimestampMillisColumnName()),
+                getTableFullName(namespace, getChunksLookupTableName()),
+                quote(getTableNameColumnName()),
+                quote(getColumnColumnName())
+        );
+        try (final Connection connection = getConnection()) {
+            try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                addParameters(preparedStatement, getChunksLookupTableName(), getWindowSizeMillisColumnName());
+                try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                    return resultSet.next() ? resultSet.getLong(1) : getDefaultWindowSizeMillis();
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("caught exception executing query sql '{}': {}", sql, e.getMessage());
+            throw new IOException(e);
+        }
+    }
+
     protected List<String> getOrderedKeys(final Map<String, ?> map) {
         return getOrdered(map.keySet());
     }
@@ -973,14 +3591,18 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
     }
 
     // chunk table name is hash(namespace)_window(timestamp)_hash(metadata keys)_hash(dimension keys)
-    private String getChunkTableName(final long timestampMillis,
+    // the window is formatted as yyyy_MM_dd for windows of whole days and yyyy_MM_dd_HH_mm otherwise
+    private String getChunkTableName(final long windowSizeMillis,
+                                     final long timestampMillis,
                                      final Collection<String> metadataKeys,
                                      final Collection<String> dimensionKeys) {
-        final DateFormat dateFormat = new SimpleDateFormat("yyyy_MM_dd");
+        final DateFormat dateFormat = new SimpleDateFormat(
+                windowSizeMillis % TimeUnit.DAYS.toMillis(1) == 0 ? "yyyy_MM_dd" : "yyyy_MM_dd_HH_mm"
+        );
         dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
         return String.format("%s%s_%s",
                 getChunkTableNamePrefix(),
-                dateFormat.format(new Date(getWindowForTimestamp(timestampMillis))),
+                dateFormat.format(new Date(getWindowForTimestamp(windowSizeMillis, timestampMillis))),
                 getKeysHash(metadataKeys, dimensionKeys)
         );
     }
@@ -1006,6 +3628,40 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
         return "CANTOR-EVENTS-CHUNK-";
     }
 
+    // expired chunk tables are renamed with this prefix before they are dropped; it starts with the chunk table name
+    // prefix, so tombstones left behind are dropped by doValidations
+    protected String getTombstoneTableNamePrefix() {
+        return getChunkTableNamePrefix() + "TOMBSTONE-";
+    }
+
+    // tombstone tables left behind for longer than this are dropped by doValidations
+    protected long getTombstoneTableGracePeriodMillis() {
+        return TimeUnit.HOURS.toMillis(1);
+    }
+
+    // returns a unique tombstone table name carrying the time it was generated at, in base 36, followed by random
+    // hex digits; the name is kept within the 64 character limit of mysql
+    private String getNewTombstoneTableName() {
+        return getTombstoneTableNamePrefix()
+                + Long.toString(System.currentTimeMillis(), Character.MAX_RADIX)
+                + "-" + UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+    }
+
+    // returns true if the tombstone table was named longer than the grace period ago, or before names carried a time
+    private boolean isAbandonedTombstoneTable(final String tableName) {
+        final String suffix = tableName.substring(getTombstoneTableNamePrefix().length());
+        final int separator = suffix.indexOf('-');
+        if (separator < 0) {
+            return true;
+        }
+        try {
+            final long namedAtMillis = Long.parseLong(suffix.substring(0, separator), Character.MAX_RADIX);
+            return System.currentTimeMillis() - namedAtMillis > getTombstoneTableGracePeriodMillis();
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
     protected String getTableNameColumnName() {
         return "TABLE_NAME";
     }
@@ -1022,6 +3678,54 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
         return "START_TIMESTAMP_MILLIS";
     }
 
+    // column value of the lookup table row holding the chunk window size of the namespace
+    protected String getWindowSizeMillisColumnName() {
+        return "WINDOW_SIZE_MILLIS";
+    }
+
+    // column value of the lookup table row marking a chunk table as having a zone map, and prefix of the rows
+    // holding its statistics
+    protected String getZoneMapColumnName() {
+        return "ZONE_MAP";
+    }
+
+    protected String getRollupTableNamePrefix() {
+        return "CANTOR-EVENTS-ROLLUP-";
+    }
+
+    // column values of the lookup table rows holding the settings of a rollup
+    protected String getRollupResolutionMillisColumnName() {
+        return "RESOLUTION_MILLIS";
+    }
+
+    protected String getRollupRetentionMillisColumnName() {
+        return "RETENTION_MILLIS";
+    }
+
+    protected String getRollupBucketColumnName() {
+        return "BUCKET_MILLIS";
+    }
+
+    protected String getRollupDimensionKeyColumnName() {
+        return "DIMENSION_KEY";
+    }
+
+    protected String getRollupCountColumnName() {
+        return "EVENT_COUNT";
+    }
+
+    protected String getRollupSumColumnName() {
+        return "VALUE_SUM";
+    }
+
+    protected String getRollupMinColumnName() {
+        return "VALUE_MIN";
+    }
+
+    protected String getRollupMaxColumnName() {
+        return "VALUE_MAX";
+    }
+
     protected String getPayloadColumnName() {
         return "PAYLOAD";
     }
@@ -1035,18 +3739,17 @@ public abstract class AbstractBaseEventsOnJdbc extends AbstractBaseCantorOnJdbc
     }
 
     protected String getDimensionKeyColumnName(final String dimensionKey) {
-        final String cleanKey = dimensionKey.replaceAll("[^A-Za-z0-9_\\-]", "").toUpperCase();
-        return getDimensionKeyColumnNamePrefix()
-                + cleanKey.substring(0, Math.min(32, cleanKey.length()))
-                + "_"
-                + Math.abs(dimensionKey.hashCode());
+        return getDimensionKeyColumnNamePrefix() + this.columnNameSuffixes.getUnchecked(dimensionKey);
     }
 
     protected String getMetadataKeyColumnName(final String metadataKey) {
-        final String cleanKey = metadataKey.replaceAll("[^A-Za-z0-9_\\-]", "").toUpperCase();
-        return getMetadataKeyColumnNamePrefix()
-                + cleanKey.substring(0, Math.min(32, cleanKey.length()))
+        return getMetadataKeyColumnNamePrefix() + this.columnNameSuffixes.getUnchecked(metadataKey);
+    }
+
+    private static String toColumnNameSuffix(final String key) {
+        final String cleanKey = invalidColumnNameCharacters.matcher(key).replaceAll("").toUpperCase();
+        return cleanKey.substring(0, Math.min(32, cleanKey.length()))
                 + "_"
-                + Math.abs(metadataKey.hashCode());
+                + Math.abs(key.hashCode());
     }
-}
\ No newline at end of file
+}
@@ -139,11 +139,11 @@ public abstract class AbstractBaseObjectsOnJdbc
     }
 
     private byte[] doGet(final String namespace, final String key) throws IOException {
-        final String sql = String.format("SELECT %s FROM %s WHERE %s = ?",
+        final String sql = getSql(namespace, "get", () -> String.format("SELECT %s FROM %s WHERE %s = ?",
                 quote(getValueColumnName()),
                 getTableFullName(namespace, getObjectsTableName()),
                 quote(getKeyColumnName())
-        );
+        ));
         try (final Connection connection = getConnection()){
             try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
                 preparedStatement.setString(1, key);
@@ -192,22 +192,12 @@ public abstract class AbstractBaseObjectsOnJdbc
     }
 
     private void doStore(final String namespace, final String key, final byte[] bytes) throws IOException {
-        final String sql = String.format("INSERT INTO %s SET %s = ?, %s = ? ON DUPLICATE KEY UPDATE %s = ?",
-                getTableFullName(namespace, getObjectsTableName()),
-                quote(getKeyColumnName()),
-                quote(getValueColumnName()),
-                quote(getValueColumnName())
-        );
+        final String sql = getStoreSql(namespace);
         executeUpdate(sql, key, bytes, bytes);
     }
 
     private void doStore(final String namespace, final Map<String, byte[]> objects) throws IOException {
-        final String sql = String.format("INSERT INTO %s SET %s = ?, %s = ? ON DUPLICATE KEY UPDATE %s = ?",
-                getTableFullName(namespace, getObjectsTableName()),
-                quote(getKeyColumnName()),
-                quote(getValueColumnName()),
-                quote(getValueColumnName())
-        );
+        final String sql = getStoreSql(namespace);
         Connection connection = null;
         try {
             final List<Object[]> parameters = new ArrayList<>();
@@ -225,11 +215,20 @@ public abstract class AbstractBaseObjectsOnJdbc
         }
     }
 
+    private String getStoreSql(final String namespace) {
+        return getSql(namespace, "store", () -> String.format("INSERT INTO %s SET %s = ?, %s = ? ON DUPLICATE KEY UPDATE %s = ?",
+                getTableFullName(namespace, getObjectsTableName()),
+                quote(getKeyColumnName()),
+                quote(getValueColumnName()),
+                quote(getValueColumnName())
+        ));
+    }
+
     private boolean doDelete(final String namespace, final String key) throws IOException {
-        final String sql = String.format("DELETE FROM %s WHERE %s = ?",
+        final String sql = getSql(namespace, "delete", () -> String.format("DELETE FROM %s WHERE %s = ?",
                 getTableFullName(namespace, getObjectsTableName()),
                 quote(getKeyColumnName())
-        );
+        ));
         return executeUpdate(sql, key) == 1;
     }
 
@@ -243,9 +242,9 @@ public abstract class AbstractBaseObjectsOnJdbc
     }
 
     private int doSize(final String namespace) throws IOException {
-        final String sql = String.format("SELECT COUNT(*) FROM %s",
+        final String sql = getSql(namespace, "size", () -> String.format("SELECT COUNT(*) FROM %s",
                 getTableFullName(namespace, getObjectsTableName())
-        );
+        ));
         try (final Connection connection = getConnection()) {
             try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
                 try (final ResultSet resultSet = preparedStatement.executeQuery()) {
@@ -8,6 +8,7 @@
 package com.salesforce.cantor.jdbc;
 
 import com.salesforce.cantor.Sets;
+import com.salesforce.cantor.common.SetsUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,6 +23,9 @@ import static com.salesforce.cantor.jdbc.JdbcUtils.getPlaceholders;
 import static com.salesforce.cantor.jdbc.JdbcUtils.quote;
 
 public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc implements Sets {
+    // number of entries fetched at a time when streaming a set for union, intersect and difference
+    private static final int entryCursorFetchSize = 10_000;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     protected AbstractBaseSetsOnJdbc(final DataSource dataSource) {
@@ -76,6 +80,21 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
         return doGet(namespace, set, min, max, start, count, getOrderByString(ascending));
     }
 
+    @Override
+    public Page page(final String namespace,
+                     final String set,
+                     final long min,
+                     final long max,
+                     final int count,
+                     final boolean ascending,
+                     final String continuationToken) throws IOException {
+        checkPage(namespace, set, min, max, count, ascending, continuationToken);
+        final Map.Entry<String, Long> after = continuationToken != null
+                ? SetsUtils.decodeContinuationToken(continuationToken)
+                : null;
+        return doPage(namespace, set, min, max, count, ascending, after);
+    }
+
     @Override
     public Map<String, Long> union(final String namespace,
                                    final Collection<String> sets,
@@ -83,9 +102,12 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
                                    final long max,
                                    final int start,
                                    final int count,
-                                   final boolean ascending) throws IOException {
-        checkUnion(namespace, sets, min, max, start, count, ascending);
-        return doUnion(namespace, sets, min, max, start, count, getOrderByString(ascending));
+                                   final boolean ascending,
+                                   final WeightAggregation aggregation) throws IOException {
+        checkUnion(namespace, sets, min, max, start, count, ascending, aggregation);
+        return doMerge(namespace, new ArrayList<>(new LinkedHashSet<>(sets)), min, max,
+                cursors -> SetsUtils.union(cursors, aggregation, start, count, ascending)
+        );
     }
 
     @Override
@@ -95,9 +117,31 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
                                        final long max,
                                        final int start,
                                        final int count,
-                                       final boolean ascending) throws IOException {
-        checkIntersect(namespace, sets, min, max, start, count, ascending);
-        return doIntersect(namespace, sets, min, max, start, count, getOrderByString(ascending));
+                                       final boolean ascending,
+                                       final WeightAggregation aggregation) throws IOException {
+        checkIntersect(namespace, sets, min, max, start, count, ascending, aggregation);
+        return doMerge(namespace, new ArrayList<>(new LinkedHashSet<>(sets)), min, max,
+                cursors -> SetsUtils.intersect(cursors, aggregation, start, count, ascending)
+        );
+    }
+
+    @Override
+    public Map<String, Long> difference(final String namespace,
+                                        final String set,
+                                        final Collection<String> sets,
+                                        final long min,
+                                        final long max,
+                                        final int start,
+                                        final int count,
+                                        final boolean ascending) throws IOException {
+        checkDifference(namespace, set, sets, min, max, start, count, ascending);
+        // the first cursor streams the set, followed by the sets excluded from it
+        final List<String> cursorSets = new ArrayList<>(sets.size() + 1);
+        cursorSets.add(set);
+        cursorSets.addAll(new LinkedHashSet<>(sets));
+        return doMerge(namespace, cursorSets, min, max,
+                cursors -> SetsUtils.difference(cursors.get(0), cursors.subList(1, cursors.size()), start, count, ascending)
+        );
     }
 
     @Override
@@ -148,10 +192,22 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
         return doWeight(namespace, key, entry);
     }
 
+    @Override
+    public Map<String, Long> weights(final String namespace, final String key, final Collection<String> entries) throws IOException {
+        checkWeights(namespace, key, entries);
+        return doWeights(namespace, key, entries);
+    }
+
     @Override
     public long inc(final String namespace, final String key, final String entry, final long count) throws IOException {
         checkInc(namespace, key, entry, count);
-        return doInc(namespace, key, entry, count);
+        return doInc(namespace, key, Collections.singletonMap(entry, count)).get(entry);
+    }
+
+    @Override
+    public Map<String, Long> inc(final String namespace, final String key, final Map<String, Long> entries) throws IOException {
+        checkInc(namespace, key, entries);
+        return doInc(namespace, key, entries);
     }
 
     @Override
@@ -171,11 +227,32 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
         // TODO
     }
 
+    /**
+     * Add the index serving {@link #page(String, String, long, long, int, boolean, String)} to the sets table of
+     * every namespace created before pages were introduced; sets tables created since already have it. This is not
+     * done on startup since adding an index to a large table is a long running, blocking schema change on some
+     * databases; it is meant to be called once, explicitly, when upgrading.
+     *
+     * @throws IOException exception thrown from the underlying database
+     */
+    public void createMissingPageIndexes() throws IOException {
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            for (final String namespace : getNamespaces()) {
+                logger.info("adding page index to sets table of namespace '{}' if missing", namespace);
+                createPageIndexIfNotExists(connection, namespace);
+            }
+        } finally {
+            closeConnection(connection);
+        }
+    }
+
     private int doSize(final String namespace, final String set) throws IOException {
-        final String sql = String.format("SELECT COUNT(*) FROM %s WHERE %s = ? ",
+        final String sql = getSql(namespace, "size", () -> String.format("SELECT COUNT(*) FROM %s WHERE %s = ? ",
                 getTableFullName(namespace, getSetsTableName()),
                 quote(getSetKeyColumnName())
-        );
+        ));
         try (final Connection connection = getConnection()){
             try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
                 preparedStatement.setString(1, set);
@@ -199,14 +276,17 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
                                     final int start,
                                     final int count,
                                     final String orderby) throws IOException {
-        final String sql = String.format("SELECT %s, %s FROM %s WHERE %s.%s = ? AND %s.%s BETWEEN ? AND ? %s %s",
-                quote(getEntryColumnName()),
-                quote(getWeightColumnName()),
-                getTableFullName(namespace, getSetsTableName()),
-                quote(getSetsTableName()),
-                quote(getSetKeyColumnName()),
-                quote(getSetsTableName()),
-                quote(getWeightColumnName()),
+        // only the order and limit change between calls
+        final String sql = String.format("%s %s %s",
+                getSql(namespace, "get", () -> String.format("SELECT %s, %s FROM %s WHERE %s.%s = ? AND %s.%s BETWEEN ? AND ?",
+                        quote(getEntryColumnName()),
+                        quote(getWeightColumnName()),
+                        getTableFullName(namespace, getSetsTableName()),
+                        quote(getSetsTableName()),
+                        quote(getSetKeyColumnName()),
+                        quote(getSetsTableName()),
+                        quote(getWeightColumnName())
+                )),
                 orderby,
                 getLimitString(start, count)
         );
@@ -233,97 +313,103 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
         }
     }
 
-    private Map<String, Long> doUnion(final String namespace,
-                                      final Collection<String> sets,
-                                      final long min,
-                                      final long max,
-                                      final int start,
-                                      final int count,
-                                      final String orderby) throws IOException {
-        final String partialSql = String.format("SELECT %s, %s FROM %s WHERE %s = ? AND %s BETWEEN ? AND ?",
-                quote(getEntryColumnName()),
-                quote(getWeightColumnName()),
-                getTableFullName(namespace, getSetsTableName()),
-                quote(getSetKeyColumnName()),
-                quote(getWeightColumnName())
-        );
-        final String sql = String.format("%s %s %s",
-                String.join(" UNION ", Collections.nCopies(sets.size(), partialSql)),
-                orderby,
-                getLimitString(start, count)
-        );
+    private Page doPage(final String namespace,
+                        final String set,
+                        final long min,
+                        final long max,
+                        final int count,
+                        final boolean ascending,
+                        final Map.Entry<String, Long> after) throws IOException {
+        final String order = ascending ? "ASC" : "DESC";
+        final String sql;
+        final Object[] parameters;
+        if (after == null) {
+            sql = getSql(namespace, "page" + order, () -> String.format(
+                    "SELECT %s, %s FROM %s WHERE %s = ? AND %s BETWEEN ? AND ? ORDER BY %s %s, %s %s",
+                    quote(getEntryColumnName()),
+                    quote(getWeightColumnName()),
+                    getTableFullName(namespace, getSetsTableName()),
+                    quote(getSetKeyColumnName()),
+                    quote(getWeightColumnName()),
+                    quote(getWeightColumnName()), order,
+                    quote(getEntryColumnName()), order
+            ));
+            parameters = new Object[] {set, min, max};
+        } else {
+            // seek past the last entry of the previous page on the (set, weight, entry) index instead of skipping
+            // rows with an offset; the weight range is narrowed to start at the previous weight; where the index only
+            // holds a prefix of the entry, as on mysql, it narrows the rows to sort rather than serving the order
+            final String comparison = ascending ? ">" : "<";
+            sql = getSql(namespace, "pageAfter" + order, () -> String.format(
+                    "SELECT %s, %s FROM %s WHERE %s = ? AND %s BETWEEN ? AND ? AND (%s %s ? OR (%s = ? AND %s %s ?)) ORDER BY %s %s, %s %s",
+                    quote(getEntryColumnName()),
+                    quote(getWeightColumnName()),
+                    getTableFullName(namespace, getSetsTableName()),
+                    quote(getSetKeyColumnName()),
+                    quote(getWeightColumnName()),
+                    quote(getWeightColumnName()), comparison,
+                    quote(getWeightColumnName()),
+                    quote(getEntryColumnName()), comparison,
+                    quote(getWeightColumnName()), order,
+                    quote(getEntryColumnName()), order
+            ));
+            final long afterWeight = after.getValue();
+            parameters = new Object[] {
+                    set,
+                    ascending ? Math.max(min, afterWeight) : min,
+                    ascending ? max : Math.min(max, afterWeight),
+                    afterWeight,
+                    afterWeight,
+                    after.getKey()
+            };
+        }
         final Map<String, Long> items = new LinkedHashMap<>();
+        String lastEntry = null;
+        long lastWeight = 0;
+        boolean hasMore = false;
         try (final Connection connection = getConnection()) {
-            try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
-                int index = 1;
-                for (final String set : sets) {
-                    preparedStatement.setString(index++, set);
-                    preparedStatement.setLong(index++, min);
-                    preparedStatement.setLong(index++, max);
-                }
+            // one more row than requested is read to know if there is a next page
+            try (final PreparedStatement preparedStatement = connection.prepareStatement(sql + " LIMIT " + ((long) count + 1))) {
+                addParameters(preparedStatement, parameters);
                 try (final ResultSet resultSet = preparedStatement.executeQuery()) {
                     while (resultSet.next()) {
-                        final String key = resultSet.getString(1);
-                        final Long weight = resultSet.getLong(2);
-                        if (key != null && !key.isEmpty()) {
-                            items.put(key, weight);
+                        if (items.size() == count) {
+                            hasMore = true;
+                            break;
                         }
+                        lastEntry = resultSet.getString(1);
+                        lastWeight = resultSet.getLong(2);
+                        items.put(lastEntry, lastWeight);
                     }
                 }
-                return items;
             }
         } catch (final SQLException e) {
-            logger.warn("exception on sets.union()", e);
+            logger.warn("exception on sets.page()", e);
             throw new IOException(e);
         }
+        return new Page(items, hasMore ? SetsUtils.encodeContinuationToken(lastWeight, lastEntry) : null);
     }
 
-    private Map<String, Long> doIntersect(final String namespace,
-                                          final Collection<String> sets,
-                                          final long min,
-                                          final long max,
-                                          final int start,
-                                          final int count,
-                                          final String orderby) throws IOException {
-        int index = 0;
-        final Object[] parameters = new Object[sets.size() + 2];
-        parameters[index++] = min;
-        parameters[index++] = max;
-        // set keys are OR'd together to get all matching set entries
-        final StringJoiner setsJoiner = new StringJoiner(" OR ");
-        final String clause = getSetKeyColumnName() + " = ?";
-        for (final String set : sets) {
-            parameters[index++] = set;
-            setsJoiner.add(clause);
-        }
-        final String sql = String.format("SELECT %s, %s FROM %s WHERE %s BETWEEN ? AND ? AND %s %s %s",
-                quote(getEntryColumnName()),
-                quote(getWeightColumnName()),
-                getTableFullName(namespace, getSetsTableName()),
-                quote(getWeightColumnName()),
-                setsJoiner.toString(),
-                orderby,
-                getLimitString(start, count)
-        );
-        final Map<String, Long> items = new LinkedHashMap<>();
-        try (final Connection connection = getConnection()) {
-            logger.debug("executing sql query: {}", sql);
-            try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
-                addParameters(preparedStatement, parameters);
-                try (final ResultSet resultSet = preparedStatement.executeQuery()) {
-                    while (resultSet.next()) {
-                        final String key = resultSet.getString(1);
-                        final Long weight = resultSet.getLong(2);
-                        if (key != null && !key.isEmpty()) {
-                            items.put(key, weight);
-                        }
-                    }
-                }
-                return items;
+    // merges the given sets with a cursor streaming each of them; all sets are read on one connection in a single
+    // transaction, so they are read from one consistent snapshot where the database provides it
+    private Map<String, Long> doMerge(final String namespace,
+                                      final List<String> sets,
+                                      final long min,
+                                      final long max,
+                                      final EntryCursorsMerge merge) throws IOException {
+        final List<EntryCursorOnJdbc> cursors = new ArrayList<>(sets.size());
+        Connection connection = null;
+        try {
+            connection = openTransaction(getConnection());
+            for (final String set : sets) {
+                cursors.add(new EntryCursorOnJdbc(connection, namespace, set, min, max));
             }
-        } catch (final SQLException e) {
-            logger.warn("exception on sets.intersect()", e);
-            throw new IOException(e);
+            return merge.apply(new ArrayList<>(cursors));
+        } finally {
+            for (final EntryCursorOnJdbc cursor : cursors) {
+                cursor.close();
+            }
+            closeConnection(connection);
         }
     }
 
@@ -468,20 +554,20 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
     }
 
     private void doDelete(final String namespace, final String key, final long min, final long max) throws IOException {
-        final String sql = String.format("DELETE FROM %s WHERE %s = ? AND %s BETWEEN ? AND ? ",
+        final String sql = getSql(namespace, "deleteBetween", () -> String.format("DELETE FROM %s WHERE %s = ? AND %s BETWEEN ? AND ? ",
                 getTableFullName(namespace, getSetsTableName()),
                 quote(getSetKeyColumnName()),
                 quote(getWeightColumnName())
-        );
+        ));
         executeUpdate(sql, key, min, max);
     }
 
     private boolean doDelete(final String namespace, final String set, final String entry) throws IOException {
-        final String sql = String.format("DELETE FROM %s WHERE %s = ? AND %s = ? ",
+        final String sql = getSql(namespace, "deleteEntry", () -> String.format("DELETE FROM %s WHERE %s = ? AND %s = ? ",
                 getTableFullName(namespace, getSetsTableName()),
                 quote(getSetKeyColumnName()),
                 quote(getEntryColumnName())
-        );
+        ));
         return executeUpdate(sql, set, entry) == 1;
     }
 
@@ -509,12 +595,7 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
     }
 
     private Long doWeight(final String namespace, final String set, final String entry) throws IOException {
-        final String sql = String.format("SELECT %s FROM %s WHERE %s = ? AND %s = ? ",
-                quote(getWeightColumnName()),
-                getTableFullName(namespace, getSetsTableName()),
-                quote(getSetKeyColumnName()),
-                quote(getEntryColumnName())
-        );
+        final String sql = getWeightSql(namespace);
         try (final Connection connection = getConnection()){
             try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
                 preparedStatement.setString(1, set);
@@ -533,75 +614,118 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
         }
     }
 
-    private long doInc(final String namespace, final String set, final String entry, final long count) throws IOException {
-        // if the entry doesn't exist, initialize it with weight of 0
-        final boolean exists = doWeight(namespace, set, entry) != null;
-        if (!exists) {
-            doAdd(namespace, set, entry, 0L);
+    // reads the weight of each entry with the same statement on one connection, keyed by the entry passed in
+    private Map<String, Long> doWeights(final String namespace, final String set, final Collection<String> entries) throws IOException {
+        final Map<String, Long> results = new HashMap<>();
+        if (entries.isEmpty()) {
+            return results;
         }
+        final String sql = getWeightSql(namespace);
+        try (final Connection connection = getConnection()) {
+            try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                for (final String entry : entries) {
+                    preparedStatement.clearParameters();
+                    preparedStatement.setString(1, set);
+                    preparedStatement.setString(2, entry);
+                    try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                        if (resultSet.next()) {
+                            results.put(entry, resultSet.getLong(1));
+                        }
+                    }
+                }
+            }
+        } catch (final SQLException e) {
+            logger.warn("exception on sets.weights()", e);
+            throw new IOException(e);
+        }
+        return results;
+    }
 
-        // sql to increment the weight of an entry
-        final String updateSql = String.format("UPDATE %s SET %s = %s + ? WHERE %s = ? AND %s = ? ",
-                getTableFullName(namespace, getSetsTableName()),
-                quote(getWeightColumnName()),
-                quote(getWeightColumnName()),
-                quote(getSetKeyColumnName()),
-                quote(getEntryColumnName())
-        );
-        // sql to read an entry's weight
-        final String selectSql = String.format("SELECT %s FROM %s WHERE %s = ? AND %s = ? ",
-                quote(getWeightColumnName()),
-                getTableFullName(namespace, getSetsTableName()),
-                quote(getSetKeyColumnName()),
-                quote(getEntryColumnName())
-        );
+    private Map<String, Long> doInc(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        // increment entries in sorted order, so concurrent calls lock rows in the same order
+        final Map<String, Long> sortedEntries = new TreeMap<>(entries);
+        final String returningSql = getIncReturningWeightSql(namespace);
 
-        // in a transaction, increment the entry's weight and then return the final weight
+        // in a transaction, upsert all entries and read back their final weights; rows stay
+        // locked until commit, so concurrent increments on the same entry cannot be lost
         Connection connection = null;
         try {
-            // open a transaction
             connection = openTransaction(getConnection());
+            final Map<String, Long> results = new HashMap<>();
+            if (returningSql != null) {
+                try (final PreparedStatement preparedStatement = connection.prepareStatement(returningSql)) {
+                    for (final Map.Entry<String, Long> entry : sortedEntries.entrySet()) {
+                        preparedStatement.clearParameters();
+                        preparedStatement.setString(1, set);
+                        preparedStatement.setString(2, entry.getKey());
+                        preparedStatement.setLong(3, entry.getValue());
+                        try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                            if (!resultSet.next()) {
+                                throw new IOException("cannot find entry for sets.inc()");
+                            }
+                            results.put(entry.getKey(), resultSet.getLong(1));
+                        }
+                    }
+                }
+                return results;
+            }
 
-            // increment weight
-            executeUpdate(connection, updateSql, count, set, entry);
-
+            try (final PreparedStatement preparedStatement = connection.prepareStatement(getIncSql(namespace))) {
+                for (final Map.Entry<String, Long> entry : sortedEntries.entrySet()) {
+                    preparedStatement.clearParameters();
+                    preparedStatement.setString(1, set);
+                    preparedStatement.setString(2, entry.getKey());
+                    preparedStatement.setLong(3, entry.getValue());
+                    preparedStatement.setLong(4, entry.getValue());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+            }
+            // read each weight back by the entry passed in rather than the one stored, which may differ in case
+            // where the entry column does not compare case sensitively
+            final String selectSql = getSql(namespace, "incSelect", () -> String.format("SELECT %s FROM %s WHERE %s = ? AND %s = ? ",
+                    quote(getWeightColumnName()),
+                    getTableFullName(namespace, getSetsTableName()),
+                    quote(getSetKeyColumnName()),
+                    quote(getEntryColumnName())
+            ));
             try (final PreparedStatement preparedStatement = connection.prepareStatement(selectSql)) {
-                preparedStatement.setString(1, set);
-                preparedStatement.setString(2, entry);
-                try (final ResultSet resultSet = preparedStatement.executeQuery()) {
-                    if (resultSet.next()) {
-                        return resultSet.getLong(1);
+                for (final String entry : sortedEntries.keySet()) {
+                    preparedStatement.clearParameters();
+                    preparedStatement.setString(1, set);
+                    preparedStatement.setString(2, entry);
+                    try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                        if (!resultSet.next()) {
+                            throw new IOException("cannot find entry for sets.inc()");
+                        }
+                        results.put(entry, resultSet.getLong(1));
                     }
-                    throw new IOException("cannot find entry for sets.inc()");
                 }
-            } catch (final SQLException e) {
-                logger.warn("exception on sets.inc()", e);
-                throw new IOException(e);
             }
+            return results;
+        } catch (final SQLException e) {
+            logger.warn("exception on sets.inc()", e);
+            // increments are not committed if their weights cannot be returned
+            rollbackTransaction(connection);
+            throw new IOException(e);
+        } catch (final IOException e) {
+            rollbackTransaction(connection);
+            throw e;
         } finally {
             closeConnection(connection);
         }
     }
 
     private void doAdd(final String namespace, final String set, final String entry, final long weight) throws IOException {
-        final String sql = String.format("INSERT INTO %s SET %s = ?, %s = ?, %s = ? ON DUPLICATE KEY UPDATE %s= ? ",
-                getTableFullName(namespace, getSetsTableName()),
-                quote(getSetKeyColumnName()),
-                quote(getEntryColumnName()),
-                quote(getWeightColumnName()),
-                quote(getWeightColumnName())
-        );
+        final String sql = getAddSql(namespace);
         executeUpdate(sql, set, entry, weight, weight);
     }
 
     private void doAdd(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
-        final String sql = String.format("INSERT INTO %s SET %s = ?, %s = ?, %s = ? ON DUPLICATE KEY UPDATE %s= ? ",
-                getTableFullName(namespace, getSetsTableName()),
-                quote(getSetKeyColumnName()),
-                quote(getEntryColumnName()),
-                quote(getWeightColumnName()),
-                quote(getWeightColumnName())
-        );
+        final String sql = getAddSql(namespace);
         try (final Connection connection = getConnection()) {
             try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
                 for (final Map.Entry<String, Long> entry : entries.entrySet()) {
@@ -620,13 +744,77 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
         }
     }
 
+    // returns the statement creating the sets table, including the index on set key, weight and entry, named
+    // after the page index, that serves pages of a set
     protected abstract String getCreateSetsTableSql(final String namespace);
 
+    // adds the page index to the sets table of the namespace, unless it already has it
+    protected abstract void createPageIndexIfNotExists(final Connection connection, final String namespace) throws IOException;
+
+    // returns a query that increments the weight of an entry, inserting it if missing, and returns the new
+    // weight in a single statement; parameters are set, entry and count; null if the database has no such syntax
+    protected String getIncReturningWeightSql(final String namespace) {
+        return null;
+    }
+
+    // returns the collation that orders entries by code point, like string compare to, if the entry column does not
+    // already compare that way; null if it does
+    protected String getBinaryEntryCollation() {
+        return null;
+    }
+
     private String getOrderByString(final boolean ascending) {
         final String order = ascending ? " ASC " : " DESC ";
         return " ORDER BY " + getWeightColumnName() + " " + order + " ";
     }
 
+    private String getWeightSql(final String namespace) {
+        return getSql(namespace, "weight", () -> String.format("SELECT %s FROM %s WHERE %s = ? AND %s = ? ",
+                quote(getWeightColumnName()),
+                getTableFullName(namespace, getSetsTableName()),
+                quote(getSetKeyColumnName()),
+                quote(getEntryColumnName())
+        ));
+    }
+
+    private String getEntriesSql(final String namespace) {
+        return getSql(namespace, "entriesOrdered", () -> {
+            // the merge compares entries with string compare to, so the database must order them the same way
+            final String collation = getBinaryEntryCollation();
+            return String.format("SELECT %s, %s FROM %s WHERE %s = ? AND %s BETWEEN ? AND ? ORDER BY %s",
+                    quote(getEntryColumnName()),
+                    quote(getWeightColumnName()),
+                    getTableFullName(namespace, getSetsTableName()),
+                    quote(getSetKeyColumnName()),
+                    quote(getWeightColumnName()),
+                    collation != null
+                            ? quote(getEntryColumnName()) + " COLLATE " + collation
+                            : quote(getEntryColumnName())
+            );
+        });
+    }
+
+    private String getAddSql(final String namespace) {
+        return getSql(namespace, "add", () -> String.format("INSERT INTO %s SET %s = ?, %s = ?, %s = ? ON DUPLICATE KEY UPDATE %s= ? ",
+                getTableFullName(namespace, getSetsTableName()),
+                quote(getSetKeyColumnName()),
+                quote(getEntryColumnName()),
+                quote(getWeightColumnName()),
+                quote(getWeightColumnName())
+        ));
+    }
+
+    private String getIncSql(final String namespace) {
+        return getSql(namespace, "inc", () -> String.format("INSERT INTO %s SET %s = ?, %s = ?, %s = ? ON DUPLICATE KEY UPDATE %s = %s + ? ",
+                getTableFullName(namespace, getSetsTableName()),
+                quote(getSetKeyColumnName()),
+                quote(getEntryColumnName()),
+                quote(getWeightColumnName()),
+                quote(getWeightColumnName()),
+                quote(getWeightColumnName())
+        ));
+    }
+
     private String getLimitString(final int start, final int count) {
         if (start == 0 && count == -1) {
             return " ";
@@ -638,6 +826,10 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
         return "CANTOR-SETS";
     }
 
+    protected String getPageIndexName() {
+        return "CANTOR-SETS-PAGE";
+    }
+
     protected String getEntryColumnName() {
         return "ENTRY";
     }
@@ -649,5 +841,74 @@ public abstract class AbstractBaseSetsOnJdbc extends AbstractBaseCantorOnJdbc im
     protected String getWeightColumnName() {
         return "WEIGHT";
     }
-}
 
+    private interface EntryCursorsMerge {
+        Map<String, Long> apply(List<SetsUtils.EntryCursor> cursors) throws IOException;
+    }
+
+    // streams entries of a set with weight between min and max in entry order, with a single query fetching rows a
+    // batch at a time; the query runs on the first call to next and its statement stays open until closed
+    private class EntryCursorOnJdbc implements SetsUtils.EntryCursor {
+        private final Connection connection;
+        private final String namespace;
+        private final String set;
+        private final long min;
+        private final long max;
+        private PreparedStatement preparedStatement;
+        private ResultSet resultSet;
+        private String entry;
+        private long weight;
+
+        EntryCursorOnJdbc(final Connection connection, final String namespace, final String set, final long min, final long max) {
+            this.connection = connection;
+            this.namespace = namespace;
+            this.set = set;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            try {
+                if (this.resultSet == null) {
+                    this.preparedStatement = this.connection.prepareStatement(getEntriesSql(this.namespace));
+                    // sets are streamed whole, regardless of any row limit configured on the connection
+                    this.preparedStatement.setMaxRows(0);
+                    this.preparedStatement.setFetchSize(entryCursorFetchSize);
+                    addParameters(this.preparedStatement, this.set, this.min, this.max);
+                    this.resultSet = this.preparedStatement.executeQuery();
+                }
+                if (!this.resultSet.next()) {
+                    return false;
+                }
+                this.entry = this.resultSet.getString(1);
+                this.weight = this.resultSet.getLong(2);
+                return true;
+            } catch (final SQLException e) {
+                logger.warn("exception reading entries of set '{}' in namespace '{}'", this.set, this.namespace, e);
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public String getEntry() {
+            return this.entry;
+        }
+
+        @Override
+        public long getWeight() {
+            return this.weight;
+        }
+
+        void close() {
+            try {
+                if (this.preparedStatement != null) {
+                    // closes the result set too
+                    this.preparedStatement.close();
+                }
+            } catch (final SQLException e) {
+                logger.warn("exception closing entries of set '{}' in namespace '{}'", this.set, this.namespace, e);
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@
 package com.salesforce.cantor.metrics;
 
 import com.codahale.metrics.MetricRegistry;
+import com.salesforce.cantor.EventBatch;
 import com.salesforce.cantor.Events;
 
 import java.io.IOException;
@@ -52,6 +53,47 @@ public class MetricCollectingEvents extends BaseMetricCollectingCantor implement
                 "get", namespace, super::size);
     }
 
+    @Override
+    public List<Event> get(final String namespace,
+                           final long startTimestampMillis,
+                           final long endTimestampMillis,
+                           final Map<String, String> metadataQuery,
+                           final Map<String, String> dimensionsQuery,
+                           final boolean includePayloads,
+                           final boolean ascending,
+                           final int limit,
+                           final Set<String> metadataKeys,
+                           final Set<String> dimensionKeys) throws IOException {
+        return metrics(() -> this.delegate.get(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery, includePayloads, ascending, limit, metadataKeys, dimensionKeys),
+                "get", namespace, super::size);
+    }
+
+    @Override
+    public EventBatch getBatch(final String namespace,
+                               final long startTimestampMillis,
+                               final long endTimestampMillis,
+                               final Map<String, String> metadataQuery,
+                               final Map<String, String> dimensionsQuery,
+                               final boolean includePayloads,
+                               final boolean ascending,
+                               final int limit) throws IOException {
+        return metrics(() -> this.delegate.getBatch(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery, includePayloads, ascending, limit),
+                "getBatch", namespace, EventBatch::size);
+    }
+
+    @Override
+    public EventCursor scan(final String namespace,
+                            final long startTimestampMillis,
+                            final long endTimestampMillis,
+                            final Map<String, String> metadataQuery,
+                            final Map<String, String> dimensionsQuery,
+                            final boolean includePayloads,
+                            final boolean ascending) throws IOException {
+        // only the time to open the cursor is measured
+        return metrics(() -> this.delegate.scan(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery, includePayloads, ascending),
+                "scan", namespace);
+    }
+
     @Override
     public Set<String> metadata(final String namespace,
                                 final String metadataKey,
@@ -69,6 +111,23 @@ public class MetricCollectingEvents extends BaseMetricCollectingCantor implement
                 ), "metadata", namespace, super::size);
     }
 
+    @Override
+    public Map<String, Long> count(final String namespace,
+                                   final String metadataKey,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery) throws IOException {
+        return metrics(() -> this.delegate
+                .count(namespace,
+                        metadataKey,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery
+                ), "count", namespace, Map::size);
+    }
+
     @Override
     public List<Event> dimension(final String namespace,
                                  final String dimensionKey,
@@ -86,6 +145,42 @@ public class MetricCollectingEvents extends BaseMetricCollectingCantor implement
                 ), "dimension", namespace, super::size);
     }
 
+    @Override
+    public Map<Long, Double> aggregate(final String namespace,
+                                       final String dimensionKey,
+                                       final long startTimestampMillis,
+                                       final long endTimestampMillis,
+                                       final long bucketMillis,
+                                       final AggregationFunction function,
+                                       final Map<String, String> metadataQuery,
+                                       final Map<String, String> dimensionsQuery) throws IOException {
+        return metrics(() -> this.delegate
+                .aggregate(namespace,
+                        dimensionKey,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        bucketMillis,
+                        function,
+                        metadataQuery,
+                        dimensionsQuery
+                ), "aggregate", namespace, Map::size);
+    }
+
+    @Override
+    public int delete(final String namespace,
+                      final long startTimestampMillis,
+                      final long endTimestampMillis,
+                      final Map<String, String> metadataQuery,
+                      final Map<String, String> dimensionsQuery) throws IOException {
+        return metrics(() -> this.delegate
+                .delete(namespace,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery
+                ), "delete", namespace, Integer::intValue);
+    }
+
     @Override
     public void expire(final String namespace, final long endTimestampMillis) throws IOException {
         metrics(() -> this.delegate.expire(namespace, endTimestampMillis), "expire", namespace);
@@ -61,6 +61,12 @@ public class MetricCollectingSets extends BaseMetricCollectingCantor implements
                 "get", namespace, m -> m != null ? m.size() : 0);
     }
 
+    @Override
+    public Page page(final String namespace, final String set, final long min, final long max, final int count, final boolean ascending, final String continuationToken) throws IOException {
+        return metrics(() -> this.delegate.page(namespace, set, min, max, count, ascending, continuationToken),
+                "page", namespace, m -> m != null ? m.getEntries().size() : 0);
+    }
+
     @Override
     public void delete(final String namespace, final String set, final long min, final long max) throws IOException {
         metrics(() -> this.delegate.delete(namespace, set, min, max), "delete", namespace);
@@ -77,17 +83,23 @@ public class MetricCollectingSets extends BaseMetricCollectingCantor implements
     }
 
     @Override
-    public Map<String, Long> union(final String namespace, final Collection<String> sets, final long min, final long max, final int start, final int count, final boolean ascending) throws IOException {
-        return metrics(() -> this.delegate.union(namespace, sets, min, max, start, count, ascending),
+    public Map<String, Long> union(final String namespace, final Collection<String> sets, final long min, final long max, final int start, final int count, final boolean ascending, final WeightAggregation aggregation) throws IOException {
+        return metrics(() -> this.delegate.union(namespace, sets, min, max, start, count, ascending, aggregation),
                 "union", namespace, m -> m != null ? m.size() : 0);
     }
 
     @Override
-    public Map<String, Long> intersect(final String namespace, final Collection<String> sets, final long min, final long max, final int start, final int count, final boolean ascending) throws IOException {
-        return metrics(() -> this.delegate.intersect(namespace, sets, min, max, start, count, ascending),
+    public Map<String, Long> intersect(final String namespace, final Collection<String> sets, final long min, final long max, final int start, final int count, final boolean ascending, final WeightAggregation aggregation) throws IOException {
+        return metrics(() -> this.delegate.intersect(namespace, sets, min, max, start, count, ascending, aggregation),
                 "intersect", namespace, m -> m != null ? m.size() : 0);
     }
 
+    @Override
+    public Map<String, Long> difference(final String namespace, final String set, final Collection<String> sets, final long min, final long max, final int start, final int count, final boolean ascending) throws IOException {
+        return metrics(() -> this.delegate.difference(namespace, set, sets, min, max, start, count, ascending),
+                "difference", namespace, m -> m != null ? m.size() : 0);
+    }
+
     @Override
     public Map<String, Long> pop(final String namespace, final String set, final long min, final long max, final int start, final int count, final boolean ascending) throws IOException {
         return metrics(() -> this.delegate.pop(namespace, set, min, max, start, count, ascending),
@@ -110,8 +122,18 @@ public class MetricCollectingSets extends BaseMetricCollectingCantor implements
         return metrics(() -> this.delegate.weight(namespace, set, entry), "weight", namespace);
     }
 
+    @Override
+    public Map<String, Long> weights(final String namespace, final String set, final Collection<String> entries) throws IOException {
+        return metrics(() -> this.delegate.weights(namespace, set, entries), "weights", namespace, Map::size);
+    }
+
     @Override
     public long inc(final String namespace, final String set, final String entry, final long count) throws IOException {
         return metrics(() -> this.delegate.inc(namespace, set, entry, count), "inc", namespace);
     }
+
+    @Override
+    public Map<String, Long> inc(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        return metrics(() -> this.delegate.inc(namespace, set, entries), "inc", namespace, Map::size);
+    }
 }
@@ -7,6 +7,7 @@
 
 package com.salesforce.cantor.misc.archivable.impl;
 
+import com.salesforce.cantor.EventBatch;
 import com.salesforce.cantor.Events;
 import com.salesforce.cantor.misc.archivable.EventsArchiver;
 
@@ -51,6 +52,71 @@ public class ArchivableEvents extends AbstractBaseArchivableNamespaceable<Events
                 );
     }
 
+    @Override
+    public List<Event> get(final String namespace,
+                           final long startTimestampMillis,
+                           final long endTimestampMillis,
+                           final Map<String, String> metadataQuery,
+                           final Map<String, String> dimensionsQuery,
+                           final boolean includePayloads,
+                           final boolean ascending,
+                           final int limit,
+                           final Set<String> metadataKeys,
+                           final Set<String> dimensionKeys) throws IOException {
+        getArchiver().restore(getDelegate(), namespace, startTimestampMillis, endTimestampMillis);
+        return getDelegate().get(namespace,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery,
+                        includePayloads,
+                        ascending,
+                        limit,
+                        metadataKeys,
+                        dimensionKeys
+                );
+    }
+
+    @Override
+    public EventBatch getBatch(final String namespace,
+                               final long startTimestampMillis,
+                               final long endTimestampMillis,
+                               final Map<String, String> metadataQuery,
+                               final Map<String, String> dimensionsQuery,
+                               final boolean includePayloads,
+                               final boolean ascending,
+                               final int limit) throws IOException {
+        getArchiver().restore(getDelegate(), namespace, startTimestampMillis, endTimestampMillis);
+        return getDelegate().getBatch(namespace,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery,
+                        includePayloads,
+                        ascending,
+                        limit
+                );
+    }
+
+    @Override
+    public EventCursor scan(final String namespace,
+                            final long startTimestampMillis,
+                            final long endTimestampMillis,
+                            final Map<String, String> metadataQuery,
+                            final Map<String, String> dimensionsQuery,
+                            final boolean includePayloads,
+                            final boolean ascending) throws IOException {
+        getArchiver().restore(getDelegate(), namespace, startTimestampMillis, endTimestampMillis);
+        return getDelegate().scan(namespace,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery,
+                        includePayloads,
+                        ascending
+                );
+    }
+
     @Override
     public Set<String> metadata(final String namespace,
                                 final String metadataKey,
@@ -68,6 +134,23 @@ public class ArchivableEvents extends AbstractBaseArchivableNamespaceable<Events
                 );
     }
 
+    @Override
+    public Map<String, Long> count(final String namespace,
+                                   final String metadataKey,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery) throws IOException {
+        getArchiver().restore(getDelegate(), namespace, startTimestampMillis, endTimestampMillis);
+        return getDelegate().count(namespace,
+                    metadataKey,
+                    startTimestampMillis,
+                    endTimestampMillis,
+                    metadataQuery,
+                    dimensionsQuery
+            );
+    }
+
     @Override
     public List<Event> dimension(final String namespace,
                                  final String dimensionKey,
@@ -85,6 +168,43 @@ public class ArchivableEvents extends AbstractBaseArchivableNamespaceable<Events
             );
     }
 
+    @Override
+    public Map<Long, Double> aggregate(final String namespace,
+                                       final String dimensionKey,
+                                       final long startTimestampMillis,
+                                       final long endTimestampMillis,
+                                       final long bucketMillis,
+                                       final AggregationFunction function,
+                                       final Map<String, String> metadataQuery,
+                                       final Map<String, String> dimensionsQuery) throws IOException {
+        getArchiver().restore(getDelegate(), namespace, startTimestampMillis, endTimestampMillis);
+        return getDelegate().aggregate(namespace,
+                    dimensionKey,
+                    startTimestampMillis,
+                    endTimestampMillis,
+                    bucketMillis,
+                    function,
+                    metadataQuery,
+                    dimensionsQuery
+            );
+    }
+
+    @Override
+    public int delete(final String namespace,
+                      final long startTimestampMillis,
+                      final long endTimestampMillis,
+                      final Map<String, String> metadataQuery,
+                      final Map<String, String> dimensionsQuery) throws IOException {
+        // archived events in the range are restored first, so they are deleted as well
+        getArchiver().restore(getDelegate(), namespace, startTimestampMillis, endTimestampMillis);
+        return getDelegate().delete(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery
+        );
+    }
+
     @Override
     public void expire(final String namespace, final long endTimestampMillis) throws IOException {
         // archiving all before deletion
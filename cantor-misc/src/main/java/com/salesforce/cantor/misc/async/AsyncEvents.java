@@ -7,6 +7,7 @@
 
 package com.salesforce.cantor.misc.async;
 
+import com.salesforce.cantor.EventBatch;
 import com.salesforce.cantor.Events;
 
 import java.io.IOException;
@@ -64,6 +65,75 @@ public class AsyncEvents extends AbstractBaseAsyncNamespaceable<Events> implemen
         );
     }
 
+    @Override
+    public List<Event> get(final String namespace,
+                           final long startTimestampMillis,
+                           final long endTimestampMillis,
+                           final Map<String, String> metadataQuery,
+                           final Map<String, String> dimensionsQuery,
+                           final boolean includePayloads,
+                           final boolean ascending,
+                           final int limit,
+                           final Set<String> metadataKeys,
+                           final Set<String> dimensionKeys) throws IOException {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return submitCall(() -> getDelegate()
+                .get(namespace,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery,
+                        includePayloads,
+                        ascending,
+                        limit,
+                        metadataKeys,
+                        dimensionKeys)
+        );
+    }
+
+    @Override
+    public EventBatch getBatch(final String namespace,
+                               final long startTimestampMillis,
+                               final long endTimestampMillis,
+                               final Map<String, String> metadataQuery,
+                               final Map<String, String> dimensionsQuery,
+                               final boolean includePayloads,
+                               final boolean ascending,
+                               final int limit) throws IOException {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return submitCall(() -> getDelegate()
+                .getBatch(namespace,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery,
+                        includePayloads,
+                        ascending,
+                        limit)
+        );
+    }
+
+    @Override
+    public EventCursor scan(final String namespace,
+                            final long startTimestampMillis,
+                            final long endTimestampMillis,
+                            final Map<String, String> metadataQuery,
+                            final Map<String, String> dimensionsQuery,
+                            final boolean includePayloads,
+                            final boolean ascending) throws IOException {
+        checkScan(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        // the cursor is opened on the executor; events are pulled on the caller thread
+        return submitCall(() -> getDelegate()
+                .scan(namespace,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery,
+                        includePayloads,
+                        ascending)
+        );
+    }
+
     @Override
     public Set<String> metadata(final String namespace,
                                 final String metadataKey,
@@ -83,6 +153,25 @@ public class AsyncEvents extends AbstractBaseAsyncNamespaceable<Events> implemen
         );
     }
 
+    @Override
+    public Map<String, Long> count(final String namespace,
+                                   final String metadataKey,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery) throws IOException {
+        checkCount(namespace, metadataKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return submitCall(() -> getDelegate()
+                .count(namespace,
+                        metadataKey,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery
+                )
+        );
+    }
+
     @Override
     public List<Event> dimension(final String namespace,
                                  final String dimensionKey,
@@ -102,6 +191,46 @@ public class AsyncEvents extends AbstractBaseAsyncNamespaceable<Events> implemen
         );
     }
 
+    @Override
+    public Map<Long, Double> aggregate(final String namespace,
+                                       final String dimensionKey,
+                                       final long startTimestampMillis,
+                                       final long endTimestampMillis,
+                                       final long bucketMillis,
+                                       final AggregationFunction function,
+                                       final Map<String, String> metadataQuery,
+                                       final Map<String, String> dimensionsQuery) throws IOException {
+        checkAggregate(namespace, dimensionKey, startTimestampMillis, endTimestampMillis, bucketMillis, function, metadataQuery, dimensionsQuery);
+        return submitCall(() -> getDelegate()
+                .aggregate(namespace,
+                        dimensionKey,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        bucketMillis,
+                        function,
+                        metadataQuery,
+                        dimensionsQuery
+                )
+        );
+    }
+
+    @Override
+    public int delete(final String namespace,
+                      final long startTimestampMillis,
+                      final long endTimestampMillis,
+                      final Map<String, String> metadataQuery,
+                      final Map<String, String> dimensionsQuery) throws IOException {
+        checkDelete(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return submitCall(() -> getDelegate()
+                .delete(namespace,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery
+                )
+        );
+    }
+
     @Override
     public void expire(final String namespace, final long endTimestampMillis) throws IOException {
         checkExpire(namespace, endTimestampMillis);
@@ -70,6 +70,18 @@ public class AsyncSets extends AbstractBaseAsyncNamespaceable<Sets> implements S
         return submitCall(() -> getDelegate().get(namespace, set, min, max, start, count, ascending));
     }
 
+    @Override
+    public Page page(final String namespace,
+                     final String set,
+                     final long min,
+                     final long max,
+                     final int count,
+                     final boolean ascending,
+                     final String continuationToken) throws IOException {
+        checkPage(namespace, set, min, max, count, ascending, continuationToken);
+        return submitCall(() -> getDelegate().page(namespace, set, min, max, count, ascending, continuationToken));
+    }
+
     @Override
     public void delete(final String namespace, final String set, final long min, final long max) throws IOException {
         checkDelete(namespace, set, min, max);
@@ -95,9 +107,10 @@ public class AsyncSets extends AbstractBaseAsyncNamespaceable<Sets> implements S
                                    final long max,
                                    final int start,
                                    final int count,
-                                   final boolean ascending) throws IOException {
-        checkUnion(namespace, sets, min, max, start, count, ascending);
-        return submitCall(() -> getDelegate().union(namespace, sets, min, max, start, count, ascending));
+                                   final boolean ascending,
+                                   final WeightAggregation aggregation) throws IOException {
+        checkUnion(namespace, sets, min, max, start, count, ascending, aggregation);
+        return submitCall(() -> getDelegate().union(namespace, sets, min, max, start, count, ascending, aggregation));
     }
 
     @Override
@@ -107,9 +120,23 @@ public class AsyncSets extends AbstractBaseAsyncNamespaceable<Sets> implements S
                                        final long max,
                                        final int start,
                                        final int count,
-                                       final boolean ascending) throws IOException {
-        checkIntersect(namespace, sets, min, max, start, count, ascending);
-        return submitCall(() -> getDelegate().intersect(namespace, sets, min, max, start, count, ascending));
+                                       final boolean ascending,
+                                       final WeightAggregation aggregation) throws IOException {
+        checkIntersect(namespace, sets, min, max, start, count, ascending, aggregation);
+        return submitCall(() -> getDelegate().intersect(namespace, sets, min, max, start, count, ascending, aggregation));
+    }
+
+    @Override
+    public Map<String, Long> difference(final String namespace,
+                                        final String set,
+                                        final Collection<String> sets,
+                                        final long min,
+                                        final long max,
+                                        final int start,
+                                        final int count,
+                                        final boolean ascending) throws IOException {
+        checkDifference(namespace, set, sets, min, max, start, count, ascending);
+        return submitCall(() -> getDelegate().difference(namespace, set, sets, min, max, start, count, ascending));
     }
 
     @Override
@@ -142,9 +169,21 @@ public class AsyncSets extends AbstractBaseAsyncNamespaceable<Sets> implements S
         return submitCall(() -> getDelegate().weight(namespace, set, entry));
     }
 
+    @Override
+    public Map<String, Long> weights(final String namespace, final String set, final Collection<String> entries) throws IOException {
+        checkWeights(namespace, set, entries);
+        return submitCall(() -> getDelegate().weights(namespace, set, entries));
+    }
+
     @Override
     public long inc(final String namespace, final String set, final String entry, final long count) throws IOException {
         checkInc(namespace, set, entry, count);
         return submitCall(() -> getDelegate().inc(namespace, set, entry, count));
     }
+
+    @Override
+    public Map<String, Long> inc(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        checkInc(namespace, set, entries);
+        return submitCall(() -> getDelegate().inc(namespace, set, entries));
+    }
 }
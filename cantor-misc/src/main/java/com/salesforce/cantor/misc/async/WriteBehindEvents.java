@@ -0,0 +1,670 @@
+/*
+ * Copyright (c) 2020, Salesforce.com, Inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.cantor.misc.async;
+
+import com.salesforce.cantor.EventBatch;
+import com.salesforce.cantor.Events;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.salesforce.cantor.common.CommonPreconditions.*;
+import static com.salesforce.cantor.common.EventsPreconditions.*;
+
+/**
+ * Events implementation that buffers stored events in memory and writes them to the delegate in the background.
+ * <p>
+ * Calls to store return as soon as events are accepted into a bounded buffer; a background thread drains the buffer
+ * when it holds a full batch or when the oldest buffered event has waited long enough, groups events per namespace,
+ * and stores each group with a single call to the delegate. When the buffer is full, the {@link BackPressure} policy
+ * decides whether producers block, events are dropped, or store fails. The first store to a namespace not created
+ * through this instance is written directly to the delegate, so storing to a missing namespace fails immediately.
+ * <p>
+ * All other calls are forwarded to the delegate; calls reading or removing events first flush the buffer, so events
+ * stored through this instance are visible to subsequent reads through this instance.
+ */
+public class WriteBehindEvents implements Events, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindEvents.class);
+
+    private static final int defaultCapacity = 64 * 1024;
+    private static final int defaultMaxBatchSize = 4096;
+    private static final long defaultMaxBatchDelayMillis = 1000;
+    // how often the flusher checks the buffer when not woken up by producers
+    private static final long flusherIdleNanos = TimeUnit.MILLISECONDS.toNanos(5);
+    // how many times a batch is stored in the delegate before giving up on it, and the wait before the first retry
+    private static final int maxFlushAttempts = 3;
+    private static final long flushRetryBackoffMillis = 50;
+    private static final AtomicLong threadCounter = new AtomicLong();
+
+    /**
+     * What to do with stored events when the buffer has no room for all of them; a batch is either buffered as a
+     * whole or not at all, except that a blocking batch larger than the buffer is buffered in parts.
+     */
+    public enum BackPressure {
+        /** wait until the background flush makes room in the buffer */
+        BLOCK,
+        /** discard the whole batch; dropped events are counted in {@link #getDroppedEventCount()} */
+        DROP,
+        /** throw an {@link IOException} from store, without buffering any event of the batch */
+        FAIL
+    }
+
+    /**
+     * Hooks called around buffering and flushing events; for example to write events to a local log before they are
+     * accepted, and to discard them once they are durable in the delegate.
+     */
+    public interface Listener {
+        /**
+         * Called on the producer thread once room is reserved for the events and before they are buffered, so events
+         * dropped or rejected because the buffer is full are never passed to this; if this throws, store fails and
+         * nothing is buffered. A blocking batch larger than the buffer is passed in parts, as each is buffered.
+         */
+        default void beforeBuffering(final String namespace, final Collection<Event> batch) throws IOException {}
+
+        /**
+         * Called on the flushing thread after a batch is successfully stored in the delegate.
+         */
+        default void afterFlush(final String namespace, final Collection<Event> batch, final long latencyMillis) {}
+
+        /**
+         * Called on the flushing thread when storing a batch in the delegate fails on every attempt; the events of
+         * the batch are not retried any further.
+         */
+        default void onFlushFailure(final String namespace, final Collection<Event> batch, final IOException exception) {}
+    }
+
+    private final Events delegate;
+    private final RingBuffer<PendingEvent> buffer;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final BackPressure backPressure;
+    private final Listener listener;
+
+    // serializes draining the buffer and writing to the delegate
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // time the oldest event currently in the buffer was accepted, zero if the buffer is empty
+    private final AtomicLong oldestAcceptedNanos = new AtomicLong();
+    private final Thread flusher;
+    private volatile boolean closed = false;
+    // namespaces known to exist in the delegate; events for other namespaces are not buffered
+    private final Set<String> knownNamespaces = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedEventCount = new AtomicLong();
+    private final AtomicLong flushRetryCount = new AtomicLong();
+    private final AtomicLong failedEventCount = new AtomicLong();
+    private final AtomicLong droppedEventCount = new AtomicLong();
+    private final AtomicLong totalFlushLatencyMillis = new AtomicLong();
+    private final AtomicLong maxFlushLatencyMillis = new AtomicLong();
+
+    public WriteBehindEvents(final Events delegate) {
+        this(delegate, defaultCapacity, defaultMaxBatchSize, defaultMaxBatchDelayMillis, BackPressure.BLOCK, new Listener() {});
+    }
+
+    public WriteBehindEvents(final Events delegate,
+                             final int capacity,
+                             final int maxBatchSize,
+                             final long maxBatchDelayMillis,
+                             final BackPressure backPressure,
+                             final Listener listener) {
+        checkArgument(delegate != null, "null delegate");
+        checkArgument(capacity > 0, "capacity must be positive");
+        checkArgument(maxBatchSize > 0, "max batch size must be positive");
+        checkArgument(maxBatchDelayMillis > 0, "max batch delay must be positive");
+        checkArgument(backPressure != null, "null back pressure policy");
+        checkArgument(listener != null, "null listener");
+        this.delegate = delegate;
+        this.buffer = new RingBuffer<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        this.backPressure = backPressure;
+        this.listener = listener;
+
+        this.flusher = new Thread(this::runFlusher, "cantor-events-write-behind-" + threadCounter.getAndIncrement());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void create(final String namespace) throws IOException {
+        checkCreate(namespace);
+        this.delegate.create(namespace);
+        this.knownNamespaces.add(namespace);
+    }
+
+    @Override
+    public void drop(final String namespace) throws IOException {
+        checkDrop(namespace);
+        flush();
+        this.knownNamespaces.remove(namespace);
+        this.delegate.drop(namespace);
+    }
+
+    @Override
+    public void store(final String namespace, final Collection<Event> batch) throws IOException {
+        checkStore(namespace, batch);
+        checkState(!this.closed, "write behind events is closed");
+        if (!this.knownNamespaces.contains(namespace)) {
+            // write through to find out if the namespace exists
+            this.delegate.store(namespace, batch);
+            this.knownNamespaces.add(namespace);
+            return;
+        }
+        final List<Event> copies = new ArrayList<>(batch.size());
+        for (final Event event : batch) {
+            // callers may modify the event after store returns; buffer a copy
+            copies.add(new Event(event.getTimestampMillis(),
+                    new HashMap<>(event.getMetadata()),
+                    new HashMap<>(event.getDimensions()),
+                    event.getPayload() != null ? event.getPayload().clone() : null
+            ));
+        }
+        buffer(namespace, copies);
+    }
+
+    @Override
+    public List<Event> get(final String namespace,
+                           final long startTimestampMillis,
+                           final long endTimestampMillis,
+                           final Map<String, String> metadataQuery,
+                           final Map<String, String> dimensionsQuery,
+                           final boolean includePayloads,
+                           final boolean ascending,
+                           final int limit) throws IOException {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        flush();
+        return this.delegate.get(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery,
+                includePayloads,
+                ascending,
+                limit
+        );
+    }
+
+    @Override
+    public List<Event> get(final String namespace,
+                           final long startTimestampMillis,
+                           final long endTimestampMillis,
+                           final Map<String, String> metadataQuery,
+                           final Map<String, String> dimensionsQuery,
+                           final boolean includePayloads,
+                           final boolean ascending,
+                           final int limit,
+                           final Set<String> metadataKeys,
+                           final Set<String> dimensionKeys) throws IOException {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        flush();
+        return this.delegate.get(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery,
+                includePayloads,
+                ascending,
+                limit,
+                metadataKeys,
+                dimensionKeys
+        );
+    }
+
+    @Override
+    public EventBatch getBatch(final String namespace,
+                               final long startTimestampMillis,
+                               final long endTimestampMillis,
+                               final Map<String, String> metadataQuery,
+                               final Map<String, String> dimensionsQuery,
+                               final boolean includePayloads,
+                               final boolean ascending,
+                               final int limit) throws IOException {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        flush();
+        return this.delegate.getBatch(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery,
+                includePayloads,
+                ascending,
+                limit
+        );
+    }
+
+    @Override
+    public EventCursor scan(final String namespace,
+                            final long startTimestampMillis,
+                            final long endTimestampMillis,
+                            final Map<String, String> metadataQuery,
+                            final Map<String, String> dimensionsQuery,
+                            final boolean includePayloads,
+                            final boolean ascending) throws IOException {
+        checkScan(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        flush();
+        return this.delegate.scan(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery,
+                includePayloads,
+                ascending
+        );
+    }
+
+    @Override
+    public Set<String> metadata(final String namespace,
+                                final String metadataKey,
+                                final long startTimestampMillis,
+                                final long endTimestampMillis,
+                                final Map<String, String> metadataQuery,
+                                final Map<String, String> dimensionsQuery) throws IOException {
+        checkMetadata(namespace, metadataKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        flush();
+        return this.delegate.metadata(namespace,
+                metadataKey,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery
+        );
+    }
+
+    @Override
+    public Map<String, Long> count(final String namespace,
+                                   final String metadataKey,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery) throws IOException {
+        checkCount(namespace, metadataKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        flush();
+        return this.delegate.count(namespace,
+                metadataKey,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery
+        );
+    }
+
+    @Override
+    public List<Event> dimension(final String namespace,
+                                 final String dimensionKey,
+                                 final long startTimestampMillis,
+                                 final long endTimestampMillis,
+                                 final Map<String, String> metadataQuery,
+                                 final Map<String, String> dimensionsQuery) throws IOException {
+        checkDimension(namespace, dimensionKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        flush();
+        return this.delegate.dimension(namespace,
+                dimensionKey,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery
+        );
+    }
+
+    @Override
+    public Map<Long, Double> aggregate(final String namespace,
+                                       final String dimensionKey,
+                                       final long startTimestampMillis,
+                                       final long endTimestampMillis,
+                                       final long bucketMillis,
+                                       final AggregationFunction function,
+                                       final Map<String, String> metadataQuery,
+                                       final Map<String, String> dimensionsQuery) throws IOException {
+        checkAggregate(namespace, dimensionKey, startTimestampMillis, endTimestampMillis, bucketMillis, function, metadataQuery, dimensionsQuery);
+        flush();
+        return this.delegate.aggregate(namespace,
+                dimensionKey,
+                startTimestampMillis,
+                endTimestampMillis,
+                bucketMillis,
+                function,
+                metadataQuery,
+                dimensionsQuery
+        );
+    }
+
+    @Override
+    public int delete(final String namespace,
+                      final long startTimestampMillis,
+                      final long endTimestampMillis,
+                      final Map<String, String> metadataQuery,
+                      final Map<String, String> dimensionsQuery) throws IOException {
+        checkDelete(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        flush();
+        return this.delegate.delete(namespace,
+                startTimestampMillis,
+                endTimestampMillis,
+                metadataQuery,
+                dimensionsQuery
+        );
+    }
+
+    @Override
+    public void expire(final String namespace, final long endTimestampMillis) throws IOException {
+        checkExpire(namespace, endTimestampMillis);
+        flush();
+        this.delegate.expire(namespace, endTimestampMillis);
+    }
+
+    /**
+     * Write all buffered events to the delegate and wait for it to complete.
+     *
+     * @throws IOException if storing any of the batches in the delegate fails
+     */
+    public void flush() throws IOException {
+        this.flushLock.lock();
+        try {
+            final IOException exception = drainAndStore();
+            if (exception != null) {
+                throw exception;
+            }
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stop the background flusher and write all buffered events to the delegate; events stored after closing are
+     * rejected.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        LockSupport.unpark(this.flusher);
+        try {
+            this.flusher.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public int getBufferedEventCount() {
+        return this.buffer.size();
+    }
+
+    public long getFlushCount() {
+        return this.flushCount.get();
+    }
+
+    public long getFlushedEventCount() {
+        return this.flushedEventCount.get();
+    }
+
+    public long getFlushRetryCount() {
+        return this.flushRetryCount.get();
+    }
+
+    public long getFailedEventCount() {
+        return this.failedEventCount.get();
+    }
+
+    public long getDroppedEventCount() {
+        return this.droppedEventCount.get();
+    }
+
+    public long getTotalFlushLatencyMillis() {
+        return this.totalFlushLatencyMillis.get();
+    }
+
+    public long getMaxFlushLatencyMillis() {
+        return this.maxFlushLatencyMillis.get();
+    }
+
+    // buffers all of the events or, if the buffer is full and the policy is to drop or fail, none of them; room is
+    // reserved for the whole batch before any of it is buffered, so only blocking producers can buffer a batch larger
+    // than the buffer, in parts; the listener only sees events that room was reserved for
+    private void buffer(final String namespace, final List<Event> events) throws IOException {
+        int from = 0;
+        while (from < events.size()) {
+            final int count = this.backPressure == BackPressure.BLOCK
+                    ? Math.min(events.size() - from, this.buffer.capacity())
+                    : events.size();
+            while (!this.buffer.reserve(count)) {
+                switch (this.backPressure) {
+                    case DROP:
+                        this.droppedEventCount.addAndGet(events.size());
+                        return;
+                    case FAIL:
+                        throw new IOException("write behind buffer is full");
+                    case BLOCK:
+                    default:
+                        // wake up the flusher to make room and wait for it
+                        LockSupport.unpark(this.flusher);
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new IOException("interrupted while waiting for room in the write behind buffer");
+                        }
+                }
+            }
+            final List<Event> part = events.subList(from, from + count);
+            try {
+                this.listener.beforeBuffering(namespace, part);
+            } catch (IOException | RuntimeException e) {
+                this.buffer.release(count);
+                throw e;
+            }
+            for (final Event event : part) {
+                this.buffer.offer(new PendingEvent(namespace, event));
+            }
+            from += count;
+            this.oldestAcceptedNanos.compareAndSet(0, System.nanoTime());
+            if (this.buffer.size() >= this.maxBatchSize) {
+                LockSupport.unpark(this.flusher);
+            }
+        }
+    }
+
+    private void runFlusher() {
+        while (!this.closed) {
+            LockSupport.parkNanos(flusherIdleNanos);
+            final long oldest = this.oldestAcceptedNanos.get();
+            final boolean batchIsFull = this.buffer.size() >= this.maxBatchSize;
+            final boolean batchIsDue = oldest != 0 && System.nanoTime() - oldest >= this.maxBatchDelayNanos;
+            final boolean bufferIsFull = this.buffer.size() >= this.buffer.capacity();
+            if (!batchIsFull && !batchIsDue && !bufferIsFull) {
+                continue;
+            }
+            this.flushLock.lock();
+            try {
+                // failures are reported to the listener; nothing to rethrow on the background thread
+                drainAndStore();
+            } catch (RuntimeException e) {
+                logger.warn("exception flushing write behind events", e);
+            } finally {
+                this.flushLock.unlock();
+            }
+        }
+    }
+
+    // drains the buffer, groups events per namespace and stores them in batches of up to max batch size;
+    // returns the first exception thrown by the delegate if any; must be called holding the flush lock
+    private IOException drainAndStore() {
+        this.oldestAcceptedNanos.set(0);
+        final Map<String, List<Event>> batches = new LinkedHashMap<>();
+        PendingEvent pending;
+        while ((pending = this.buffer.poll()) != null) {
+            batches.computeIfAbsent(pending.namespace, k -> new ArrayList<>()).add(pending.event);
+        }
+        IOException firstException = null;
+        for (final Map.Entry<String, List<Event>> entry : batches.entrySet()) {
+            final List<Event> events = entry.getValue();
+            for (int from = 0; from < events.size(); from += this.maxBatchSize) {
+                final List<Event> batch = events.subList(from, Math.min(events.size(), from + this.maxBatchSize));
+                final IOException exception = storeBatch(entry.getKey(), batch);
+                if (firstException == null) {
+                    firstException = exception;
+                }
+            }
+        }
+        return firstException;
+    }
+
+    // stores the batch in the delegate, retrying with exponential back off; returns the last exception if every
+    // attempt fails
+    private IOException storeBatch(final String namespace, final List<Event> batch) {
+        final long startNanos = System.nanoTime();
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                this.delegate.store(namespace, batch);
+                break;
+            } catch (IOException e) {
+                if (attempt >= maxFlushAttempts || !backOff(attempt)) {
+                    logger.warn("failed to store batch of {} events in namespace '{}' after {} attempts",
+                            batch.size(), namespace, attempt, e);
+                    this.failedEventCount.addAndGet(batch.size());
+                    this.listener.onFlushFailure(namespace, batch, e);
+                    return e;
+                }
+                logger.debug("failed to store batch of {} events in namespace '{}', retrying", batch.size(), namespace, e);
+                this.flushRetryCount.incrementAndGet();
+            }
+        }
+        final long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        this.flushCount.incrementAndGet();
+        this.flushedEventCount.addAndGet(batch.size());
+        this.totalFlushLatencyMillis.addAndGet(latencyMillis);
+        this.maxFlushLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+        logger.debug("stored batch of {} events in namespace '{}' in {}ms", batch.size(), namespace, latencyMillis);
+        this.listener.afterFlush(namespace, batch, latencyMillis);
+        return null;
+    }
+
+    // waits before the next attempt to store a batch; returns false if interrupted
+    private static boolean backOff(final int attempt) {
+        try {
+            Thread.sleep(flushRetryBackoffMillis << (attempt - 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class PendingEvent {
+        private final String namespace;
+        private final Event event;
+
+        PendingEvent(final String namespace, final Event event) {
+            this.namespace = namespace;
+            this.event = event;
+        }
+    }
+
+    // bounded lock-free multi-producer multi-consumer queue; each slot carries a sequence number telling producers
+    // and consumers whether the slot is free to write or ready to read for the position they claimed
+    private static class RingBuffer<E> {
+        private final int capacity;
+        private final int mask;
+        private final AtomicReferenceArray<E> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+        // elements buffered or reserved to be; never more than the capacity
+        private final AtomicInteger used = new AtomicInteger();
+
+        RingBuffer(final int capacity) {
+            this.capacity = capacity;
+            // round the number of slots up to a power of two so positions map to slots with a mask
+            final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+            this.mask = size - 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; ++i) {
+                this.sequences.set(i, i);
+            }
+        }
+
+        // reserves room for the given number of elements, all or none; every reserved element must then be offered
+        boolean reserve(final int count) {
+            while (true) {
+                final int current = this.used.get();
+                if (current + count > this.capacity) {
+                    return false;
+                }
+                if (this.used.compareAndSet(current, current + count)) {
+                    return true;
+                }
+            }
+        }
+
+        // releases room reserved for elements that are not going to be offered
+        void release(final int count) {
+            this.used.addAndGet(-count);
+        }
+
+        // offers an element room was reserved for, which always succeeds
+        void offer(final E element) {
+            long position = this.tail.get();
+            while (true) {
+                final int index = (int) (position & this.mask);
+                final long difference = this.sequences.get(index) - position;
+                if (difference == 0) {
+                    if (this.tail.compareAndSet(position, position + 1)) {
+                        this.slots.set(index, element);
+                        this.sequences.set(index, position + 1);
+                        return;
+                    }
+                    position = this.tail.get();
+                } else if (difference < 0) {
+                    // the slot is still being read by a consumer that claimed it
+                    Thread.yield();
+                    position = this.tail.get();
+                } else {
+                    position = this.tail.get();
+                }
+            }
+        }
+
+        E poll() {
+            long position = this.head.get();
+            while (true) {
+                final int index = (int) (position & this.mask);
+                final long difference = this.sequences.get(index) - (position + 1);
+                if (difference == 0) {
+                    if (this.head.compareAndSet(position, position + 1)) {
+                        final E element = this.slots.get(index);
+                        this.slots.set(index, null);
+                        this.sequences.set(index, position + this.mask + 1);
+                        this.used.decrementAndGet();
+                        return element;
+                    }
+                    position = this.head.get();
+                } else if (difference < 0) {
+                    return null;
+                } else {
+                    position = this.head.get();
+                }
+            }
+        }
+
+        int size() {
+            return (int) Math.max(0, this.tail.get() - this.head.get());
+        }
+
+        int capacity() {
+            return this.capacity;
+        }
+    }
+}
@@ -0,0 +1,674 @@
+/*
+ * Copyright (c) 2020, Salesforce.com, Inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.cantor.misc.async;
+
+import com.salesforce.cantor.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.salesforce.cantor.common.CommonPreconditions.*;
+import static com.salesforce.cantor.common.SetsPreconditions.*;
+
+/**
+ * Sets implementation that combines increments in memory and writes the merged deltas to the delegate in the
+ * background.
+ * <p>
+ * Calls to inc add the count to a pending delta for the entry and return without writing to the delegate; a background
+ * thread periodically, or as soon as enough distinct entries are pending, writes the deltas of each set with a single
+ * batched inc on the delegate. Any number of increments on a hot entry between two flushes costs one write.
+ * <p>
+ * The weight returned by inc is the weight of the entry in the delegate, as of the last time this instance read or
+ * flushed it, plus the increments pending in this instance; increments made by other writers are reflected after the
+ * next flush of the entry. Weights of the entries of an inc not incremented since the previous flush are read from the
+ * delegate with one batched call. If read your writes is enabled, weight also includes pending increments; otherwise
+ * it is forwarded to the delegate and may not reflect increments made in the last flush interval. Increments are not
+ * blocked while deltas are written to the delegate.
+ * <p>
+ * Pending increments are lost if the process dies before they are flushed, so at most one flush interval of
+ * increments can be lost. Deltas that fail to flush are kept and retried on the next flush, and are dropped after a
+ * few consecutive failures; dropped entries are counted in {@link #getDroppedEntryCount()}. Deltas are written at
+ * least once: a flush that fails after the delegate committed it, e.g. on a timeout, is retried and the deltas are
+ * applied twice.
+ * <p>
+ * All other calls are forwarded to the delegate after flushing pending increments of the sets they touch, so they
+ * observe every increment made through this instance before them.
+ */
+public class WriteCombiningSets implements Sets, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteCombiningSets.class);
+
+    private static final int defaultMaxPendingEntries = 16 * 1024;
+    private static final long defaultFlushIntervalMillis = 1000;
+    private static final int stripeCount = 64;
+    // consecutive failed flushes of a set after which its pending increments are dropped
+    private static final int maxFlushAttempts = 3;
+    private static final AtomicLong threadCounter = new AtomicLong();
+
+    private final Sets delegate;
+    private final int maxPendingEntries;
+    private final long flushIntervalNanos;
+    private final boolean readYourWrites;
+    // pending increments are striped by namespace and set, so all deltas of a set are flushed together
+    private final Stripe[] stripes = new Stripe[stripeCount];
+    private final AtomicInteger pendingEntryCount = new AtomicInteger();
+    private final Thread flusher;
+    private volatile boolean closed = false;
+
+    private final AtomicLong incrementCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedEntryCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicLong droppedEntryCount = new AtomicLong();
+    private final AtomicLong totalFlushLatencyMillis = new AtomicLong();
+    private final AtomicLong maxFlushLatencyMillis = new AtomicLong();
+
+    public WriteCombiningSets(final Sets delegate) {
+        this(delegate, defaultMaxPendingEntries, defaultFlushIntervalMillis, true);
+    }
+
+    public WriteCombiningSets(final Sets delegate,
+                              final int maxPendingEntries,
+                              final long flushIntervalMillis,
+                              final boolean readYourWrites) {
+        checkArgument(delegate != null, "null delegate");
+        checkArgument(maxPendingEntries > 0, "max pending entries must be positive");
+        checkArgument(flushIntervalMillis > 0, "flush interval must be positive");
+        this.delegate = delegate;
+        this.maxPendingEntries = maxPendingEntries;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.readYourWrites = readYourWrites;
+        for (int i = 0; i < stripeCount; ++i) {
+            this.stripes[i] = new Stripe();
+        }
+
+        this.flusher = new Thread(this::runFlusher, "cantor-sets-write-combining-" + threadCounter.getAndIncrement());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void create(final String namespace) throws IOException {
+        checkCreate(namespace);
+        this.delegate.create(namespace);
+    }
+
+    @Override
+    public void drop(final String namespace) throws IOException {
+        checkDrop(namespace);
+        // pending increments of a dropped namespace are discarded rather than flushed
+        for (final Stripe stripe : this.stripes) {
+            stripe.flushLock.lock();
+            stripe.lock.writeLock().lock();
+            try {
+                final Iterator<Map.Entry<SetKey, Map<String, LongAdder>>> iterator = stripe.pending.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    final Map.Entry<SetKey, Map<String, LongAdder>> entry = iterator.next();
+                    if (entry.getKey().namespace.equals(namespace)) {
+                        this.pendingEntryCount.addAndGet(-entry.getValue().size());
+                        iterator.remove();
+                    }
+                }
+                stripe.weights.keySet().removeIf(key -> key.namespace.equals(namespace));
+                stripe.failures.keySet().removeIf(key -> key.namespace.equals(namespace));
+            } finally {
+                stripe.lock.writeLock().unlock();
+                stripe.flushLock.unlock();
+            }
+        }
+        this.delegate.drop(namespace);
+    }
+
+    @Override
+    public void add(final String namespace, final String set, final String entry, final long weight) throws IOException {
+        checkAdd(namespace, set, entry, weight);
+        writeThrough(namespace, set, () -> { this.delegate.add(namespace, set, entry, weight); return null; });
+    }
+
+    @Override
+    public void add(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        checkAdd(namespace, set, entries);
+        writeThrough(namespace, set, () -> { this.delegate.add(namespace, set, entries); return null; });
+    }
+
+    @Override
+    public Collection<String> entries(final String namespace,
+                                      final String set,
+                                      final long min,
+                                      final long max,
+                                      final int start,
+                                      final int count,
+                                      final boolean ascending) throws IOException {
+        checkEntries(namespace, set, min, max, start, count, ascending);
+        flush(namespace, set);
+        return this.delegate.entries(namespace, set, min, max, start, count, ascending);
+    }
+
+    @Override
+    public Map<String, Long> get(final String namespace,
+                                 final String set,
+                                 final long min,
+                                 final long max,
+                                 final int start,
+                                 final int count,
+                                 final boolean ascending) throws IOException {
+        checkGet(namespace, set, min, max, start, count, ascending);
+        flush(namespace, set);
+        return this.delegate.get(namespace, set, min, max, start, count, ascending);
+    }
+
+    @Override
+    public Page page(final String namespace,
+                     final String set,
+                     final long min,
+                     final long max,
+                     final int count,
+                     final boolean ascending,
+                     final String continuationToken) throws IOException {
+        checkPage(namespace, set, min, max, count, ascending, continuationToken);
+        flush(namespace, set);
+        return this.delegate.page(namespace, set, min, max, count, ascending, continuationToken);
+    }
+
+    @Override
+    public void delete(final String namespace, final String set, final long min, final long max) throws IOException {
+        checkDelete(namespace, set, min, max);
+        writeThrough(namespace, set, () -> { this.delegate.delete(namespace, set, min, max); return null; });
+    }
+
+    @Override
+    public boolean delete(final String namespace, final String set, final String entry) throws IOException {
+        checkDelete(namespace, set, entry);
+        return writeThrough(namespace, set, () -> this.delegate.delete(namespace, set, entry));
+    }
+
+    @Override
+    public void delete(final String namespace, final String set, final Collection<String> entries) throws IOException {
+        checkDelete(namespace, set, entries);
+        writeThrough(namespace, set, () -> { this.delegate.delete(namespace, set, entries); return null; });
+    }
+
+    @Override
+    public Map<String, Long> union(final String namespace,
+                                   final Collection<String> sets,
+                                   final long min,
+                                   final long max,
+                                   final int start,
+                                   final int count,
+                                   final boolean ascending,
+                                   final WeightAggregation aggregation) throws IOException {
+        checkUnion(namespace, sets, min, max, start, count, ascending, aggregation);
+        flush();
+        return this.delegate.union(namespace, sets, min, max, start, count, ascending, aggregation);
+    }
+
+    @Override
+    public Map<String, Long> intersect(final String namespace,
+                                       final Collection<String> sets,
+                                       final long min,
+                                       final long max,
+                                       final int start,
+                                       final int count,
+                                       final boolean ascending,
+                                       final WeightAggregation aggregation) throws IOException {
+        checkIntersect(namespace, sets, min, max, start, count, ascending, aggregation);
+        flush();
+        return this.delegate.intersect(namespace, sets, min, max, start, count, ascending, aggregation);
+    }
+
+    @Override
+    public Map<String, Long> difference(final String namespace,
+                                        final String set,
+                                        final Collection<String> sets,
+                                        final long min,
+                                        final long max,
+                                        final int start,
+                                        final int count,
+                                        final boolean ascending) throws IOException {
+        checkDifference(namespace, set, sets, min, max, start, count, ascending);
+        flush();
+        return this.delegate.difference(namespace, set, sets, min, max, start, count, ascending);
+    }
+
+    @Override
+    public Map<String, Long> pop(final String namespace,
+                                 final String set,
+                                 final long min,
+                                 final long max,
+                                 final int start,
+                                 final int count,
+                                 final boolean ascending) throws IOException {
+        checkPop(namespace, set, min, max, start, count, ascending);
+        return writeThrough(namespace, set, () -> this.delegate.pop(namespace, set, min, max, start, count, ascending));
+    }
+
+    @Override
+    public Collection<String> sets(final String namespace) throws IOException {
+        checkSets(namespace);
+        flush();
+        return this.delegate.sets(namespace);
+    }
+
+    @Override
+    public int size(final String namespace, final String set) throws IOException {
+        checkSize(namespace, set);
+        flush(namespace, set);
+        return this.delegate.size(namespace, set);
+    }
+
+    @Override
+    public Long weight(final String namespace, final String set, final String entry) throws IOException {
+        checkWeight(namespace, set, entry);
+        if (!this.readYourWrites) {
+            return this.delegate.weight(namespace, set, entry);
+        }
+        final SetKey key = new SetKey(namespace, set);
+        final Stripe stripe = getStripe(key);
+        // holding the read lock, no flush can move increments from pending to being flushed, or finish flushing them,
+        // under us; the weight of an entry being flushed is not read, as the delegate may or may not include them yet
+        stripe.lock.readLock().lock();
+        try {
+            final Map<String, Long> flushing = stripe.flushing.get(key);
+            final Long stored = flushing != null && flushing.containsKey(entry)
+                    ? flushing.get(entry)
+                    : this.delegate.weight(namespace, set, entry);
+            final Map<String, LongAdder> pending = stripe.pending.get(key);
+            final LongAdder delta = pending != null ? pending.get(entry) : null;
+            if (delta == null) {
+                return stored;
+            }
+            return (stored != null ? stored : 0L) + delta.sum();
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long inc(final String namespace, final String set, final String entry, final long count) throws IOException {
+        checkInc(namespace, set, entry, count);
+        return doInc(namespace, set, Collections.singletonMap(entry, count)).get(entry);
+    }
+
+    @Override
+    public Map<String, Long> inc(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        checkInc(namespace, set, entries);
+        return doInc(namespace, set, entries);
+    }
+
+    /**
+     * Write all pending increments to the delegate and wait for it to complete.
+     *
+     * @throws IOException if incrementing any of the sets in the delegate fails
+     */
+    public void flush() throws IOException {
+        IOException firstException = null;
+        for (final Stripe stripe : this.stripes) {
+            final IOException exception = flushStripe(stripe);
+            if (firstException == null) {
+                firstException = exception;
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    /**
+     * Stop the background flusher and write all pending increments to the delegate; increments after closing are
+     * rejected.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        LockSupport.unpark(this.flusher);
+        try {
+            this.flusher.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public int getPendingEntryCount() {
+        return this.pendingEntryCount.get();
+    }
+
+    public long getIncrementCount() {
+        return this.incrementCount.get();
+    }
+
+    public long getFlushCount() {
+        return this.flushCount.get();
+    }
+
+    public long getFlushedEntryCount() {
+        return this.flushedEntryCount.get();
+    }
+
+    public long getFailedFlushCount() {
+        return this.failedFlushCount.get();
+    }
+
+    public long getDroppedEntryCount() {
+        return this.droppedEntryCount.get();
+    }
+
+    public long getTotalFlushLatencyMillis() {
+        return this.totalFlushLatencyMillis.get();
+    }
+
+    public long getMaxFlushLatencyMillis() {
+        return this.maxFlushLatencyMillis.get();
+    }
+
+    private Map<String, Long> doInc(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        checkState(!this.closed, "write combining sets is closed");
+        final SetKey key = new SetKey(namespace, set);
+        final Stripe stripe = getStripe(key);
+        final Map<String, Long> results = new HashMap<>();
+        int addedEntries = 0;
+        stripe.lock.readLock().lock();
+        try {
+            final Map<String, Long> weights = stripe.weights.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+            final Map<String, LongAdder> pending = stripe.pending.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+            // weights of entries being flushed are the ones they have once the flush is done; the others not known
+            // yet are read from the delegate with one call
+            final Map<String, Long> flushing = stripe.flushing.getOrDefault(key, Collections.emptyMap());
+            final List<String> unknown = new ArrayList<>();
+            for (final String entry : entries.keySet()) {
+                if (!weights.containsKey(entry)) {
+                    final Long flushingWeight = flushing.get(entry);
+                    if (flushingWeight != null) {
+                        weights.putIfAbsent(entry, flushingWeight);
+                    } else {
+                        unknown.add(entry);
+                    }
+                }
+            }
+            if (!unknown.isEmpty()) {
+                final Map<String, Long> stored = this.delegate.weights(namespace, set, unknown);
+                for (final String entry : unknown) {
+                    weights.putIfAbsent(entry, stored.getOrDefault(entry, 0L));
+                }
+            }
+            for (final Map.Entry<String, Long> entry : entries.entrySet()) {
+                // weight of the entry in the delegate, not including pending increments
+                final long weight = weights.get(entry.getKey());
+                LongAdder delta = pending.get(entry.getKey());
+                if (delta == null) {
+                    final LongAdder created = new LongAdder();
+                    delta = pending.putIfAbsent(entry.getKey(), created);
+                    if (delta == null) {
+                        delta = created;
+                        addedEntries++;
+                    }
+                }
+                delta.add(entry.getValue());
+                results.put(entry.getKey(), weight + delta.sum());
+            }
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+        this.incrementCount.addAndGet(entries.size());
+        if (this.pendingEntryCount.addAndGet(addedEntries) >= this.maxPendingEntries) {
+            LockSupport.unpark(this.flusher);
+        }
+        return results;
+    }
+
+    // flushes the stripe of the set and calls the delegate holding the stripe's write lock, so no increment on the set
+    // can read a weight while the delegate changes it; weights read for entries of the set are forgotten
+    private <R> R writeThrough(final String namespace, final String set, final Callable<R> callable) throws IOException {
+        final SetKey key = new SetKey(namespace, set);
+        final Stripe stripe = getStripe(key);
+        stripe.flushLock.lock();
+        try {
+            IOException exception = flushStripe(stripe);
+            if (exception != null) {
+                throw exception;
+            }
+            stripe.lock.writeLock().lock();
+            try {
+                // increments on the set since the flush are flushed again holding the lock, so the call observes them
+                if (stripe.pending.containsKey(key)) {
+                    exception = flushStripe(stripe);
+                    if (exception != null) {
+                        throw exception;
+                    }
+                }
+                stripe.weights.remove(key);
+                return callable.call();
+            } finally {
+                stripe.lock.writeLock().unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            stripe.flushLock.unlock();
+        }
+    }
+
+    private void flush(final String namespace, final String set) throws IOException {
+        final IOException exception = flushStripe(getStripe(new SetKey(namespace, set)));
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void runFlusher() {
+        while (!this.closed) {
+            // woken up early when enough entries are pending
+            LockSupport.parkNanos(this.flushIntervalNanos);
+            if (this.closed) {
+                break;
+            }
+            for (final Stripe stripe : this.stripes) {
+                try {
+                    // failures are logged and counted; nothing to rethrow on the background thread
+                    flushStripe(stripe);
+                } catch (RuntimeException e) {
+                    logger.warn("exception flushing write combining sets", e);
+                }
+            }
+        }
+    }
+
+    // writes pending deltas of each set in the stripe to the delegate with one batched inc, and keeps the returned
+    // weights as the weights of those entries; the pending deltas are swapped out holding the write lock, and written
+    // without it, so increments on the stripe are not blocked by the delegate; returns the first exception thrown by
+    // the delegate if any
+    private IOException flushStripe(final Stripe stripe) {
+        stripe.flushLock.lock();
+        try {
+            final Map<SetKey, Map<String, Long>> batches = new HashMap<>();
+            final Map<SetKey, Map<String, Long>> previousWeights;
+            stripe.lock.writeLock().lock();
+            try {
+                if (stripe.pending.isEmpty()) {
+                    stripe.weights.clear();
+                    return null;
+                }
+                final Map<SetKey, Map<String, LongAdder>> pending = stripe.pending;
+                previousWeights = stripe.weights;
+                stripe.pending = new ConcurrentHashMap<>();
+                stripe.weights = new ConcurrentHashMap<>();
+                for (final Map.Entry<SetKey, Map<String, LongAdder>> entry : pending.entrySet()) {
+                    final Map<String, Long> deltas = new HashMap<>();
+                    for (final Map.Entry<String, LongAdder> delta : entry.getValue().entrySet()) {
+                        deltas.put(delta.getKey(), delta.getValue().sum());
+                    }
+                    if (deltas.isEmpty()) {
+                        continue;
+                    }
+                    this.pendingEntryCount.addAndGet(-deltas.size());
+                    batches.put(entry.getKey(), deltas);
+                    // increments while the deltas are written start from the weights the entries have once they are
+                    final Map<String, Long> weights = previousWeights.getOrDefault(entry.getKey(), Collections.emptyMap());
+                    final Map<String, Long> flushing = new HashMap<>();
+                    for (final Map.Entry<String, Long> delta : deltas.entrySet()) {
+                        final Long weight = weights.get(delta.getKey());
+                        if (weight != null) {
+                            flushing.put(delta.getKey(), weight + delta.getValue());
+                        }
+                    }
+                    stripe.flushing.put(entry.getKey(), flushing);
+                }
+            } finally {
+                stripe.lock.writeLock().unlock();
+            }
+
+            IOException firstException = null;
+            for (final Map.Entry<SetKey, Map<String, Long>> batch : batches.entrySet()) {
+                final SetKey key = batch.getKey();
+                final Map<String, Long> deltas = batch.getValue();
+                Map<String, Long> results = null;
+                IOException exception = null;
+                try {
+                    results = incBatch(key, deltas);
+                } catch (IOException e) {
+                    exception = e;
+                    if (firstException == null) {
+                        firstException = e;
+                    }
+                }
+                stripe.lock.writeLock().lock();
+                try {
+                    stripe.flushing.remove(key);
+                    final Map<String, Long> weights = stripe.weights.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+                    if (exception == null) {
+                        stripe.failures.remove(key);
+                        weights.putAll(results);
+                    } else {
+                        restoreFailedDeltas(stripe, key, deltas, previousWeights.getOrDefault(key, Collections.emptyMap()), weights);
+                    }
+                } finally {
+                    stripe.lock.writeLock().unlock();
+                }
+            }
+            return firstException;
+        } finally {
+            stripe.flushLock.unlock();
+        }
+    }
+
+    // called holding the write lock after the deltas of the set failed to flush; the deltas are taken as not applied,
+    // so entries go back to the weights they had before the flush, and the deltas are kept pending to be retried, or
+    // dropped after too many failed flushes
+    private void restoreFailedDeltas(final Stripe stripe,
+                                     final SetKey key,
+                                     final Map<String, Long> deltas,
+                                     final Map<String, Long> previousWeights,
+                                     final Map<String, Long> weights) {
+        for (final String entry : deltas.keySet()) {
+            final Long weight = previousWeights.get(entry);
+            if (weight != null) {
+                weights.put(entry, weight);
+            } else {
+                weights.remove(entry);
+            }
+        }
+        if (stripe.failures.merge(key, 1, Integer::sum) >= maxFlushAttempts) {
+            logger.warn("dropping {} pending increments in set/namespace '{}'/'{}' after {} failed flushes",
+                    deltas.size(), key.set, key.namespace, maxFlushAttempts);
+            stripe.failures.remove(key);
+            this.droppedEntryCount.addAndGet(deltas.size());
+            return;
+        }
+        // merge with increments made while the deltas were written
+        final Map<String, LongAdder> pending = stripe.pending.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        for (final Map.Entry<String, Long> delta : deltas.entrySet()) {
+            LongAdder adder = pending.get(delta.getKey());
+            if (adder == null) {
+                adder = new LongAdder();
+                pending.put(delta.getKey(), adder);
+                this.pendingEntryCount.incrementAndGet();
+            }
+            adder.add(delta.getValue());
+        }
+    }
+
+    private Map<String, Long> incBatch(final SetKey key, final Map<String, Long> deltas) throws IOException {
+        final long startNanos = System.nanoTime();
+        final Map<String, Long> weights;
+        try {
+            weights = this.delegate.inc(key.namespace, key.set, deltas);
+        } catch (IOException e) {
+            logger.warn("failed to flush {} increments in set/namespace '{}'/'{}'", deltas.size(), key.set, key.namespace, e);
+            this.failedFlushCount.incrementAndGet();
+            throw e;
+        }
+        final long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        this.flushCount.incrementAndGet();
+        this.flushedEntryCount.addAndGet(deltas.size());
+        this.totalFlushLatencyMillis.addAndGet(latencyMillis);
+        this.maxFlushLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+        logger.debug("flushed {} increments in set/namespace '{}'/'{}' in {}ms", deltas.size(), key.set, key.namespace, latencyMillis);
+        return weights;
+    }
+
+    private Stripe getStripe(final SetKey key) {
+        return this.stripes[(key.hashCode() & Integer.MAX_VALUE) % stripeCount];
+    }
+
+    // pending increments of sets hashed to the stripe; incrementing takes the read lock and adds to the entry's
+    // adder, so concurrent increments do not block each other; flushing takes the write lock to swap the maps and to
+    // apply the results, but not while writing to the delegate
+    private static class Stripe {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // only one flush of the stripe at a time
+        private final ReentrantLock flushLock = new ReentrantLock();
+        // pending deltas per set and entry
+        private Map<SetKey, Map<String, LongAdder>> pending = new ConcurrentHashMap<>();
+        // weights in the delegate, without pending deltas, of entries incremented since the previous flush
+        private Map<SetKey, Map<String, Long>> weights = new ConcurrentHashMap<>();
+        // weights in the delegate, once written, of entries being flushed
+        private final Map<SetKey, Map<String, Long>> flushing = new ConcurrentHashMap<>();
+        // consecutive failed flushes per set
+        private final Map<SetKey, Integer> failures = new ConcurrentHashMap<>();
+    }
+
+    private static class SetKey {
+        private final String namespace;
+        private final String set;
+
+        SetKey(final String namespace, final String set) {
+            this.namespace = namespace;
+            this.set = set;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof SetKey)) {
+                return false;
+            }
+            final SetKey that = (SetKey) other;
+            return this.namespace.equals(that.namespace) && this.set.equals(that.set);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.namespace.hashCode() + this.set.hashCode();
+        }
+    }
+}
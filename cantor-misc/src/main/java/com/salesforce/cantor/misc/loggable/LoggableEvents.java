@@ -7,6 +7,7 @@
 
 package com.salesforce.cantor.misc.loggable;
 
+import com.salesforce.cantor.EventBatch;
 import com.salesforce.cantor.Events;
 
 import java.io.IOException;
@@ -54,6 +55,68 @@ public class LoggableEvents extends AbstractBaseLoggableNamespaceable<Events> im
         );
     }
 
+    @Override
+    public List<Event> get(final String namespace,
+                           final long startTimestampMillis,
+                           final long endTimestampMillis,
+                           final Map<String, String> metadataQuery,
+                           final Map<String, String> dimensionsQuery,
+                           final boolean includePayloads,
+                           final boolean ascending,
+                           final int limit,
+                           final Set<String> metadataKeys,
+                           final Set<String> dimensionKeys) throws IOException {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return logCall(() -> getDelegate().get(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery, includePayloads, ascending, limit, metadataKeys, dimensionKeys),
+                "get", namespace,
+                startTimestampMillis, endTimestampMillis,
+                nullToEmpty(metadataQuery).keySet(), nullToEmpty(dimensionsQuery).keySet(),
+                includePayloads,
+                ascending,
+                limit,
+                metadataKeys,
+                dimensionKeys
+        );
+    }
+
+    @Override
+    public EventBatch getBatch(final String namespace,
+                               final long startTimestampMillis,
+                               final long endTimestampMillis,
+                               final Map<String, String> metadataQuery,
+                               final Map<String, String> dimensionsQuery,
+                               final boolean includePayloads,
+                               final boolean ascending,
+                               final int limit) throws IOException {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return logCall(() -> getDelegate().getBatch(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery, includePayloads, ascending, limit),
+                "getBatch", namespace,
+                startTimestampMillis, endTimestampMillis,
+                nullToEmpty(metadataQuery).keySet(), nullToEmpty(dimensionsQuery).keySet(),
+                includePayloads,
+                ascending,
+                limit
+        );
+    }
+
+    @Override
+    public EventCursor scan(final String namespace,
+                            final long startTimestampMillis,
+                            final long endTimestampMillis,
+                            final Map<String, String> metadataQuery,
+                            final Map<String, String> dimensionsQuery,
+                            final boolean includePayloads,
+                            final boolean ascending) throws IOException {
+        checkScan(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return logCall(() -> getDelegate().scan(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery, includePayloads, ascending),
+                "scan", namespace,
+                startTimestampMillis, endTimestampMillis,
+                nullToEmpty(metadataQuery).keySet(), nullToEmpty(dimensionsQuery).keySet(),
+                includePayloads,
+                ascending
+        );
+    }
+
     @Override
     public Set<String> metadata(final String namespace,
                                 final String metadataKey,
@@ -76,6 +139,28 @@ public class LoggableEvents extends AbstractBaseLoggableNamespaceable<Events> im
         );
     }
 
+    @Override
+    public Map<String, Long> count(final String namespace,
+                                   final String metadataKey,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery) throws IOException {
+        checkCount(namespace, metadataKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return logCall(() -> getDelegate()
+                .count(namespace,
+                        metadataKey,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery
+                ),
+                "count", namespace,
+                metadataKey, startTimestampMillis, endTimestampMillis,
+                nullToEmpty(metadataQuery).keySet(), nullToEmpty(dimensionsQuery).keySet()
+        );
+    }
+
     @Override
     public List<Event> dimension(final String namespace,
                                  final String dimensionKey,
@@ -98,6 +183,52 @@ public class LoggableEvents extends AbstractBaseLoggableNamespaceable<Events> im
         );
     }
 
+    @Override
+    public Map<Long, Double> aggregate(final String namespace,
+                                       final String dimensionKey,
+                                       final long startTimestampMillis,
+                                       final long endTimestampMillis,
+                                       final long bucketMillis,
+                                       final AggregationFunction function,
+                                       final Map<String, String> metadataQuery,
+                                       final Map<String, String> dimensionsQuery) throws IOException {
+        checkAggregate(namespace, dimensionKey, startTimestampMillis, endTimestampMillis, bucketMillis, function, metadataQuery, dimensionsQuery);
+        return logCall(() -> getDelegate()
+                .aggregate(namespace,
+                        dimensionKey,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        bucketMillis,
+                        function,
+                        metadataQuery,
+                        dimensionsQuery
+                ),
+                "aggregate", namespace,
+                dimensionKey, startTimestampMillis, endTimestampMillis, bucketMillis, function,
+                nullToEmpty(metadataQuery).keySet(), nullToEmpty(dimensionsQuery).keySet()
+        );
+    }
+
+    @Override
+    public int delete(final String namespace,
+                      final long startTimestampMillis,
+                      final long endTimestampMillis,
+                      final Map<String, String> metadataQuery,
+                      final Map<String, String> dimensionsQuery) throws IOException {
+        checkDelete(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        return logCall(() -> getDelegate()
+                .delete(namespace,
+                        startTimestampMillis,
+                        endTimestampMillis,
+                        metadataQuery,
+                        dimensionsQuery
+                ),
+                "delete", namespace,
+                startTimestampMillis, endTimestampMillis,
+                nullToEmpty(metadataQuery).keySet(), nullToEmpty(dimensionsQuery).keySet()
+        );
+    }
+
     @Override
     public void expire(final String namespace, final long endTimestampMillis) throws IOException {
         checkExpire(namespace, endTimestampMillis);
@@ -71,6 +71,21 @@ public class LoggableSets extends AbstractBaseLoggableNamespaceable<Sets> implem
         );
     }
 
+    @Override
+    public Page page(final String namespace,
+                     final String set,
+                     final long min,
+                     final long max,
+                     final int count,
+                     final boolean ascending,
+                     final String continuationToken) throws IOException {
+        checkPage(namespace, set, min, max, count, ascending, continuationToken);
+        return logCall(
+                () -> getDelegate().page(namespace, set, min, max, count, ascending, continuationToken),
+                "page", namespace, set, min, max, count, ascending, continuationToken
+        );
+    }
+
     @Override
     public void delete(final String namespace, final String set, final long min, final long max) throws IOException {
         checkDelete(namespace, set, min, max);
@@ -105,11 +120,12 @@ public class LoggableSets extends AbstractBaseLoggableNamespaceable<Sets> implem
                                    final long max,
                                    final int start,
                                    final int count,
-                                   final boolean ascending) throws IOException {
-        checkUnion(namespace, sets, min, max, start, count, ascending);
+                                   final boolean ascending,
+                                   final WeightAggregation aggregation) throws IOException {
+        checkUnion(namespace, sets, min, max, start, count, ascending, aggregation);
         return logCall(
-                () -> getDelegate().union(namespace, sets, min, max, start, count, ascending),
-                "union", namespace, sets, min, max, start, count
+                () -> getDelegate().union(namespace, sets, min, max, start, count, ascending, aggregation),
+                "union", namespace, sets, min, max, start, count, ascending, aggregation
         );
     }
 
@@ -120,11 +136,28 @@ public class LoggableSets extends AbstractBaseLoggableNamespaceable<Sets> implem
                                        final long max,
                                        final int start,
                                        final int count,
-                                       final boolean ascending) throws IOException {
-        checkIntersect(namespace, sets, min, max, start, count, ascending);
+                                       final boolean ascending,
+                                       final WeightAggregation aggregation) throws IOException {
+        checkIntersect(namespace, sets, min, max, start, count, ascending, aggregation);
+        return logCall(
+                () -> getDelegate().intersect(namespace, sets, min, max, start, count, ascending, aggregation),
+                "intersect", namespace, sets, min, max, start, count, ascending, aggregation
+        );
+    }
+
+    @Override
+    public Map<String, Long> difference(final String namespace,
+                                        final String set,
+                                        final Collection<String> sets,
+                                        final long min,
+                                        final long max,
+                                        final int start,
+                                        final int count,
+                                        final boolean ascending) throws IOException {
+        checkDifference(namespace, set, sets, min, max, start, count, ascending);
         return logCall(
-                () -> getDelegate().intersect(namespace, sets, min, max, start, count, ascending),
-                "intersect", namespace, sets, min, max, start, count, ascending
+                () -> getDelegate().difference(namespace, set, sets, min, max, start, count, ascending),
+                "difference", namespace, set, sets, min, max, start, count, ascending
         );
     }
 
@@ -170,6 +203,15 @@ public class LoggableSets extends AbstractBaseLoggableNamespaceable<Sets> implem
         );
     }
 
+    @Override
+    public Map<String, Long> weights(final String namespace, final String set, final Collection<String> entries) throws IOException {
+        checkWeights(namespace, set, entries);
+        return logCall(
+                () -> getDelegate().weights(namespace, set, entries),
+                "weights", namespace, set, entries
+        );
+    }
+
     @Override
     public long inc(final String namespace, final String set, final String entry, final long count) throws IOException {
         checkInc(namespace, set, entry, count);
@@ -178,4 +220,13 @@ public class LoggableSets extends AbstractBaseLoggableNamespaceable<Sets> implem
                 "inc", namespace, set, entry, count
         );
     }
+
+    @Override
+    public Map<String, Long> inc(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        checkInc(namespace, set, entries);
+        return logCall(
+                () -> getDelegate().inc(namespace, set, entries),
+                "inc", namespace, set, entries
+        );
+    }
 }
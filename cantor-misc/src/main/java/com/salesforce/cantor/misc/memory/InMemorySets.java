@@ -0,0 +1,453 @@
+/*
+ * Copyright (c) 2020, Salesforce.com, Inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.cantor.misc.memory;
+
+import com.salesforce.cantor.Sets;
+import com.salesforce.cantor.common.SetsUtils;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static com.salesforce.cantor.common.SetsPreconditions.*;
+
+/**
+ * Sets implementation that keeps all sets on the heap; nothing is persisted.
+ * <p>
+ * Each set is a concurrent skip list of entries sorted by weight and then by entry, which serves range queries, plus
+ * a hash index of entry to weight. Updates to an entry are serialized on the entry's slot in the index and replace
+ * its node in the skip list; reads never block, and only return skip list nodes matching the index, so an entry being
+ * updated is never returned twice. Union, intersect and difference merge the ranges of each set with
+ * {@link SetsUtils}, without any sql.
+ */
+public class InMemorySets implements Sets {
+    private final ConcurrentMap<String, ConcurrentMap<String, SortedSet>> namespaces = new ConcurrentHashMap<>();
+
+    @Override
+    public void create(final String namespace) throws IOException {
+        checkCreate(namespace);
+        this.namespaces.putIfAbsent(namespace, new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public void drop(final String namespace) throws IOException {
+        checkDrop(namespace);
+        this.namespaces.remove(namespace);
+    }
+
+    @Override
+    public void add(final String namespace, final String set, final String entry, final long weight) throws IOException {
+        checkAdd(namespace, set, entry, weight);
+        getOrCreateSet(namespace, set).put(entry, weight);
+    }
+
+    @Override
+    public void add(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        checkAdd(namespace, set, entries);
+        final SortedSet sortedSet = getOrCreateSet(namespace, set);
+        for (final Map.Entry<String, Long> entry : entries.entrySet()) {
+            sortedSet.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public Collection<String> entries(final String namespace,
+                                      final String set,
+                                      final long min,
+                                      final long max,
+                                      final int start,
+                                      final int count,
+                                      final boolean ascending) throws IOException {
+        checkEntries(namespace, set, min, max, start, count, ascending);
+        return doGet(namespace, set, min, max, start, count, ascending).keySet();
+    }
+
+    @Override
+    public Map<String, Long> get(final String namespace,
+                                 final String set,
+                                 final long min,
+                                 final long max,
+                                 final int start,
+                                 final int count,
+                                 final boolean ascending) throws IOException {
+        checkGet(namespace, set, min, max, start, count, ascending);
+        return doGet(namespace, set, min, max, start, count, ascending);
+    }
+
+    @Override
+    public Page page(final String namespace,
+                     final String set,
+                     final long min,
+                     final long max,
+                     final int count,
+                     final boolean ascending,
+                     final String continuationToken) throws IOException {
+        checkPage(namespace, set, min, max, count, ascending, continuationToken);
+        final Map.Entry<String, Long> after = continuationToken != null
+                ? SetsUtils.decodeContinuationToken(continuationToken)
+                : null;
+        final Map<String, Long> results = new LinkedHashMap<>();
+        final SortedSet sortedSet = getSet(namespace, set);
+        if (sortedSet == null) {
+            return new Page(results, null);
+        }
+        final Node afterNode = after != null ? new Node(after.getValue(), after.getKey()) : null;
+        Node last = null;
+        for (final Node node : sortedSet.range(min, max, ascending, afterNode).keySet()) {
+            if (!sortedSet.contains(node)) {
+                continue;
+            }
+            if (results.size() == count) {
+                return new Page(results, SetsUtils.encodeContinuationToken(last.weight, last.entry));
+            }
+            results.put(node.entry, node.weight);
+            last = node;
+        }
+        return new Page(results, null);
+    }
+
+    @Override
+    public void delete(final String namespace, final String set, final long min, final long max) throws IOException {
+        checkDelete(namespace, set, min, max);
+        final SortedSet sortedSet = getSet(namespace, set);
+        if (sortedSet == null) {
+            return;
+        }
+        for (final Node node : sortedSet.range(min, max, true).keySet()) {
+            sortedSet.remove(node.entry, node.weight);
+        }
+    }
+
+    @Override
+    public boolean delete(final String namespace, final String set, final String entry) throws IOException {
+        checkDelete(namespace, set, entry);
+        final SortedSet sortedSet = getSet(namespace, set);
+        return sortedSet != null && sortedSet.remove(entry);
+    }
+
+    @Override
+    public void delete(final String namespace, final String set, final Collection<String> entries) throws IOException {
+        checkDelete(namespace, set, entries);
+        final SortedSet sortedSet = getSet(namespace, set);
+        if (sortedSet == null) {
+            return;
+        }
+        for (final String entry : entries) {
+            sortedSet.remove(entry);
+        }
+    }
+
+    @Override
+    public Map<String, Long> union(final String namespace,
+                                   final Collection<String> sets,
+                                   final long min,
+                                   final long max,
+                                   final int start,
+                                   final int count,
+                                   final boolean ascending,
+                                   final WeightAggregation aggregation) throws IOException {
+        checkUnion(namespace, sets, min, max, start, count, ascending, aggregation);
+        return SetsUtils.union(getEntryCursors(namespace, sets, min, max), aggregation, start, count, ascending);
+    }
+
+    @Override
+    public Map<String, Long> intersect(final String namespace,
+                                       final Collection<String> sets,
+                                       final long min,
+                                       final long max,
+                                       final int start,
+                                       final int count,
+                                       final boolean ascending,
+                                       final WeightAggregation aggregation) throws IOException {
+        checkIntersect(namespace, sets, min, max, start, count, ascending, aggregation);
+        return SetsUtils.intersect(getEntryCursors(namespace, sets, min, max), aggregation, start, count, ascending);
+    }
+
+    @Override
+    public Map<String, Long> difference(final String namespace,
+                                        final String set,
+                                        final Collection<String> sets,
+                                        final long min,
+                                        final long max,
+                                        final int start,
+                                        final int count,
+                                        final boolean ascending) throws IOException {
+        checkDifference(namespace, set, sets, min, max, start, count, ascending);
+        return SetsUtils.difference(getEntryCursor(namespace, set, min, max),
+                getEntryCursors(namespace, sets, min, max),
+                start, count, ascending
+        );
+    }
+
+    @Override
+    public Map<String, Long> pop(final String namespace,
+                                 final String set,
+                                 final long min,
+                                 final long max,
+                                 final int start,
+                                 final int count,
+                                 final boolean ascending) throws IOException {
+        checkPop(namespace, set, min, max, start, count, ascending);
+        final Map<String, Long> results = new LinkedHashMap<>();
+        final SortedSet sortedSet = getSet(namespace, set);
+        if (sortedSet == null) {
+            return results;
+        }
+        int skipped = 0;
+        for (final Node node : sortedSet.range(min, max, ascending).keySet()) {
+            if (count >= 0 && results.size() >= count) {
+                break;
+            }
+            if (!sortedSet.contains(node)) {
+                continue;
+            }
+            if (skipped < start) {
+                skipped++;
+                continue;
+            }
+            // only one caller can remove an entry with its current weight
+            if (sortedSet.remove(node.entry, node.weight)) {
+                results.put(node.entry, node.weight);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Collection<String> sets(final String namespace) throws IOException {
+        checkSets(namespace);
+        final List<String> results = new ArrayList<>();
+        for (final Map.Entry<String, SortedSet> entry : getNamespace(namespace).entrySet()) {
+            if (!entry.getValue().weights.isEmpty()) {
+                results.add(entry.getKey());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public int size(final String namespace, final String set) throws IOException {
+        checkSize(namespace, set);
+        final SortedSet sortedSet = getSet(namespace, set);
+        return sortedSet != null ? sortedSet.weights.size() : 0;
+    }
+
+    @Override
+    public Long weight(final String namespace, final String set, final String entry) throws IOException {
+        checkWeight(namespace, set, entry);
+        final SortedSet sortedSet = getSet(namespace, set);
+        return sortedSet != null ? sortedSet.weights.get(entry) : null;
+    }
+
+    @Override
+    public long inc(final String namespace, final String set, final String entry, final long count) throws IOException {
+        checkInc(namespace, set, entry, count);
+        return getOrCreateSet(namespace, set).inc(entry, count);
+    }
+
+    @Override
+    public Map<String, Long> inc(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        checkInc(namespace, set, entries);
+        final SortedSet sortedSet = getOrCreateSet(namespace, set);
+        final Map<String, Long> results = new HashMap<>();
+        for (final Map.Entry<String, Long> entry : entries.entrySet()) {
+            results.put(entry.getKey(), sortedSet.inc(entry.getKey(), entry.getValue()));
+        }
+        return results;
+    }
+
+    private Map<String, Long> doGet(final String namespace,
+                                    final String set,
+                                    final long min,
+                                    final long max,
+                                    final int start,
+                                    final int count,
+                                    final boolean ascending) throws IOException {
+        final Map<String, Long> results = new LinkedHashMap<>();
+        final SortedSet sortedSet = getSet(namespace, set);
+        if (sortedSet == null) {
+            return results;
+        }
+        int skipped = 0;
+        for (final Node node : sortedSet.range(min, max, ascending).keySet()) {
+            if (count >= 0 && results.size() >= count) {
+                break;
+            }
+            if (!sortedSet.contains(node)) {
+                continue;
+            }
+            if (skipped < start) {
+                skipped++;
+                continue;
+            }
+            results.put(node.entry, node.weight);
+        }
+        return results;
+    }
+
+    private List<SetsUtils.EntryCursor> getEntryCursors(final String namespace,
+                                                        final Collection<String> sets,
+                                                        final long min,
+                                                        final long max) throws IOException {
+        final List<SetsUtils.EntryCursor> cursors = new ArrayList<>(sets.size());
+        for (final String set : new LinkedHashSet<>(sets)) {
+            cursors.add(getEntryCursor(namespace, set, min, max));
+        }
+        return cursors;
+    }
+
+    private SetsUtils.EntryCursor getEntryCursor(final String namespace,
+                                                 final String set,
+                                                 final long min,
+                                                 final long max) throws IOException {
+        final SortedSet sortedSet = getSet(namespace, set);
+        if (sortedSet == null) {
+            return SetsUtils.cursorOf(Collections.emptyMap());
+        }
+        final Map<String, Long> entries = new HashMap<>();
+        for (final Node node : sortedSet.range(min, max, true).keySet()) {
+            if (sortedSet.contains(node)) {
+                entries.put(node.entry, node.weight);
+            }
+        }
+        return SetsUtils.cursorOf(entries);
+    }
+
+    private ConcurrentMap<String, SortedSet> getNamespace(final String namespace) throws IOException {
+        final ConcurrentMap<String, SortedSet> sets = this.namespaces.get(namespace);
+        if (sets == null) {
+            throw new IOException("namespace not found: " + namespace);
+        }
+        return sets;
+    }
+
+    private SortedSet getSet(final String namespace, final String set) throws IOException {
+        return getNamespace(namespace).get(set);
+    }
+
+    private SortedSet getOrCreateSet(final String namespace, final String set) throws IOException {
+        return getNamespace(namespace).computeIfAbsent(set, k -> new SortedSet());
+    }
+
+    private static class SortedSet {
+        // entries sorted by weight and entry; the value is unused
+        private final ConcurrentSkipListMap<Node, Boolean> nodes = new ConcurrentSkipListMap<>(Node.comparator);
+        // entry to weight; this is the source of truth, nodes not matching it are being replaced
+        private final ConcurrentHashMap<String, Long> weights = new ConcurrentHashMap<>();
+
+        void put(final String entry, final long weight) {
+            this.weights.compute(entry, (k, previous) -> replace(entry, previous, weight));
+        }
+
+        long inc(final String entry, final long count) {
+            return this.weights.compute(entry, (k, previous) -> replace(entry, previous, (previous != null ? previous : 0L) + count));
+        }
+
+        boolean remove(final String entry) {
+            final boolean[] removed = {false};
+            this.weights.computeIfPresent(entry, (k, previous) -> {
+                this.nodes.remove(new Node(previous, entry));
+                removed[0] = true;
+                return null;
+            });
+            return removed[0];
+        }
+
+        // removes the entry only if it still has the given weight
+        boolean remove(final String entry, final long weight) {
+            final boolean[] removed = {false};
+            this.weights.computeIfPresent(entry, (k, previous) -> {
+                if (previous != weight) {
+                    return previous;
+                }
+                this.nodes.remove(new Node(previous, entry));
+                removed[0] = true;
+                return null;
+            });
+            return removed[0];
+        }
+
+        boolean contains(final Node node) {
+            final Long weight = this.weights.get(node.entry);
+            return weight != null && weight == node.weight;
+        }
+
+        ConcurrentNavigableMap<Node, Boolean> range(final long min, final long max, final boolean ascending) {
+            final ConcurrentNavigableMap<Node, Boolean> range = this.nodes.subMap(Node.lowest(min), true, Node.highest(max), true);
+            return ascending ? range : range.descendingMap();
+        }
+
+        // like range, but only nodes strictly after the given node in the iteration order
+        ConcurrentNavigableMap<Node, Boolean> range(final long min, final long max, final boolean ascending, final Node after) {
+            if (after == null) {
+                return range(min, max, ascending);
+            }
+            final Node lowest = Node.lowest(min);
+            final Node highest = Node.highest(max);
+            if (ascending) {
+                if (Node.comparator.compare(after, lowest) < 0) {
+                    return range(min, max, true);
+                }
+                if (Node.comparator.compare(after, highest) >= 0) {
+                    return new ConcurrentSkipListMap<>(Node.comparator);
+                }
+                return this.nodes.subMap(after, false, highest, true);
+            }
+            if (Node.comparator.compare(after, highest) > 0) {
+                return range(min, max, false);
+            }
+            if (Node.comparator.compare(after, lowest) <= 0) {
+                return new ConcurrentSkipListMap<>(Node.comparator);
+            }
+            return this.nodes.subMap(lowest, true, after, false).descendingMap();
+        }
+
+        // called holding the entry's slot in the weights map; the new node is added before the previous one is
+        // removed, so readers never miss the entry
+        private Long replace(final String entry, final Long previous, final long weight) {
+            this.nodes.put(new Node(weight, entry), Boolean.TRUE);
+            if (previous != null && previous != weight) {
+                this.nodes.remove(new Node(previous, entry));
+            }
+            return weight;
+        }
+    }
+
+    private static class Node {
+        // a null entry sorts after all entries with the same weight, to bound ranges
+        private static final Comparator<Node> comparator = (node1, node2) -> {
+            final int compare = Long.compare(node1.weight, node2.weight);
+            if (compare != 0) {
+                return compare;
+            }
+            if (node1.entry == null || node2.entry == null) {
+                return node1.entry == null ? (node2.entry == null ? 0 : 1) : -1;
+            }
+            return node1.entry.compareTo(node2.entry);
+        };
+
+        private final long weight;
+        private final String entry;
+
+        Node(final long weight, final String entry) {
+            this.weight = weight;
+            this.entry = entry;
+        }
+
+        static Node lowest(final long weight) {
+            return new Node(weight, "");
+        }
+
+        static Node highest(final long weight) {
+            return new Node(weight, null);
+        }
+    }
+}
@@ -57,6 +57,18 @@ public class ReadWriteSets extends AbstractBaseReadWriteNamespaceable<Sets> impl
         return getReadable().get(namespace, set, min, max, start, count, ascending);
     }
 
+    @Override
+    public Page page(final String namespace,
+                     final String set,
+                     final long min,
+                     final long max,
+                     final int count,
+                     final boolean ascending,
+                     final String continuationToken) throws IOException {
+        checkPage(namespace, set, min, max, count, ascending, continuationToken);
+        return getReadable().page(namespace, set, min, max, count, ascending, continuationToken);
+    }
+
     @Override
     public void delete(final String namespace, final String set, final long min, final long max) throws IOException {
         checkDelete(namespace, set, min, max);
@@ -82,9 +94,10 @@ public class ReadWriteSets extends AbstractBaseReadWriteNamespaceable<Sets> impl
                                    final long max,
                                    final int start,
                                    final int count,
-                                   final boolean ascending) throws IOException {
-        checkUnion(namespace, sets, min, max, start, count, ascending);
-        return getReadable().union(namespace, sets, min, max, start, count, ascending);
+                                   final boolean ascending,
+                                   final WeightAggregation aggregation) throws IOException {
+        checkUnion(namespace, sets, min, max, start, count, ascending, aggregation);
+        return getReadable().union(namespace, sets, min, max, start, count, ascending, aggregation);
     }
 
     @Override
@@ -94,9 +107,23 @@ public class ReadWriteSets extends AbstractBaseReadWriteNamespaceable<Sets> impl
                                        final long max,
                                        final int start,
                                        final int count,
-                                       final boolean ascending) throws IOException {
-        checkIntersect(namespace, sets, min, max, start, count, ascending);
-        return getReadable().intersect(namespace, sets, min, max, start, count, ascending);
+                                       final boolean ascending,
+                                       final WeightAggregation aggregation) throws IOException {
+        checkIntersect(namespace, sets, min, max, start, count, ascending, aggregation);
+        return getReadable().intersect(namespace, sets, min, max, start, count, ascending, aggregation);
+    }
+
+    @Override
+    public Map<String, Long> difference(final String namespace,
+                                        final String set,
+                                        final Collection<String> sets,
+                                        final long min,
+                                        final long max,
+                                        final int start,
+                                        final int count,
+                                        final boolean ascending) throws IOException {
+        checkDifference(namespace, set, sets, min, max, start, count, ascending);
+        return getReadable().difference(namespace, set, sets, min, max, start, count, ascending);
     }
 
     @Override
@@ -129,9 +156,21 @@ public class ReadWriteSets extends AbstractBaseReadWriteNamespaceable<Sets> impl
         return getReadable().weight(namespace, set, entry);
     }
 
+    @Override
+    public Map<String, Long> weights(final String namespace, final String set, final Collection<String> entries) throws IOException {
+        checkWeights(namespace, set, entries);
+        return getReadable().weights(namespace, set, entries);
+    }
+
     @Override
     public long inc(final String namespace, final String set, final String entry, final long count) throws IOException {
         checkInc(namespace, set, entry, count);
         return getWritable().inc(namespace, set, entry, count);
     }
+
+    @Override
+    public Map<String, Long> inc(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        checkInc(namespace, set, entries);
+        return getWritable().inc(namespace, set, entries);
+    }
 }
@@ -68,6 +68,18 @@ public class ShardedSets extends AbstractBaseShardedNamespaceable<Sets> implemen
         return getShard(namespace).get(namespace, set, min, max, start, count, ascending);
     }
 
+    @Override
+    public Page page(final String namespace,
+                     final String set,
+                     final long min,
+                     final long max,
+                     final int count,
+                     final boolean ascending,
+                     final String continuationToken) throws IOException {
+        checkPage(namespace, set, min, max, count, ascending, continuationToken);
+        return getShard(namespace).page(namespace, set, min, max, count, ascending, continuationToken);
+    }
+
     @Override
     public void delete(final String namespace, final String set, final long min, final long max) throws IOException {
         checkDelete(namespace, set, min, max);
@@ -93,9 +105,10 @@ public class ShardedSets extends AbstractBaseShardedNamespaceable<Sets> implemen
                                    final long max,
                                    final int start,
                                    final int count,
-                                   final boolean ascending) throws IOException {
-        checkUnion(namespace, sets, min, max, start, count, ascending);
-        return getShard(namespace).union(namespace, sets, min, max, start, count, ascending);
+                                   final boolean ascending,
+                                   final WeightAggregation aggregation) throws IOException {
+        checkUnion(namespace, sets, min, max, start, count, ascending, aggregation);
+        return getShard(namespace).union(namespace, sets, min, max, start, count, ascending, aggregation);
     }
 
     @Override
@@ -105,9 +118,23 @@ public class ShardedSets extends AbstractBaseShardedNamespaceable<Sets> implemen
                                        final long max,
                                        final int start,
                                        final int count,
-                                       final boolean ascending) throws IOException {
-        checkIntersect(namespace, sets, min, max, start, count, ascending);
-        return getShard(namespace).intersect(namespace, sets, min, max, start, count, ascending);
+                                       final boolean ascending,
+                                       final WeightAggregation aggregation) throws IOException {
+        checkIntersect(namespace, sets, min, max, start, count, ascending, aggregation);
+        return getShard(namespace).intersect(namespace, sets, min, max, start, count, ascending, aggregation);
+    }
+
+    @Override
+    public Map<String, Long> difference(final String namespace,
+                                        final String set,
+                                        final Collection<String> sets,
+                                        final long min,
+                                        final long max,
+                                        final int start,
+                                        final int count,
+                                        final boolean ascending) throws IOException {
+        checkDifference(namespace, set, sets, min, max, start, count, ascending);
+        return getShard(namespace).difference(namespace, set, sets, min, max, start, count, ascending);
     }
 
     @Override
@@ -140,9 +167,21 @@ public class ShardedSets extends AbstractBaseShardedNamespaceable<Sets> implemen
         return getShard(namespace).weight(namespace, set, entry);
     }
 
+    @Override
+    public Map<String, Long> weights(final String namespace, final String set, final Collection<String> entries) throws IOException {
+        checkWeights(namespace, set, entries);
+        return getShard(namespace).weights(namespace, set, entries);
+    }
+
     @Override
     public long inc(final String namespace, final String set, final String entry, final long count) throws IOException {
         checkInc(namespace, set, entry, count);
         return getShard(namespace).inc(namespace, set, entry, count);
     }
+
+    @Override
+    public Map<String, Long> inc(final String namespace, final String set, final Map<String, Long> entries) throws IOException {
+        checkInc(namespace, set, entries);
+        return getShard(namespace).inc(namespace, set, entries);
+    }
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2020, Salesforce.com, Inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.cantor.misc.async;
+
+import com.salesforce.cantor.Cantor;
+import com.salesforce.cantor.Events;
+import com.salesforce.cantor.Objects;
+import com.salesforce.cantor.Sets;
+import com.salesforce.cantor.common.AbstractBaseEventsTest;
+import com.salesforce.cantor.h2.CantorOnH2;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+public class WriteBehindEventsTest extends AbstractBaseEventsTest {
+    private static final String path = "/tmp/cantor-write-behind-test/" + UUID.randomUUID().toString();
+    private static Cantor cantor;
+
+    @Override
+    public Cantor getCantor() throws IOException {
+        synchronized (WriteBehindEventsTest.class) {
+            if (cantor == null) {
+                final Cantor delegate = new CantorOnH2(path);
+                final Events events = new WriteBehindEvents(delegate.events());
+                cantor = new Cantor() {
+                    @Override
+                    public Objects objects() {
+                        return delegate.objects();
+                    }
+
+                    @Override
+                    public Sets sets() {
+                        return delegate.sets();
+                    }
+
+                    @Override
+                    public Events events() {
+                        return events;
+                    }
+                };
+            }
+            return cantor;
+        }
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        final Events delegate = new CantorOnH2(path).events();
+        final String namespace = UUID.randomUUID().toString();
+        final AtomicLong flushed = new AtomicLong();
+        final WriteBehindEvents events = new WriteBehindEvents(delegate, 1024, 100, TimeUnit.HOURS.toMillis(1),
+                WriteBehindEvents.BackPressure.BLOCK, new WriteBehindEvents.Listener() {
+                    @Override
+                    public void afterFlush(final String namespace, final Collection<Events.Event> batch, final long latencyMillis) {
+                        flushed.addAndGet(batch.size());
+                    }
+                });
+        events.create(namespace);
+        try {
+            final long now = System.currentTimeMillis();
+            for (int i = 0; i < 1000; ++i) {
+                events.store(namespace, now - i, Collections.singletonMap("index", String.valueOf(i)), null);
+            }
+            events.flush();
+            assertEquals(events.getBufferedEventCount(), 0);
+            assertEquals(events.getFlushedEventCount(), 1000);
+            assertEquals(flushed.get(), 1000);
+            // single event stores are written in batches of up to 100 events
+            assertTrue(events.getFlushCount() >= 10 && events.getFlushCount() < 1000);
+            assertEquals(delegate.get(namespace, now - 1000, now).size(), 1000);
+        } finally {
+            events.close();
+            delegate.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testBackPressure() throws Exception {
+        final Events events = new CantorOnH2(path).events();
+        // delegate whose store waits until released, so the buffer cannot be drained
+        final CountDownLatch release = new CountDownLatch(1);
+        final Events delegate = (Events) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Events.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("store")) {
+                        release.await();
+                    }
+                    try {
+                        return method.invoke(events, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        final String namespace = UUID.randomUUID().toString();
+        // counts events handed to the listener before buffering, which must exclude dropped and rejected events
+        final AtomicLong droppingAccepted = new AtomicLong();
+        final AtomicLong failingAccepted = new AtomicLong();
+        // batches are never due on their own, only a full buffer is flushed
+        final WriteBehindEvents dropping = new WriteBehindEvents(delegate, 16, 1024, TimeUnit.HOURS.toMillis(1),
+                WriteBehindEvents.BackPressure.DROP, new WriteBehindEvents.Listener() {
+                    @Override
+                    public void beforeBuffering(final String namespace, final Collection<Events.Event> batch) {
+                        droppingAccepted.addAndGet(batch.size());
+                    }
+                });
+        final WriteBehindEvents failing = new WriteBehindEvents(delegate, 16, 1024, TimeUnit.HOURS.toMillis(1),
+                WriteBehindEvents.BackPressure.FAIL, new WriteBehindEvents.Listener() {
+                    @Override
+                    public void beforeBuffering(final String namespace, final Collection<Events.Event> batch) {
+                        failingAccepted.addAndGet(batch.size());
+                    }
+                });
+        dropping.create(namespace);
+        failing.create(namespace);
+        try {
+            final long now = System.currentTimeMillis();
+            for (final WriteBehindEvents writeBehind : Arrays.asList(dropping, failing)) {
+                // fill the buffer once and wait for the flusher to drain it and get stuck storing it
+                for (int i = 0; i < 16; ++i) {
+                    writeBehind.store(namespace, now - i, null, null);
+                }
+                while (writeBehind.getBufferedEventCount() > 0) {
+                    Thread.sleep(10);
+                }
+                for (int i = 0; i < 12; ++i) {
+                    writeBehind.store(namespace, now - i, null, null);
+                }
+            }
+
+            // a batch that does not fit is dropped or rejected as a whole
+            final List<Events.Event> batch = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                batch.add(new Events.Event(now - i, null, null));
+            }
+            dropping.store(namespace, batch);
+            assertEquals(dropping.getDroppedEventCount(), 8);
+            assertEquals(dropping.getBufferedEventCount(), 12);
+            assertThrows(IOException.class, () -> failing.store(namespace, batch));
+            assertEquals(failing.getBufferedEventCount(), 12);
+
+            // a batch that fits is still buffered
+            dropping.store(namespace, batch.subList(0, 4));
+            failing.store(namespace, batch.subList(0, 4));
+            dropping.store(namespace, now, null, null);
+            assertEquals(dropping.getDroppedEventCount(), 9);
+            assertThrows(IOException.class, () -> failing.store(namespace, now, null, null));
+            assertEquals(droppingAccepted.get(), 32);
+            assertEquals(failingAccepted.get(), 32);
+
+            release.countDown();
+            dropping.flush();
+            failing.flush();
+            assertEquals(events.get(namespace, now - 100, now).size(), 64);
+        } finally {
+            release.countDown();
+            dropping.close();
+            failing.close();
+            events.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testBeforeBufferingFailure() throws Exception {
+        final Events delegate = new CantorOnH2(path).events();
+        final String namespace = UUID.randomUUID().toString();
+        final WriteBehindEvents events = new WriteBehindEvents(delegate, 4, 1024, TimeUnit.HOURS.toMillis(1),
+                WriteBehindEvents.BackPressure.FAIL, new WriteBehindEvents.Listener() {
+                    @Override
+                    public void beforeBuffering(final String namespace, final Collection<Events.Event> batch) throws IOException {
+                        if (batch.iterator().next().getMetadata().containsKey("reject")) {
+                            throw new IOException("rejected by listener");
+                        }
+                    }
+                });
+        events.create(namespace);
+        try {
+            final long now = System.currentTimeMillis();
+            for (int i = 0; i < 4; ++i) {
+                assertThrows(IOException.class, () -> events.store(namespace, now, Collections.singletonMap("reject", "true"), null));
+            }
+            // room reserved for rejected events is released
+            assertEquals(events.getBufferedEventCount(), 0);
+            for (int i = 0; i < 4; ++i) {
+                events.store(namespace, now - i, null, null);
+            }
+            events.flush();
+            assertEquals(delegate.get(namespace, now - 100, now).size(), 4);
+        } finally {
+            events.close();
+            delegate.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testFlushFailures() throws Exception {
+        final Events events = new CantorOnH2(path).events();
+        // delegate whose stores fail as many times as told to
+        final AtomicLong failuresLeft = new AtomicLong();
+        final AtomicLong storeCalls = new AtomicLong();
+        final Events delegate = (Events) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Events.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("store")) {
+                        storeCalls.incrementAndGet();
+                        if (failuresLeft.getAndDecrement() > 0) {
+                            throw new IOException("store failed");
+                        }
+                    }
+                    try {
+                        return method.invoke(events, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        final String namespace = UUID.randomUUID().toString();
+        final List<Collection<Events.Event>> failedBatches = new ArrayList<>();
+        final WriteBehindEvents writeBehind = new WriteBehindEvents(delegate, 1024, 1024, TimeUnit.HOURS.toMillis(1),
+                WriteBehindEvents.BackPressure.BLOCK, new WriteBehindEvents.Listener() {
+                    @Override
+                    public void onFlushFailure(final String namespace, final Collection<Events.Event> batch, final IOException exception) {
+                        failedBatches.add(batch);
+                    }
+                });
+        writeBehind.create(namespace);
+        try {
+            final long now = System.currentTimeMillis();
+
+            // a transient failure is retried and the batch is stored
+            for (int i = 0; i < 10; ++i) {
+                writeBehind.store(namespace, now - i, null, null);
+            }
+            storeCalls.set(0);
+            failuresLeft.set(2);
+            writeBehind.flush();
+            assertEquals(storeCalls.get(), 3);
+            assertEquals(writeBehind.getFlushRetryCount(), 2);
+            assertEquals(writeBehind.getFailedEventCount(), 0);
+            assertTrue(failedBatches.isEmpty());
+            assertEquals(events.get(namespace, now - 100, now).size(), 10);
+
+            // a persistent failure is reported once the attempts run out
+            for (int i = 0; i < 5; ++i) {
+                writeBehind.store(namespace, now - 50 - i, null, null);
+            }
+            storeCalls.set(0);
+            failuresLeft.set(Long.MAX_VALUE);
+            assertThrows(IOException.class, writeBehind::flush);
+            assertEquals(storeCalls.get(), 3);
+            assertEquals(writeBehind.getFailedEventCount(), 5);
+            assertEquals(failedBatches.size(), 1);
+            assertEquals(failedBatches.get(0).size(), 5);
+            assertEquals(writeBehind.getBufferedEventCount(), 0);
+            assertEquals(events.get(namespace, now - 100, now).size(), 10);
+        } finally {
+            failuresLeft.set(0);
+            writeBehind.close();
+            events.drop(namespace);
+        }
+    }
+}
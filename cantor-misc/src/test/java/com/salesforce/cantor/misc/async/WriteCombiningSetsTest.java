@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2020, Salesforce.com, Inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.cantor.misc.async;
+
+import com.salesforce.cantor.Cantor;
+import com.salesforce.cantor.Events;
+import com.salesforce.cantor.Objects;
+import com.salesforce.cantor.Sets;
+import com.salesforce.cantor.common.AbstractBaseSetsTest;
+import com.salesforce.cantor.h2.CantorOnH2;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class WriteCombiningSetsTest extends AbstractBaseSetsTest {
+    private static final String path = "/tmp/cantor-write-combining-test/" + UUID.randomUUID().toString();
+    private static Cantor cantor;
+
+    @Override
+    public Cantor getCantor() throws IOException {
+        synchronized (WriteCombiningSetsTest.class) {
+            if (cantor == null) {
+                final Cantor delegate = new CantorOnH2(path);
+                final Sets sets = new WriteCombiningSets(delegate.sets());
+                cantor = new Cantor() {
+                    @Override
+                    public Objects objects() {
+                        return delegate.objects();
+                    }
+
+                    @Override
+                    public Sets sets() {
+                        return sets;
+                    }
+
+                    @Override
+                    public Events events() {
+                        return delegate.events();
+                    }
+                };
+            }
+            return cantor;
+        }
+    }
+
+    @Test
+    public void testCombining() throws Exception {
+        final Sets delegate = new CantorOnH2(path).sets();
+        final String namespace = UUID.randomUUID().toString();
+        final String set = UUID.randomUUID().toString();
+        // flushes are never due on their own
+        final WriteCombiningSets sets = new WriteCombiningSets(delegate, 1024, TimeUnit.HOURS.toMillis(1), true);
+        sets.create(namespace);
+        try {
+            final int threads = 8;
+            final int increments = 1000;
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < threads; ++i) {
+                    futures.add(executor.submit(() -> {
+                        for (int j = 0; j < increments; ++j) {
+                            sets.inc(namespace, set, "entry-" + j % 4, 1);
+                        }
+                        return null;
+                    }));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            // increments are pending and not in the delegate yet, but visible through this instance
+            assertEquals(sets.getIncrementCount(), threads * increments);
+            assertEquals(sets.getPendingEntryCount(), 4);
+            assertNull(delegate.weight(namespace, set, "entry-0"));
+            assertEquals(sets.weight(namespace, set, "entry-0"), Long.valueOf(threads * increments / 4));
+            assertEquals(sets.inc(namespace, set, "entry-0", 0), threads * increments / 4);
+
+            sets.flush();
+            assertEquals(sets.getPendingEntryCount(), 0);
+            assertEquals(sets.getFlushCount(), 1);
+            assertEquals(sets.getFlushedEntryCount(), 4);
+            for (int i = 0; i < 4; ++i) {
+                assertEquals(delegate.weight(namespace, set, "entry-" + i), Long.valueOf(threads * increments / 4));
+            }
+
+            // other calls see pending increments, and overwrites are not undone by them
+            sets.inc(namespace, set, "entry-0", 5);
+            assertEquals(sets.get(namespace, set).get("entry-0"), Long.valueOf(threads * increments / 4 + 5));
+            sets.inc(namespace, set, "entry-1", 5);
+            sets.add(namespace, set, "entry-1", 100);
+            assertEquals(sets.inc(namespace, set, "entry-1", 1), 101);
+            sets.flush();
+            assertEquals(delegate.weight(namespace, set, "entry-1"), Long.valueOf(101));
+        } finally {
+            sets.close();
+            delegate.drop(namespace);
+        }
+        assertThrows(IllegalStateException.class, () -> sets.inc(namespace, set, "entry-0", 1));
+    }
+
+    @Test
+    public void testIncrementsDuringFlush() throws Exception {
+        final Sets h2Sets = new CantorOnH2(path).sets();
+        // delegate whose batched inc waits until released, and which counts weight reads
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger weightCalls = new AtomicInteger();
+        final AtomicInteger weightsCalls = new AtomicInteger();
+        final Sets delegate = (Sets) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Sets.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("inc")) {
+                        entered.countDown();
+                        release.await();
+                    } else if (method.getName().equals("weight")) {
+                        weightCalls.incrementAndGet();
+                    } else if (method.getName().equals("weights")) {
+                        weightsCalls.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(h2Sets, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        final String namespace = UUID.randomUUID().toString();
+        final String set = "set";
+        final WriteCombiningSets sets = new WriteCombiningSets(delegate, 1024, TimeUnit.HOURS.toMillis(1), false);
+        sets.create(namespace);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // weights of new entries are read with one call
+            final Map<String, Long> entries = new HashMap<>();
+            for (int i = 0; i < 10; ++i) {
+                entries.put("entry-" + i, 1L);
+            }
+            sets.inc(namespace, set, entries);
+            assertEquals(weightsCalls.get(), 1);
+            assertEquals(weightCalls.get(), 0);
+
+            // increments on entries being flushed are not blocked by the delegate, and start from their flushed weights
+            final Future<?> flush = executor.submit(() -> { sets.flush(); return null; });
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            assertEquals(sets.inc(namespace, set, "entry-0", 1), 2);
+            assertEquals(weightsCalls.get(), 1);
+            release.countDown();
+            flush.get();
+            sets.flush();
+            assertEquals(h2Sets.weight(namespace, set, "entry-0"), Long.valueOf(2));
+            assertEquals(h2Sets.weight(namespace, set, "entry-9"), Long.valueOf(1));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            sets.close();
+            h2Sets.drop(namespace);
+        }
+    }
+
+    @Test
+    public void testFlushFailures() throws Exception {
+        final Sets h2Sets = new CantorOnH2(path).sets();
+        // delegate whose batched inc fails while failing is set
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        final Sets delegate = (Sets) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Sets.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("inc") && failing.get()) {
+                        throw new IOException("failing");
+                    }
+                    try {
+                        return method.invoke(h2Sets, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        final String namespace = UUID.randomUUID().toString();
+        final WriteCombiningSets sets = new WriteCombiningSets(delegate, 1024, TimeUnit.HOURS.toMillis(1), false);
+        sets.create(namespace);
+        try {
+            // failed deltas are retried on the next flush
+            assertEquals(sets.inc(namespace, "retried", "entry", 3), 3);
+            assertThrows(IOException.class, sets::flush);
+            assertEquals(sets.getPendingEntryCount(), 1);
+            failing.set(false);
+            sets.flush();
+            assertEquals(h2Sets.weight(namespace, "retried", "entry"), Long.valueOf(3));
+
+            // and dropped after too many failures
+            failing.set(true);
+            sets.inc(namespace, "dropped", "entry", 3);
+            for (int i = 0; i < 3; ++i) {
+                assertThrows(IOException.class, sets::flush);
+            }
+            assertEquals(sets.getFailedFlushCount(), 4);
+            assertEquals(sets.getDroppedEntryCount(), 1);
+            assertEquals(sets.getPendingEntryCount(), 0);
+            failing.set(false);
+            sets.flush();
+            assertNull(sets.weight(namespace, "dropped", "entry"));
+        } finally {
+            failing.set(false);
+            sets.close();
+            h2Sets.drop(namespace);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2020, Salesforce.com, Inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.cantor.misc.memory;
+
+import com.salesforce.cantor.Cantor;
+import com.salesforce.cantor.Events;
+import com.salesforce.cantor.Objects;
+import com.salesforce.cantor.Sets;
+import com.salesforce.cantor.common.AbstractBaseSetsTest;
+import com.salesforce.cantor.h2.CantorOnH2;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.*;
+
+public class InMemorySetsTest extends AbstractBaseSetsTest {
+    private static final String path = "/tmp/cantor-in-memory-test/" + UUID.randomUUID().toString();
+    private static Cantor cantor;
+
+    @Override
+    public Cantor getCantor() throws IOException {
+        synchronized (InMemorySetsTest.class) {
+            if (cantor == null) {
+                final Cantor delegate = new CantorOnH2(path);
+                final Sets sets = new InMemorySets();
+                cantor = new Cantor() {
+                    @Override
+                    public Objects objects() {
+                        return delegate.objects();
+                    }
+
+                    @Override
+                    public Sets sets() {
+                        return sets;
+                    }
+
+                    @Override
+                    public Events events() {
+                        return delegate.events();
+                    }
+                };
+            }
+            return cantor;
+        }
+    }
+
+    @Test
+    public void testSetAlgebra() throws IOException {
+        final Sets sets = new InMemorySets();
+        final String namespace = UUID.randomUUID().toString();
+        sets.create(namespace);
+
+        sets.add(namespace, "a", "common", 1);
+        sets.add(namespace, "a", "only-a", 2);
+        sets.add(namespace, "b", "common", 5);
+        sets.add(namespace, "b", "only-b", 3);
+        sets.add(namespace, "b", "out-of-range", 100);
+
+        final Map<String, Long> union = sets.union(namespace, Arrays.asList("a", "b", "missing"), 0, 10, 0, -1, true);
+        assertEquals(new ArrayList<>(union.keySet()), Arrays.asList("only-a", "only-b", "common"));
+        assertEquals(union.get("common"), Long.valueOf(5), "largest weight across sets");
+        assertEquals(sets.union(namespace, Arrays.asList("a", "b"), 0, 10, 1, 1, false).keySet(), Collections.singleton("only-b"));
+
+        final Map<String, Long> intersection = sets.intersect(namespace, Arrays.asList("a", "b"), 0, 10, 0, -1, true);
+        assertEquals(intersection, Collections.singletonMap("common", 5L));
+        assertTrue(sets.intersect(namespace, Arrays.asList("a", "missing"), 0, 10, 0, -1, true).isEmpty());
+        assertTrue(sets.intersect(namespace, Arrays.asList("a", "b"), 2, 10, 0, -1, true).isEmpty());
+        sets.drop(namespace);
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final Sets sets = new InMemorySets();
+        final String namespace = UUID.randomUUID().toString();
+        sets.create(namespace);
+
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; ++j) {
+                        sets.inc(namespace, "set", "entry-" + j % 10, 1);
+                        sets.add(namespace, "set", "overwritten", j);
+                        // readers see each entry once, with a single weight
+                        assertTrue(sets.get(namespace, "set").size() <= 11);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        final Map<String, Long> entries = sets.get(namespace, "set");
+        assertEquals(entries.size(), 11);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(entries.get("entry-" + i), Long.valueOf(threads * 100));
+        }
+        assertEquals(sets.size(namespace, "set"), 11);
+
+        // each entry is popped by only one caller
+        final ExecutorService poppers = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Map<String, Long>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                futures.add(poppers.submit(() -> sets.pop(namespace, "set", Long.MIN_VALUE, Long.MAX_VALUE, 0, 2, true)));
+            }
+            final Set<String> popped = new HashSet<>();
+            int total = 0;
+            for (final Future<Map<String, Long>> future : futures) {
+                popped.addAll(future.get().keySet());
+                total += future.get().size();
+            }
+            assertEquals(total, popped.size());
+            assertEquals(popped.size() + sets.size(namespace, "set"), 11);
+        } finally {
+            poppers.shutdown();
+        }
+        sets.drop(namespace);
+    }
+}
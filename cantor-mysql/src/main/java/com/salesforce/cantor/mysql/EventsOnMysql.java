@@ -14,7 +14,12 @@ import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.BinaryOperator;
 
 import static com.salesforce.cantor.jdbc.JdbcUtils.quote;
 
@@ -37,6 +42,12 @@ public class EventsOnMysql extends AbstractBaseEventsOnJdbc implements Events {
         super(dataSource);
     }
 
+    public EventsOnMysql(final DataSource dataSource,
+                         final int maxChunkQueryThreads,
+                         final int maxChunkQueriesPerNamespace) throws IOException {
+        super(dataSource, maxChunkQueryThreads, maxChunkQueriesPerNamespace);
+    }
+
     @Override
     protected String getCreateChunkLookupTableSql(final String namespace) {
         // sql to create chunk lookup table
@@ -62,6 +73,30 @@ public class EventsOnMysql extends AbstractBaseEventsOnJdbc implements Events {
         );
     }
 
+    @Override
+    protected String getCreateRollupTableSql(final String rollupTableName,
+                                             final String namespace,
+                                             final Collection<String> metadataKeys) {
+        final StringBuilder sqlBuilder = new StringBuilder();
+        sqlBuilder.append("CREATE TABLE IF NOT EXISTS ")
+                .append(getTableFullName(namespace, rollupTableName)).append(" (")
+                .append(quote(getRollupBucketColumnName())).append(" BIGINT, ")
+                .append(quote(getRollupDimensionKeyColumnName())).append(" VARCHAR(512), ");
+        for (final String metadataKey : new TreeSet<>(metadataKeys)) {
+            sqlBuilder.append(quote(getMetadataKeyColumnName(metadataKey))).append(" TEXT, ");
+        }
+        sqlBuilder.append(quote(getRollupCountColumnName())).append(" BIGINT, ")
+                .append(quote(getRollupSumColumnName())).append(" DOUBLE, ")
+                .append(quote(getRollupMinColumnName())).append(" DOUBLE, ")
+                .append(quote(getRollupMaxColumnName())).append(" DOUBLE, ");
+        sqlBuilder.append("INDEX ").append(getRollupBucketColumnName())
+                .append(" (").append(quote(getRollupBucketColumnName())).append("), ")
+                .append("INDEX ").append(getRollupDimensionKeyColumnName())
+                .append(" (").append(quote(getRollupDimensionKeyColumnName())).append("(256)))");
+        sqlBuilder.append(" ENGINE=InnoDB DEFAULT CHARSET=binary ");
+        return sqlBuilder.toString();
+    }
+
     @Override
     protected String getCreateChunkTableSql(final String chunkTableName,
                                             final String namespace,
@@ -128,5 +163,37 @@ public class EventsOnMysql extends AbstractBaseEventsOnJdbc implements Events {
     protected String getNotRegexQuery(final String column) {
         return String.format(" %s NOT LIKE ? ", column);
     }
-}
 
+    @Override
+    protected List<String> getSwapWithEmptyTableSqls(final String namespace,
+                                                     final String tableName,
+                                                     final String emptyTableName,
+                                                     final String tombstoneTableName) {
+        // renaming several tables in one statement is atomic in mysql
+        return Arrays.asList(
+                String.format("CREATE TABLE %s LIKE %s",
+                        getTableFullName(namespace, emptyTableName), getTableFullName(namespace, tableName)),
+                String.format("RENAME TABLE %s TO %s, %s TO %s",
+                        getTableFullName(namespace, tableName), getTableFullName(namespace, tombstoneTableName),
+                        getTableFullName(namespace, emptyTableName), getTableFullName(namespace, tableName))
+        );
+    }
+
+    @Override
+    protected String getBitwiseOrSql(final String left, final String right) {
+        return String.format("(%s | %s)", left, right);
+    }
+
+    @Override
+    protected String getUpsertZoneMapStatSql(final String namespace, final BinaryOperator<String> merge) {
+        final String valueColumn = quote(getStartTimestampMillisColumnName());
+        return String.format("INSERT INTO %s SET %s = ?, %s = ?, %s = ? ON DUPLICATE KEY UPDATE %s = %s",
+                getTableFullName(namespace, getChunksLookupTableName()),
+                quote(getTableNameColumnName()),
+                quote(getColumnColumnName()),
+                valueColumn,
+                valueColumn,
+                merge.apply(valueColumn, "VALUES(" + valueColumn + ")")
+        );
+    }
+}
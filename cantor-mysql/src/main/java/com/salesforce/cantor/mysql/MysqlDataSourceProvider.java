@@ -65,6 +65,9 @@ public class MysqlDataSourceProvider {
         connectoinPoolDataSource.addDataSourceProperty("continueBatchOnError", false);
         connectoinPoolDataSource.addDataSourceProperty("maintainTimeStats", false);
         connectoinPoolDataSource.addDataSourceProperty("maxRows", 100_000);  // max of 100,000 rows to be returned
+        // statements with a fetch size read rows through a server side cursor, a batch at a time, instead of
+        // buffering the whole result; several such results can be open on the same connection
+        connectoinPoolDataSource.addDataSourceProperty("useCursorFetch", true);
 //        TODO allow users to override this by a flag
 //        connectoinPoolDataSource.addDataSourceProperty("logger", "com.mysql.cj.log.Slf4JLogger");
 //        connectoinPoolDataSource.addDataSourceProperty("profileSQL", true);
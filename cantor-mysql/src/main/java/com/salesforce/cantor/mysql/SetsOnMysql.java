@@ -12,7 +12,12 @@ import com.salesforce.cantor.jdbc.AbstractBaseSetsOnJdbc;
 
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
+import static com.salesforce.cantor.jdbc.JdbcUtils.addParameters;
 import static com.salesforce.cantor.jdbc.JdbcUtils.quote;
 
 public class SetsOnMysql extends AbstractBaseSetsOnJdbc implements Sets {
@@ -41,8 +46,40 @@ public class SetsOnMysql extends AbstractBaseSetsOnJdbc implements Sets {
                 quote(getWeightColumnName()) + " BIGINT, " +
                 " PRIMARY KEY (" + quote(getSetKeyColumnName()) + ", " + quote(getEntryColumnName()) + "(512)), " +
                 " INDEX (" + quote(getSetKeyColumnName()) + "), " +
-                " INDEX (" + quote(getWeightColumnName()) + ")) " +
+                " INDEX (" + quote(getWeightColumnName()) + "), " +
+                " INDEX " + quote(getPageIndexName()) + getPageIndexColumns() + ") " +
                 " ENGINE=InnoDB DEFAULT CHARSET=utf8 ";
     }
-}
 
+    @Override
+    protected void createPageIndexIfNotExists(final Connection connection, final String namespace) throws IOException {
+        final String sql = "SELECT 1 FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND INDEX_NAME = ?";
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            addParameters(preparedStatement, getDatabaseNameForNamespace(namespace), getSetsTableName(), getPageIndexName());
+            try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    return;
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        executeUpdate(connection, "ALTER TABLE " + getTableFullName(namespace, getSetsTableName()) +
+                " ADD INDEX " + quote(getPageIndexName()) + getPageIndexColumns()
+        );
+    }
+
+    // the entry is a text column, so only a prefix of it can be indexed, which keeps the key within the 3072 byte
+    // limit of innodb; the index finds the entries of a set past the previous page by weight, but cannot order
+    // entries sharing a weight, so unlike on h2 pages are sorted rather than read in index order
+    private String getPageIndexColumns() {
+        return " (" + quote(getSetKeyColumnName()) + ", " + quote(getWeightColumnName()) + ", " + quote(getEntryColumnName()) + "(255))";
+    }
+
+    // the table's default utf8 collation is case insensitive; utf8 only holds characters of the basic multilingual
+    // plane, for which utf8_bin orders like string compare to
+    @Override
+    protected String getBinaryEntryCollation() {
+        return "utf8_bin";
+    }
+}
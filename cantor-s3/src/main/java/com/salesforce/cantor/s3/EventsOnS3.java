@@ -19,12 +19,15 @@ import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import com.google.common.cache.*;
 import com.google.common.util.concurrent.*;
 import com.google.gson.*;
+import com.salesforce.cantor.EventBatch;
 import com.salesforce.cantor.Events;
+import com.salesforce.cantor.common.EventsUtils.AggregateBucket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -32,8 +35,11 @@ import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static com.salesforce.cantor.common.EventsPreconditions.*;
+import static com.salesforce.cantor.common.EventsUtils.*;
 
 public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
     private static final Logger logger = LoggerFactory.getLogger(EventsOnS3.class);
@@ -60,6 +66,9 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
     // monitors for synchronizing writes to namespaces
     private static final Map<String, Object> namespaceLocks = new ConcurrentHashMap<>();
 
+    // attempts to write back an object that changed while events were deleted from it
+    private static final int maxDeleteAttempts = 5;
+
     // executor services for flushing buffered files to S3
     private static final Map<String, ScheduledExecutorService> flushExecutorServices = new ConcurrentHashMap<>();
 
@@ -69,6 +78,10 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
     // reference to the flush cycle guid
     private final AtomicReference<String> currentFlushCycleGuid = new AtomicReference<>();
 
+    // deletes rewrite objects holding the read lock, and buffered files are uploaded holding the write lock, so an
+    // upload never overwrites an object a delete is rewriting
+    private final ReadWriteLock objectsLock = new ReentrantReadWriteLock();
+
     // aws transfer manager for uploading buffer files
     private final TransferManager s3TransferManager;
 
@@ -151,6 +164,29 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
                            final boolean includePayloads,
                            final boolean ascending,
                            final int limit) throws IOException {
+        return get(namespace,
+                   startTimestampMillis,
+                   endTimestampMillis,
+                   metadataQuery,
+                   dimensionsQuery,
+                   includePayloads,
+                   ascending,
+                   limit,
+                   null,
+                   null);
+    }
+
+    @Override
+    public List<Event> get(final String namespace,
+                           final long startTimestampMillis,
+                           final long endTimestampMillis,
+                           final Map<String, String> metadataQuery,
+                           final Map<String, String> dimensionsQuery,
+                           final boolean includePayloads,
+                           final boolean ascending,
+                           final int limit,
+                           final Set<String> metadataKeys,
+                           final Set<String> dimensionKeys) throws IOException {
         checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
         checkNamespace(namespace);
         try {
@@ -161,13 +197,64 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
                          (dimensionsQuery != null) ? dimensionsQuery : Collections.emptyMap(),
                          includePayloads,
                          ascending,
-                         limit);
+                         limit,
+                         metadataKeys,
+                         dimensionKeys);
         } catch (final AmazonS3Exception | InterruptedException e) {
             logger.warn("exception getting events from namespace: " + namespace, e);
             throw new IOException("exception getting events from namespace: " + namespace, e);
         }
     }
 
+    @Override
+    public EventBatch getBatch(final String namespace,
+                               final long startTimestampMillis,
+                               final long endTimestampMillis,
+                               final Map<String, String> metadataQuery,
+                               final Map<String, String> dimensionsQuery,
+                               final boolean includePayloads,
+                               final boolean ascending,
+                               final int limit) throws IOException {
+        checkGet(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        checkNamespace(namespace);
+        try {
+            return doGetBatch(namespace,
+                              startTimestampMillis,
+                              endTimestampMillis,
+                              (metadataQuery != null) ? metadataQuery : Collections.emptyMap(),
+                              (dimensionsQuery != null) ? dimensionsQuery : Collections.emptyMap(),
+                              includePayloads,
+                              ascending,
+                              limit);
+        } catch (final AmazonS3Exception | InterruptedException e) {
+            logger.warn("exception getting events from namespace: " + namespace, e);
+            throw new IOException("exception getting events from namespace: " + namespace, e);
+        }
+    }
+
+    @Override
+    public EventCursor scan(final String namespace,
+                            final long startTimestampMillis,
+                            final long endTimestampMillis,
+                            final Map<String, String> metadataQuery,
+                            final Map<String, String> dimensionsQuery,
+                            final boolean includePayloads,
+                            final boolean ascending) throws IOException {
+        checkScan(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        try {
+            return doScan(namespace,
+                          startTimestampMillis,
+                          endTimestampMillis,
+                          (metadataQuery != null) ? metadataQuery : Collections.emptyMap(),
+                          (dimensionsQuery != null) ? dimensionsQuery : Collections.emptyMap(),
+                          includePayloads,
+                          ascending);
+        } catch (final AmazonS3Exception e) {
+            logger.warn("exception scanning events from namespace: " + namespace, e);
+            throw new IOException("exception scanning events from namespace: " + namespace, e);
+        }
+    }
+
     @Override
     public Set<String> metadata(final String namespace,
                                 final String metadataKey,
@@ -190,6 +277,28 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
         }
     }
 
+    @Override
+    public Map<String, Long> count(final String namespace,
+                                   final String metadataKey,
+                                   final long startTimestampMillis,
+                                   final long endTimestampMillis,
+                                   final Map<String, String> metadataQuery,
+                                   final Map<String, String> dimensionsQuery) throws IOException {
+        checkCount(namespace, metadataKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        checkNamespace(namespace);
+        try {
+            return doCount(namespace,
+                    metadataKey,
+                    startTimestampMillis,
+                    endTimestampMillis,
+                    (metadataQuery != null) ? metadataQuery : Collections.emptyMap(),
+                    (dimensionsQuery != null) ? dimensionsQuery : Collections.emptyMap());
+        } catch (final AmazonS3Exception | InterruptedException e) {
+            logger.warn("exception counting events from namespace: " + namespace, e);
+            throw new IOException("exception counting events from namespace: " + namespace, e);
+        }
+    }
+
     @Override
     public List<Event> dimension(final String namespace,
                                  final String dimensionKey,
@@ -212,6 +321,52 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
         }
     }
 
+    @Override
+    public Map<Long, Double> aggregate(final String namespace,
+                                       final String dimensionKey,
+                                       final long startTimestampMillis,
+                                       final long endTimestampMillis,
+                                       final long bucketMillis,
+                                       final AggregationFunction function,
+                                       final Map<String, String> metadataQuery,
+                                       final Map<String, String> dimensionsQuery) throws IOException {
+        checkAggregate(namespace, dimensionKey, startTimestampMillis, endTimestampMillis, bucketMillis, function, metadataQuery, dimensionsQuery);
+        checkNamespace(namespace);
+        try {
+            return doAggregate(namespace,
+                    dimensionKey,
+                    startTimestampMillis,
+                    endTimestampMillis,
+                    bucketMillis,
+                    function,
+                    (metadataQuery != null) ? metadataQuery : Collections.emptyMap(),
+                    (dimensionsQuery != null) ? dimensionsQuery : Collections.emptyMap());
+        } catch (final AmazonS3Exception | InterruptedException e) {
+            logger.warn("exception aggregating dimension from namespace: " + namespace, e);
+            throw new IOException("exception aggregating dimension from namespace: " + namespace, e);
+        }
+    }
+
+    @Override
+    public int delete(final String namespace,
+                      final long startTimestampMillis,
+                      final long endTimestampMillis,
+                      final Map<String, String> metadataQuery,
+                      final Map<String, String> dimensionsQuery) throws IOException {
+        checkDelete(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        checkNamespace(namespace);
+        try {
+            return doDelete(namespace,
+                    startTimestampMillis,
+                    endTimestampMillis,
+                    (metadataQuery != null) ? metadataQuery : Collections.emptyMap(),
+                    (dimensionsQuery != null) ? dimensionsQuery : Collections.emptyMap());
+        } catch (final AmazonS3Exception | InterruptedException e) {
+            logger.warn("exception deleting events from namespace: " + namespace, e);
+            throw new IOException("exception deleting events from namespace: " + namespace, e);
+        }
+    }
+
     @Override
     public void expire(final String namespace, final long endTimestampMillis) throws IOException {
         checkExpire(namespace, endTimestampMillis);
@@ -319,9 +474,11 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
                               final Map<String, String> dimensionsQuery,
                               final boolean includePayloads,
                               final boolean ascending,
-                              final int limit) throws IOException, InterruptedException {
+                              final int limit,
+                              final Set<String> metadataKeys,
+                              final Set<String> dimensionKeys) throws IOException, InterruptedException {
 
-        final List<Event> results = new CopyOnWriteArrayList<>();
+        final List<List<Event>> results = new CopyOnWriteArrayList<>();
         // parallel calls to s3
         final ListeningExecutorService executorService = newListeningExecutor("cantor-events-s3-get-%d");
         final AtomicBoolean futureHasFailed = new AtomicBoolean(false);
@@ -334,12 +491,14 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
             }
             ListenableFuture<List<Event>> future = executorService.submit(
                 () -> doGetOnObject(objectKey, startTimestampMillis, endTimestampMillis, metadataQuery,
-                    dimensionsQuery, includePayloads)
+                    dimensionsQuery, includePayloads, metadataKeys, dimensionKeys)
             );
             FutureCallback<List<Event>> callback = new FutureCallback<List<Event>>() {
                 // we want this handler to run immediately after we push the big red button!
                 public void onSuccess(List<Event> events) {
-                    results.addAll(events);
+                    // s3 select does not order results; sort each object's events to be merged below
+                    sortEventsByTimestamp(events, ascending);
+                    results.add(events);
                 }
                 public void onFailure(Throwable e) {
                     futureHasFailed.set(true);
@@ -355,12 +514,120 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
             throw new IOException("exception on get call to s3");
         }
 
-        // events are fetched from multiple sources, sort before returning
-        sortEventsByTimestamp(results, ascending);
-        if (limit > 0) {
-            return results.subList(0, Math.min(limit, results.size()));
+        // events are fetched from multiple sources, merge the sorted results up to the limit
+        return mergeSortedEvents(results, ascending, limit);
+    }
+
+    private EventBatch doGetBatch(final String namespace,
+                                  final long startTimestampMillis,
+                                  final long endTimestampMillis,
+                                  final Map<String, String> metadataQuery,
+                                  final Map<String, String> dimensionsQuery,
+                                  final boolean includePayloads,
+                                  final boolean ascending,
+                                  final int limit) throws IOException, InterruptedException {
+
+        final List<EventBatch> results = new CopyOnWriteArrayList<>();
+        // parallel calls to s3
+        final ListeningExecutorService executorService = newListeningExecutor("cantor-events-s3-get-batch-%d");
+        final AtomicBoolean futureHasFailed = new AtomicBoolean(false);
+
+        // iterate over all s3 objects that match this request
+        for (final String objectKey : getMatchingKeys(namespace, startTimestampMillis, endTimestampMillis)) {
+            // only query json files
+            if (!objectKey.endsWith("json")) {
+                continue;
+            }
+            ListenableFuture<EventBatch> future = executorService.submit(() -> {
+                final List<Event> events = doGetOnObject(objectKey, startTimestampMillis, endTimestampMillis,
+                        metadataQuery, dimensionsQuery, includePayloads, null, null);
+                // s3 select does not order results; sort each object's events and keep them as a columnar batch
+                sortEventsByTimestamp(events, ascending);
+                return EventBatch.of(events);
+            });
+            FutureCallback<EventBatch> callback = new FutureCallback<EventBatch>() {
+                public void onSuccess(EventBatch batch) {
+                    results.add(batch);
+                }
+                public void onFailure(Throwable e) {
+                    futureHasFailed.set(true);
+                    logger.warn("exception on get batch call to s3: {}", e.getMessage(), e);
+                }
+            };
+            Futures.addCallback(future, callback, MoreExecutors.directExecutor());
+        }
+
+        awaitTermination(executorService);
+
+        if (futureHasFailed.get()) {
+            throw new IOException("exception on get batch call to s3");
         }
-        return results;
+
+        // batches are fetched from multiple sources, merge the sorted results up to the limit
+        return mergeSortedBatches(results, ascending, limit);
+    }
+
+    private EventCursor doScan(final String namespace,
+                               final long startTimestampMillis,
+                               final long endTimestampMillis,
+                               final Map<String, String> metadataQuery,
+                               final Map<String, String> dimensionsQuery,
+                               final boolean includePayloads,
+                               final boolean ascending) throws IOException {
+        // group objects by the minute they hold events for; object keys are formatted as <prefix>/yyyy/MM/dd/HH/mm.<cycle>.json
+        final TreeMap<String, List<String>> objectKeysByMinute = new TreeMap<>();
+        for (final String objectKey : getMatchingKeys(namespace, startTimestampMillis, endTimestampMillis)) {
+            // only query json files
+            if (!objectKey.endsWith("json")) {
+                continue;
+            }
+            final int minuteEnd = objectKey.indexOf('.', objectKey.lastIndexOf('/'));
+            final String minute = minuteEnd > 0 ? objectKey.substring(0, minuteEnd) : objectKey;
+            objectKeysByMinute.computeIfAbsent(minute, k -> new ArrayList<>()).add(objectKey);
+        }
+        final Iterator<List<String>> minutes = ascending
+                ? objectKeysByMinute.values().iterator()
+                : objectKeysByMinute.descendingMap().values().iterator();
+
+        // s3 select does not order results, so objects of one minute are queried and sorted at a time
+        return new EventCursor() {
+            private Iterator<Event> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!this.current.hasNext() && minutes.hasNext()) {
+                    final List<Event> events = new ArrayList<>();
+                    try {
+                        for (final String objectKey : minutes.next()) {
+                            events.addAll(doGetOnObject(objectKey, startTimestampMillis, endTimestampMillis,
+                                    metadataQuery, dimensionsQuery, includePayloads, null, null));
+                        }
+                    } catch (final IOException | AmazonS3Exception e) {
+                        logger.warn("exception on scan call to s3: {}", e.getMessage(), e);
+                        throw new UncheckedIOException(new IOException("exception on scan call to s3", e));
+                    }
+                    sortEventsByTimestamp(events, ascending);
+                    this.current = events.iterator();
+                }
+                return this.current.hasNext();
+            }
+
+            @Override
+            public Event next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.current.next();
+            }
+
+            @Override
+            public void close() {
+                this.current = Collections.emptyIterator();
+                while (minutes.hasNext()) {
+                    minutes.next();
+                }
+            }
+        };
     }
 
     private Set<String> doMetadata(final String namespace,
@@ -405,6 +672,49 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
         return results;
     }
 
+    private Map<String, Long> doCount(final String namespace,
+                                      final String metadataKey,
+                                      final long startTimestampMillis,
+                                      final long endTimestampMillis,
+                                      final Map<String, String> metadataQuery,
+                                      final Map<String, String> dimensionsQuery) throws IOException, InterruptedException {
+        final Map<String, Long> results = new ConcurrentHashMap<>();
+        // parallel calls to s3
+        final ListeningExecutorService executorService = newListeningExecutor("cantor-events-s3-count-%d");
+        final AtomicBoolean futureHasFailed = new AtomicBoolean(false);
+
+        // iterate over all s3 objects that match this request
+        for (final String objectKey : getMatchingKeys(namespace, startTimestampMillis, endTimestampMillis)) {
+            // only query json files
+            if (!objectKey.endsWith("json")) {
+                continue;
+            }
+            ListenableFuture<Map<String, Long>> future = executorService.submit(
+                () -> doCountOnObject(objectKey, metadataKey, startTimestampMillis, endTimestampMillis,
+                    metadataQuery, dimensionsQuery)
+            );
+            FutureCallback<Map<String, Long>> callback = new FutureCallback<Map<String, Long>>() {
+                public void onSuccess(Map<String, Long> counts) {
+                    for (final Map.Entry<String, Long> entry : counts.entrySet()) {
+                        results.merge(entry.getKey(), entry.getValue(), Long::sum);
+                    }
+                }
+                public void onFailure(Throwable e) {
+                    futureHasFailed.set(true);
+                    logger.warn("exception on count call to s3", e);
+                }
+            };
+            Futures.addCallback(future, callback, MoreExecutors.directExecutor());
+        }
+
+        awaitTermination(executorService);
+
+        if (futureHasFailed.get()) {
+            throw new IOException("exception on count call to s3");
+        }
+        return new HashMap<>(results);
+    }
+
     private List<Event> doDimension(final String namespace,
                                     final String dimensionKey,
                                     final long startTimestampMillis,
@@ -446,15 +756,62 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
         return results;
     }
 
-    private void sortEventsByTimestamp(final List<Event> events, final boolean ascending) {
-        events.sort((event1, event2) -> {
-            if (event1.getTimestampMillis() < event2.getTimestampMillis()) {
-                return ascending ? -1 : 1;
-            } else if (event1.getTimestampMillis() > event2.getTimestampMillis()) {
-                return ascending ? 1 : -1;
+    private Map<Long, Double> doAggregate(final String namespace,
+                                          final String dimensionKey,
+                                          final long startTimestampMillis,
+                                          final long endTimestampMillis,
+                                          final long bucketMillis,
+                                          final AggregationFunction function,
+                                          final Map<String, String> metadataQuery,
+                                          final Map<String, String> dimensionsQuery) throws IOException, InterruptedException {
+        // s3 select does not support group by, so each object is reduced to per bucket partial aggregates as soon
+        // as its dimension values are fetched and only the partials are kept and merged
+        final Map<Long, AggregateBucket> results = new HashMap<>();
+        // parallel calls to s3
+        final ListeningExecutorService executorService = newListeningExecutor("cantor-events-s3-aggregate-%d");
+        final AtomicBoolean futureHasFailed = new AtomicBoolean(false);
+
+        // iterate over all s3 objects that match this request
+        for (final String objectKey : getMatchingKeys(namespace, startTimestampMillis, endTimestampMillis)) {
+            // only query json files
+            if (!objectKey.endsWith("json")) {
+                continue;
             }
-            return 0;
-        });
+            ListenableFuture<Map<Long, AggregateBucket>> future = executorService.submit(() -> {
+                final Map<Long, AggregateBucket> buckets = new HashMap<>();
+                for (final Event event : doDimensionOnObject(objectKey, dimensionKey, startTimestampMillis,
+                        endTimestampMillis, metadataQuery, dimensionsQuery)) {
+                    final Double value = event.getDimensions().get(dimensionKey);
+                    if (value == null) {
+                        continue;
+                    }
+                    final long bucket = event.getTimestampMillis() - event.getTimestampMillis() % bucketMillis;
+                    buckets.computeIfAbsent(bucket, k -> new AggregateBucket()).add(value);
+                }
+                return buckets;
+            });
+            FutureCallback<Map<Long, AggregateBucket>> callback = new FutureCallback<Map<Long, AggregateBucket>>() {
+                public void onSuccess(Map<Long, AggregateBucket> buckets) {
+                    synchronized (results) {
+                        mergeAggregateBuckets(results, buckets);
+                    }
+                }
+                public void onFailure(Throwable e) {
+                    futureHasFailed.set(true);
+                    logger.warn("exception on aggregate call to s3", e);
+                }
+            };
+            Futures.addCallback(future, callback, MoreExecutors.directExecutor());
+        }
+
+        awaitTermination(executorService);
+
+        if (futureHasFailed.get()) {
+            throw new IOException("exception on aggregate call to s3");
+        }
+        synchronized (results) {
+            return toAggregateResults(results, function);
+        }
     }
 
     private List<Event> doGetOnObject(final String objectKey,
@@ -462,7 +819,13 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
                                       final long endTimestampMillis,
                                       final Map<String, String> metadataQuery,
                                       final Map<String, String> dimensionsQuery,
-                                      final boolean includePayloads) throws IOException {
+                                      final boolean includePayloads,
+                                      final Set<String> metadataKeys,
+                                      final Set<String> dimensionKeys) throws IOException {
+        if (metadataKeys != null || dimensionKeys != null) {
+            return doGetProjectedOnObject(objectKey, startTimestampMillis, endTimestampMillis, metadataQuery,
+                    dimensionsQuery, includePayloads, metadataKeys, dimensionKeys);
+        }
 
         final List<Event> results = new ArrayList<>();
         final String query = generateGetQuery(startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
@@ -477,12 +840,7 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
                         && event.getDimensions().containsKey(dimensionKeyPayloadLength)) {
                     final long offset = event.getDimensions().get(dimensionKeyPayloadOffset).longValue();
                     final long length = event.getDimensions().get(dimensionKeyPayloadLength).longValue();
-                    final String payloadFilename = objectKey.substring(0, objectKey.lastIndexOf("json")) + "b64";
-                    final byte[] payloadBase64Bytes = S3Utils.getObjectBytes(this.s3Client, this.bucketName, payloadFilename, offset, offset + length - 1);
-                    if (payloadBase64Bytes.length == 0) {
-                        throw new IOException("failed to retrieve payload for event");
-                    }
-                    final byte[] payload = Base64.getDecoder().decode(new String(payloadBase64Bytes));
+                    final byte[] payload = getPayload(objectKey, offset, length);
                     final Event eventWithPayload = new Event(event.getTimestampMillis(), event.getMetadata(), event.getDimensions(), payload);
                     results.add(eventWithPayload);
                 } else {
@@ -493,6 +851,72 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
         return results;
     }
 
+    // selects only the timestamp and the requested keys of each event, instead of whole events
+    private List<Event> doGetProjectedOnObject(final String objectKey,
+                                               final long startTimestampMillis,
+                                               final long endTimestampMillis,
+                                               final Map<String, String> metadataQuery,
+                                               final Map<String, String> dimensionsQuery,
+                                               final boolean includePayloads,
+                                               final Set<String> metadataKeys,
+                                               final Set<String> dimensionKeys) throws IOException {
+        final List<Event> results = new ArrayList<>();
+        // a null set of keys selects the whole map of that kind
+        final List<String> metadataKeysList = metadataKeys != null ? new ArrayList<>(metadataKeys) : null;
+        final List<String> dimensionKeysList = dimensionKeys != null ? new ArrayList<>(dimensionKeys) : null;
+        final String query = generateProjectedGetQuery(startTimestampMillis, endTimestampMillis, metadataQuery,
+                dimensionsQuery, includePayloads, metadataKeysList, dimensionKeysList);
+        try (final Scanner lineReader = new Scanner(S3Utils.S3Select.queryObjectJson(this.s3Client, this.bucketName, objectKey, query))) {
+            // json events are stored in json lines format, so one json object per line
+            while (lineReader.hasNext()) {
+                final JsonObject row = this.parser.fromJson(lineReader.nextLine(), JsonObject.class);
+                final long timestampMillis = row.get("timestampMillis").getAsLong();
+                final Map<String, String> metadata = new HashMap<>();
+                if (metadataKeysList != null) {
+                    for (int i = 0; i < metadataKeysList.size(); ++i) {
+                        final JsonElement value = row.get("m" + i);
+                        if (value != null && !value.isJsonNull()) {
+                            metadata.put(metadataKeysList.get(i), value.getAsString());
+                        }
+                    }
+                } else if (row.has("metadata")) {
+                    for (final Map.Entry<String, JsonElement> entry : row.getAsJsonObject("metadata").entrySet()) {
+                        metadata.put(entry.getKey(), entry.getValue().getAsString());
+                    }
+                }
+                final Map<String, Double> dimensions = new HashMap<>();
+                if (dimensionKeysList != null) {
+                    for (int i = 0; i < dimensionKeysList.size(); ++i) {
+                        final JsonElement value = row.get("d" + i);
+                        if (value != null && !value.isJsonNull()) {
+                            dimensions.put(dimensionKeysList.get(i), value.getAsDouble());
+                        }
+                    }
+                } else if (row.has("dimensions")) {
+                    for (final Map.Entry<String, JsonElement> entry : row.getAsJsonObject("dimensions").entrySet()) {
+                        dimensions.put(entry.getKey(), entry.getValue().getAsDouble());
+                    }
+                }
+                byte[] payload = null;
+                if (includePayloads && row.has("payloadOffset") && row.has("payloadLength")) {
+                    payload = getPayload(objectKey, row.get("payloadOffset").getAsLong(), row.get("payloadLength").getAsLong());
+                }
+                results.add(new Event(timestampMillis, metadata, dimensions, payload));
+            }
+        }
+        return results;
+    }
+
+    // range call to s3 to pull the base64 representation of the payload bytes
+    private byte[] getPayload(final String objectKey, final long offset, final long length) throws IOException {
+        final String payloadFilename = objectKey.substring(0, objectKey.lastIndexOf("json")) + "b64";
+        final byte[] payloadBase64Bytes = S3Utils.getObjectBytes(this.s3Client, this.bucketName, payloadFilename, offset, offset + length - 1);
+        if (payloadBase64Bytes.length == 0) {
+            throw new IOException("failed to retrieve payload for event");
+        }
+        return Base64.getDecoder().decode(new String(payloadBase64Bytes));
+    }
+
     private Set<String> doMetadataOnObject(final String objectKey,
                                            final String metadataKey,
                                            final long startTimestampMillis,
@@ -500,14 +924,26 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
                                            final Map<String, String> metadataQuery,
                                            final Map<String, String> dimensionsQuery) throws IOException {
 
-        final Set<String> results = new HashSet<>();
+        return doCountOnObject(objectKey, metadataKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery)
+                .keySet();
+    }
+
+    // s3 select does not support group by, so only the metadata value of each matching event is selected and
+    // counted while reading the object
+    private Map<String, Long> doCountOnObject(final String objectKey,
+                                              final String metadataKey,
+                                              final long startTimestampMillis,
+                                              final long endTimestampMillis,
+                                              final Map<String, String> metadataQuery,
+                                              final Map<String, String> dimensionsQuery) throws IOException {
+        final Map<String, Long> results = new HashMap<>();
         final String query = generateMetadataQuery(metadataKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
         try (final Scanner lineReader = new Scanner(S3Utils.S3Select.queryObjectJson(this.s3Client, this.bucketName, objectKey, query))) {
             // json events are stored in json lines format, so one json object per line
             while (lineReader.hasNext()) {
                 final Map<String, String> metadata = this.parser.fromJson(lineReader.nextLine(), Map.class);
                 if (metadata.containsKey(metadataKey)) {
-                    results.add(metadata.get(metadataKey));
+                    results.merge(metadata.get(metadataKey), 1L, Long::sum);
                 }
             }
         }
@@ -534,6 +970,160 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
         return results;
     }
 
+    private int doDelete(final String namespace,
+                         final long startTimestampMillis,
+                         final long endTimestampMillis,
+                         final Map<String, String> metadataQuery,
+                         final Map<String, String> dimensionsQuery) throws IOException, InterruptedException {
+        this.objectsLock.readLock().lock();
+        try {
+            return doDeleteOnObjects(namespace, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        } finally {
+            this.objectsLock.readLock().unlock();
+        }
+    }
+
+    private int doDeleteOnObjects(final String namespace,
+                                  final long startTimestampMillis,
+                                  final long endTimestampMillis,
+                                  final Map<String, String> metadataQuery,
+                                  final Map<String, String> dimensionsQuery) throws IOException, InterruptedException {
+        final AtomicLong results = new AtomicLong();
+        // parallel calls to s3
+        final ListeningExecutorService executorService = newListeningExecutor("cantor-events-s3-delete-%d");
+        final AtomicBoolean futureHasFailed = new AtomicBoolean(false);
+
+        // iterate over all s3 objects that may have events matching this request
+        for (final String objectKey : getMatchingKeys(namespace, startTimestampMillis, endTimestampMillis)) {
+            // only json files hold events; payloads are deleted along with their events
+            if (!objectKey.endsWith("json")) {
+                continue;
+            }
+            ListenableFuture<Integer> future = executorService.submit(
+                () -> doDeleteOnObject(objectKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery)
+            );
+            FutureCallback<Integer> callback = new FutureCallback<Integer>() {
+                public void onSuccess(Integer deleted) {
+                    results.addAndGet(deleted);
+                }
+                public void onFailure(Throwable e) {
+                    futureHasFailed.set(true);
+                    logger.warn("exception on delete call to s3: {}", e.getMessage(), e);
+                }
+            };
+            Futures.addCallback(future, callback, MoreExecutors.directExecutor());
+        }
+
+        awaitTermination(executorService);
+
+        if (futureHasFailed.get()) {
+            throw new IOException("exception on delete call to s3");
+        }
+        return (int) results.get();
+    }
+
+    // s3 objects cannot be modified in place; events matching the query are found with s3 select, and only if there
+    // are any, the object is read and written back without them, only if it has not changed since it was read; if it
+    // has, e.g. by another delete, it is read again. payload offsets of the events left are not changed, so payloads
+    // of deleted events are blanked out in place in the payload object, or it is deleted along with the last payload
+    private int doDeleteOnObject(final String objectKey,
+                                 final long startTimestampMillis,
+                                 final long endTimestampMillis,
+                                 final Map<String, String> metadataQuery,
+                                 final Map<String, String> dimensionsQuery) throws IOException {
+        for (int attempt = 1; attempt <= maxDeleteAttempts; ++attempt) {
+            final Integer deleted = tryDeleteOnObject(objectKey, startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+            if (deleted != null) {
+                logger.info("deleted {} events from object {}", deleted, objectKey);
+                return deleted;
+            }
+            logger.info("object {} changed while deleting events from it; retrying", objectKey);
+        }
+        throw new IOException("object " + objectKey + " kept changing while deleting events from it");
+    }
+
+    // returns the number of events deleted from the object, or null if the object changed before it was written back
+    private Integer tryDeleteOnObject(final String objectKey,
+                                      final long startTimestampMillis,
+                                      final long endTimestampMillis,
+                                      final Map<String, String> metadataQuery,
+                                      final Map<String, String> dimensionsQuery) throws IOException {
+        final Map<Long, List<Event>> matches = new HashMap<>();
+        final String query = generateGetQuery(startTimestampMillis, endTimestampMillis, metadataQuery, dimensionsQuery);
+        try (final Scanner lineReader = new Scanner(S3Utils.S3Select.queryObjectJson(this.s3Client, this.bucketName, objectKey, query))) {
+            while (lineReader.hasNext()) {
+                final Event event = this.parser.fromJson(lineReader.nextLine(), Event.class);
+                matches.computeIfAbsent(event.getTimestampMillis(), k -> new ArrayList<>()).add(event);
+            }
+        }
+        if (matches.isEmpty()) {
+            return 0;
+        }
+
+        // identical events either all match or all do not, so removing one match per matching event is exact
+        final Map.Entry<String, byte[]> object = S3Utils.getObjectBytesWithETag(this.s3Client, this.bucketName, objectKey);
+        final StringBuilder remaining = new StringBuilder();
+        final List<long[]> deletedPayloads = new ArrayList<>();
+        boolean hasRemainingPayloads = false;
+        int deleted = 0;
+        try (final Scanner lineReader = new Scanner(new ByteArrayInputStream(object.getValue()), StandardCharsets.UTF_8.name())) {
+            while (lineReader.hasNext()) {
+                final String line = lineReader.nextLine();
+                final Event event = this.parser.fromJson(line, Event.class);
+                final boolean hasPayload = event.getDimensions().containsKey(dimensionKeyPayloadOffset)
+                        && event.getDimensions().containsKey(dimensionKeyPayloadLength);
+                final List<Event> candidates = matches.get(event.getTimestampMillis());
+                if (candidates != null && candidates.remove(event)) {
+                    ++deleted;
+                    if (hasPayload) {
+                        deletedPayloads.add(new long[] {
+                                event.getDimensions().get(dimensionKeyPayloadOffset).longValue(),
+                                event.getDimensions().get(dimensionKeyPayloadLength).longValue()
+                        });
+                    }
+                    continue;
+                }
+                hasRemainingPayloads |= hasPayload;
+                remaining.append(line).append('\n');
+            }
+        }
+        if (deleted == 0) {
+            return 0;
+        }
+
+        // events are gone once the events object is written back; payloads are only referenced by events
+        final byte[] content = remaining.toString().getBytes(StandardCharsets.UTF_8);
+        if (!S3Utils.putObjectIfMatch(this.s3Client, this.bucketName, objectKey, content, object.getKey())) {
+            return null;
+        }
+        final String payloadKey = objectKey.substring(0, objectKey.lastIndexOf("json")) + "b64";
+        if (remaining.length() == 0) {
+            S3Utils.deleteObjects(this.s3Client, this.bucketName, Arrays.asList(objectKey, payloadKey));
+        } else if (!hasRemainingPayloads) {
+            S3Utils.deleteObjects(this.s3Client, this.bucketName, Collections.singletonList(payloadKey));
+        } else if (!deletedPayloads.isEmpty()) {
+            blankPayloads(payloadKey, deletedPayloads);
+        }
+        return deleted;
+    }
+
+    // overwrites the base64 payloads at the given offset and length with spaces, keeping offsets of the others
+    private void blankPayloads(final String payloadKey, final List<long[]> payloads) throws IOException {
+        for (int attempt = 1; attempt <= maxDeleteAttempts; ++attempt) {
+            final Map.Entry<String, byte[]> object = S3Utils.getObjectBytesWithETag(this.s3Client, this.bucketName, payloadKey);
+            final byte[] content = object.getValue();
+            for (final long[] payload : payloads) {
+                final int from = (int) Math.min(payload[0], content.length);
+                final int to = (int) Math.min(payload[0] + payload[1], content.length);
+                Arrays.fill(content, from, to, (byte) ' ');
+            }
+            if (S3Utils.putObjectIfMatch(this.s3Client, this.bucketName, payloadKey, content, object.getKey())) {
+                return;
+            }
+        }
+        throw new IOException("object " + payloadKey + " kept changing while deleting payloads from it");
+    }
+
     private void doExpire(final String namespace, final long endTimestampMillis) throws IOException, InterruptedException {
         // TODO this has to be implemented properly
         logger.info("expiring namespace '{}' with end timestamp of '{}'", namespace, endTimestampMillis);
@@ -556,6 +1146,47 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
         );
     }
 
+    // projected keys are aliased by position, since metadata and dimension keys can have the same name
+    private String generateProjectedGetQuery(final long startTimestampMillis,
+                                             final long endTmestampMillis,
+                                             final Map<String, String> metadataQuery,
+                                             final Map<String, String> dimensionsQuery,
+                                             final boolean includePayloads,
+                                             final List<String> metadataKeys,
+                                             final List<String> dimensionKeys) {
+        final StringBuilder projection = new StringBuilder("s.timestampMillis");
+        if (metadataKeys != null) {
+            for (int i = 0; i < metadataKeys.size(); ++i) {
+                projection.append(String.format(", s.metadata.%s AS \"m%d\"", quoteKey(metadataKeys.get(i)), i));
+            }
+        } else {
+            projection.append(", s.metadata");
+        }
+        if (dimensionKeys != null) {
+            for (int i = 0; i < dimensionKeys.size(); ++i) {
+                projection.append(String.format(", s.dimensions.%s AS \"d%d\"", quoteKey(dimensionKeys.get(i)), i));
+            }
+        } else {
+            projection.append(", s.dimensions");
+        }
+        if (includePayloads) {
+            projection.append(String.format(", s.dimensions.\"%s\" AS \"payloadOffset\"", dimensionKeyPayloadOffset));
+            projection.append(String.format(", s.dimensions.\"%s\" AS \"payloadLength\"", dimensionKeyPayloadLength));
+        }
+        final String timestampClause = String.format("s.timestampMillis >= %d AND s.timestampMillis <= %d", startTimestampMillis, endTmestampMillis);
+        return String.format("SELECT %s FROM s3object[*] s WHERE %s %s %s",
+                projection,
+                timestampClause,
+                getMetadataQuerySql(metadataQuery),
+                getDimensionsQuerySql(dimensionsQuery)
+        );
+    }
+
+    // keys are quoted identifiers in s3 select, where a double quote is escaped by doubling it
+    private static String quoteKey(final String key) {
+        return "\"" + key.replace("\"", "\"\"") + "\"";
+    }
+
     private String generateMetadataQuery(final String metadataKey,
                                          final long startTimestampMillis,
                                          final long endTmestampMillis,
@@ -667,15 +1298,7 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
                 .replace("_", "\\\\_");
     }
 
-    // the dimension query object can contain these patterns:
-    // '' (just a number): equals - 'cpu' => '90'
-    // '=': equals - 'cpu' => '=90'
-    // '!=': not equals - 'cpu' => '!=90'
-    // '..': between - 'cpu' => '90..100'
-    // '>': greater than - 'cpu' => '>90'
-    // '>=': greater than or equals - 'cpu' => '>=90'
-    // '<': less than - 'cpu' => '<90'
-    // '<=': less than or equals - 'cpu' => '<=90'
+    // see DimensionPredicate for the patterns a dimension query can contain; values are inlined in the query
     private String getDimensionsQuerySql(final Map<String, String> dimensionsQuery) {
         if (dimensionsQuery.isEmpty()) {
             return "";
@@ -683,29 +1306,7 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
         final StringBuilder sql = new StringBuilder();
         for (final Map.Entry<String, String> entry : dimensionsQuery.entrySet()) {
             final String dimensionName = prefixDimension(entry.getKey());
-            final String query = entry.getValue();
-            if (query.contains("..")) {
-                sql.append(" AND ")
-                    .append(dimensionName)
-                    .append(" BETWEEN ")
-                    .append(Double.valueOf(query.substring(0, query.indexOf(".."))))
-                    .append(" AND ")
-                    .append(Double.valueOf(query.substring(query.indexOf("..") + 2)));
-            } else if (query.startsWith(">=")) {
-                sql.append(" AND ").append(dimensionName).append(">=").append(query.substring(2));
-            } else if (query.startsWith("<=")) {
-                sql.append(" AND ").append(dimensionName).append("<=").append(query.substring(2));
-            } else if (query.startsWith(">")) {
-                sql.append(" AND ").append(dimensionName).append(">").append(query.substring(1));
-            } else if (query.startsWith("<")) {
-                sql.append(" AND ").append(dimensionName).append("<").append(query.substring(1));
-            } else if (query.startsWith("!=")) {
-                sql.append(" AND ").append(dimensionName).append("!=").append(query.substring(2));
-            } else if (query.startsWith("=")) {
-                sql.append(" AND ").append(dimensionName).append("=").append(query.substring(1));
-            } else {
-                sql.append(" AND ").append(dimensionName).append("=").append(query);
-            }
+            sql.append(" AND").append(DimensionPredicate.parse(entry.getValue()).toSql(dimensionName, null));
         }
         return sql.toString();
     }
@@ -779,13 +1380,18 @@ public class EventsOnS3 extends AbstractBaseS3Namespaceable implements Events {
                     continue;
                 }
 
-                // upload all of the contents of the directory to s3
-                uploadDirectory(dir);
-                logger.info("successfully uploaded buffer directory: {}", dir.getAbsolutePath());
-
-                // delete the buffer directory
-                logger.info("deleting buffer directory: {}", dir.getAbsolutePath());
-                delete(dir);
+                this.objectsLock.writeLock().lock();
+                try {
+                    // upload all of the contents of the directory to s3
+                    uploadDirectory(dir);
+                    logger.info("successfully uploaded buffer directory: {}", dir.getAbsolutePath());
+
+                    // delete the buffer directory
+                    logger.info("deleting buffer directory: {}", dir.getAbsolutePath());
+                    delete(dir);
+                } finally {
+                    this.objectsLock.writeLock().unlock();
+                }
             }
         } catch (InterruptedException e) {
             logger.warn("flush cycle interrupted; exiting");
@@ -161,6 +161,58 @@ public class S3Utils {
         }
     }
 
+    // reads the whole object along with its etag, which identifies this version of the object
+    public static Map.Entry<String, byte[]> getObjectBytesWithETag(final AmazonS3 s3Client,
+                                                                   final String bucketName,
+                                                                   final String key) throws IOException {
+        final long before = System.nanoTime();
+        try {
+            final S3Object s3Object = s3Client.getObject(bucketName, key);
+            try (final InputStream inputStream = s3Object.getObjectContent()) {
+                try (final ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
+                    final byte[] data = new byte[streamingChunkSize];
+                    int read;
+                    while ((read = inputStream.read(data, 0, data.length)) != -1) {
+                        buffer.write(data, 0, read);
+                    }
+                    return new AbstractMap.SimpleImmutableEntry<>(s3Object.getObjectMetadata().getETag(), buffer.toByteArray());
+                }
+            }
+        } finally {
+            logger.info("get object bytes with etag - bucket: {} - key: {}; time spent: {}ms",
+                    bucketName, key, ((System.nanoTime() - before) / 1_000_000)
+            );
+        }
+    }
+
+    // puts the object only if it is still the version with the given etag; returns false if it has changed since
+    public static boolean putObjectIfMatch(final AmazonS3 s3Client,
+                                           final String bucketName,
+                                           final String key,
+                                           final byte[] content,
+                                           final String eTag) {
+        final long before = System.nanoTime();
+        try {
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(content.length);
+            final PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, key, new ByteArrayInputStream(content), metadata);
+            putObjectRequest.withCannedAcl(CannedAccessControlList.BucketOwnerFullControl);
+            putObjectRequest.putCustomRequestHeader("If-Match", eTag);
+            s3Client.putObject(putObjectRequest);
+            return true;
+        } catch (final AmazonS3Exception e) {
+            // 412 precondition failed, or 409 conflict with a concurrent conditional write
+            if (e.getStatusCode() == 412 || e.getStatusCode() == 409) {
+                return false;
+            }
+            throw e;
+        } finally {
+            logger.info("put object if match - bucket: {} - key: {}; time spent: {}ms",
+                    bucketName, key, ((System.nanoTime() - before) / 1_000_000)
+            );
+        }
+    }
+
     public static boolean deleteObject(final AmazonS3 s3Client, final String bucketName, final String key) {
         final long before = System.nanoTime();
         try {
@@ -21,6 +21,7 @@ import com.salesforce.cantor.h2.H2DataSourceProperties;
 import com.salesforce.cantor.h2.H2DataSourceProvider;
 import com.salesforce.cantor.misc.async.AsyncCantor;
 import com.salesforce.cantor.misc.loggable.LoggableCantor;
+import com.salesforce.cantor.misc.memory.InMemorySets;
 import com.salesforce.cantor.misc.rw.ReadWriteCantor;
 import com.salesforce.cantor.misc.sharded.ShardedCantor;
 import com.salesforce.cantor.mysql.CantorOnMysql;
@@ -134,6 +135,19 @@ public class CantorFactory {
             }
             logger.info("creating shared h2 cantor with {} instances: {}", cantors.length, dataSources);
             return new LoggableCantor(new ShardedCantor(cantors));
+        } else if (storageType.equalsIgnoreCase("memory")) {
+            // sets are kept on the heap; objects and events go to an in-memory h2 database
+            logger.info("creating in-memory cantor...");
+            final Sets sets = new InMemorySets();
+            final H2DataSourceProperties properties = new H2DataSourceProperties()
+                    .setPath("cantor-in-memory")
+                    .setInMemory(true);
+            return new LoggableCantor(new CantorOnH2(H2DataSourceProvider.getDatasource(properties)) {
+                @Override
+                public Sets sets() {
+                    return sets;
+                }
+            });
         } else {
             throw new IllegalArgumentException("invalid storage type");
         }